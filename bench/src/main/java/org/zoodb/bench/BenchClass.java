@@ -0,0 +1,95 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * Persistent class used by the benchmarks.
+ * 
+ * @author Tilmann Zaeschke
+ */
+public class BenchClass extends PersistenceCapableImpl {
+
+	private int _int;
+	private long _long;
+	private double _double;
+	private String _string;
+	private int[] _ints;
+	private BenchClass _ref;
+	
+	public BenchClass() {
+		//for de-serialization
+	}
+	
+	public BenchClass(int i) {
+		_int = i;
+		_long = i * 31L;
+		_double = i / 3.0;
+		_string = "name-" + i;
+		_ints = new int[]{i, i+1, i+2};
+	}
+	
+	public int getInt() {
+		zooActivateRead();
+		return _int;
+	}
+	
+	public void setInt(int i) {
+		zooActivateWrite();
+		_int = i;
+	}
+	
+	public long getLong() {
+		zooActivateRead();
+		return _long;
+	}
+	
+	public void setLong(long l) {
+		zooActivateWrite();
+		_long = l;
+	}
+	
+	public double getDouble() {
+		zooActivateRead();
+		return _double;
+	}
+	
+	public String getString() {
+		zooActivateRead();
+		return _string;
+	}
+	
+	public int[] getInts() {
+		zooActivateRead();
+		return _ints;
+	}
+	
+	public BenchClass getRef() {
+		zooActivateRead();
+		return _ref;
+	}
+	
+	public void setRef(BenchClass ref) {
+		zooActivateWrite();
+		_ref = ref;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.zoodb.jdo.api.ZooConfig;
+import org.zoodb.jdo.api.ZooJdoProperties;
+import org.zoodb.jdo.api.ZooSchema;
+import org.zoodb.jdo.api.impl.DataStoreManagerInMemory;
+import org.zoodb.jdo.internal.server.StorageChannel;
+import org.zoodb.jdo.internal.server.StorageRootFile;
+import org.zoodb.jdo.internal.server.StorageRootInMemory;
+import org.zoodb.jdo.internal.server.index.FreeSpaceManager;
+import org.zoodb.tools.ZooHelper;
+
+/**
+ * Setup and tear-down of storage channels and databases for the benchmarks.
+ * 
+ * @author Tilmann Zaeschke
+ */
+public final class BenchTools {
+
+	/**
+	 * The storage back-ends that are benchmarked.
+	 */
+	public enum Storage {
+		/** StorageRootInMemory */
+		MEMORY, 
+		/** StorageRootFile */
+		FILE;
+	}
+	
+	public static final String DB_NAME = "ZooDbBench";
+	
+	private BenchTools() {
+		//static methods only
+	}
+	
+	/**
+	 * A storage channel with its free space manager and, for FILE, the backing file.
+	 */
+	public static final class Channel {
+		public final StorageChannel root;
+		public final FreeSpaceManager fsm;
+		private final File file;
+		private final String memDbName;
+		
+		private Channel(StorageChannel root, FreeSpaceManager fsm, File file, String memDbName) {
+			this.root = root;
+			this.fsm = fsm;
+			this.file = file;
+			this.memDbName = memDbName;
+		}
+		
+		public void close() {
+			root.close();
+			if (file != null) {
+				file.delete();
+			}
+			if (memDbName != null) {
+				new DataStoreManagerInMemory().removeDb(memDbName);
+			}
+		}
+	}
+	
+	/**
+	 * Create an empty storage channel with the default page size.
+	 * @param storage
+	 * @return The new channel.
+	 */
+	public static Channel createChannel(Storage storage) {
+		int pageSize = ZooConfig.getFilePageSize();
+		FreeSpaceManager fsm = new FreeSpaceManager();
+		switch (storage) {
+		case MEMORY: {
+			//The content of the database is overwritten, we only need the page buffers
+			//createDb() opens a session, so the in-memory file manager must be active.
+			String prevMgr = ZooConfig.getFileManager();
+			String prevPaf = ZooConfig.getFileProcessor();
+			ZooConfig.setFileManager(ZooConfig.FILE_MGR_IN_MEMORY);
+			DataStoreManagerInMemory dsm = new DataStoreManagerInMemory();
+			String name = "zoodb-bench-" + System.nanoTime();
+			try {
+				dsm.createDb(name);
+			} finally {
+				ZooConfig.setFileManager(prevMgr);
+				ZooConfig.setFileProcessor(prevPaf);
+			}
+			StorageRootInMemory root = 
+					new StorageRootInMemory(dsm.getDbPath(name), "rw", pageSize, fsm);
+			fsm.initBackingIndexNew(root);
+			fsm.getNextPage(0);  // avoid using first page
+			return new Channel(root, fsm, null, name);
+		}
+		case FILE: {
+			File file;
+			try {
+				file = File.createTempFile("zoodb", ".bench");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			StorageRootFile root = new StorageRootFile(file.getAbsolutePath(), "rw", pageSize, fsm);
+			fsm.initBackingIndexNew(root);
+			fsm.getNextPage(0);  // avoid using first page
+			return new Channel(root, fsm, file, null);
+		}
+		default: throw new IllegalArgumentException(storage.name());
+		}
+	}
+	
+	/**
+	 * Create a new database and define the schemata.
+	 * @param storage
+	 * @param classes
+	 */
+	public static void createDb(Storage storage, Class<?> ... classes) {
+		ZooConfig.setFileManager(storage == Storage.MEMORY ? 
+				ZooConfig.FILE_MGR_IN_MEMORY : ZooConfig.FILE_MGR_ONE_FILE);
+		if (ZooHelper.dbExists(DB_NAME)) {
+			ZooHelper.removeDb(DB_NAME);
+		}
+		ZooHelper.createDb(DB_NAME);
+		PersistenceManager pm = openPM();
+		pm.currentTransaction().begin();
+		for (Class<?> cls: classes) {
+			ZooSchema.defineClass(pm, cls);
+		}
+		pm.currentTransaction().commit();
+		closePM(pm);
+	}
+	
+	public static void createIndex(Class<?> cls, String fieldName, boolean isUnique) {
+		PersistenceManager pm = openPM();
+		pm.currentTransaction().begin();
+		ZooSchema.locateClass(pm, cls).createIndex(fieldName, isUnique);
+		pm.currentTransaction().commit();
+		closePM(pm);
+	}
+	
+	public static PersistenceManager openPM() {
+		Properties props = new ZooJdoProperties(DB_NAME);
+		PersistenceManagerFactory pmf = JDOHelper.getPersistenceManagerFactory(props);
+		return pmf.getPersistenceManager();
+	}
+
+	public static void closePM(PersistenceManager pm) {
+		if (pm.currentTransaction().isActive()) {
+			pm.currentTransaction().rollback();
+		}
+		PersistenceManagerFactory pmf = pm.getPersistenceManagerFactory();
+		pm.close();
+		pmf.close();
+	}
+	
+	public static void removeDb() {
+		if (ZooHelper.dbExists(DB_NAME)) {
+			ZooHelper.removeDb(DB_NAME);
+		}
+		ZooConfig.setDefaults();
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.PersistenceManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoodb.bench.BenchTools.Storage;
+
+/**
+ * Commit of new objects, including serialization, index updates and writing pages. 
+ * Each invocation commits N new objects in a single transaction.
+ * 
+ * @author Tilmann Zaeschke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitBenchmark {
+
+	private static final int N = 10000;
+	
+	@Param({"MEMORY", "FILE"})
+	public Storage storage;
+
+	@Param({"false", "true"})
+	public boolean indexed;
+	
+	private PersistenceManager pm;
+	private int cnt = 0;
+	
+	@Setup(Level.Iteration)
+	public void setUp() {
+		BenchTools.createDb(storage, BenchClass.class);
+		if (indexed) {
+			BenchTools.createIndex(BenchClass.class, "_long", false);
+		}
+		pm = BenchTools.openPM();
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		BenchTools.closePM(pm);
+		BenchTools.removeDb();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public void commitNew() {
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new BenchClass(cnt++));
+		}
+		pm.currentTransaction().commit();
+		//Do not measure the growth of the cache
+		pm.evictAll();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public void commitNewReachable() {
+		pm.currentTransaction().begin();
+		BenchClass root = new BenchClass(cnt++);
+		BenchClass prev = root;
+		for (int i = 1; i < N; i++) {
+			BenchClass b = new BenchClass(cnt++);
+			prev.setRef(b);
+			prev = b;
+		}
+		//all others become persistent by reachability
+		pm.makePersistent(root);
+		pm.currentTransaction().commit();
+		pm.evictAll();
+	}
+}
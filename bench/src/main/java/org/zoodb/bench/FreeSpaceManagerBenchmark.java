@@ -0,0 +1,129 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoodb.bench.BenchTools.Channel;
+import org.zoodb.bench.BenchTools.Storage;
+import org.zoodb.jdo.internal.server.index.FreeSpaceManager;
+
+/**
+ * Page churn in the FreeSpaceManager, as it happens when objects are rewritten in 
+ * subsequent transactions: allocate pages, free the previous pages, commit.
+ * 
+ * @author Tilmann Zaeschke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FreeSpaceManagerBenchmark {
+
+	private static final int N_PAGES = 10000;
+	
+	@Param({"MEMORY", "FILE"})
+	public Storage storage;
+	
+	private Channel channel;
+	private FreeSpaceManager fsm;
+	private int[] pages;
+	
+	@Setup(Level.Iteration)
+	public void setUp() {
+		channel = BenchTools.createChannel(storage);
+		fsm = channel.fsm;
+		pages = new int[N_PAGES];
+		for (int i = 0; i < N_PAGES; i++) {
+			pages[i] = fsm.getNextPage(0);
+		}
+		fsm.write();
+		fsm.notifyCommit();
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		channel.close();
+	}
+	
+	/**
+	 * Rewrite every page once, i.e. one transaction that updates all objects.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(N_PAGES)
+	public int rewriteAll() {
+		for (int i = 0; i < N_PAGES; i++) {
+			pages[i] = fsm.getNextPage(pages[i]);
+		}
+		int ret = fsm.write();
+		fsm.notifyCommit();
+		return ret;
+	}
+	
+	/**
+	 * Rewrite every page once with contiguous allocation, as done for data pages.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(N_PAGES)
+	public int rewriteAllContiguous() {
+		int prev = -1;
+		for (int i = 0; i < N_PAGES; i++) {
+			prev = fsm.getNextPageContiguous(pages[i], prev);
+			pages[i] = prev;
+		}
+		int ret = fsm.write();
+		fsm.notifyCommit();
+		return ret;
+	}
+	
+	/**
+	 * Small transactions that rewrite a few pages each.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(N_PAGES)
+	public int rewriteSmallTransactions() {
+		int ret = 0;
+		for (int i = 0; i < N_PAGES; i += 10) {
+			for (int j = i; j < i + 10; j++) {
+				pages[j] = fsm.getNextPage(pages[j]);
+			}
+			ret += fsm.write();
+			fsm.notifyCommit();
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zoodb.bench.BenchTools.Channel;
+import org.zoodb.bench.BenchTools.Storage;
+import org.zoodb.jdo.internal.server.DiskIO.DATA_TYPE;
+import org.zoodb.jdo.internal.server.index.PagedLongLong;
+import org.zoodb.jdo.internal.server.index.PagedOidIndex;
+import org.zoodb.jdo.internal.server.index.PagedUniqueLongLong;
+
+/**
+ * Insertion and look-up in the LLIndexPage based indices: the unique and non-unique 
+ * long-long indices and the OID index.
+ * 
+ * @author Tilmann Zaeschke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+
+	private static final int N = 100000;
+	
+	@Param({"MEMORY", "FILE"})
+	public Storage storage;
+	
+	private Channel channel;
+	private long[] keys;
+	private PagedUniqueLongLong uniqueIndex;
+	private PagedOidIndex oidIndex;
+	private int pos = 0;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random rnd = new Random(0);
+		keys = new long[N];
+		for (int i = 0; i < N; i++) {
+			keys[i] = rnd.nextLong() & Long.MAX_VALUE;
+		}
+		channel = BenchTools.createChannel(storage);
+		uniqueIndex = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, channel.root);
+		oidIndex = new PagedOidIndex(channel.root);
+		for (int i = 0; i < N; i++) {
+			uniqueIndex.insertLong(keys[i], i);
+			//OIDs are allocated in ascending order
+			oidIndex.insertLong(1000 + i, 100 + i/40, (i%40)*100);
+		}
+		uniqueIndex.write();
+		oidIndex.write();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		channel.close();
+	}
+	
+	private int nextPos() {
+		if (++pos == N) {
+			pos = 0;
+		}
+		return pos;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public PagedUniqueLongLong insertUniqueRandom() {
+		PagedUniqueLongLong idx = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, channel.root);
+		for (int i = 0; i < N; i++) {
+			idx.insertLong(keys[i], i);
+		}
+		return idx;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public PagedUniqueLongLong insertUniqueAscending() {
+		PagedUniqueLongLong idx = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, channel.root);
+		for (int i = 0; i < N; i++) {
+			idx.insertLong(i, i);
+		}
+		return idx;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public PagedLongLong insertNonUnique() {
+		PagedLongLong idx = new PagedLongLong(DATA_TYPE.FIELD_INDEX, channel.root);
+		for (int i = 0; i < N; i++) {
+			//few distinct keys with many values each, as for a field index on a flag
+			idx.insertLong(keys[i] & 0xFF, i);
+		}
+		return idx;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public int insertUniqueAndWrite() {
+		PagedUniqueLongLong idx = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, channel.root);
+		for (int i = 0; i < N; i++) {
+			idx.insertLong(keys[i], i);
+		}
+		return idx.write();
+	}
+	
+	@Benchmark
+	public Object findUnique() {
+		return uniqueIndex.findValue(keys[nextPos()]);
+	}
+	
+	@Benchmark
+	public Object findOidGetLong() {
+		return oidIndex.findOidGetLong(1000 + nextPos());
+	}
+	
+	@Benchmark
+	public void findOidMiss(Blackhole bh) {
+		bh.consume(oidIndex.findOidGetLong(1000 + N + nextPos()));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoodb.bench.BenchTools.Storage;
+
+/**
+ * Execution of queries with and without an index on the queried field.
+ * 
+ * @author Tilmann Zaeschke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+	private static final int N = 100000;
+	
+	@Param({"MEMORY", "FILE"})
+	public Storage storage;
+
+	@Param({"false", "true"})
+	public boolean indexed;
+	
+	private PersistenceManager pm;
+	private int pos = 0;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchTools.createDb(storage, BenchClass.class);
+		if (indexed) {
+			BenchTools.createIndex(BenchClass.class, "_int", true);
+			BenchTools.createIndex(BenchClass.class, "_string", false);
+		}
+		pm = BenchTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			pm.makePersistent(new BenchClass(i));
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchTools.closePM(pm);
+		BenchTools.removeDb();
+	}
+	
+	private int nextPos() {
+		pos = (pos + 7919) % N;
+		return pos;
+	}
+	
+	/**
+	 * Query that returns one object.
+	 */
+	@Benchmark
+	public int queryUnique() {
+		Query q = pm.newQuery(BenchClass.class, "_int == " + nextPos());
+		int n = ((Collection<?>)q.execute()).size();
+		q.closeAll();
+		return n;
+	}
+	
+	/**
+	 * Query that returns 100 objects.
+	 */
+	@Benchmark
+	public int queryRange() {
+		int min = nextPos();
+		Query q = pm.newQuery(BenchClass.class, "_int >= " + min + " && _int < " + (min + 100));
+		int n = ((Collection<?>)q.execute()).size();
+		q.closeAll();
+		return n;
+	}
+	
+	@Benchmark
+	public int queryString() {
+		Query q = pm.newQuery(BenchClass.class, "_string == 'name-" + nextPos() + "'");
+		int n = ((Collection<?>)q.execute()).size();
+		q.closeAll();
+		return n;
+	}
+	
+	/**
+	 * Query that returns all objects after evicting the cache.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public int queryAllCold() {
+		pm.evictAll();
+		Query q = pm.newQuery(BenchClass.class, "_int >= 0");
+		int n = ((Collection<?>)q.execute()).size();
+		q.closeAll();
+		return n;
+	}
+}
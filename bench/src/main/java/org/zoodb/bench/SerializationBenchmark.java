@@ -0,0 +1,110 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.PersistenceManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoodb.bench.BenchTools.Storage;
+
+/**
+ * Round trips through DataSerializer and DataDeSerializer. Writing updates all objects and
+ * commits, reading evicts all objects and activates them again.
+ * 
+ * @author Tilmann Zaeschke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private static final int N = 10000;
+	
+	@Param({"MEMORY", "FILE"})
+	public Storage storage;
+
+	private PersistenceManager pm;
+	private final ArrayList<BenchClass> objs = new ArrayList<BenchClass>();
+	private int cnt = 0;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchTools.createDb(storage, BenchClass.class);
+		pm = BenchTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			BenchClass b = new BenchClass(i);
+			pm.makePersistent(b);
+			objs.add(b);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().setRetainValues(true);
+		pm.currentTransaction().begin();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		objs.clear();
+		BenchTools.closePM(pm);
+		BenchTools.removeDb();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public void write() {
+		cnt++;
+		for (BenchClass b: objs) {
+			b.setLong(cnt);
+		}
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public long read() {
+		pm.evictAll();
+		long sum = 0;
+		for (BenchClass b: objs) {
+			sum += b.getLong();
+		}
+		return sum;
+	}
+}
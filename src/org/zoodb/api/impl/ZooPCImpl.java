@@ -20,6 +20,8 @@
  */
 package org.zoodb.api.impl;
 
+import java.util.concurrent.locks.Lock;
+
 import javax.jdo.JDOUserException;
 import javax.jdo.ObjectState;
 import javax.jdo.PersistenceManager;
@@ -71,13 +73,23 @@ public abstract class ZooPCImpl {
 	
 	//store only byte i.o. reference!
 	//TODO store only one of the following?
-	private transient ObjectState status;
+	//volatile, because loaded objects are accessed without locking in multithreaded sessions
+	private transient volatile ObjectState status;
 	private transient byte stateFlags;
 	
 	private transient PCContext context;
 	
 	private transient long[] prevValues = null;
 	
+	//reference bit for the eviction strategy of the client cache
+	private transient boolean isAccessed = false;
+	//whether the object is in the list of clean objects of the client cache
+	private transient boolean isInCleanList = false;
+	
+	//The epoch of the cache in which the object became clean. Clean objects from previous
+	//epochs are treated as hollow.
+	private transient int epoch;
+	
 	public final boolean jdoZooIsDirty() {
 		return (stateFlags & PS_DIRTY) != 0;
 	}
@@ -88,11 +100,19 @@ public abstract class ZooPCImpl {
 		return (stateFlags & PS_DELETED) != 0;
 	}
 	public final boolean jdoZooIsTransactional() {
-		return (stateFlags & PS_TRANSACTIONAL) != 0;
+		return (stateFlags & PS_TRANSACTIONAL) != 0 && !isStale();
 	}
 	public final boolean jdoZooIsPersistent() {
 		return (stateFlags & PS_PERSISTENT) != 0;
 	}
+	/**
+	 * Not part of the JDO state API. 
+	 * @return Whether the instance is clean and can be read without loading it. This does
+	 * not change the state of the instance. 
+	 */
+	public final boolean jdoZooIsLoaded() {
+		return status == ObjectState.PERSISTENT_CLEAN && !isStale();
+	}
 	/**
 	 * Not part of the JDO state API. This can also return true if the instance is pers-deleted.
 	 * @return  if instance is hollow.
@@ -112,6 +132,7 @@ public abstract class ZooPCImpl {
 	private final void setPersClean() {
 		status = ObjectState.PERSISTENT_CLEAN;
 		stateFlags = PS_PERSISTENT | PS_TRANSACTIONAL;
+		epoch = context.getSession().getEpoch();
 	}
 	private final void setPersDirty() {
 		status = ObjectState.PERSISTENT_DIRTY;
@@ -154,8 +175,13 @@ public abstract class ZooPCImpl {
 	}
 	public final void jdoZooMarkClean() {
 		//TODO is that all?
+		context.getSession().checkLocked();
+		boolean wasClean = status == ObjectState.PERSISTENT_CLEAN && !isStale();
 		setPersClean();
 		prevValues = null;
+		if (!wasClean) {
+			context.getSession().internalGetCache().notifyClean(this);
+		}
 	}
 //	public final void jdoZooMarkNew() {
 //		ObjectState statusO = status;
@@ -169,6 +195,7 @@ public abstract class ZooPCImpl {
 //		}
 //	}
 	public final void jdoZooMarkDirty() {
+		jdoZooCheckEpoch();
 		ObjectState statusO = status;
 		context.notifyEvent(this, ZooInstanceEvent.PRE_DIRTY);
 		if (statusO == ObjectState.PERSISTENT_CLEAN) {
@@ -191,6 +218,7 @@ public abstract class ZooPCImpl {
 		context.notifyEvent(this, ZooInstanceEvent.POST_DIRTY);
 	}
 	public final void jdoZooMarkDeleted() {
+		jdoZooCheckEpoch();
 		ObjectState statusO = status;
 		if (statusO == ObjectState.PERSISTENT_CLEAN ||
 				statusO == ObjectState.PERSISTENT_DIRTY) {
@@ -215,6 +243,7 @@ public abstract class ZooPCImpl {
 	}
 
 	public final void jdoZooMarkTransient() {
+		jdoZooCheckEpoch();
 		ObjectState statusO = status;
 		if (statusO == ObjectState.TRANSIENT) {
 			//nothing to do 
@@ -234,8 +263,12 @@ public abstract class ZooPCImpl {
 		}
 	}
 
+	/**
+	 * @return Whether the instance is hollow. This includes clean instances from previous
+	 * epochs, which are evicted when they are activated.
+	 */
 	public final boolean jdoZooIsStateHollow() {
-		return status == ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL;
+		return status == ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL || isStale();
 	}
 
 	public final PersistenceManager jdoZooGetPM() {
@@ -251,19 +284,76 @@ public abstract class ZooPCImpl {
 	}
 
 	public final void jdoZooEvict() {
+		Session session = context.getSession();
+		session.checkLocked();
 		if (this instanceof ClearCallback) {
 			((ClearCallback)this).jdoPreClear();
 		}
 		context.notifyEvent(this, ZooInstanceEvent.PRE_CLEAR);
-		context.getEvictor().evict(this);
+		if (!session.isMultithreaded()) {
+			//Other threads may still read the fields, see zooActivateRead(). The values 
+			//are replaced when the object is loaded again.
+			context.getEvictor().evict(this);
+		}
 		jdoZooMarkHollow();
 		context.notifyEvent(this, ZooInstanceEvent.POST_CLEAR);
 	}
 
+	/**
+	 * Returns and clears the reference bit that is set whenever a clean object is accessed.
+	 * This is used by the client cache to select objects for eviction.
+	 * @return Whether the object has been accessed since the last call.
+	 */
+	public final boolean jdoZooClearAccessed() {
+		boolean ret = isAccessed;
+		isAccessed = false;
+		return ret;
+	}
+
+	public final void jdoZooSetAccessed() {
+		isAccessed = true;
+	}
+	
+	public final boolean jdoZooIsInCleanList() {
+		return isInCleanList;
+	}
+	
+	public final void jdoZooSetInCleanList(boolean flag) {
+		isInCleanList = flag;
+	}
+	
+	/**
+	 * @param state
+	 * @return Whether the instance has the given state. Clean instances from previous epochs
+	 * are hollow.
+	 */
 	public final boolean jdoZooHasState(ObjectState state) {
+		if (isStale()) {
+			return state == ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL;
+		}
 		return this.status == state;
 	}
 
+	/**
+	 * Clean objects are not evicted when a transaction is committed. Instead, the cache 
+	 * starts a new epoch. The state getters report clean objects from previous epochs as 
+	 * hollow, they are only evicted when they are activated or changed, or by the cache.
+	 * @return Whether the object is clean but has been loaded in a previous epoch.
+	 */
+	private boolean isStale() {
+		return status == ObjectState.PERSISTENT_CLEAN && 
+				epoch != context.getSession().getEpoch();
+	}
+
+	/**
+	 * Evict the instance if it is clean but has been loaded in a previous epoch.
+	 */
+	public final void jdoZooCheckEpoch() {
+		if (isStale()) {
+			jdoZooEvict();
+		}
+	}
+
 	public final void jdoZooInit(ObjectState state, PCContext bundle, long oid) {
 		this.context = bundle;
 		jdoZooSetOid(oid);
@@ -276,6 +366,7 @@ public abstract class ZooPCImpl {
 		}
 		case PERSISTENT_CLEAN: { 
 			setPersClean();
+			context.getSession().internalGetCache().notifyClean(this);
 			break;
 		}
 		case HOLLOW_PERSISTENT_NONTRANSACTIONAL: { 
@@ -313,8 +404,33 @@ public abstract class ZooPCImpl {
 	 * 
 	 * For generated calls, we should not forget private method, because they can be called
 	 * from other instances.
+	 * 
+	 * In multithreaded sessions, loaded objects are read without locking. This is safe 
+	 * because objects are only evicted or reloaded while the session lock is held, see 
+	 * Session.checkLocked(), and eviction keeps the field values in multithreaded sessions. 
+	 * A concurrent reader therefore sees either the previous or the reloaded values. 
 	 */
 	public final void zooActivateRead() {
+		if (jdoZooIsLoaded()) {
+			//Loaded objects are read without locking, even in multithreaded sessions
+			isAccessed = true;
+			return;
+		}
+		if (context == null) {
+			activateRead();
+			return;
+		}
+		Session session = context.getSession();
+		Lock lock = session.lock();
+		try {
+			activateRead();
+		} finally {
+			session.unlock(lock);
+		}
+	}
+	
+	private void activateRead() {
+		jdoZooCheckEpoch();
 		switch (status) {
 		case HOLLOW_PERSISTENT_NONTRANSACTIONAL:
 			//pc.jdoStateManager.getPersistenceManager(pc).refresh(pc);
@@ -330,8 +446,10 @@ public abstract class ZooPCImpl {
 		case PERSISTENT_DELETED:
 		case PERSISTENT_NEW_DELETED:
 			throw new JDOUserException("The object has been deleted.");
-		case PERSISTENT_NEW:
 		case PERSISTENT_CLEAN:
+			isAccessed = true;
+			return;
+		case PERSISTENT_NEW:
 		case PERSISTENT_DIRTY:
 			//nothing to do
 			return;
@@ -372,6 +490,21 @@ public abstract class ZooPCImpl {
 	 * from other instances.
 	 */
 	public final void zooActivateWrite() {
+		if (context == null) {
+			activateWrite();
+			return;
+		}
+		Session session = context.getSession();
+		Lock lock = session.lock();
+		try {
+			activateWrite();
+		} finally {
+			session.unlock(lock);
+		}
+	}
+	
+	private void activateWrite() {
+		jdoZooCheckEpoch();
 		switch (status) {
 		case HOLLOW_PERSISTENT_NONTRANSACTIONAL:
 			//pc.jdoStateManager.getPersistenceManager(pc).refresh(pc);
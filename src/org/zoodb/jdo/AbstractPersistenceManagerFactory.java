@@ -126,8 +126,6 @@ public abstract class AbstractPersistenceManagerFactory
     			System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
     		} else if (Constants.PROPERTY_MULTITHREADED.equals(key)) {
     			isMultiThreaded = Boolean.parseBoolean(props.getProperty(key));
-    			if (isMultiThreaded == true) 
-    				System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
     		} else if (Constants.PROPERTY_DETACH_ALL_ON_COMMIT.equals(key)) {
     			System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
     		} else if (Constants.PROPERTY_COPY_ON_ATTACH.equals(key)) {
@@ -158,7 +156,7 @@ public abstract class AbstractPersistenceManagerFactory
     		} else if (Constants.PROPERTY_SERVER_TIME_ZONE_ID.equals(key)) {
     			System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
     		} else if (Constants.PROPERTY_READONLY.equals(key)) {
-    			System.out.println("STUB: Property not supported: " + key + "=" + props.get(key)); //TODO
+    			setReadOnly(Boolean.parseBoolean(props.getProperty(key)));
     			
     		//The following two properties are only used in the props, not in the overrides.
     		} else if (Constants.PROPERTY_NAME.equals(key)) {
@@ -305,10 +303,7 @@ public abstract class AbstractPersistenceManagerFactory
 	}
 
 	public void setMultithreaded(boolean arg0) {
-		//TODO
 		this.isMultiThreaded = arg0;
-		if (isMultiThreaded == true) 
-			System.out.println("STUB: MultiThreaded = true not supported."); //TODO
 	}
 
     public Object clone() {
@@ -75,6 +75,7 @@ public class ExtentImpl<T> implements Extent<T> {
     	@SuppressWarnings("unchecked")
 		CloseableIterator<T> it = (CloseableIterator<T>) pm.getSession().loadAllInstances(
     		        extClass, subclasses, !ignoreCache);
+    	it = new ExtentIterator<T>(it, pm.getSession());
     	allIterators.add(it);
     	return it;
     }
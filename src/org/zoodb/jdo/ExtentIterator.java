@@ -20,16 +20,27 @@
  */
 package org.zoodb.jdo;
 
-import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
 
-public class ExtentIterator<E> implements Iterator<E> {
+import org.zoodb.jdo.internal.Session;
+import org.zoodb.jdo.internal.util.CloseableIterator;
+
+/**
+ * Iterator over an extent. In multithreaded sessions the iterator holds the session lock 
+ * while it loads objects.
+ *
+ * @author Tilmann Zaeschke
+ */
+public class ExtentIterator<E> implements CloseableIterator<E> {
 
 	//_it==null means closed
-	private Iterator<E> _it;
+	private CloseableIterator<E> _it;
+	private final Session session;
 	
-	ExtentIterator(Iterator<E> it) {
+	ExtentIterator(CloseableIterator<E> it, Session session) {
 		_it = it;
+		this.session = session;
 	}
 	
 	@Override
@@ -37,7 +48,12 @@ public class ExtentIterator<E> implements Iterator<E> {
 		if (_it == null) {
 			return false;
 		}
-		return _it.hasNext();
+		Lock lock = session.lock();
+		try {
+			return _it.hasNext();
+		} finally {
+			session.unlock(lock);
+		}
 	}
 
 	@Override
@@ -45,7 +61,12 @@ public class ExtentIterator<E> implements Iterator<E> {
 		if (_it == null) {
 			throw new NoSuchElementException("This iterator has been closed.");
 		}
-		return _it.next();
+		Lock lock = session.lock();
+		try {
+			return _it.next();
+		} finally {
+			session.unlock(lock);
+		}
 	}
 
 	@Override
@@ -53,10 +74,26 @@ public class ExtentIterator<E> implements Iterator<E> {
 		if (_it == null) {
 			throw new NoSuchElementException("This iterator has been closed.");
 		}
-		_it.remove();
+		Lock lock = session.lock();
+		try {
+			_it.remove();
+		} finally {
+			session.unlock(lock);
+		}
 	}
 
+	@Override
 	public void close() {
-		_it = null;
+		if (_it != null) {
+			_it.close();
+			_it = null;
+		}
+	}
+
+	@Override
+	public void refresh() {
+		if (_it != null) {
+			_it.refresh();
+		}
 	}
 }
@@ -21,79 +21,115 @@
 package org.zoodb.jdo;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import javax.jdo.FetchPlan;
-
-import org.zoodb.jdo.internal.util.DBLogger;
-
+import javax.jdo.JDOUserException;
+
+/**
+ * Fetch plan of a PersistenceManager.
+ * <p>
+ * ZooDB supports the groups {@link FetchPlan#DEFAULT} and {@link FetchPlan#ALL}. With the
+ * default group, only the fields of an object are loaded when it is activated, referenced 
+ * objects remain hollow. If the group {@link FetchPlan#ALL} is active, hollow objects that
+ * are referenced by an activated object are loaded in the same batch, up to 
+ * {@link #getMaxFetchDepth()} levels of references. Batches are loaded in the order of the
+ * position of the objects in the database file, so objects on the same page are read
+ * together.
+ * Other groups are accepted but ignored.
+ * 
+ * @author Tilmann Zaeschke
+ */
 public class FetchPlanImpl implements FetchPlan {
 
+	private final Set<String> groups = new LinkedHashSet<String>();
+	private int maxFetchDepth = 1;
+	private int fetchSize = FETCH_SIZE_OPTIMAL;
+	
+	public FetchPlanImpl() {
+		groups.add(DEFAULT);
+	}
+	
 	@Override
 	public FetchPlan addGroup(String fetchGroupName) {
-		//TODO
-		DBLogger.debugPrint(1, "STUB FecthPlanImpl");
+		groups.add(fetchGroupName);
 		return this;
 	}
 
 	@Override
 	public FetchPlan removeGroup(String fetchGroupName) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.remove(fetchGroupName);
+		return this;
 	}
 
 	@Override
 	public FetchPlan clearGroups() {
-		//TODO
-		DBLogger.debugPrint(1, "STUB FecthPlanImpl");
+		groups.clear();
 		return this;
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Override
 	public Set getGroups() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(groups));
 	}
 
-	@SuppressWarnings("rawtypes")
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public FetchPlan setGroups(Collection fetchGroupNames) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.clear();
+		groups.addAll(fetchGroupNames);
+		return this;
 	}
 
 	@Override
 	public FetchPlan setGroups(String... fetchGroupNames) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.clear();
+		for (String name: fetchGroupNames) {
+			groups.add(name);
+		}
+		return this;
 	}
 
 	@Override
 	public FetchPlan setGroup(String fetchGroupName) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		groups.clear();
+		groups.add(fetchGroupName);
+		return this;
 	}
 
+	/**
+	 * @param fetchDepth The number of levels of references that are loaded together with
+	 * an object. -1 means no limit, 0 is not allowed.
+	 */
 	@Override
 	public FetchPlan setMaxFetchDepth(int fetchDepth) {
-		//TODO
-		DBLogger.debugPrint(1, "STUB FecthPlanImpl");
+		if (fetchDepth == 0 || fetchDepth < -1) {
+			throw new JDOUserException("Invalid fetch depth: " + fetchDepth);
+		}
+		maxFetchDepth = fetchDepth;
 		return this;
 	}
 
 	@Override
 	public int getMaxFetchDepth() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return 0;
+		return maxFetchDepth;
 	}
 
+	/**
+	 * 
+	 * @return The number of levels of references that should be loaded together with an 
+	 * activated object, or 0 if references should not be loaded.
+	 */
+	public int getReferenceFetchDepth() {
+		if (!groups.contains(ALL)) {
+			return 0;
+		}
+		return maxFetchDepth == -1 ? Integer.MAX_VALUE : maxFetchDepth;
+	}
+	
 	@SuppressWarnings("rawtypes")
 	@Override
 	public FetchPlan setDetachmentRoots(Collection roots) {
@@ -126,18 +162,18 @@ public class FetchPlanImpl implements FetchPlan {
 		//return null;
 	}
 
+	/**
+	 * The fetch size is only a hint, it is currently ignored.
+	 */
 	@Override
 	public FetchPlan setFetchSize(int fetchSize) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return null;
+		this.fetchSize = fetchSize;
+		return this;
 	}
 
 	@Override
 	public int getFetchSize() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
-		//return 0;
+		return fetchSize;
 	}
 
 	@Override
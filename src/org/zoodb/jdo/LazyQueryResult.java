@@ -0,0 +1,434 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.jdo;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+
+import javax.jdo.Extent;
+
+import org.zoodb.jdo.internal.Session;
+import org.zoodb.jdo.internal.ZooFieldDef;
+import org.zoodb.jdo.internal.query.QueryAdvice;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
+import org.zoodb.jdo.internal.util.CloseableIterator;
+import org.zoodb.jdo.internal.util.Util;
+
+/**
+ * Query result that evaluates the query while it is iterated. As long as the result is only
+ * iterated, matching objects are not stored, so memory consumption does not depend on the 
+ * number of results.
+ * <p>
+ * The first evaluation of the query is shared: isEmpty() evaluates the query up to the first
+ * match, a following iterator() continues from there. Further iterators evaluate the query 
+ * again. get() and size() keep the matches in a list, which is filled from the evaluation
+ * up to the requested position, or up to the end for size(). Once the list exists, 
+ * iterators return its elements and continue the evaluation where it stopped, so the query 
+ * is not evaluated again. Objects are only activated if the query has to be evaluated on 
+ * their fields.
+ * <p>
+ * If the query consists of several sub-queries that use different indices, 
+ * the OIDs from all index ranges are merged before any object is loaded, so every object
+ * is loaded and returned only once. Sub-queries on the same index never overlap, they are
+ * executed one after the other.
+ * <p>
+ * If the result is ordered, the order is provided by the index of the query advice. 
+ * Ranges are applied by skipping and counting matches, evaluation stops at the end of the 
+ * range.
+ * <p>
+ * The result can be closed with Query.close(), which closes all open iterators.
+ *
+ * @author Tilmann Zaeschke
+ */
+class LazyQueryResult<E> extends AbstractList<E> {
+
+	private final PersistenceManagerImpl pm;
+	private final Extent<?> ext;
+	private final Class<?> candCls;
+	private final boolean subClasses;
+	private final boolean ignoreCache;
+	private final List<QueryAdvice> advices;
+	private final boolean isUnion;
+	private final List<ResultIterator> openIterators = new ArrayList<ResultIterator>();
+	private boolean isClosed = false;
+	private long rangeFrom = 0;
+	private long rangeTo = Long.MAX_VALUE;
+	//number of results, known after the first complete evaluation
+	private int size = -1;
+	//evaluation that has not been returned by iterator() yet, or null
+	private ResultIterator first = null;
+	//matches returned by get() and size(), or null
+	private ArrayList<Object> list = null;
+	//evaluation that fills the list
+	private ResultIterator listSource = null;
+
+	LazyQueryResult(PersistenceManagerImpl pm, Extent<?> ext, Class<?> candCls,
+			boolean subClasses, boolean ignoreCache, List<QueryAdvice> advices) {
+		this.pm = pm;
+		this.ext = ext;
+		this.candCls = candCls;
+		this.subClasses = subClasses;
+		this.ignoreCache = ignoreCache;
+		this.advices = advices;
+		this.isUnion = usesSeveralIndices(advices);
+	}
+
+	private static boolean usesSeveralIndices(List<QueryAdvice> advices) {
+		for (QueryAdvice qa: advices) {
+			if (qa.getIndex() != advices.get(0).getIndex()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param fromIncl Number of matches to skip.
+	 * @param toExcl Position after the last match to return.
+	 */
+	void setRange(long fromIncl, long toExcl) {
+		rangeFrom = fromIncl;
+		rangeTo = toExcl;
+	}
+
+	private ResultIterator newResultIterator() {
+		ResultIterator it = new ResultIterator();
+		if (!isClosed) {
+			openIterators.add(it);
+		}
+		return it;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		if (list != null) {
+			return new ListResultIterator();
+		}
+		if (first != null) {
+			ResultIterator it = first;
+			first = null;
+			return it;
+		}
+		return newResultIterator();
+	}
+
+	/**
+	 * Fill the list up to the given position.
+	 * @param index
+	 * @return Whether the list contains an element at the given position.
+	 */
+	private boolean fill(int index) {
+		if (list == null) {
+			list = new ArrayList<Object>();
+			if (first != null) {
+				listSource = first;
+				first = null;
+			} else {
+				listSource = newResultIterator();
+			}
+		}
+		while (list.size() <= index && listSource.hasNext()) {
+			list.add(listSource.next());
+		}
+		return index < list.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E get(int index) {
+		if (index < 0 || !fill(index)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		return (E) list.get(index);
+	}
+
+	/**
+	 * Unless the result has been fully iterated before, this evaluates the rest of the query
+	 * and keeps the matches for get() and iterator().
+	 */
+	@Override
+	public int size() {
+		if (size < 0) {
+			fill(Integer.MAX_VALUE);
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		if (size >= 0) {
+			return size == 0;
+		}
+		if (list != null) {
+			return !fill(0);
+		}
+		if (first == null) {
+			first = newResultIterator();
+		}
+		return !first.hasNext();
+	}
+
+	/**
+	 * Close all iterators. Iterators of closed results do not return any objects.
+	 */
+	void close() {
+		isClosed = true;
+		while (!openIterators.isEmpty()) {
+			openIterators.get(openIterators.size()-1).close();
+		}
+		first = null;
+		list = null;
+		listSource = null;
+		size = 0;
+	}
+
+	/**
+	 * Iterator over the list that continues the evaluation of the query when it reaches
+	 * the end of the list.
+	 */
+	private class ListResultIterator implements Iterator<E> {
+
+		private int pos = 0;
+
+		@Override
+		public boolean hasNext() {
+			return !isClosed && fill(pos);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return (E) list.get(pos++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Query results are read-only.");
+		}
+	}
+
+	private class ResultIterator implements Iterator<E> {
+
+		private int iAdvice = 0;
+		private QueryTreeNode queryTree;
+		private Iterator<?> source;
+		private Object next;
+		private boolean isDone;
+		//number of matches found so far, including skipped matches
+		private long nMatches = 0;
+
+		private ResultIterator() {
+			isDone = isClosed;
+		}
+
+		private Iterator<?> createSource(QueryAdvice qa) {
+			if (!qa.getIntersections().isEmpty()) {
+				return createIntersectionSource(qa);
+			} else if (qa.getIndex() != null) {
+				//TODO other nodes...
+				return pm.getSession().getPrimaryNode().readObjectFromIndex(qa.getIndex(),
+						qa.getMin(), qa.getMax(), qa.isAscending(), !ignoreCache);
+			} else if (ext != null) {
+				//use user-defined extent
+				return ext.iterator();
+			}
+			//create type extent, the query is pre-evaluated on the serialized objects
+			return pm.getSession().loadAllInstances(
+					candCls, subClasses, qa.getQuery(), !ignoreCache);
+		}
+
+		/**
+		 * Read the union of the index ranges of all advices. 
+		 */
+		private Iterator<?> createUnionSource() {
+			int n = advices.size();
+			ZooFieldDef[] fields = new ZooFieldDef[n];
+			long[] minValues = new long[n];
+			long[] maxValues = new long[n];
+			for (int i = 0; i < n; i++) {
+				QueryAdvice qa = advices.get(i);
+				fields[i] = qa.getIndex();
+				minValues[i] = qa.getMin();
+				maxValues[i] = qa.getMax();
+			}
+			//TODO other nodes...
+			return pm.getSession().getPrimaryNode().readObjectFromIndices(
+					fields, minValues, maxValues, false, !ignoreCache);
+		}
+
+		/**
+		 * Read the intersection of the index range of the advice and the ranges of its
+		 * intersections. 
+		 */
+		private Iterator<?> createIntersectionSource(QueryAdvice qa) {
+			List<QueryAdvice> intersections = qa.getIntersections();
+			int n = intersections.size() + 1;
+			ZooFieldDef[] fields = new ZooFieldDef[n];
+			long[] minValues = new long[n];
+			long[] maxValues = new long[n];
+			fields[0] = qa.getIndex();
+			minValues[0] = qa.getMin();
+			maxValues[0] = qa.getMax();
+			for (int i = 1; i < n; i++) {
+				QueryAdvice qa2 = intersections.get(i-1);
+				fields[i] = qa2.getIndex();
+				minValues[i] = qa2.getMin();
+				maxValues[i] = qa2.getMax();
+			}
+			//TODO other nodes...
+			return pm.getSession().getPrimaryNode().readObjectFromIndices(
+					fields, minValues, maxValues, true, !ignoreCache);
+		}
+
+		private boolean matches(Object o) {
+			if (!isUnion) {
+				return queryTree == null || queryTree.evaluate(o);
+			}
+			for (QueryAdvice qa: advices) {
+				if (qa.getQuery().evaluate(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean isCandidate(Object o) {
+			if (ext == null) {
+				//indices may contain instances of super- and sub-classes
+				if (subClasses) {
+					return candCls.isAssignableFrom(o.getClass());
+				}
+				return candCls == o.getClass();
+			}
+			if (ext.hasSubclasses()) {
+				if (ext.getCandidateClass().isAssignableFrom(candCls)) {
+					//ignore the possibly existing compatible extent to allow indices
+					return true;
+				}
+				return ext.getCandidateClass().isAssignableFrom(o.getClass());
+			}
+			return ext.getCandidateClass() == o.getClass();
+		}
+
+		/**
+		 * Find the next match.
+		 */
+		private void findNext() {
+			while (!isDone) {
+				if (nMatches >= rangeTo) {
+					closeComplete();
+					return;
+				}
+				if (source == null) {
+					if (iAdvice >= advices.size()) {
+						closeComplete();
+						return;
+					}
+					if (isUnion) {
+						source = createUnionSource();
+						iAdvice = advices.size();
+					} else {
+						QueryAdvice qa = advices.get(iAdvice++);
+						queryTree = qa.getQuery();
+						source = createSource(qa);
+					}
+				}
+				while (source.hasNext()) {
+					Object o = source.next();
+					if (!isCandidate(o)) {
+						continue;
+					}
+					if (queryTree != null || isUnion) {
+						//the query is evaluated on the fields
+						Util.activate(o);
+					}
+					if (matches(o)) {
+						if (nMatches++ < rangeFrom) {
+							continue;
+						}
+						next = o;
+						return;
+					}
+				}
+				closeSource();
+			}
+		}
+
+		private void closeSource() {
+			if (source instanceof CloseableIterator) {
+				((CloseableIterator<?>)source).close();
+			}
+			source = null;
+		}
+
+		/**
+		 * Close the iterator after all results have been returned.
+		 */
+		private void closeComplete() {
+			size = (int) Math.min(Integer.MAX_VALUE, Math.max(0, nMatches - rangeFrom));
+			close();
+		}
+
+		private void close() {
+			closeSource();
+			isDone = true;
+			next = null;
+			openIterators.remove(this);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				Session session = pm.getSession();
+				Lock lock = session.lock();
+				try {
+					findNext();
+				} finally {
+					session.unlock(lock);
+				}
+			}
+			return next != null;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Object o = next;
+			next = null;
+			return (E) o;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Query results are read-only.");
+		}
+	}
+}
@@ -55,7 +55,8 @@ public class PersistenceManagerFactoryImpl
 	private Set<PersistenceManagerImpl> pms = new HashSet<PersistenceManagerImpl>();
 	private boolean isClosed = false;
 	private String name;
-	private boolean isReadOnly = false;
+	//This may be set by the super constructor, it must not be initialized here.
+	private boolean isReadOnly;
 	private static final StateInterrogation SI = new ZooStateInterrogator();
 	
 	private HashMap<InstanceLifecycleListener, List<Class<?>>> lcListeners = 
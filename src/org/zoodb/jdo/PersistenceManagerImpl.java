@@ -30,7 +30,6 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import javax.jdo.Extent;
 import javax.jdo.FetchGroup;
-import javax.jdo.FetchPlan;
 import javax.jdo.JDOException;
 import javax.jdo.JDOFatalUserException;
 import javax.jdo.JDOHelper;
@@ -74,7 +73,7 @@ public class PersistenceManagerImpl implements PersistenceManager {
     
     private Session nativeConnection;
     
-    private final FetchPlan fetchplan = new FetchPlanImpl();
+    private final FetchPlanImpl fetchplan = new FetchPlanImpl();
     
     /**
      * @param props
@@ -83,6 +82,7 @@ public class PersistenceManagerImpl implements PersistenceManager {
     PersistenceManagerImpl(PersistenceManagerFactoryImpl factory, String password) {
         this.factory = factory;
     	nativeConnection = new Session(this, factory.getConnectionURL());
+    	nativeConnection.setMultithreaded(factory.getMultithreaded());
         transaction = new TransactionImpl(this, 
         		factory.getRetainValues(),
         		factory.getOptimistic(),
@@ -364,7 +364,8 @@ public class PersistenceManagerImpl implements PersistenceManager {
 	@Override
     public Collection getObjectsById(Collection oids) {
         checkOpen();
-        throw new UnsupportedOperationException();
+        Collection<?> oidCol = oids;
+        return Arrays.asList(nativeConnection.getObjectsById(oidCol));
     }
 
     /**
@@ -488,9 +489,8 @@ public class PersistenceManagerImpl implements PersistenceManager {
 	}
 
 	@Override
-	public FetchPlan getFetchPlan() {
+	public FetchPlanImpl getFetchPlan() {
         checkOpen();
-        DBLogger.debugPrint(1, "STUB PersistenceManagerImpl.getFetchPlan()");
         return fetchplan;
 	}
 
@@ -558,9 +558,8 @@ public class PersistenceManagerImpl implements PersistenceManager {
 
 	@Override
 	public boolean getMultithreaded() {
-        checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        checkOpenIgnoreTx();
+		return nativeConnection.isMultithreaded();
 	}
 
 	@Override
@@ -583,15 +582,14 @@ public class PersistenceManagerImpl implements PersistenceManager {
 	@Override
 	public Object[] getObjectsById(Object[] arg0, boolean arg1) {
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        //validate is ignored, see getObjectById(Object, boolean)
+        return nativeConnection.getObjectsById(Arrays.asList(arg0));
 	}
 
 	@Override
 	public Object[] getObjectsById(boolean arg0, Object... arg1) {
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        return getObjectsById(arg1, arg0);
 	}
 
 	@Override
@@ -934,8 +932,7 @@ public class PersistenceManagerImpl implements PersistenceManager {
 	@Override
 	public void setMultithreaded(boolean arg0) {
 		checkOpenIgnoreTx();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		nativeConnection.setMultithreaded(arg0);
 	}
 
 	@Override
@@ -949,8 +946,7 @@ public class PersistenceManagerImpl implements PersistenceManager {
 	@Override
 	public Collection getObjectsById(Collection arg0, boolean arg1) {
         checkOpen();
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+        return getObjectsById(arg0);
 	}
 	
 	/**
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.jdo;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+import javax.jdo.JDOUserException;
+
+import org.zoodb.jdo.internal.ZooClassDef;
+import org.zoodb.jdo.internal.ZooFieldDef;
+import org.zoodb.jdo.internal.util.Util;
+
+/**
+ * Compares query results as defined by the ordering of a query.
+ *
+ * See Jdo 2.2 spec 14.6.6.
+ *
+ * Fields must be primitives, Strings, Dates or other Comparable types.
+ * {@code null} values are smaller than any other value.
+ *
+ * @author Tilmann Zaeschke
+ */
+class QueryComparator implements Comparator<Object> {
+
+	private final ArrayList<ZooFieldDef> fields = new ArrayList<ZooFieldDef>();
+	private final ArrayList<Field> jFields = new ArrayList<Field>();
+	private final ArrayList<Boolean> ascending = new ArrayList<Boolean>();
+
+	/**
+	 *
+	 * @param ordering For example: "name ascending, age descending". 'asc' and 'desc' are
+	 * also accepted. If not specified, the order is ascending.
+	 * @param candClsDef
+	 */
+	QueryComparator(String ordering, ZooClassDef candClsDef) {
+		for (String item: ordering.split(",")) {
+			String[] parts = item.trim().split("\\s+");
+			if (parts.length < 1 || parts.length > 2 || parts[0].length() == 0) {
+				throw new JDOUserException("Query ordering corrupted: " + ordering);
+			}
+			boolean asc = true;
+			if (parts.length == 2) {
+				String dir = parts[1];
+				if (dir.equalsIgnoreCase("desc") || dir.equalsIgnoreCase("descending")) {
+					asc = false;
+				} else if (!dir.equalsIgnoreCase("asc") && !dir.equalsIgnoreCase("ascending")) {
+					throw new JDOUserException("Query ordering corrupted: " + ordering);
+				}
+			}
+
+			ZooFieldDef def = candClsDef.getAllFieldsAsMap().get(parts[0]);
+			if (def == null) {
+				throw new JDOUserException("Invalid fieldname in ordering: " + parts[0]);
+			}
+			if (def.getJavaField() == null) {
+				def.getDeclaringType().associateJavaTypes();
+			}
+			Field jField = def.getJavaField();
+			if (!jField.getType().isPrimitive() &&
+					!Comparable.class.isAssignableFrom(jField.getType())) {
+				throw new JDOUserException("Field type can not be ordered: " + parts[0]);
+			}
+			fields.add(def);
+			jFields.add(jField);
+			ascending.add(asc);
+		}
+	}
+
+	/**
+	 * @return The field that determines the primary order.
+	 */
+	ZooFieldDef getFirstField() {
+		return fields.get(0);
+	}
+
+	boolean isFirstAscending() {
+		return ascending.get(0);
+	}
+
+	/**
+	 * @return Whether the ordering consists of only one field.
+	 */
+	boolean isSingleField() {
+		return fields.size() == 1;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public int compare(Object o1, Object o2) {
+		Util.activate(o1);
+		Util.activate(o2);
+		for (int i = 0; i < jFields.size(); i++) {
+			Field f = jFields.get(i);
+			Comparable v1;
+			Comparable v2;
+			try {
+				v1 = (Comparable) f.get(o1);
+				v2 = (Comparable) f.get(o2);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+			int c;
+			if (v1 == null) {
+				c = (v2 == null) ? 0 : -1;
+			} else if (v2 == null) {
+				c = 1;
+			} else {
+				c = v1.compareTo(v2);
+			}
+			if (c != 0) {
+				return ascending.get(i) ? c : -c;
+			}
+		}
+		return 0;
+	}
+}
@@ -20,14 +20,17 @@
  */
 package org.zoodb.jdo;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
 import java.util.StringTokenizer;
+import java.util.concurrent.locks.Lock;
 
 import javax.jdo.Extent;
 import javax.jdo.FetchPlan;
@@ -38,6 +41,7 @@ import javax.jdo.Query;
 import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.internal.ZooClassProxy;
 import org.zoodb.jdo.internal.Node;
+import org.zoodb.jdo.internal.Session;
 import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.query.QueryAdvice;
 import org.zoodb.jdo.internal.query.QueryOptimizer;
@@ -46,9 +50,7 @@ import org.zoodb.jdo.internal.query.QueryParser;
 import org.zoodb.jdo.internal.query.QueryTerm;
 import org.zoodb.jdo.internal.query.QueryTreeIterator;
 import org.zoodb.jdo.internal.query.QueryTreeNode;
-import org.zoodb.jdo.internal.util.CloseableIterator;
 import org.zoodb.jdo.internal.util.DBLogger;
-import org.zoodb.jdo.internal.util.ObjectIdentitySet;
 
 
 /**
@@ -72,13 +74,18 @@ public class QueryImpl implements Query {
 	
 	private boolean unique = false;
 	private boolean subClasses = true;
-	private boolean ascending = true;
 	private boolean ignoreCache = true;
+	private String ordering = null;
+	private long rangeFrom = 0;
+	private long rangeTo = Long.MAX_VALUE;
 	
 	private String resultSettings = null;
 	private Class<?> resultClass = null;
 	
-	private final ObjectIdentitySet<Object> queryResults = new ObjectIdentitySet<Object>();
+	//Weak references, results that are not closed should not be kept in memory.
+	//Results are compared by identity, comparing lazy results by content would evaluate them.
+	private final transient ArrayList<WeakReference<Object>> queryResults = 
+			new ArrayList<WeakReference<Object>>();
 
 	private List<QueryParameter> parameters = new LinkedList<QueryParameter>();
 	
@@ -244,13 +251,15 @@ public class QueryImpl implements Query {
 
 	@Override
 	public void close(Object queryResult) {
-		Object qr = queryResults.remove(queryResult);
-		if (qr == null) {
+		Object qr = queryResult;
+		if (!removeQueryResult(qr)) {
 			//TODO what does JDO say about this?
 			DBLogger.debugPrintln(0, "QueryResult not found.");
 			return;
 		}
-		if (qr instanceof ExtentAdaptor) {
+		if (qr instanceof LazyQueryResult) {
+			((LazyQueryResult<?>)qr).close();
+		} else if (qr instanceof ExtentAdaptor) {
 			((ExtentAdaptor<?>)qr).closeAll();
 		} else if (qr instanceof ExtentImpl) {
 			((ExtentImpl<?>)qr).closeAll();
@@ -263,8 +272,29 @@ public class QueryImpl implements Query {
 	@Override
 	public void closeAll() {
 		while (!queryResults.isEmpty()) {
-			close(queryResults.iterator().next());
+			Object qr = queryResults.get(queryResults.size()-1).get();
+			if (qr == null) {
+				queryResults.remove(queryResults.size()-1);
+			} else {
+				close(qr);
+			}
+		}
+	}
+
+	/**
+	 * Remove the result and all results that have been garbage collected.
+	 * @return Whether the result was found.
+	 */
+	private boolean removeQueryResult(Object qr) {
+		boolean found = false;
+		for (Iterator<WeakReference<Object>> it = queryResults.iterator(); it.hasNext(); ) {
+			Object o = it.next().get();
+			if (o == null || o == qr) {
+				found |= o != null;
+				it.remove();
+			}
 		}
+		return found;
 	}
 
 	@Override
@@ -394,7 +424,8 @@ public class QueryImpl implements Query {
 		throw new UnsupportedOperationException();
 	}
 
-	private void assignParametersToQueryTree(QueryTreeNode queryTree) {
+	private void assignParametersToQueryTree(QueryTreeNode queryTree, 
+			List<QueryParameter> parameters) {
 		QueryTreeIterator iter = queryTree.termIterator();
 		while (iter.hasNext()) {
 			QueryTerm term = iter.next();
@@ -425,61 +456,6 @@ public class QueryImpl implements Query {
 		}
 	}
 	
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void applyQueryOnExtent(List<Object> ret, QueryAdvice qa) {
-		QueryTreeNode queryTree = qa.getQuery();
-		Iterator<?> ext2;
-		if (qa.getIndex() != null) {
-			//TODO other nodes...
-			ext2 = pm.getSession().getPrimaryNode().readObjectFromIndex(qa.getIndex(),
-					qa.getMin(), qa.getMax(), !ignoreCache);
-			//System.out.println("Index: " + qa.getIndex().getName() + "  " + qa.getMin() + "/" + qa.getMax());
-		} else {
-			//use extent
-			if (ext != null) {
-				//use user-defined extent
-				ext2 = ext.iterator();
-			} else {
-				//create type extent
-				ext2 = new ExtentImpl(candCls, subClasses, pm, ignoreCache).iterator();
-			}
-		}
-		
-		if (ext != null && (!ext.hasSubclasses() || !ext.getCandidateClass().isAssignableFrom(candCls))) {
-			final boolean hasSub = ext.hasSubclasses();
-			final Class supCls = ext.getCandidateClass();
-			// normal iteration
-			while (ext2.hasNext()) {
-				Object o = ext2.next();
-				if (hasSub) {
-					if (!supCls.isAssignableFrom(o.getClass())) {
-						continue;
-					}
-				} else {
-					if (supCls != o.getClass()) {
-						continue;
-					}
-				}
-				boolean isMatch = queryTree.evaluate(o);
-				if (isMatch) {
-					ret.add(o);
-				}
-			}
-		} else {
-			// normal iteration (ignoring the possibly existing compatible extent to allow indices)
-			while (ext2.hasNext()) {
-				Object o = ext2.next();
-				boolean isMatch = queryTree.evaluate(o);
-				if (isMatch) {
-					ret.add(o);
-				}
-			}
-		}
-		if (ext2 instanceof CloseableIterator) {
-			((CloseableIterator)ext2).close();
-		}
-	}
-	
 	private void checkParamCount(int i) {
 		//this needs to be checked AFTER query compilation
 		int max = parameters.size();
@@ -492,42 +468,123 @@ public class QueryImpl implements Query {
 	}
 	
 	private Object runQuery() {
-		//assign parameters
-		assignParametersToQueryTree(queryTree);
-		//This is only for indices, not for given extents
-		QueryOptimizer qo = new QueryOptimizer(candClsDef);
-		indexToUse = qo.determineIndexToUse(queryTree);
-
-		//TODO can also return a list with (yet) unknown size. In that case size() should return
-		//Integer.MAX_VALUE (JDO 2.2 14.6.1)
-		ArrayList<Object> ret = new ArrayList<Object>();
-		for (QueryAdvice qa: indexToUse) {
-			applyQueryOnExtent(ret, qa);
+		Session session = pm.getSession();
+		Lock lock = session.lock();
+		try {
+			QueryTreeNode tree = filter.equals("") ? null : queryTree;
+			boolean isStreaming = resultSettings == null && !unique;
+			if (tree == null) {
+				//no filter, only ordering and/or range
+				indexToUse = new LinkedList<QueryAdvice>();
+				indexToUse.add(new QueryAdvice(null));
+			} else {
+				if (isStreaming && !parameters.isEmpty()) {
+					//The result is evaluated later, it must not see parameter values of later
+					//executions.
+					tree = copyQueryTree();
+				} else {
+					assignParametersToQueryTree(tree, parameters);
+				}
+				//This is only for indices, not for given extents
+				QueryOptimizer qo = new QueryOptimizer(candClsDef);
+				indexToUse = qo.determineIndexToUse(tree);
+			}
+
+			QueryComparator comparator = null;
+			if (ordering != null) {
+				comparator = new QueryComparator(ordering, candClsDef);
+				if (comparator.isSingleField()) {
+					QueryAdvice qa = QueryOptimizer.determineOrderedAdvice(indexToUse, 
+							comparator.getFirstField(), comparator.isFirstAscending(), 
+							rangeTo != Long.MAX_VALUE);
+					if (qa != null) {
+						//the index returns the objects in the requested order
+						indexToUse = new LinkedList<QueryAdvice>();
+						indexToUse.add(qa);
+						comparator = null;
+					}
+				}
+			}
+
+			LazyQueryResult<Object> ret = new LazyQueryResult<Object>(
+					pm, ext, candCls, subClasses, ignoreCache, indexToUse);
+			if (comparator != null) {
+				return postProcess(sort(ret, comparator));
+			}
+			ret.setRange(rangeFrom, rangeTo);
+			if (isStreaming) {
+				removeQueryResult(null);
+				queryResults.add(new WeakReference<Object>(ret));
+				return ret;
+			}
+			return postProcess(toList(ret));
+		} finally {
+			session.unlock(lock);
 		}
-		
-		//Now check if we need to check for duplicates, i.e. if multiple indices were used.
-		for (QueryAdvice qa: indexToUse) {
-			if (qa.getIndex() != indexToUse.get(0).getIndex()) {
-				DBLogger.debugPrintln(0, "Merging query results(A)!");
-				System.out.println("Merging query results(A)!");
-				Set<Object> ret2 = new ObjectIdentitySet<Object>();
-				ret2.addAll(ret);
-				return postProcess(ret2);
+	}
+
+	/**
+	 * Sort the results and apply the range. If the range is limited, only the best objects 
+	 * up to the end of the range are kept in memory.
+	 */
+	private List<Object> sort(Collection<Object> c, QueryComparator comparator) {
+		ArrayList<Object> ret;
+		if (rangeTo < Integer.MAX_VALUE) {
+			int n = (int) rangeTo;
+			//The head of the queue is the worst object that is kept.
+			PriorityQueue<Object> heap = new PriorityQueue<Object>(
+					Math.min(n, 1000) + 1, Collections.reverseOrder(comparator));
+			for (Object o: c) {
+				if (heap.size() < n) {
+					heap.add(o);
+				} else if (n > 0 && comparator.compare(o, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(o);
+				}
 			}
+			ret = new ArrayList<Object>(heap);
+		} else {
+			ret = toList(c);
 		}
-		
-		//If we have more than one sub-query, we need to merge anyway, because the result sets may
-		//overlap. 
-		//TODO implement merging of sub-queries!!!
-		if (indexToUse.size() > 1) {
-			DBLogger.debugPrintln(0, "Merging query results(B)!");
-			System.out.println("Merging query results(B)!");
-			Set<Object> ret2 = new ObjectIdentitySet<Object>();
-			ret2.addAll(ret);
-			return postProcess(ret2);
+		Collections.sort(ret, comparator);
+		int from = (int) Math.min(rangeFrom, ret.size());
+		int to = (int) Math.min(rangeTo, ret.size());
+		if (from == 0 && to == ret.size()) {
+			return ret;
 		}
-		
-		return postProcess(ret);
+		return new ArrayList<Object>(ret.subList(from, to));
+	}
+
+	/**
+	 * Copy the objects into a list. Unlike the ArrayList constructor, this does not call
+	 * size(), which would keep a second list of the matches in a lazy result.
+	 */
+	private static ArrayList<Object> toList(Collection<Object> c) {
+		ArrayList<Object> ret = new ArrayList<Object>();
+		for (Object o: c) {
+			ret.add(o);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return A new query tree with its own parameters, which have the current values of
+	 * the parameters of this query.
+	 */
+	private QueryTreeNode copyQueryTree() {
+		List<QueryParameter> params = new LinkedList<QueryParameter>();
+		QueryTreeNode tree = new QueryParser(filter, candClsDef, params).parseQuery();
+		for (QueryParameter p: params) {
+			for (QueryParameter p0: parameters) {
+				if (p0.getName().equals(p.getName())) {
+					p.setType(p0.getType());
+					p.setValue(p0.getValue());
+					break;
+				}
+			}
+		}
+		assignParametersToQueryTree(tree, params);
+		return tree;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -558,7 +615,8 @@ public class QueryImpl implements Query {
 	@Override
 	public Object execute() {
 		//now go through extent. Skip this if extent was generated on server from local filters.
-		if (filter.equals("")) {
+		if (filter.equals("") && ordering == null && rangeFrom == 0 && 
+				rangeTo == Long.MAX_VALUE) {
 	        if (ext == null) {
 	            ext = new ExtentImpl(candCls, subClasses, pm, ignoreCache);
 	        }
@@ -704,21 +762,37 @@ public class QueryImpl implements Query {
 	@Override
 	public void setOrdering(String ordering) {
 		checkUnmodifiable();
-		ascending = true;
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		if (ordering != null && ordering.trim().length() == 0) {
+			ordering = null;
+		}
+		this.ordering = ordering;
 	}
 
+	/**
+	 * @param fromInclToExcl For example "0, 100". Parameters are not supported.
+	 */
 	@Override
 	public void setRange(String fromInclToExcl) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		checkUnmodifiable();
+		String[] parts = fromInclToExcl.split(",");
+		if (parts.length != 2) {
+			throw new JDOUserException("Query range corrupted: " + fromInclToExcl);
+		}
+		try {
+			setRange(Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim()));
+		} catch (NumberFormatException e) {
+			throw new JDOUserException("Query range corrupted: " + fromInclToExcl, e);
+		}
 	}
 
 	@Override
 	public void setRange(long fromIncl, long toExcl) {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException();
+		checkUnmodifiable();
+		if (fromIncl < 0 || toExcl < fromIncl) {
+			throw new JDOUserException("Invalid query range: " + fromIncl + " - " + toExcl);
+		}
+		rangeFrom = fromIncl;
+		rangeTo = toExcl;
 	}
 
 	@Override
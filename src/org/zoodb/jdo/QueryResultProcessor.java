@@ -29,6 +29,7 @@ import javax.jdo.JDOUserException;
 import org.zoodb.jdo.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.ZooFieldDef;
+import org.zoodb.jdo.internal.util.Util;
 
 /**
  * Processes query results.
@@ -63,6 +64,7 @@ class QueryResultProcessor {
 					field.getPrimitiveType() == PRIMITIVE.DOUBLE;
 		}
 		protected Object getValue(Object o) {
+			Util.activate(o);
 			try {
 				return jField.get(o);
 			} catch (IllegalArgumentException e) {
@@ -72,6 +74,7 @@ class QueryResultProcessor {
 			}
 		}
 		protected double getFloat(Object o) {
+			Util.activate(o);
 			try {
 				switch (field.getPrimitiveType()) {
 				case DOUBLE: return jField.getDouble(o);
@@ -84,6 +87,7 @@ class QueryResultProcessor {
 			}
 		}
 		protected long getInt(Object o) {
+			Util.activate(o);
 			try {
 				switch (field.getPrimitiveType()) {
 				case BYTE: return jField.getByte(o);
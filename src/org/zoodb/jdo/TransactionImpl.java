@@ -65,6 +65,7 @@ public class TransactionImpl implements Transaction {
             throw new JDOUserException(
                     "Can't open new transaction inside existing transaction.");
         }
+        connection.begin();
         isOpen = true;
     }
 
@@ -1,27 +1,420 @@
 /*
  * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
- * 
+ *
  * This file is part of ZooDB.
- * 
+ *
  * ZooDB is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
  * the Free Software Foundation, either version 3 of the License, or
  * (at your option) any later version.
- * 
+ *
  * ZooDB is distributed in the hope that it will be useful,
  * but WITHOUT ANY WARRANTY; without even the implied warranty of
  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
  * GNU General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License
  * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
- * 
- * See the README and COPYING files for further information. 
+ *
+ * See the README and COPYING files for further information.
  */
 package org.zoodb.jdo.api;
 
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
-public class DBLargeVector<E> extends DBArrayList<E> implements List<E>, DBCollection {
+import javax.jdo.listener.DeleteCallback;
 
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * A persistent list for large numbers of elements.
+ * <p>
+ * Unlike {@link DBArrayList}, the elements are not stored in the list object itself but in
+ * separate pages ({@link DBLargeVectorPage}) that form a B-tree. Pages are loaded only
+ * when elements in them are accessed, and only modified pages are written during commit.
+ * <p>
+ * Pages that become empty are deleted, but pages are not merged. When a DBLargeVector is
+ * deleted, its pages are deleted as well.
+ *
+ * @author Tilmann Zaeschke
+ *
+ * @param <E>
+ */
+public class DBLargeVector<E> extends PersistenceCapableImpl 
+implements List<E>, DBCollection, DeleteCallback {
+
+	private DBLargeVectorPage root;
+	private int size;
+
+	private final transient Pages view = new Pages();
+
+	public DBLargeVector() {
+		//nothing to do
+	}
+
+	@Override
+	public boolean add(E e) {
+		return view.add(e);
+	}
+
+	@Override
+	public void add(int index, E element) {
+		view.add(index, element);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		return view.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends E> c) {
+		return view.addAll(index, c);
+	}
+
+	@Override
+	public void clear() {
+		zooActivateWrite();
+		if (root != null) {
+			root.deleteAll(root.height());
+			root = null;
+		}
+		size = 0;
+		view.modified();
+	}
+
+	/**
+	 * Deletes the pages when the list is deleted.
+	 */
+	@Override
+	public void jdoPreDelete() {
+		//The list is already deleted and can not be activated, but it has been loaded.
+		if (root != null) {
+			root.deleteAll(root.height());
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return view.contains(o);
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		return view.containsAll(c);
+	}
+
+	@Override
+	public E get(int index) {
+		return view.get(index);
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		return view.indexOf(o);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return view.isEmpty();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return view.iterator();
+	}
+
+	@Override
+	public int lastIndexOf(Object o) {
+		return view.lastIndexOf(o);
+	}
+
+	@Override
+	public ListIterator<E> listIterator() {
+		return view.listIterator();
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int index) {
+		return view.listIterator(index);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return view.remove(o);
+	}
+
+	@Override
+	public E remove(int index) {
+		return view.remove(index);
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		return view.removeAll(c);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		return view.retainAll(c);
+	}
+
+	@Override
+	public E set(int index, E element) {
+		return view.set(index, element);
+	}
+
+	@Override
+	public int size() {
+		return view.size();
+	}
+
+	@Override
+	public List<E> subList(int fromIndex, int toIndex) {
+		return view.subList(fromIndex, toIndex);
+	}
+
+	@Override
+	public Object[] toArray() {
+		return view.toArray();
+	}
+
+	@Override
+	public <T> T[] toArray(T[] a) {
+		return view.toArray(a);
+	}
+
+	/**
+	 * The List implementation that operates on the pages. All modifications go through
+	 * this class so that iterators and sub-lists can detect concurrent modification.
+	 */
+	private class Pages extends AbstractList<E> {
+
+		private void modified() {
+			modCount++;
+		}
+
+		private void checkIndex(int index, int max) {
+			if (index < 0 || index > max) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+		}
+
+		@Override
+		public int size() {
+			zooActivateRead();
+			return size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E get(int index) {
+			zooActivateRead();
+			checkIndex(index, size-1);
+			int[] start = new int[1];
+			DBLargeVectorPage leaf = root.findLeaf(index, start);
+			return (E) leaf.getLocal(index - start[0]);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E set(int index, E element) {
+			//Only the leaf page is modified
+			zooActivateRead();
+			checkIndex(index, size-1);
+			int[] start = new int[1];
+			DBLargeVectorPage leaf = root.findLeaf(index, start);
+			return (E) leaf.setLocal(index - start[0], element);
+		}
+
+		@Override
+		public void add(int index, E element) {
+			zooActivateWrite();
+			checkIndex(index, size);
+			if (root == null) {
+				root = new DBLargeVectorPage(true);
+			}
+			DBLargeVectorPage sib = root.add(index, element);
+			if (sib != null) {
+				DBLargeVectorPage newRoot = new DBLargeVectorPage(false);
+				newRoot.addChild(0, root, size + 1 - sib.size());
+				newRoot.addChild(1, sib, sib.size());
+				root = newRoot;
+			}
+			size++;
+			modCount++;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public E remove(int index) {
+			zooActivateWrite();
+			checkIndex(index, size-1);
+			E e = (E) root.remove(index);
+			size--;
+			modCount++;
+			if (size == 0) {
+				root.deleteAll(root.height());
+				root = null;
+				return e;
+			}
+			//remove inner pages with only one child
+			DBLargeVectorPage child;
+			while ((child = root.getSingleChild()) != null) {
+				DBLargeVectorPage.delete(root);
+				root = child;
+			}
+			return e;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return new PageIterator(0);
+		}
+
+		@Override
+		public ListIterator<E> listIterator(int index) {
+			zooActivateRead();
+			checkIndex(index, size);
+			return new PageIterator(index);
+		}
+
+		/**
+		 * Iterator that keeps the current leaf page, so that sequential access does not have
+		 * to traverse the tree for every element.
+		 */
+		private class PageIterator implements ListIterator<E> {
+
+			private int cursor;
+			private int lastRet = -1;
+			private int expectedModCount = modCount;
+			private final int[] start = new int[1];
+			private DBLargeVectorPage leaf;
+			private int leafStart;
+			private int leafEnd;
+
+			private PageIterator(int index) {
+				cursor = index;
+			}
+
+			private void checkForComodification() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+			}
+
+			@SuppressWarnings("unchecked")
+			private E elementAt(int index) {
+				if (leaf == null || index < leafStart || index >= leafEnd) {
+					leaf = root.findLeaf(index, start);
+					leafStart = start[0];
+					leafEnd = leafStart + leaf.size();
+				}
+				return (E) leaf.getLocal(index - leafStart);
+			}
+
+			@Override
+			public boolean hasNext() {
+				return cursor < Pages.this.size();
+			}
+
+			@Override
+			public E next() {
+				checkForComodification();
+				if (cursor >= Pages.this.size()) {
+					throw new NoSuchElementException();
+				}
+				E e = elementAt(cursor);
+				lastRet = cursor++;
+				return e;
+			}
+
+			@Override
+			public boolean hasPrevious() {
+				return cursor > 0;
+			}
+
+			@Override
+			public E previous() {
+				checkForComodification();
+				if (cursor <= 0) {
+					throw new NoSuchElementException();
+				}
+				E e = elementAt(--cursor);
+				lastRet = cursor;
+				return e;
+			}
+
+			@Override
+			public int nextIndex() {
+				return cursor;
+			}
+
+			@Override
+			public int previousIndex() {
+				return cursor-1;
+			}
+
+			@Override
+			public void remove() {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				checkForComodification();
+				Pages.this.remove(lastRet);
+				cursor = lastRet;
+				lastRet = -1;
+				leaf = null;
+				expectedModCount = modCount;
+			}
+
+			@Override
+			public void set(E e) {
+				if (lastRet < 0) {
+					throw new IllegalStateException();
+				}
+				checkForComodification();
+				Pages.this.set(lastRet, e);
+			}
+
+			@Override
+			public void add(E e) {
+				checkForComodification();
+				Pages.this.add(cursor++, e);
+				lastRet = -1;
+				leaf = null;
+				expectedModCount = modCount;
+			}
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (jdoZooGetOid()*10000) | size();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || !(obj instanceof DBLargeVector)) {
+			return false;
+		}
+		DBLargeVector<?> o = (DBLargeVector<?>) obj;
+		if (size() != o.size() || jdoZooGetOid() != o.jdoZooGetOid()) {
+			return false;
+		}
+		Iterator<?> it2 = o.iterator();
+		for (E e: this) {
+			Object e2 = it2.next();
+			if (e == null ? e2 != null : !e.equals(e2)) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
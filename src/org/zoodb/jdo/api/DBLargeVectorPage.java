@@ -0,0 +1,285 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.jdo.api;
+
+import java.util.Arrays;
+
+import javax.jdo.JDOHelper;
+
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * A page of a {@link DBLargeVector}. This class is not meant to be used directly.
+ * <p>
+ * The pages form a B-tree where inner pages store the number of elements in each sub-tree,
+ * so that elements can be found by position. Each page is a separate persistent object,
+ * therefore pages are loaded only when they are accessed and written only when they
+ * have been modified.
+ *
+ * @author Tilmann Zaeschke
+ */
+public final class DBLargeVectorPage extends PersistenceCapableImpl {
+
+	/** Maximum number of entries per page. This roughly fills one storage page with OIDs. */
+	static final int MAX_ENTRIES = 256;
+
+	//leaf pages only
+	private Object[] elements;
+	//inner pages only
+	private DBLargeVectorPage[] children;
+	private int[] counts;
+	private int n;
+
+	/**
+	 * For de-serialization only.
+	 */
+	private DBLargeVectorPage() {
+		//nothing to do
+	}
+
+	DBLargeVectorPage(boolean isLeaf) {
+		if (isLeaf) {
+			elements = new Object[MAX_ENTRIES];
+		} else {
+			children = new DBLargeVectorPage[MAX_ENTRIES];
+			counts = new int[MAX_ENTRIES];
+		}
+	}
+
+	boolean isLeaf() {
+		zooActivateRead();
+		return children == null;
+	}
+
+	/**
+	 * @return The number of elements in this page and its sub-pages.
+	 */
+	int size() {
+		zooActivateRead();
+		if (children == null) {
+			return n;
+		}
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			size += counts[i];
+		}
+		return size;
+	}
+
+	/**
+	 * Find the leaf page that contains the element at the given position.
+	 * @param index The position, relative to this page.
+	 * @param start Returns the position of the first element in the leaf page.
+	 * @return The leaf page.
+	 */
+	DBLargeVectorPage findLeaf(int index, int[] start) {
+		DBLargeVectorPage p = this;
+		int offs = 0;
+		p.zooActivateRead();
+		while (p.children != null) {
+			int i = 0;
+			while (i < p.n-1 && index - offs >= p.counts[i]) {
+				offs += p.counts[i];
+				i++;
+			}
+			p = p.children[i];
+			p.zooActivateRead();
+		}
+		start[0] = offs;
+		return p;
+	}
+
+	Object getLocal(int pos) {
+		zooActivateRead();
+		return elements[pos];
+	}
+
+	Object setLocal(int pos, Object e) {
+		zooActivateWrite();
+		Object prev = elements[pos];
+		elements[pos] = e;
+		return prev;
+	}
+
+	/**
+	 * Insert an element. Full pages are split. If elements are appended, the full page
+	 * remains full and the new page contains only the new element. Otherwise the
+	 * page is split in the middle.
+	 * @param index The position, relative to this page.
+	 * @param e The element
+	 * @return The new right sibling if this page had to be split, otherwise {@code null}.
+	 */
+	DBLargeVectorPage add(int index, Object e) {
+		zooActivateWrite();
+		if (children == null) {
+			if (n < MAX_ENTRIES) {
+				insertElement(index, e);
+				return null;
+			}
+			DBLargeVectorPage sib = new DBLargeVectorPage(true);
+			int keep = (index == n) ? n : n/2;
+			System.arraycopy(elements, keep, sib.elements, 0, n-keep);
+			Arrays.fill(elements, keep, n, null);
+			sib.n = n-keep;
+			n = keep;
+			if (index < keep || (index == keep && keep < MAX_ENTRIES)) {
+				insertElement(index, e);
+			} else {
+				sib.insertElement(index-keep, e);
+			}
+			return sib;
+		}
+
+		int i = 0;
+		while (i < n-1 && index > counts[i]) {
+			index -= counts[i];
+			i++;
+		}
+		DBLargeVectorPage newChild = children[i].add(index, e);
+		counts[i]++;
+		if (newChild == null) {
+			return null;
+		}
+		int newCount = newChild.size();
+		counts[i] -= newCount;
+		return addChild(i+1, newChild, newCount);
+	}
+
+	private void insertElement(int pos, Object e) {
+		System.arraycopy(elements, pos, elements, pos+1, n-pos);
+		elements[pos] = e;
+		n++;
+	}
+
+	/**
+	 * Add a child to an inner page.
+	 * @return The new right sibling if this page had to be split, otherwise {@code null}.
+	 */
+	DBLargeVectorPage addChild(int pos, DBLargeVectorPage child, int count) {
+		zooActivateWrite();
+		if (n < MAX_ENTRIES) {
+			insertChild(pos, child, count);
+			return null;
+		}
+		DBLargeVectorPage sib = new DBLargeVectorPage(false);
+		int keep = (pos == n) ? n : n/2;
+		System.arraycopy(children, keep, sib.children, 0, n-keep);
+		System.arraycopy(counts, keep, sib.counts, 0, n-keep);
+		Arrays.fill(children, keep, n, null);
+		Arrays.fill(counts, keep, n, 0);
+		sib.n = n-keep;
+		n = keep;
+		if (pos < keep || (pos == keep && keep < MAX_ENTRIES)) {
+			insertChild(pos, child, count);
+		} else {
+			sib.insertChild(pos-keep, child, count);
+		}
+		return sib;
+	}
+
+	private void insertChild(int pos, DBLargeVectorPage child, int count) {
+		System.arraycopy(children, pos, children, pos+1, n-pos);
+		System.arraycopy(counts, pos, counts, pos+1, n-pos);
+		children[pos] = child;
+		counts[pos] = count;
+		n++;
+	}
+
+	/**
+	 * Remove an element. Pages that become empty are removed and deleted. Pages are
+	 * not merged.
+	 * @param index The position, relative to this page.
+	 * @return The removed element.
+	 */
+	Object remove(int index) {
+		zooActivateWrite();
+		if (children == null) {
+			Object e = elements[index];
+			System.arraycopy(elements, index+1, elements, index, n-index-1);
+			elements[--n] = null;
+			return e;
+		}
+
+		int i = 0;
+		while (index >= counts[i]) {
+			index -= counts[i];
+			i++;
+		}
+		DBLargeVectorPage child = children[i];
+		Object e = child.remove(index);
+		counts[i]--;
+		if (counts[i] == 0) {
+			System.arraycopy(children, i+1, children, i, n-i-1);
+			System.arraycopy(counts, i+1, counts, i, n-i-1);
+			n--;
+			children[n] = null;
+			counts[n] = 0;
+			delete(child);
+		}
+		return e;
+	}
+
+	/**
+	 * @return The only child of an inner page, or {@code null} if this is a leaf page or
+	 * an inner page with several children.
+	 */
+	DBLargeVectorPage getSingleChild() {
+		zooActivateRead();
+		if (children == null || n != 1) {
+			return null;
+		}
+		return children[0];
+	}
+
+	/**
+	 * @return The number of levels below this page. This loads only the left-most path.
+	 */
+	int height() {
+		int h = 0;
+		DBLargeVectorPage p = this;
+		while (!p.isLeaf() && p.n > 0) {
+			p = p.children[0];
+			h++;
+		}
+		return h;
+	}
+
+	/**
+	 * Delete this page and all sub-pages. All leaves are on the same level, so they are 
+	 * deleted by their OID without loading them. Only inner pages are loaded.
+	 * @param height The number of levels below this page, see {@link #height()}.
+	 */
+	void deleteAll(int height) {
+		if (height > 0) {
+			zooActivateRead();
+			for (int i = 0; i < n; i++) {
+				children[i].deleteAll(height - 1);
+			}
+		}
+		delete(this);
+	}
+
+	static void delete(DBLargeVectorPage page) {
+		if (JDOHelper.isPersistent(page)) {
+			JDOHelper.getPersistenceManager(page).deletePersistent(page);
+		}
+	}
+}
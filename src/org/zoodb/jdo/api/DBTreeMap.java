@@ -0,0 +1,464 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.jdo.api;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.jdo.listener.DeleteCallback;
+
+import org.zoodb.jdo.internal.server.index.BitTools;
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * A persistent sorted map for large numbers of entries.
+ * <p>
+ * Unlike {@link DBHashMap}, the entries are not stored in the map object itself but in
+ * separate pages ({@link DBTreeMapPage}) that form a B+-tree. Pages are loaded only
+ * when entries in them are accessed, and only modified pages are written during commit.
+ * <p>
+ * Supported keys are String, Date, Character and the primitive wrapper types. All keys
+ * of a map should have the same type. Keys are sorted by their sortable long
+ * representation, the same as used for indices (see {@link BitTools}). This means that
+ * numbers and dates are in natural order, while Strings are ordered by their first six
+ * characters and then by hash code. Therefore range iteration is not supported for String 
+ * keys. {@code null} keys are not supported.
+ * <p>
+ * Pages that become empty are deleted, but pages are not merged. When a DBTreeMap is
+ * deleted, its pages are deleted as well.
+ *
+ * @author Tilmann Zaeschke
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class DBTreeMap<K, V> extends PersistenceCapableImpl 
+implements Map<K, V>, DBCollection, DeleteCallback {
+
+	private DBTreeMapPage root;
+	private int size;
+
+	private final transient Entries view = new Entries();
+
+	public DBTreeMap() {
+		//nothing to do
+	}
+
+	/**
+	 * @param key
+	 * @return The sortable long representation of the key.
+	 * @throws IllegalArgumentException if the key type is not supported.
+	 */
+	static long toSortKey(Object key) {
+		if (key instanceof String) {
+			return BitTools.toSortableLong((String) key);
+		} else if (key instanceof Double) {
+			return BitTools.toSortableLong((Double) key);
+		} else if (key instanceof Float) {
+			return BitTools.toSortableLong((Float) key);
+		} else if (key instanceof Long || key instanceof Integer || key instanceof Short ||
+				key instanceof Byte) {
+			return ((Number) key).longValue();
+		} else if (key instanceof Character) {
+			return (Character) key;
+		} else if (key instanceof Date) {
+			return ((Date) key).getTime();
+		} else if (key == null) {
+			throw new NullPointerException("null keys are not supported.");
+		}
+		throw new IllegalArgumentException("Unsupported key type: " + key.getClass().getName());
+	}
+
+	@Override
+	public void clear() {
+		zooActivateWrite();
+		if (root != null) {
+			root.deleteAll(root.height());
+			root = null;
+		}
+		size = 0;
+		view.modCount++;
+	}
+
+	/**
+	 * Deletes the pages when the map is deleted.
+	 */
+	@Override
+	public void jdoPreDelete() {
+		//The map is already deleted and can not be activated, but it has been loaded.
+		if (root != null) {
+			root.deleteAll(root.height());
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		zooActivateRead();
+		if (root == null) {
+			return false;
+		}
+		long sk = toSortKey(key);
+		return root.findLeaf(sk, key).find(sk, key) >= 0;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		return view.containsValue(value);
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return view.entrySet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		zooActivateRead();
+		if (root == null) {
+			return null;
+		}
+		long sk = toSortKey(key);
+		DBTreeMapPage leaf = root.findLeaf(sk, key);
+		int pos = leaf.find(sk, key);
+		return pos >= 0 ? (V) leaf.getValue(pos) : null;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return view.keySet();
+	}
+
+	/**
+	 * Add an entry. The map itself is only modified if the key is new, if the key exists
+	 * only the leaf page is modified.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public V put(K key, V value) {
+		long sk = toSortKey(key);
+		zooActivateRead();
+		if (root == null) {
+			zooActivateWrite();
+			root = new DBTreeMapPage(true);
+		}
+		Object[] prev = new Object[2];
+		DBTreeMapPage sib = root.put(sk, key, value, prev);
+		if (sib != null) {
+			zooActivateWrite();
+			root = DBTreeMapPage.newRoot(root, sib);
+		}
+		if (prev[1] == null) {
+			zooActivateWrite();
+			size++;
+			view.modCount++;
+		}
+		return (V) prev[0];
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m) {
+		for (Map.Entry<? extends K, ? extends V> e: m.entrySet()) {
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key) {
+		long sk = toSortKey(key);
+		zooActivateRead();
+		if (root == null) {
+			return null;
+		}
+		Object[] prev = new Object[2];
+		root.remove(sk, key, prev);
+		if (prev[1] == null) {
+			return null;
+		}
+		zooActivateWrite();
+		size--;
+		view.modCount++;
+		if (size == 0) {
+			root.deleteAll(root.height());
+			root = null;
+		} else {
+			//remove inner pages with only one child
+			DBTreeMapPage child;
+			while ((child = root.getSingleChild()) != null) {
+				DBTreeMapPage.delete(root);
+				root = child;
+			}
+		}
+		return (V) prev[0];
+	}
+
+	@Override
+	public int size() {
+		zooActivateRead();
+		return size;
+	}
+
+	@Override
+	public Collection<V> values() {
+		return view.values();
+	}
+
+	/**
+	 * Iterate over a range of keys. Only the pages that contain the range are loaded.
+	 * @param min The lowest key (inclusive), or {@code null} for no lower bound.
+	 * @param max The highest key (inclusive), or {@code null} for no upper bound.
+	 * @return An iterator over the entries in the range, in key order.
+	 * @throws IllegalArgumentException if a bound is a String. Strings are not stored in 
+	 * their natural order, see {@link DBTreeMap}.
+	 */
+	public Iterator<Map.Entry<K, V>> iterator(K min, K max) {
+		if (min instanceof String || max instanceof String) {
+			throw new IllegalArgumentException("Ranges are not supported for String keys.");
+		}
+		return new EntryIterator(min, max);
+	}
+
+	/**
+	 * The Map implementation that provides the collection views.
+	 */
+	private class Entries extends AbstractMap<K, V> {
+
+		private int modCount;
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			return new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new EntryIterator(null, null);
+				}
+
+				@Override
+				public int size() {
+					return DBTreeMap.this.size();
+				}
+			};
+		}
+
+		@Override
+		public V remove(Object key) {
+			return DBTreeMap.this.remove(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return DBTreeMap.this.containsKey(key);
+		}
+
+		@Override
+		public V get(Object key) {
+			return DBTreeMap.this.get(key);
+		}
+
+		@Override
+		public int size() {
+			return DBTreeMap.this.size();
+		}
+	}
+
+	/**
+	 * Entry that writes changes of the value back to the map.
+	 */
+	private class TreeEntry extends AbstractMap.SimpleEntry<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private TreeEntry(K key, V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(V value) {
+			super.setValue(value);
+			return put(getKey(), value);
+		}
+	}
+
+	/**
+	 * Iterator that keeps the path to the current leaf page, so that the next leaf page
+	 * can be found without searching the tree from the root.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		private final K max;
+		private final long maxSk;
+		private DBTreeMapPage[] pages = new DBTreeMapPage[8];
+		private int[] positions = new int[8];
+		private int depth;
+		private int expectedModCount;
+		private TreeEntry next;
+		private TreeEntry lastRet;
+
+		private EntryIterator(K min, K max) {
+			this.max = max;
+			this.maxSk = max == null ? 0 : toSortKey(max);
+			zooActivateRead();
+			seek(min, min == null ? 0 : toSortKey(min));
+		}
+
+		/**
+		 * Position the iterator on the first entry with a key equal to or larger than the
+		 * given key.
+		 */
+		private void seek(Object key, long sk) {
+			expectedModCount = view.modCount;
+			depth = 0;
+			next = null;
+			if (root == null) {
+				return;
+			}
+			DBTreeMapPage p = root;
+			while (true) {
+				int pos;
+				if (key == null) {
+					pos = 0;
+				} else if (p.isLeaf()) {
+					pos = p.find(sk, key);
+					pos = pos >= 0 ? pos : -(pos + 1);
+				} else {
+					pos = p.findChild(sk, key);
+				}
+				push(p, pos);
+				if (p.isLeaf()) {
+					break;
+				}
+				p = p.getChild(pos);
+			}
+			findNext();
+		}
+
+		private void push(DBTreeMapPage p, int pos) {
+			if (depth == pages.length) {
+				pages = Arrays.copyOf(pages, depth*2);
+				positions = Arrays.copyOf(positions, depth*2);
+			}
+			pages[depth] = p;
+			positions[depth] = pos;
+			depth++;
+		}
+
+		/**
+		 * Move to the next entry, starting at the current position in the leaf page.
+		 */
+		@SuppressWarnings("unchecked")
+		private void findNext() {
+			next = null;
+			while (depth > 0) {
+				DBTreeMapPage p = pages[depth-1];
+				int pos = positions[depth-1];
+				if (pos >= p.getEntryCount()) {
+					//go up
+					depth--;
+					if (depth > 0) {
+						positions[depth-1]++;
+					}
+					continue;
+				}
+				if (!p.isLeaf()) {
+					//go down to the first entry of the child
+					push(p.getChild(pos), 0);
+					continue;
+				}
+				K key = (K) p.getKey(pos);
+				if (max != null && DBTreeMapPage.compare(toSortKey(key), key, maxSk, max) > 0) {
+					depth = 0;
+					return;
+				}
+				next = new TreeEntry(key, (V) p.getValue(pos));
+				return;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (view.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			lastRet = next;
+			positions[depth-1]++;
+			findNext();
+			return lastRet;
+		}
+
+		@Override
+		public void remove() {
+			if (lastRet == null) {
+				throw new IllegalStateException();
+			}
+			if (view.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			DBTreeMap.this.remove(lastRet.getKey());
+			lastRet = null;
+			//The tree may have changed, search the next entry from the root
+			if (next != null) {
+				K key = next.getKey();
+				seek(key, toSortKey(key));
+			} else {
+				expectedModCount = view.modCount;
+			}
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (jdoZooGetOid()*10000) | size();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || !(obj instanceof DBTreeMap)) {
+			return false;
+		}
+		DBTreeMap<?, ?> m = (DBTreeMap<?, ?>) obj;
+		if (size() != m.size() || jdoZooGetOid() != m.jdoZooGetOid()) {
+			return false;
+		}
+		return view.equals(m.view);
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.jdo.api;
+
+import java.util.Arrays;
+
+import javax.jdo.JDOHelper;
+
+import org.zoodb.jdo.spi.PersistenceCapableImpl;
+
+/**
+ * A page of a {@link DBTreeMap}. This class is not meant to be used directly.
+ * <p>
+ * The pages form a B+-tree. Leaf pages store keys and values, inner pages store for each
+ * child the smallest key that may be stored in that child. The key of the first child is
+ * ignored. Each page is a separate persistent object, therefore pages are loaded only
+ * when they are accessed and written only when they have been modified.
+ * <p>
+ * Keys are compared by their sortable long (see {@link DBTreeMap#toSortKey(Object)}).
+ * Only for String keys with equal sortable long are the keys themselves compared.
+ *
+ * @author Tilmann Zaeschke
+ */
+public final class DBTreeMapPage extends PersistenceCapableImpl {
+
+	/** Maximum number of entries per page. */
+	static final int MAX_ENTRIES = 128;
+
+	private long[] sortKeys;
+	private Object[] keys;
+	//leaf pages only
+	private Object[] values;
+	//inner pages only
+	private DBTreeMapPage[] children;
+	private int n;
+
+	/**
+	 * For de-serialization only.
+	 */
+	private DBTreeMapPage() {
+		//nothing to do
+	}
+
+	DBTreeMapPage(boolean isLeaf) {
+		sortKeys = new long[MAX_ENTRIES];
+		keys = new Object[MAX_ENTRIES];
+		if (isLeaf) {
+			values = new Object[MAX_ENTRIES];
+		} else {
+			children = new DBTreeMapPage[MAX_ENTRIES];
+		}
+	}
+
+	/**
+	 * Create a new root page for two pages that resulted from a split.
+	 */
+	static DBTreeMapPage newRoot(DBTreeMapPage left, DBTreeMapPage right) {
+		DBTreeMapPage root = new DBTreeMapPage(false);
+		root.insertLocal(0, 0, null, null, left);
+		root.insertLocal(1, right.sortKeys[0], right.keys[0], null, right);
+		return root;
+	}
+
+	static int compare(long sk1, Object k1, long sk2, Object k2) {
+		if (sk1 != sk2) {
+			return sk1 < sk2 ? -1 : 1;
+		}
+		if (k1 instanceof String && k2 instanceof String) {
+			return ((String)k1).compareTo((String)k2);
+		}
+		return 0;
+	}
+
+	boolean isLeaf() {
+		zooActivateRead();
+		return children == null;
+	}
+
+	int getEntryCount() {
+		zooActivateRead();
+		return n;
+	}
+
+	Object getKey(int pos) {
+		zooActivateRead();
+		return keys[pos];
+	}
+
+	Object getValue(int pos) {
+		zooActivateRead();
+		return values[pos];
+	}
+
+	DBTreeMapPage getChild(int pos) {
+		zooActivateRead();
+		return children[pos];
+	}
+
+	/**
+	 * @return The position of the key in a leaf page or {@code -(insertion point) - 1}.
+	 */
+	int find(long sk, Object key) {
+		zooActivateRead();
+		return find(sk, key, 0);
+	}
+
+	private int find(long sk, Object key, int lo) {
+		int hi = n-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = compare(sortKeys[mid], keys[mid], sk, key);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * @return The position of the child of an inner page that may contain the key.
+	 */
+	int findChild(long sk, Object key) {
+		zooActivateRead();
+		//the key of the first child is ignored
+		int pos = find(sk, key, 1);
+		if (pos >= 0) {
+			return pos;
+		}
+		return -(pos + 1) - 1;
+	}
+
+	/**
+	 * Find the leaf page that may contain the given key.
+	 */
+	DBTreeMapPage findLeaf(long sk, Object key) {
+		DBTreeMapPage p = this;
+		while (!p.isLeaf()) {
+			p = p.children[p.findChild(sk, key)];
+		}
+		return p;
+	}
+
+	/**
+	 * Insert or replace an entry. Full pages are split. If entries are appended, the full
+	 * page remains full and the new page contains only the new entry. Otherwise the
+	 * page is split in the middle. Inner pages are only modified if a child is split.
+	 * @param prev Returns the previous value in {@code prev[0]} and {@code Boolean.TRUE} in
+	 * {@code prev[1]} if the key already existed.
+	 * @return The new right sibling if this page had to be split, otherwise {@code null}.
+	 */
+	DBTreeMapPage put(long sk, Object key, Object value, Object[] prev) {
+		if (isLeaf()) {
+			int pos = find(sk, key);
+			zooActivateWrite();
+			if (pos >= 0) {
+				prev[0] = values[pos];
+				prev[1] = Boolean.TRUE;
+				values[pos] = value;
+				return null;
+			}
+			pos = -(pos + 1);
+			return insert(pos, sk, key, value, null);
+		}
+
+		int pos = findChild(sk, key);
+		DBTreeMapPage newChild = children[pos].put(sk, key, value, prev);
+		if (newChild == null) {
+			return null;
+		}
+		zooActivateWrite();
+		return insert(pos+1, newChild.sortKeys[0], newChild.keys[0], null, newChild);
+	}
+
+	/**
+	 * Insert an entry into a leaf page or a child into an inner page.
+	 */
+	private DBTreeMapPage insert(int pos, long sk, Object key, Object value,
+			DBTreeMapPage child) {
+		if (n < MAX_ENTRIES) {
+			insertLocal(pos, sk, key, value, child);
+			return null;
+		}
+		DBTreeMapPage sib = new DBTreeMapPage(children == null);
+		int keep = (pos == n) ? n : n/2;
+		int move = n-keep;
+		System.arraycopy(sortKeys, keep, sib.sortKeys, 0, move);
+		System.arraycopy(keys, keep, sib.keys, 0, move);
+		Arrays.fill(keys, keep, n, null);
+		if (children == null) {
+			System.arraycopy(values, keep, sib.values, 0, move);
+			Arrays.fill(values, keep, n, null);
+		} else {
+			System.arraycopy(children, keep, sib.children, 0, move);
+			Arrays.fill(children, keep, n, null);
+		}
+		sib.n = move;
+		n = keep;
+		if (pos < keep || (pos == keep && keep < MAX_ENTRIES)) {
+			insertLocal(pos, sk, key, value, child);
+		} else {
+			sib.insertLocal(pos-keep, sk, key, value, child);
+		}
+		return sib;
+	}
+
+	private void insertLocal(int pos, long sk, Object key, Object value, DBTreeMapPage child) {
+		System.arraycopy(sortKeys, pos, sortKeys, pos+1, n-pos);
+		System.arraycopy(keys, pos, keys, pos+1, n-pos);
+		sortKeys[pos] = sk;
+		keys[pos] = key;
+		if (children == null) {
+			System.arraycopy(values, pos, values, pos+1, n-pos);
+			values[pos] = value;
+		} else {
+			System.arraycopy(children, pos, children, pos+1, n-pos);
+			children[pos] = child;
+		}
+		n++;
+	}
+
+	/**
+	 * Remove an entry. Pages that become empty are removed and deleted. Pages are
+	 * not merged. Inner pages are only modified if a child is removed.
+	 * @param prev Returns the previous value in {@code prev[0]} and {@code Boolean.TRUE} in
+	 * {@code prev[1]} if the key existed.
+	 */
+	void remove(long sk, Object key, Object[] prev) {
+		if (isLeaf()) {
+			int pos = find(sk, key);
+			if (pos < 0) {
+				return;
+			}
+			zooActivateWrite();
+			prev[0] = values[pos];
+			prev[1] = Boolean.TRUE;
+			removeLocal(pos);
+			return;
+		}
+
+		int pos = findChild(sk, key);
+		DBTreeMapPage child = children[pos];
+		child.remove(sk, key, prev);
+		if (child.getEntryCount() == 0) {
+			zooActivateWrite();
+			removeLocal(pos);
+			delete(child);
+		}
+	}
+
+	private void removeLocal(int pos) {
+		int len = n-pos-1;
+		System.arraycopy(sortKeys, pos+1, sortKeys, pos, len);
+		System.arraycopy(keys, pos+1, keys, pos, len);
+		n--;
+		keys[n] = null;
+		if (children == null) {
+			System.arraycopy(values, pos+1, values, pos, len);
+			values[n] = null;
+		} else {
+			System.arraycopy(children, pos+1, children, pos, len);
+			children[n] = null;
+		}
+	}
+
+	/**
+	 * @return The only child of an inner page, or {@code null} if this is a leaf page or
+	 * an inner page with several children.
+	 */
+	DBTreeMapPage getSingleChild() {
+		zooActivateRead();
+		if (children == null || n != 1) {
+			return null;
+		}
+		return children[0];
+	}
+
+	/**
+	 * @return The number of levels below this page. This loads only the left-most path.
+	 */
+	int height() {
+		int h = 0;
+		DBTreeMapPage p = this;
+		while (!p.isLeaf() && p.n > 0) {
+			p = p.children[0];
+			h++;
+		}
+		return h;
+	}
+
+	/**
+	 * Delete this page and all sub-pages. All leaves are on the same level, so they are 
+	 * deleted by their OID without loading them. Only inner pages are loaded.
+	 * @param height The number of levels below this page, see {@link #height()}.
+	 */
+	void deleteAll(int height) {
+		if (height > 0) {
+			zooActivateRead();
+			for (int i = 0; i < n; i++) {
+				children[i].deleteAll(height - 1);
+			}
+		}
+		delete(this);
+	}
+
+	static void delete(DBTreeMapPage page) {
+		if (JDOHelper.isPersistent(page)) {
+			JDOHelper.getPersistenceManager(page).deletePersistent(page);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.api;
+
+/**
+ * Callback for transactions that have been committed with group commit enabled. 
+ * The listener is called once the transaction has been forced to disk, i.e. when it would 
+ * survive a crash.
+ * 
+ * @see ZooConfig#setGroupCommitDelay(int)
+ * @see ZooJdoHelper#addDurabilityListener(javax.jdo.PersistenceManager, DurabilityListener)
+ * @author Tilmann Zaeschke
+ */
+public interface DurabilityListener {
+
+	/**
+	 * Called when the transaction has become durable.
+	 */
+	void onDurable();
+	
+}
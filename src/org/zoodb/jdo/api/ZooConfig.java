@@ -15,22 +15,38 @@ public class ZooConfig {
 	public static final String FILE_PAF_BB = preServer + "StorageRootFile";
 	//public static final String FILE_PAF_BB = preServer + "StorageInMemory";
 	public static final String FILE_PAF_IN_MEMORY = preServer + "StorageRootInMemory";
+	public static final String FILE_PAF_MAPPED = preServer + "StorageRootMapped";
 
 	public static final String FILE_MGR_IN_MEMORY = preJdo + "api.impl.DataStoreManagerInMemory";
 	public static final String FILE_MGR_ONE_FILE = preJdo + "api.impl.DataStoreManagerOneFile";
 	//public static final String FILE_MGR_ONE_FILE = FILE_MGR_IN_MEMORY; 
 
 	public static final int FILE_PAGE_SIZE_DEFAULT = 1024*4;  //bytes
+	public static final int FILE_PAGE_POOL_SIZE_DEFAULT = 1024;  //pages
+	public static final int GROUP_COMMIT_DELAY_DEFAULT = 0;  //milliseconds, disabled
+	public static final int CLIENT_CACHE_SIZE_DEFAULT = 0;  //objects, unbounded
+	public static final int COMMIT_THREADS_DEFAULT = 1;  //threads, sequential
+	public static final int FILE_READ_AHEAD_DEFAULT = 64;  //pages
 
 	
 	private static String fileDefault = FILE_PAF_BB;
 	private static String fileManagerDefault = FILE_MGR_ONE_FILE;
 	private static int defaultPageSize = FILE_PAGE_SIZE_DEFAULT;
+	private static int defaultPagePoolSize = FILE_PAGE_POOL_SIZE_DEFAULT;
+	private static int groupCommitDelay = GROUP_COMMIT_DELAY_DEFAULT;
+	private static int clientCacheSize = CLIENT_CACHE_SIZE_DEFAULT;
+	private static int commitThreads = COMMIT_THREADS_DEFAULT;
+	private static int readAhead = FILE_READ_AHEAD_DEFAULT;
 
 	public static void setDefaults() {
 		fileDefault = FILE_PAF_BB;
 		fileManagerDefault = FILE_MGR_ONE_FILE;
 		defaultPageSize = FILE_PAGE_SIZE_DEFAULT;
+		defaultPagePoolSize = FILE_PAGE_POOL_SIZE_DEFAULT;
+		groupCommitDelay = GROUP_COMMIT_DELAY_DEFAULT;
+		clientCacheSize = CLIENT_CACHE_SIZE_DEFAULT;
+		commitThreads = COMMIT_THREADS_DEFAULT;
+		readAhead = FILE_READ_AHEAD_DEFAULT;
 	}
 	
 	public static void setFileManager(String className) {
@@ -46,6 +62,15 @@ public class ZooConfig {
 		return fileDefault;
 	}
 
+	/**
+	 * Set the storage implementation for database files, for example FILE_PAF_BB or 
+	 * FILE_PAF_MAPPED. The setting takes effect when a database file is opened.
+	 * @param className
+	 */
+	public static void setFileProcessor(String className) {
+		fileDefault = className;
+	}
+
 	public static String getFileManager() {
 		return fileManagerDefault;
 	}
@@ -61,4 +86,87 @@ public class ZooConfig {
 	public static void setFilePageSize(int pageSize) {
 		defaultPageSize = pageSize;
 	}
+
+	public static int getFilePagePoolSize() {
+		return defaultPagePoolSize;
+	}
+
+	/**
+	 * Set the size of the page pool that is shared by all readers of a database file.
+	 * The setting takes effect when a database file is opened.
+	 * @param nPages number of pages, 0 disables the pool.
+	 */
+	public static void setFilePagePoolSize(int nPages) {
+		defaultPagePoolSize = nPages;
+	}
+
+	public static int getGroupCommitDelay() {
+		return groupCommitDelay;
+	}
+
+	/**
+	 * Enable group commit. With group commit, a commit() writes all data but does not 
+	 * immediately force it to disk. Instead, the root page is written and forced once for all
+	 * transactions that were committed within the given delay. This happens at the latest when
+	 * the delay has passed since the oldest non-durable commit, even if the session does not
+	 * commit again, or earlier when the database is synced or closed. 
+	 * This trades durability latency for commit throughput; the database is always consistent
+	 * on disk, but a crash may lose the latest transactions.
+	 * The setting takes effect when a database file is opened.
+	 * @param millis maximum delay in milliseconds before a commit is forced to disk, 
+	 * 0 disables group commit.
+	 * @see ZooJdoHelper#sync(javax.jdo.PersistenceManager)
+	 */
+	public static void setGroupCommitDelay(int millis) {
+		groupCommitDelay = millis;
+	}
+
+	public static int getClientCacheSize() {
+		return clientCacheSize;
+	}
+
+	/**
+	 * Limit the number of clean objects that are kept in the cache of a session. If the limit
+	 * is exceeded, clean objects are evicted (made hollow) using the CLOCK algorithm, 
+	 * preferring objects that have not been accessed recently. New, dirty and deleted objects
+	 * are never evicted. Evicted objects are reloaded transparently when they are accessed.
+	 * The setting takes effect when a PersistenceManager is created.
+	 * @param nObjects maximum number of clean objects, 0 disables the limit.
+	 */
+	public static void setClientCacheSize(int nObjects) {
+		clientCacheSize = nObjects;
+	}
+
+	public static int getCommitThreads() {
+		return commitThreads;
+	}
+
+	/**
+	 * Serialize the objects of different classes in parallel during commit. Page allocation 
+	 * and index updates remain sequential. This helps with large commits that involve 
+	 * many classes. Only classes whose fields are all primitives or Strings are serialized
+	 * in parallel, all other objects are serialized by the committing thread.
+	 * The setting takes effect when a PersistenceManager is created.
+	 * It is ignored by multithreaded PersistenceManagers.
+	 * @param nThreads number of threads, 1 disables parallel serialization.
+	 */
+	public static void setCommitThreads(int nThreads) {
+		commitThreads = nThreads;
+	}
+
+	public static int getFileReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Read pages ahead of sequential scans, such as extents. The pages are read on a 
+	 * background thread into the page pool, therefore read-ahead requires a page pool. 
+	 * The setting takes effect when a database file is opened.
+	 * @param nPages maximum number of pages that are queued for reading, 0 disables 
+	 * read-ahead.
+	 * @see #setFilePagePoolSize(int)
+	 */
+	public static void setFileReadAhead(int nPages) {
+		readAhead = nPages;
+	}
 }
@@ -24,6 +24,8 @@ import javax.jdo.JDOHelper;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 
+import org.zoodb.jdo.internal.Session;
+
 public class ZooJdoHelper {
 
 	/**
@@ -46,4 +48,28 @@ public class ZooJdoHelper {
         return pm;
     }
 
+    /**
+     * Register a listener for the current transaction. The listener is called when the
+     * transaction has been committed and forced to disk. Without group commit this happens
+     * during commit(), with group commit it may be called by a background thread. 
+     * The listener is discarded if the transaction is rolled back.
+     * 
+     * @param pm The PersistenceManager with the current transaction.
+     * @param listener The listener
+     * @see ZooConfig#setGroupCommitDelay(int)
+     */
+    public static void addDurabilityListener(PersistenceManager pm, DurabilityListener listener) {
+    	Session.getSession(pm).addDurabilityListener(listener);
+    }
+
+    /**
+     * Force all committed transactions to disk. This is only required with group commit, 
+     * otherwise all transactions are durable once commit() returns.
+     * 
+     * @param pm The PersistenceManager.
+     * @see ZooConfig#setGroupCommitDelay(int)
+     */
+    public static void sync(PersistenceManager pm) {
+    	Session.getSession(pm).sync();
+    }
 }
@@ -120,6 +120,33 @@ public class ZooJdoProperties extends Properties implements Constants {
 	}
 	
 	
+	/**
+	 * Whether the session is read-only. Read-only sessions can be opened while another 
+	 * session writes to the same database. Each transaction of a read-only session sees the 
+	 * state of the database when the transaction began. Default is 'false'.
+	 * @param flag
+	 * @return this
+	 * @see Constants#PROPERTY_READONLY
+	 */
+	public ZooJdoProperties setReadOnly(boolean flag) {
+		put(Constants.PROPERTY_READONLY, Boolean.toString(flag));
+		return this;
+	}
+	
+	
+	/**
+	 * Whether the PersistenceManager can be used by several threads concurrently. 
+	 * Default is 'false'.
+	 * @param flag
+	 * @return this
+	 * @see Constants#PROPERTY_MULTITHREADED
+	 */
+	public ZooJdoProperties setMultithreaded(boolean flag) {
+		put(Constants.PROPERTY_MULTITHREADED, Boolean.toString(flag));
+		return this;
+	}
+	
+	
 	/**
 	 * Property that defines whether schemata should be created as necessary or need explicit 
 	 * creation. Default is false.
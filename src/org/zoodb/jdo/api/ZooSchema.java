@@ -134,7 +134,7 @@ public final class ZooSchema {
 
     public static Collection<ZooClass> locateAllClasses(PersistenceManager pm) {
     	checkValidity(pm);
-        return Session.getSession(pm).getSchemaManager().getAllSchemata();
+        return Session.getSession(pm).getSchemaManager().getAllSchemata(false);
     }
     
     private static void checkValidity(PersistenceManager pm) {
@@ -36,6 +36,12 @@ public class DBStatistics {
 		/** Data page (only stored objects) read access counter. 
 		 * Counts only unique access (each page counted only once). */
 		IO_DATA_PAGE_READ_CNT_UNQ, 
+		/** Number of page reads that were served from the page pool. */
+		IO_PAGE_POOL_HIT_CNT,
+		/** Number of page reads that were not found in the page pool. */
+		IO_PAGE_POOL_MISS_CNT,
+		/** Number of times that committed transactions were forced to disk. */
+		IO_SYNC_CNT,
 		
 		/** Number of pages used by free space manager. */
 		DB_PAGE_CNT_IDX_FSM, 
@@ -100,6 +106,53 @@ public class DBStatistics {
 		return s.getPrimaryNode().getStats(STATS.IO_DATA_PAGE_READ_CNT_UNQ);
 	}
 
+	/**
+	 * 
+	 * @return Number of page reads since the database file was opened that could be served
+	 * from the page pool.
+	 */
+	public int getStoragePagePoolHitCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_POOL_HIT_CNT);
+	}
+
+	/**
+	 * 
+	 * @return Number of page reads since the database file was opened that could not be 
+	 * served from the page pool.
+	 */
+	public int getStoragePagePoolMissCount() {
+		return s.getPrimaryNode().getStats(STATS.IO_PAGE_POOL_MISS_CNT);
+	}
+
+	/**
+	 * 
+	 * @return Number of objects in the cache of the session, including hollow objects and
+	 * schema objects.
+	 */
+	public int getCacheObjectCount() {
+		return s.internalGetCache().getAllObjects().size();
+	}
+
+	/**
+	 * 
+	 * @return Number of clean objects in the cache of the session. This is only counted if 
+	 * the cache size is limited.
+	 * @see org.zoodb.jdo.api.ZooConfig#setClientCacheSize(int)
+	 */
+	public int getCacheCleanObjectCount() {
+		return s.internalGetCache().statsGetCleanCount();
+	}
+
+	/**
+	 * 
+	 * @return Number of objects that were evicted from the cache of the session because the
+	 * cache size was exceeded.
+	 * @see org.zoodb.jdo.api.ZooConfig#setClientCacheSize(int)
+	 */
+	public int getCacheEvictionCount() {
+		return s.internalGetCache().statsGetEvictionCount();
+	}
+
 	public int getStat(STATS stat) {
 		return s.getPrimaryNode().getStats(stat);
 	}
@@ -43,7 +43,6 @@ import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.api.DBArrayList;
 import org.zoodb.jdo.api.DBCollection;
 import org.zoodb.jdo.api.DBHashMap;
-import org.zoodb.jdo.api.DBLargeVector;
 import org.zoodb.jdo.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.jdo.internal.client.AbstractCache;
 import org.zoodb.jdo.internal.server.ObjectReader;
@@ -101,6 +100,10 @@ public class DataDeSerializer {
     private final AbstractCache cache;
     private boolean allowGenericObjects = false;
     
+    //If not null, all persistent objects that are referenced by de-serialized objects are 
+    //added to this list. This is used to load referenced objects in batches.
+    private ArrayList<ZooPCImpl> referenceCollector = null;
+    
     //Cached Sets and Maps
     //The maps and sets are only filled after the keys have been de-serialized. Otherwise 
     //the keys will be inserted with a wrong hash value.
@@ -143,6 +146,14 @@ public class DataDeSerializer {
         this.cache = cache;
    }
 
+    /**
+     * @param refs A list that collects all persistent objects that are referenced by 
+     * subsequently de-serialized objects, or {@code null} to stop collecting.
+     */
+    public void setReferenceCollector(ArrayList<ZooPCImpl> refs) {
+    	referenceCollector = refs;
+    }
+
 
 	/**
      * This method returns an object that is read from the input 
@@ -344,7 +355,8 @@ public class DataDeSerializer {
     
     private final ZooPCImpl getInstance(ZooClassDef clsDef, long oid, ZooPCImpl co) {
     	if (co != null) {
-    		//might be hollow!
+    		//might be hollow or from a previous epoch!
+    		co.jdoZooCheckEpoch();
     		co.jdoZooMarkClean();
     		return co;
         }
@@ -371,7 +383,11 @@ public class DataDeSerializer {
                 	deserializePrimitive(obj, f, prim);
                 } else if (fd.isFixedSize()) {
                     deObj = deserializeObjectNoSco(fd);
-                    f.set(obj, deObj);
+                    if (!fd.isString()) {
+                        //Strings are set in deserializeFields2(). Setting them to null here
+                        //would be visible to other threads that read a reloaded object.
+                        f.set(obj, deObj);
+                    }
                 }
         	}
             return obj;
@@ -464,9 +480,6 @@ public class DataDeSerializer {
             if (obj instanceof DBHashMap) {
                 deserializeDBHashMap((DBHashMap<Object, Object>) obj);
                 ((ZooPCImpl)obj).jdoZooMarkClean();
-            } else if (obj instanceof DBLargeVector) {
-                deserializeDBList((DBLargeVector<Object>) obj);
-                ((ZooPCImpl)obj).jdoZooMarkClean();
             } else if (obj instanceof DBArrayList) {
                 deserializeDBList((DBArrayList<Object>) obj);
                 ((ZooPCImpl)obj).jdoZooMarkClean();
@@ -485,10 +498,6 @@ public class DataDeSerializer {
     		HashMap<Object, Object> m = new HashMap<Object, Object>();
     		obj.setDbCollection(m);
     		deserializeDBHashMap(m);
-    	} else if (obj.getClassDef().getClassName().equals(DBLargeVector.class.getName())) {
-    		ArrayList<Object> l = new ArrayList<Object>();
-    		obj.setDbCollection(l);
-    		deserializeDBList(l);
     	} else if (obj.getClassDef().getClassName().equals(DBArrayList.class.getName())) {
     		ArrayList<Object> l = new ArrayList<Object>();
     		obj.setDbCollection(l);
@@ -1029,6 +1038,7 @@ public class DataDeSerializer {
     	Object obj = cache.findCoByOID(oid);
         if (obj != null) {
         	//Object exist.
+        	collectReference(obj);
             return obj;
         }
         
@@ -1051,7 +1061,14 @@ public class DataDeSerializer {
         } else {
 	        obj = createInstance(clsDef.getJavaClass());
 	        prepareObject((ZooPCImpl) obj, oid, true, clsDef);
+	        collectReference(obj);
         }
         return obj;
     }
+    
+    private final void collectReference(Object obj) {
+    	if (referenceCollector != null && !allowGenericObjects && obj instanceof ZooPCImpl) {
+    		referenceCollector.add((ZooPCImpl) obj);
+    	}
+    }
 }
@@ -162,7 +162,7 @@ public class DataDeSerializerNoClass {
     	if (in.readByte() == -1) {
     		return null;
     	}
-    	return getAttrLong(clsDef, field);
+    	return in.readLong();
     }
 
 	public long getAttrRefOid(ZooClassDef clsDef, ZooFieldDef field) {
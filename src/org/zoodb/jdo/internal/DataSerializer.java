@@ -623,7 +623,7 @@ public final class DataSerializer {
             	long soid = ((ZooPCImpl)val).jdoZooGetClassDef().getOid();
             	out.writeLong(soid);
             } else {
-            	long soid = cache.getSchema(cls, node).getOid();
+            	long soid = getSchemaOid(cls);
             	out.writeLong(soid);
             }
             return;
@@ -634,7 +634,7 @@ public final class DataSerializer {
             	long soid = ((GenericObject)val).getClassDef().getOid();
             	out.writeLong(soid);
             } else {
-            	long soid = cache.getSchema(cls, node).getOid();
+            	long soid = getSchemaOid(cls);
             	out.writeLong(soid);
             }
             return;
@@ -645,7 +645,7 @@ public final class DataSerializer {
             	long soid = ((GOProxy)val).getGenericObject().getClassDef().getOid();
             	out.writeLong(soid);
             } else {
-            	long soid = cache.getSchema(cls, node).getOid();
+            	long soid = getSchemaOid(cls);
             	out.writeLong(soid);
             }
             return;
@@ -677,6 +677,13 @@ public final class DataSerializer {
         usedClasses.put(cls, (byte)idInt); 
     }
 
+    private final long getSchemaOid(Class<?> cls) {
+    	//Serializers of different classes may run concurrently during commit
+    	synchronized (cache) {
+    		return cache.getSchema(cls, node).getOid();
+    	}
+    }
+
     private final void writeString(String s) {
     	out.writeString(s);
     }
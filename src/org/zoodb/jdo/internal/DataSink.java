@@ -20,6 +20,8 @@
  */
 package org.zoodb.jdo.internal;
 
+import java.util.List;
+
 import org.zoodb.api.impl.ZooPCImpl;
 
 /**
@@ -42,6 +44,20 @@ public interface DataSink {
 
 	public abstract void reset();
 
+	/**
+	 * Serialize objects into a buffer in memory, without accessing the storage. Different 
+	 * sinks may do this concurrently. The buffered objects are written with a subsequent 
+	 * call to {@link #writeBuffered()}.
+	 * @param objs The objects to serialize.
+	 */
+	public abstract void serializeToBuffer(List<ZooPCImpl> objs);
+
+	/**
+	 * Write objects that were serialized with {@link #serializeToBuffer(List)} and update
+	 * the indices. This is equivalent to calling write() for each of these objects. 
+	 */
+	public abstract void writeBuffered();
+
     public void writeGeneric(GenericObject obj);
 
 }
\ No newline at end of file
@@ -23,7 +23,9 @@ package org.zoodb.jdo.internal;
 import java.util.Iterator;
 
 import org.zoodb.api.impl.ZooPCImpl;
+import org.zoodb.jdo.api.DurabilityListener;
 import org.zoodb.jdo.api.impl.DBStatistics.STATS;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
 import org.zoodb.jdo.internal.util.CloseableIterator;
 import org.zoodb.jdo.internal.util.DBLogger;
 
@@ -49,13 +51,51 @@ public abstract class Node {
 
 	public abstract void makePersistent(ZooPCImpl obj);
 
+	/**
+	 * Called when a transaction begins.
+	 * @return Whether the visible database state has changed since the previous transaction.
+	 */
+	public abstract boolean begin();
+
 	public abstract void commit();
 
+	/**
+	 * Force all committed transactions to disk.
+	 */
+	public abstract void sync();
+
+	/**
+	 * Call the listener once all committed transactions are durable. This may happen
+	 * immediately.
+	 * @param l
+	 */
+	public abstract void notifyOnDurable(DurabilityListener l);
+
 	public abstract CloseableIterator<ZooPCImpl> loadAllInstances(ZooClassProxy def, 
             boolean loadFromCache);
 
+	/**
+	 * Load all instances of a class, skipping all stored instances that are known not to match
+	 * the filter. The filter is evaluated on the serialized objects, the returned objects still
+	 * need to be checked with {@link QueryTreeNode#evaluate(Object)}.
+	 * @param def
+	 * @param filter
+	 * @param loadFromCache
+	 * @return Iterator over the candidate instances.
+	 */
+	public abstract CloseableIterator<ZooPCImpl> loadAllInstances(ZooClassProxy def, 
+			QueryTreeNode filter, boolean loadFromCache);
+
 	public abstract ZooPCImpl loadInstanceById(long oid);
 
+	/**
+	 * Load the objects with the given OIDs in one batch, unless they are already in the 
+	 * cache and not hollow.
+	 * @param oids
+	 * @param size The number of valid entries in the oids array.
+	 */
+	public abstract void loadInstancesById(long[] oids, int size);
+
 	public abstract void closeConnection();
 
 	public abstract void defineIndex(ZooClassDef def, ZooFieldDef f, boolean isUnique);
@@ -69,7 +109,10 @@ public abstract class Node {
 	}
 
 	public abstract Iterator<ZooPCImpl> readObjectFromIndex(ZooFieldDef field, 
-			long minValue, long maxValue, boolean loadFromCache);
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache);
+
+	public abstract Iterator<ZooPCImpl> readObjectFromIndices(ZooFieldDef[] fields, 
+			long[] minValues, long[] maxValues, boolean intersect, boolean loadFromCache);
 
 	public abstract int getStats(STATS stats);
 
@@ -41,6 +41,7 @@ import org.zoodb.jdo.api.DBArrayList;
 import org.zoodb.jdo.api.DBCollection;
 import org.zoodb.jdo.api.DBHashMap;
 import org.zoodb.jdo.api.DBLargeVector;
+import org.zoodb.jdo.api.DBTreeMap;
 import org.zoodb.jdo.internal.client.session.ClientSessionCache;
 import org.zoodb.jdo.internal.util.DBLogger;
 import org.zoodb.jdo.internal.util.ObjectIdentitySet;
@@ -113,6 +114,8 @@ public class ObjectGraphTraverser {
     /**
      * This class is only public so it can be accessed by the test harness. 
      * Please do not use.
+     * <p>
+     * The traverser can be reused for subsequent commits of the same session.
      * @param pm 
      */
     public ObjectGraphTraverser(PersistenceManager pm, ClientSessionCache cache) {
@@ -137,7 +140,11 @@ public class ObjectGraphTraverser {
         //Intention is to find the NEW objects that will become persistent
         //through reachability.
         //For this, we have to check objects that are DIRTY or NEW (by 
-        //makePersistent()). 
+        //makePersistent()). Only these objects can reference transient objects, so the
+        //effort depends on the number of modified objects, not on the size of the cache.
+    	if (cache.getDirtyObjects().isEmpty()) {
+    		return;
+    	}
     	DBLogger.debugPrintln(1, "Starting OGT: " + workList.size());
         long t1 = System.currentTimeMillis();
         long nObjects = 0;
@@ -149,6 +156,11 @@ public class ObjectGraphTraverser {
         DBLogger.debugPrintln(1, "Finished OGT: " + nObjects + " (seen="
                 + seenObjects.size() + " ) / " + (t2-t1)/1000.0
                 + " MP=" + mpCount);    
+        
+        //reset for next commit
+        seenObjects.clear();
+        toBecomePersistent.clear();
+        mpCount = 0;
     }
     
     private int traverseCache() {
@@ -276,7 +288,7 @@ public class ObjectGraphTraverser {
     }
 
     private final void doObject(Object parent) {			
-        for (Field field: getFields(parent.getClass())) {
+        for (Field field: getFields(parent)) {
             try {
                 //add the value to the working list
                 addToWorkList(field.get(parent));
@@ -296,9 +308,9 @@ public class ObjectGraphTraverser {
 	private final void doPersistentContainer(Object container) {
         if (container instanceof DBArrayList) {
             doCollection((DBArrayList)container);
-        } else if (container instanceof DBLargeVector) {
-//            doEnumeration(((DBLargeVector)container).elements(), container);
-            doCollection(((DBLargeVector)container));
+        } else if (container instanceof DBLargeVector || container instanceof DBTreeMap) {
+            //The elements are stored in pages, only modified pages need to be traversed
+            doObject(container);
         } else if (container instanceof DBHashMap) {
             DBHashMap t = (DBHashMap)container;
             doCollection(t.keySet());
@@ -324,6 +336,24 @@ public class ObjectGraphTraverser {
 
     }
 
+    /**
+     * Persistent objects use the reference fields of their schema. Other objects, and 
+     * persistent objects whose schema is not (yet) associated with the Java class, use 
+     * reflection.
+     */
+    private static final Field[] getFields(Object parent) {
+    	if (parent instanceof ZooPCImpl) {
+    		ZooClassDef def = ((ZooPCImpl)parent).jdoZooGetClassDef();
+    		if (def != null && def.getJavaClass() == parent.getClass()) {
+    			Field[] ret = def.getReferenceFields();
+    			if (ret != null) {
+    				return ret;
+    			}
+    		}
+    	}
+    	return getFields(parent.getClass());
+    }
+    
     /**
      * Returns a List containing all of the Field objects for the given class.
      * The fields include all public and private fields from the given class 
@@ -22,11 +22,29 @@ package org.zoodb.jdo.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.jdo.JDOFatalException;
-import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.JDOReadOnlyException;
 import javax.jdo.JDOUserException;
 import javax.jdo.ObjectState;
 import javax.jdo.PersistenceManager;
@@ -38,12 +56,17 @@ import org.zoodb.api.ZooInstanceEvent;
 import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.PersistenceManagerFactoryImpl;
 import org.zoodb.jdo.PersistenceManagerImpl;
+import org.zoodb.jdo.api.DBCollection;
+import org.zoodb.jdo.api.DurabilityListener;
+import org.zoodb.jdo.api.ZooConfig;
 import org.zoodb.jdo.internal.client.SchemaManager;
 import org.zoodb.jdo.internal.client.session.ClientSessionCache;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
 import org.zoodb.jdo.internal.util.CloseableIterator;
 import org.zoodb.jdo.internal.util.DBLogger;
 import org.zoodb.jdo.internal.util.IteratorRegistry;
 import org.zoodb.jdo.internal.util.MergingIterator;
+import org.zoodb.jdo.internal.util.PrimLongMapLI;
 import org.zoodb.jdo.internal.util.TransientField;
 import org.zoodb.jdo.internal.util.Util;
 
@@ -59,6 +82,9 @@ public class Session implements IteratorRegistry {
 
 	public static final Class<?> PERSISTENT_SUPER = ZooPCImpl.class;
 	
+	/** Maximum number of objects per class that are serialized in memory before writing. */
+	private static final int PARALLEL_CHUNK_SIZE = 10000;
+	
 	/** Primary node. Also included in the _nodes list. */
 	private Node primary;
 	/** All connected nodes. Includes the primary node. */
@@ -66,15 +92,46 @@ public class Session implements IteratorRegistry {
 	private final PersistenceManagerImpl pm;
 	private final ClientSessionCache cache;
 	private final SchemaManager schemaManager;
-	private boolean isOpen = true;
+	private final ObjectGraphTraverser ogt;
+	/** Threads for parallel serialization during commit, or null if disabled. */
+	private final ExecutorService commitExecutor;
+	/** Thread that forces group commits to disk, shared by all sessions. */
+	private static ScheduledExecutorService syncExecutor = null;
+	/** Group commit delay in milliseconds, 0 if disabled. */
+	private final int groupCommitDelay;
+	/** The pending forced sync of a group commit, or null. */
+	private ScheduledFuture<?> syncTask = null;
+	private volatile boolean isOpen = true;
+	private final boolean isReadOnly;
+	/** Whether the session may be used by several threads concurrently. */
+	private volatile boolean isMultithreaded = false;
+	/** 
+	 * The session lock, only used in multithreaded mode. The write lock is required for all 
+	 * operations that read from disk or modify the session. Loaded objects are looked up and 
+	 * accessed with the read lock or without locking. 
+	 */
+	private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+	/**
+	 * The epoch of the cache. Clean objects from previous epochs are treated as hollow, see 
+	 * ClientSessionCache.postCommit(). It is kept here because it is checked on every 
+	 * access to a persistent field.
+	 */
+	private volatile int epoch = 0;
+	/** Listeners for the current transaction. */
+	private final ArrayList<DurabilityListener> durabilityListeners = 
+		new ArrayList<DurabilityListener>();
 	
 	private final WeakHashMap<CloseableIterator<?>, Object> extents = 
 	    new WeakHashMap<CloseableIterator<?>, Object>(); 
 	
 	public Session(PersistenceManagerImpl pm, String dbPath) {
 		this.pm = pm;
+		this.isReadOnly = pm.getPersistenceManagerFactory().getReadOnly();
 		this.cache = new ClientSessionCache(this);
 		this.schemaManager = new SchemaManager(cache);
+		this.ogt = new ObjectGraphTraverser(pm, cache);
+		this.commitExecutor = createCommitExecutor(ZooConfig.getCommitThreads());
+		this.groupCommitDelay = isReadOnly ? 0 : ZooConfig.getGroupCommitDelay();
 		this.primary = ZooFactory.get().createNode(dbPath, cache);
 		this.nodes.add(primary);
 		this.cache.addNode(primary);
@@ -82,44 +139,80 @@ public class Session implements IteratorRegistry {
 	}
 	
 	
-	public void commit(boolean retainValues) {
+	/**
+	 * Called when a transaction begins. Read-only sessions see the latest committed database
+	 * state from here on, clean objects from previous transactions are invalidated.
+	 */
+	public void begin() {
 		checkOpen();
-		//pre-commit: traverse object tree for transitive persistence
-		ObjectGraphTraverser ogt = new ObjectGraphTraverser(pm, cache);
-		ogt.traverse();
-		
-		schemaManager.commit();
-		
+		Lock lock = lock();
 		try {
-			commitInternal();
-			for (Node n: nodes) {
-				//TODO two-phase commit() !!!
-				n.commit();
-			}
-			cache.postCommit(retainValues);
-		} catch (JDOUserException e) {
-			//reset sinks
-	        for (ZooClassDef cs: cache.getSchemata()) {
-	            cs.getProvidedContext().getDataSink().reset();
-	            cs.getProvidedContext().getDataDeleteSink().reset();
-	        }		
-			//allow for retry after user exceptions
+			boolean hasChanged = false;
 			for (Node n: nodes) {
-				n.revert();
+				if (n.begin()) {
+					hasChanged = true;
+				}
+			}
+			if (hasChanged) {
+				cache.invalidateClean();
 			}
-			throw e;
+		} finally {
+			unlock(lock);
 		}
+	}
+	
+	public void commit(boolean retainValues) {
+		checkOpen();
+		Lock lock = lock();
+		try {
+			//pre-commit: traverse object tree for transitive persistence
+			ogt.traverse();
+		
+			if (isReadOnly && (!cache.getDirtyObjects().isEmpty() || 
+					!cache.getDirtyGenericObjects().isEmpty())) {
+				throw new JDOReadOnlyException("Can not commit changes in a read-only session.");
+			}
+		
+			schemaManager.commit();
+		
+			try {
+				commitInternal();
+				for (Node n: nodes) {
+					//TODO two-phase commit() !!!
+					n.commit();
+				}
+				cache.postCommit(retainValues);
+				for (DurabilityListener l: durabilityListeners) {
+					primary.notifyOnDurable(l);
+				}
+				durabilityListeners.clear();
+				scheduleSync();
+			} catch (JDOUserException e) {
+				//reset sinks
+		        for (ZooClassDef cs: cache.getSchemata()) {
+		            cs.getProvidedContext().getDataSink().reset();
+		            cs.getProvidedContext().getDataDeleteSink().reset();
+		        }		
+				//allow for retry after user exceptions
+				for (Node n: nodes) {
+					n.revert();
+				}
+				throw e;
+			}
         
-		for (CloseableIterator<?> ext: extents.keySet()) {
-		    //TODO
-		    //Refresh extents to allow cross-session-border extents.
-		    //As a result, extents may skip objects or return objects twice,
-		    //but at least they return valid object.
-		    //This problem occurs because extents use pos-indices.
-		    //TODO Ideally we should use a OID based class-index. See design.txt.
-		    ext.refresh();
+			for (CloseableIterator<?> ext: extents.keySet()) {
+			    //TODO
+			    //Refresh extents to allow cross-session-border extents.
+			    //As a result, extents may skip objects or return objects twice,
+			    //but at least they return valid object.
+			    //This problem occurs because extents use pos-indices.
+			    //TODO Ideally we should use a OID based class-index. See design.txt.
+			    ext.refresh();
+			}
+			DBLogger.debugPrintln(2, "FIXME: 2-phase Session.commit()");
+		} finally {
+			unlock(lock);
 		}
-		DBLogger.debugPrintln(2, "FIXME: 2-phase Session.commit()");
 	}
 
 	
@@ -134,6 +227,7 @@ public class Session implements IteratorRegistry {
 		}
 		
 		//First delete
+		notifyPreDelete();
 		for (ZooPCImpl co: cache.getDeletedObjects()) {
 		    if (!co.jdoZooIsDirty()) {
 		    	throw new IllegalStateException("State=");
@@ -147,10 +241,6 @@ public class Session implements IteratorRegistry {
 	                //Ignore instances of deleted classes, there is a dropInstances for them
 	                continue;
 	            }
-				if (co instanceof DeleteCallback) {
-					((DeleteCallback)co).jdoPreDelete();
-				}
-				co.jdoZooGetContext().notifyEvent(co, ZooInstanceEvent.PRE_DELETE);
 	            co.jdoZooGetContext().getDataDeleteSink().delete(co);
 			} else {
 		    	throw new IllegalStateException("State=");
@@ -172,6 +262,14 @@ public class Session implements IteratorRegistry {
         }		
 
         //Then update. This matters for unique indices where deletion must occur before updates.
+		Map<DataSink, ArrayList<ZooPCImpl>> toSerialize = null;
+		HashMap<ZooClassDef, Boolean> isParallel = null;
+		//In multithreaded sessions, we hold the session lock. Worker threads that activate
+		//objects would wait for it forever, so we serialize everything on this thread.
+		if (commitExecutor != null && !isMultithreaded) {
+			toSerialize = new LinkedHashMap<DataSink, ArrayList<ZooPCImpl>>();
+			isParallel = new HashMap<ZooClassDef, Boolean>();
+		}
 		for (ZooPCImpl co: cache.getDirtyObjects()) {
 		    if (!co.jdoZooIsDirty()) {
 		    	//can happen when object are refreshed after being marked dirty? //TODO
@@ -183,9 +281,22 @@ public class Session implements IteratorRegistry {
 					((StoreCallback)co).jdoPreStore();
 				}
 				co.jdoZooGetContext().notifyEvent(co, ZooInstanceEvent.PRE_STORE);
-			    co.jdoZooGetContext().getDataSink().write(co);
+				DataSink sink = co.jdoZooGetContext().getDataSink();
+				if (toSerialize != null && canSerializeInParallel(co, isParallel)) {
+					ArrayList<ZooPCImpl> objs = toSerialize.get(sink);
+					if (objs == null) {
+						objs = new ArrayList<ZooPCImpl>();
+						toSerialize.put(sink, objs);
+					}
+					objs.add(co);
+				} else {
+					sink.write(co);
+				}
 			}
 		}
+		if (toSerialize != null) {
+			writeParallel(toSerialize);
+		}
 
 		//generic objects
 		if (!cache.getDirtyGenericObjects().isEmpty()) {
@@ -212,6 +323,182 @@ public class Session implements IteratorRegistry {
 		}
 	}
 
+	/**
+	 * Call the pre-delete callbacks of all deleted objects, including new objects. Callbacks
+	 * may delete further objects, for example the pages of large collections, so this is
+	 * repeated until no more objects are deleted.
+	 */
+	private void notifyPreDelete() {
+		PrimLongMapLI<ZooPCImpl> notified = new PrimLongMapLI<ZooPCImpl>();
+		ArrayList<ZooPCImpl> toNotify = new ArrayList<ZooPCImpl>();
+		do {
+			toNotify.clear();
+			for (ZooPCImpl co: cache.getDeletedObjects()) {
+				if (!notified.containsKey(co.jdoZooGetOid())) {
+					toNotify.add(co);
+				}
+			}
+			for (ZooPCImpl co: toNotify) {
+				notified.put(co.jdoZooGetOid(), co);
+				if (!co.jdoZooIsDeleted() || co.jdoZooGetClassDef().jdoZooIsDeleted()) {
+					continue;
+				}
+				if (co instanceof DeleteCallback) {
+					((DeleteCallback)co).jdoPreDelete();
+				}
+				co.jdoZooGetContext().notifyEvent(co, ZooInstanceEvent.PRE_DELETE);
+			}
+		} while (!toNotify.isEmpty());
+	}
+
+	/**
+	 * Only objects whose fields are all primitives or Strings are serialized on worker 
+	 * threads. Serializing references, persistent collections and other second class objects
+	 * looks up objects and schemata in the cache, and may activate objects or call user code
+	 * such as hashCode(). This is not thread-safe, so such objects are serialized by the 
+	 * committing thread.
+	 * @param co
+	 * @param isParallel The decisions for the classes that have been checked before.
+	 * @return Whether the object can be serialized on a worker thread.
+	 */
+	private static boolean canSerializeInParallel(ZooPCImpl co, 
+			HashMap<ZooClassDef, Boolean> isParallel) {
+		ZooClassDef def = co.jdoZooGetClassDef();
+		Boolean ret = isParallel.get(def);
+		if (ret == null) {
+			ret = !(co instanceof DBCollection);
+			for (ZooFieldDef f: def.getAllFields()) {
+				if (!f.isPrimitiveType() && !f.isString()) {
+					ret = false;
+					break;
+				}
+			}
+			isParallel.put(def, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Serialize the objects of different classes concurrently. Writing the serialized objects 
+	 * is sequential, because it involves page allocation and index updates.
+	 * This is done in rounds to limit the memory required for serialized objects.
+	 * @param toSerialize Objects to write, grouped by sink.
+	 */
+	private void writeParallel(Map<DataSink, ArrayList<ZooPCImpl>> toSerialize) {
+		ArrayList<DataSink> sinks = new ArrayList<DataSink>();
+		ArrayList<List<ZooPCImpl>> chunks = new ArrayList<List<ZooPCImpl>>();
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int start = 0; ; start += PARALLEL_CHUNK_SIZE) {
+			sinks.clear();
+			chunks.clear();
+			tasks.clear();
+			for (Map.Entry<DataSink, ArrayList<ZooPCImpl>> e: toSerialize.entrySet()) {
+				ArrayList<ZooPCImpl> objs = e.getValue();
+				if (objs.size() <= start) {
+					continue;
+				}
+				final DataSink sink = e.getKey();
+				final List<ZooPCImpl> chunk = 
+						objs.subList(start, Math.min(objs.size(), start + PARALLEL_CHUNK_SIZE));
+				sinks.add(sink);
+				chunks.add(chunk);
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() {
+						sink.serializeToBuffer(chunk);
+						return null;
+					}
+				});
+			}
+			if (sinks.isEmpty()) {
+				return;
+			}
+			
+			if (sinks.size() == 1) {
+				//no need for another thread
+				sinks.get(0).serializeToBuffer(chunks.get(0));
+			} else {
+				try {
+					for (Future<Object> f: commitExecutor.invokeAll(tasks)) {
+						f.get();
+					}
+				} catch (InterruptedException e) {
+					throw new JDOFatalException("Interrupted during commit.", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new JDOFatalException("Error during commit.", e.getCause());
+				}
+			}
+			
+			for (DataSink sink: sinks) {
+				sink.writeBuffered();
+			}
+		}
+	}
+
+	/**
+	 * With group commit, make sure that the committed transactions are forced to disk at the
+	 * latest when the group commit delay has passed, even if there is no further commit.
+	 */
+	private void scheduleSync() {
+		if (groupCommitDelay <= 0 || syncTask != null) {
+			return;
+		}
+		syncTask = getSyncExecutor().schedule(new Runnable() {
+			@Override
+			public void run() {
+				Lock lock = lock();
+				try {
+					syncTask = null;
+					if (isOpen) {
+						for (Node n: nodes) {
+							n.sync();
+						}
+					}
+				} catch (RuntimeException e) {
+					DBLogger.severe("Group commit sync failed: " + e.getMessage());
+				} finally {
+					unlock(lock);
+				}
+			}
+		}, groupCommitDelay, TimeUnit.MILLISECONDS);
+	}
+	
+	private static synchronized ScheduledExecutorService getSyncExecutor() {
+		if (syncExecutor == null) {
+			syncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ZooDB-sync");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return syncExecutor;
+	}
+	
+	private static ExecutorService createCommitExecutor(int nThreads) {
+		if (nThreads <= 1) {
+			return null;
+		}
+		ThreadPoolExecutor ex = new ThreadPoolExecutor(nThreads, nThreads, 
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ZooDB-commit");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		//The threads are reused for all commits of the session. Idle threads terminate, so
+		//sessions that are not closed do not keep them alive.
+		ex.allowCoreThreadTimeOut(true);
+		return ex;
+	}
+	
 	/**
 	 * Check the fields defined in this class.
 	 * @param schema
@@ -233,44 +520,85 @@ public class Session implements IteratorRegistry {
 
 	public void rollback() {
 		checkOpen();
-		schemaManager.rollback();
+		Lock lock = lock();
+		try {
+			schemaManager.rollback();
+			durabilityListeners.clear();
 		
-		for (Node n: nodes) {
-			n.rollback();
-			//TODO two-phase rollback() ????
+			for (Node n: nodes) {
+				n.rollback();
+				//TODO two-phase rollback() ????
+			}
+			cache.rollback();
+		} finally {
+			unlock(lock);
 		}
-		cache.rollback();
 	}
 	
-	public void makePersistent(ZooPCImpl pc) {
+	/**
+	 * Register a listener that is called when the current transaction has been committed
+	 * and forced to disk.
+	 * @param l
+	 */
+	public void addDurabilityListener(DurabilityListener l) {
 		checkOpen();
-		if (pc.jdoZooIsPersistent()) {
-			if (pc.jdoZooGetPM() != pm) {
-				throw new JDOUserException("The object belongs to a different persistence manager.");
+		durabilityListeners.add(l);
+	}
+
+	/**
+	 * Force all committed transactions to disk.
+	 */
+	public void sync() {
+		checkOpen();
+		Lock lock = lock();
+		try {
+			for (Node n: nodes) {
+				n.sync();
 			}
-			if (pc.jdoZooIsDeleted()) {
-				throw new JDOUserException("The object has been deleted!");
+		} finally {
+			unlock(lock);
+		}
+	}
+	
+	public void makePersistent(ZooPCImpl pc) {
+		checkOpen();
+		Lock lock = lock();
+		try {
+			if (pc.jdoZooIsPersistent()) {
+				if (pc.jdoZooGetPM() != pm) {
+					throw new JDOUserException("The object belongs to a different persistence manager.");
+				}
+				if (pc.jdoZooIsDeleted()) {
+					throw new JDOUserException("The object has been deleted!");
+				}
+				//nothing to do, is already persistent
+				return; 
 			}
-			//nothing to do, is already persistent
-			return; 
+			primary.makePersistent(pc);
+		} finally {
+			unlock(lock);
 		}
-		primary.makePersistent(pc);
 	}
 
 	public void makeTransient(ZooPCImpl pc) {
 		checkOpen();
-		if (!pc.jdoZooIsPersistent()) {
-			//already transient
-			return;
-		}
-		if (pc.jdoZooGetPM() != pm) {
-			throw new JDOUserException("The object belongs to a different persistence manager.");
-		}
-		if (pc.jdoZooIsDirty()) {
-			throw new JDOUserException("Dirty objects can not be made transient.");
+		Lock lock = lock();
+		try {
+			if (!pc.jdoZooIsPersistent()) {
+				//already transient
+				return;
+			}
+			if (pc.jdoZooGetPM() != pm) {
+				throw new JDOUserException("The object belongs to a different persistence manager.");
+			}
+			if (pc.jdoZooIsDirty()) {
+				throw new JDOUserException("Dirty objects can not be made transient.");
+			}
+			//remove from cache
+			cache.makeTransient((ZooPCImpl) pc);
+		} finally {
+			unlock(lock);
 		}
-		//remove from cache
-		cache.makeTransient((ZooPCImpl) pc);
 	}
 
 	public static void assertOid(long oid) {
@@ -286,17 +614,38 @@ public class Session implements IteratorRegistry {
 
 	public MergingIterator<ZooPCImpl> loadAllInstances(Class<?> cls, 
 			boolean subClasses, 
+            boolean loadFromCache) {
+		return loadAllInstances(cls, subClasses, null, loadFromCache);
+	}
+
+	/**
+	 * Load all instances of a class. If a filter is given, stored objects that are known not
+	 * to match the filter are skipped without being de-serialized. Returned objects may still
+	 * not match the filter.
+	 * @param cls
+	 * @param subClasses
+	 * @param filter The query filter, may be 'null'
+	 * @param loadFromCache
+	 * @return Iterator over all (candidate) instances
+	 */
+	public MergingIterator<ZooPCImpl> loadAllInstances(Class<?> cls, 
+			boolean subClasses, QueryTreeNode filter, 
             boolean loadFromCache) {
 		checkOpen();
-		MergingIterator<ZooPCImpl> iter = 
-			new MergingIterator<ZooPCImpl>(this);
-        ZooClassDef def = cache.getSchema(cls, primary);
-		loadAllInstances(def.getVersionProxy(), subClasses, iter, loadFromCache);
-		if (loadFromCache) {
-			//also add 'new' instances
-			iter.add(cache.iterator(def, subClasses, ObjectState.PERSISTENT_NEW));
+		Lock lock = lock();
+		try {
+			MergingIterator<ZooPCImpl> iter = 
+				new MergingIterator<ZooPCImpl>(this);
+			ZooClassDef def = cache.getSchema(cls, primary);
+			loadAllInstances(def.getVersionProxy(), subClasses, filter, iter, loadFromCache);
+			if (loadFromCache) {
+				//also add 'new' instances
+				iter.add(cache.iterator(def, subClasses, ObjectState.PERSISTENT_NEW));
+			}
+			return iter;
+		} finally {
+			unlock(lock);
 		}
-		return iter;
 	}
 
 	/**
@@ -305,58 +654,71 @@ public class Session implements IteratorRegistry {
 	 * @param subClasses
 	 * @param iter
 	 */
-	private void loadAllInstances(ZooClassProxy def, boolean subClasses, 
+	private void loadAllInstances(ZooClassProxy def, boolean subClasses, QueryTreeNode filter,
 			MergingIterator<ZooPCImpl> iter, boolean loadFromCache) {
 		for (Node n: nodes) {
-			iter.add(n.loadAllInstances(def, loadFromCache));
+			if (filter == null) {
+				iter.add(n.loadAllInstances(def, loadFromCache));
+			} else {
+				iter.add(n.loadAllInstances(def, filter, loadFromCache));
+			}
 		}
 		
 		if (subClasses) {
 			for (ZooClassProxy sub: def.getSubProxies()) {
-				loadAllInstances(sub, true, iter, loadFromCache);
+				loadAllInstances(sub, true, filter, iter, loadFromCache);
 			}
 		}
 	}
 
-
 	public ZooHandleImpl getHandle(long oid) {
 		checkOpen();
-		GenericObject gob = cache.getGeneric(oid);
-		if (gob != null) {
-			return gob.getOrCreateHandle();
-		}
+		Lock lock = lock();
+		try {
+			GenericObject gob = cache.getGeneric(oid);
+			if (gob != null) {
+				return gob.getOrCreateHandle();
+			}
 		
-		ZooPCImpl co = cache.findCoByOID(oid);
-        if (co != null) {
-        	if (co.jdoZooIsNew() || co.jdoZooIsDirty()) {
-        		//TODO  the problem here is the initialisation of the GO, which would require
-        		//a way to serialize PCs into memory and deserialize them into an GO
-        		throw new UnsupportedOperationException("Handles on new or dirty Java PC objects " +
-        				"are not allowed. Please call commit() first or create handles with " +
-        				"ZooClass.newInstance() instead. OID: " + Util.getOidAsString(co));
-        	}
-        	ZooClassDef schema = co.jdoZooGetClassDef();
-        	GenericObject go = co.jdoZooGetNode().readGenericObject(schema, oid);
-        	return go.getOrCreateHandle();
-        }
+			ZooPCImpl co = cache.findCoByOID(oid);
+	        if (co != null) {
+	        	if (co.jdoZooIsNew() || co.jdoZooIsDirty()) {
+	        		//TODO  the problem here is the initialisation of the GO, which would require
+	        		//a way to serialize PCs into memory and deserialize them into an GO
+	        		throw new UnsupportedOperationException("Handles on new or dirty Java PC objects " +
+	        				"are not allowed. Please call commit() first or create handles with " +
+	        				"ZooClass.newInstance() instead. OID: " + Util.getOidAsString(co));
+	        	}
+	        	ZooClassDef schema = co.jdoZooGetClassDef();
+	        	GenericObject go = co.jdoZooGetNode().readGenericObject(schema, oid);
+	        	return go.getOrCreateHandle();
+	        }
 
-        try {
-	        for (Node n: nodes) {
-	        	//We should load the object only as byte[], if at all...
-	        	ZooClassProxy schema = getSchemaManager().locateSchemaForObject(oid, n);
-	        	GenericObject go = n.readGenericObject(schema.getSchemaDef(), oid);
-	    		return go.getOrCreateHandle();
+	        try {
+		        for (Node n: nodes) {
+		        	//We should load the object only as byte[], if at all...
+		        	ZooClassProxy schema = getSchemaManager().locateSchemaForObject(oid, n);
+		        	GenericObject go = n.readGenericObject(schema.getSchemaDef(), oid);
+		    		return go.getOrCreateHandle();
+		        }
+	        } catch (JDOObjectNotFoundException e) {
+	        	//ignore, return null
 	        }
-        } catch (JDOObjectNotFoundException e) {
-        	//ignore, return null
-        }
-        return null;
+	        return null;
+		} finally {
+			unlock(lock);
+		}
 	}
 
 	public Object refreshObject(Object pc) {
-        ZooPCImpl co = checkObject(pc);
-        co.jdoZooGetNode().refreshObject(co);
-        return pc;
+        Lock lock = lock();
+        try {
+	        ZooPCImpl co = checkObject(pc);
+	        co.jdoZooGetNode().refreshObject(co);
+	        return pc;
+        } finally {
+        	unlock(lock);
+        }
 	}
 	
 	/**
@@ -387,34 +749,72 @@ public class Session implements IteratorRegistry {
 	public Object getObjectById(Object arg0) {
 		checkOpen();
         long oid = (Long) arg0;
-        ZooPCImpl co = cache.findCoByOID(oid);
-        if (co != null) {
-            if (co.jdoZooIsStateHollow() && !co.jdoZooIsDeleted()) {
-                co.jdoZooGetNode().refreshObject(co);
-            }
-            return co;
-        }
-
-        //find it
-        for (Node n: nodes) {
-        	co = n.loadInstanceById(oid);
-        	if (co != null) {
-        		break;
+        if (isMultithreaded) {
+        	//Loaded objects can be looked up concurrently
+        	ZooPCImpl co;
+        	rwLock.readLock().lock();
+        	try {
+        		co = cache.findCoByOID(oid);
+        	} finally {
+        		rwLock.readLock().unlock();
+        	}
+        	if (co != null && co.jdoZooIsLoaded()) {
+        		return co;
         	}
         }
-
-        return co;
+        Lock lock = lock();
+        try {
+	        ZooPCImpl co = cache.findCoByOID(oid);
+	        if (co != null) {
+	            if (co.jdoZooIsStateHollow() && !co.jdoZooIsDeleted()) {
+	                co.jdoZooGetNode().refreshObject(co);
+	            }
+	            return co;
+	        }
+	
+	        //find it
+	        for (Node n: nodes) {
+	        	co = n.loadInstanceById(oid);
+	        	if (co != null) {
+	        		break;
+	        	}
+	        }
+	
+	        return co;
+        } finally {
+        	unlock(lock);
+        }
 	}
 	
 	public Object[] getObjectsById(Collection<? extends Object> arg0) {
 		checkOpen();
-		Object[] res = new Object[arg0.size()];
-		int i = 0;
-		for ( Object obj: arg0 ) {
-			res[i] = getObjectById(obj);
-			i++;
+		Lock lock = lock();
+		try {
+			//load all missing and hollow objects in one batch
+			long[] oids = new long[arg0.size()];
+			int n = 0;
+			for (Object obj: arg0) {
+				long oid = (Long) obj;
+				ZooPCImpl co = cache.findCoByOID(oid);
+				if (co == null || (co.jdoZooIsStateHollow() && !co.jdoZooIsDeleted())) {
+					oids[n++] = oid;
+				}
+			}
+			if (n > 0) {
+				//TODO other nodes
+				getPrimaryNode().loadInstancesById(oids, n);
+			}
+		
+			Object[] res = new Object[arg0.size()];
+			int i = 0;
+			for ( Object obj: arg0 ) {
+				res[i] = getObjectById(obj);
+				i++;
+			}
+			return res;
+		} finally {
+			unlock(lock);
 		}
-		return res;
 	}
 
 	/**
@@ -423,29 +823,43 @@ public class Session implements IteratorRegistry {
 	 */
 	public boolean isOidUsed(long oid) {
 		checkOpen();
-		//TODO we could also just compare it with max-value in the OID manager...
-        ZooPCImpl co = cache.findCoByOID(oid);
-        if (co != null) {
-        	return true;
-        }
-        GenericObject go = cache.getGeneric(oid);
-        if (go != null) {
-        	return true;
-        }
-        //find it
-        for (Node n: nodes) {
-        	if (n.checkIfObjectExists(oid)) {
-        		return true;
-        	}
-        }
-        return false;
+		Lock lock = lock();
+		try {
+			//TODO we could also just compare it with max-value in the OID manager...
+	        ZooPCImpl co = cache.findCoByOID(oid);
+	        if (co != null) {
+	        	return true;
+	        }
+	        GenericObject go = cache.getGeneric(oid);
+	        if (go != null) {
+	        	return true;
+	        }
+	        //find it
+	        for (Node n: nodes) {
+	        	if (n.checkIfObjectExists(oid)) {
+	        		return true;
+	        	}
+	        }
+	        return false;
+		} finally {
+			unlock(lock);
+		}
 	}
 	
 
 	public void deletePersistent(Object pc) {
 		checkOpen();
-		ZooPCImpl co = checkObject(pc);
-		co.jdoZooMarkDeleted();
+		Lock lock = lock();
+		try {
+			ZooPCImpl co = checkObject(pc);
+			if (co instanceof DeleteCallback) {
+				//jdoPreDelete() is called during commit, it may need the field values
+				co.zooActivateRead();
+			}
+			co.jdoZooMarkDeleted();
+		} finally {
+			unlock(lock);
+		}
 	}
 
 
@@ -457,12 +871,27 @@ public class Session implements IteratorRegistry {
 
 	public void close() {
 		checkOpen();
-		for (Node n: nodes) {
-			n.closeConnection();
+		Lock lock = lock();
+		try {
+			try {
+				for (Node n: nodes) {
+					n.closeConnection();
+				}
+				cache.close();
+			} finally {
+				if (commitExecutor != null) {
+					commitExecutor.shutdown();
+				}
+			}
+			if (syncTask != null) {
+				syncTask.cancel(false);
+				syncTask = null;
+			}
+			TransientField.deregisterPm(pm);
+			isOpen = false;
+		} finally {
+			unlock(lock);
 		}
-		cache.close();
-		TransientField.deregisterPm(pm);
-		isOpen = false;
 	}
 
 
@@ -474,6 +903,70 @@ public class Session implements IteratorRegistry {
     }
 
 
+    /**
+     * In multithreaded sessions, objects that are evicted keep their field values until they
+     * are loaded again, because other threads may read them without locking.
+     * @param isMultithreaded Whether the session may be used by several threads concurrently.
+     */
+    public void setMultithreaded(boolean isMultithreaded) {
+    	this.isMultithreaded = isMultithreaded;
+    }
+
+
+    public boolean isMultithreaded() {
+    	return isMultithreaded;
+    }
+
+
+    /**
+     * Acquire the session lock. This is only required in multithreaded mode or with group 
+     * commit, where the sync thread may access the database, otherwise it does nothing. 
+     * Every call has to be followed by unlock() with the returned lock.
+     * @return The acquired lock or null if no lock was acquired.
+     */
+    public Lock lock() {
+    	if (isMultithreaded || groupCommitDelay > 0) {
+    		Lock lock = rwLock.writeLock();
+    		lock.lock();
+    		return lock;
+    	}
+    	return null;
+    }
+
+
+    /**
+     * In multithreaded mode, objects must only be evicted or loaded while the session lock
+     * is held, because other threads read loaded objects without locking.
+     * @throws IllegalStateException if the current thread does not hold the session lock.
+     */
+    public void checkLocked() {
+    	if (isMultithreaded && !rwLock.isWriteLockedByCurrentThread()) {
+    		throw new IllegalStateException("The session lock is not held by this thread.");
+    	}
+    }
+
+
+    /**
+     * Release the session lock, see lock().
+     * @param lock The lock that was returned by lock(), may be null. 
+     */
+    public void unlock(Lock lock) {
+    	//This also works if the mode has changed in the meantime
+    	if (lock != null) {
+    		lock.unlock();
+    	}
+    }
+
+
+    /**
+     * @return Whether this session is read-only. Read-only sessions can be used concurrently
+     * with a writing session on the same database.
+     */
+    public boolean isReadOnly() {
+    	return isReadOnly;
+    }
+
+
     public PersistenceManagerImpl getPersistenceManager() {
 		checkOpen();
         return pm;
@@ -488,24 +981,39 @@ public class Session implements IteratorRegistry {
 
     public void evictAll() {
 		checkOpen();
-        cache.evictAll();
+		Lock lock = lock();
+		try {
+	        cache.evictAll();
+		} finally {
+			unlock(lock);
+		}
     }
 
 
     public void evictAll(Object[] pcs) {
 		checkOpen();
-    	for (Object obj: pcs) {
-    		ZooPCImpl pc = (ZooPCImpl) obj;
-    		if (!pc.jdoZooIsDirty()) {
-    			pc.jdoZooEvict();
-    		}
-    	}
+		Lock lock = lock();
+		try {
+	    	for (Object obj: pcs) {
+	    		ZooPCImpl pc = (ZooPCImpl) obj;
+	    		if (!pc.jdoZooIsDirty()) {
+	    			pc.jdoZooEvict();
+	    		}
+	    	}
+		} finally {
+			unlock(lock);
+		}
     }
 
 
     public void evictAll(boolean subClasses, Class<?> cls) {
 		checkOpen();
-        cache.evictAll(subClasses, cls);
+		Lock lock = lock();
+		try {
+	        cache.evictAll(subClasses, cls);
+		} finally {
+			unlock(lock);
+		}
     }
 
 
@@ -532,14 +1040,36 @@ public class Session implements IteratorRegistry {
 
     public Collection<ZooPCImpl> getCachedObjects() {
 		checkOpen();
-        HashSet<ZooPCImpl> ret = new HashSet<ZooPCImpl>();
-        for (ZooPCImpl o: cache.getAllObjects()) {
-            ret.add(o);
-        }
-        return ret;
+		Lock lock = lock();
+		try {
+	        HashSet<ZooPCImpl> ret = new HashSet<ZooPCImpl>();
+	        for (ZooPCImpl o: cache.getAllObjects()) {
+	            ret.add(o);
+	        }
+	        return ret;
+		} finally {
+			unlock(lock);
+		}
     }
 
 
+    /**
+     * @return The current epoch of the cache. Clean objects from previous epochs are treated
+     * as hollow.
+     */
+    public int getEpoch() {
+    	return epoch;
+    }
+    
+    
+    /**
+     * Internal, start a new epoch of the cache.
+     */
+    public void nextEpoch() {
+    	epoch++;
+    }
+    
+    
     /**
      * Internal, don't call from outside!
      * @return The cache
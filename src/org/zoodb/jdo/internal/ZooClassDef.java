@@ -66,6 +66,7 @@ public class ZooClassDef extends ZooPCImpl {
 	private final ArrayList<ZooFieldDef> localFields = new ArrayList<ZooFieldDef>(10);
 	private transient ZooFieldDef[] allFields = new ZooFieldDef[0];
 	private transient HashMap<String, ZooFieldDef> fieldBuffer = null;
+	private transient Field[] refFields = null;
 	private transient PCContext providedContext = null;
 	
 	private long prevVersionOid = 0;
@@ -380,6 +381,7 @@ public class ZooClassDef extends ZooPCImpl {
 	}
 
 	public void associateJavaTypes() {
+		refFields = null;
 		if (cls != null) {
 			if (!className.equals(ZooClassDef.class.getName()) && 
 					!className.equals(ZooPCImpl.class.getName())) {
@@ -446,6 +448,48 @@ public class ZooClassDef extends ZooPCImpl {
 		return allFields;
 	}
 
+	/**
+	 * Returns the Java fields that may reference other objects. These are followed during 
+	 * commit to find objects that become persistent by reachability. Fields of primitive,
+	 * String, Date and Number types are omitted.
+	 * @return The reference fields of this class and its super classes, or <code>null</code>
+	 * if the schema is not associated with a compatible Java class. 
+	 */
+	public Field[] getReferenceFields() {
+		if (refFields != null) {
+			return refFields;
+		}
+		if (!isJavaCompatible || cls == null) {
+			return null;
+		}
+		ArrayList<Field> ret = new ArrayList<Field>();
+		for (ZooFieldDef f: allFields) {
+			Field jf = f.getJavaField();
+			if (jf == null) {
+				return null;
+			}
+			switch (f.getJdoType()) {
+			case REFERENCE:
+			case SCO:
+				ret.add(jf);
+				break;
+			case ARRAY:
+				Class<?> cType = jf.getType();
+				while (cType.isArray()) {
+					cType = cType.getComponentType();
+				}
+				if (!cType.isPrimitive() && cType != String.class) {
+					ret.add(jf);
+				}
+				break;
+			default:
+				//primitive, String, Date, Number, BigInteger, BigDecimal
+			}
+		}
+		refFields = ret.toArray(new Field[ret.size()]);
+		return refFields;
+	}
+
 	public ZooClassProxy getVersionProxy() {
 		return versionProxy;
 	}
@@ -512,6 +556,7 @@ public class ZooClassDef extends ZooPCImpl {
 		}
 		
 		this.allFields = allFields.toArray(new ZooFieldDef[allFields.size()]);
+		this.refFields = null;
 	}
 
 	public ZooFieldDef getField(String attrName) {
@@ -553,6 +598,7 @@ public class ZooClassDef extends ZooPCImpl {
 		className = newName;
 		cls = null;
 		fieldBuffer = null;
+		refFields = null;
 		associateJavaTypes();
 	}
     
@@ -30,7 +30,6 @@ import javax.jdo.JDOUserException;
 
 import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.internal.SerializerTools.PRIMITIVE;
-import org.zoodb.jdo.internal.server.index.BitTools;
 
 public class ZooFieldDef {
 
@@ -410,8 +409,9 @@ public class ZooFieldDef {
 			case BOOLEAN: return 0;
 			case BYTE: return Byte.MIN_VALUE;
 			case CHAR: return Character.MIN_VALUE;
-			case DOUBLE: return BitTools.toSortableLong(Double.MIN_VALUE);
-			case FLOAT: return BitTools.toSortableLong(Float.MIN_VALUE);
+			//negative values and infinity
+			case DOUBLE: return Long.MIN_VALUE;
+			case FLOAT: return Long.MIN_VALUE;
 			case INT: return Integer.MIN_VALUE;
 			case LONG: return Long.MIN_VALUE;
 			case SHORT: return Short.MIN_VALUE;
@@ -432,8 +432,8 @@ public class ZooFieldDef {
 			case BOOLEAN: return 0;
 			case BYTE: return Byte.MAX_VALUE;
 			case CHAR: return Character.MAX_VALUE;
-			case DOUBLE: return BitTools.toSortableLong(Double.MAX_VALUE);
-			case FLOAT: return BitTools.toSortableLong(Float.MAX_VALUE);
+			case DOUBLE: return Long.MAX_VALUE;
+			case FLOAT: return Long.MAX_VALUE;
 			case INT: return Integer.MAX_VALUE;
 			case LONG: return Long.MAX_VALUE;
 			case SHORT: return Short.MAX_VALUE;
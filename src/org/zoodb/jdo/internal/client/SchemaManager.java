@@ -27,6 +27,10 @@ import javax.jdo.JDOObjectNotFoundException;
 import javax.jdo.JDOUserException;
 
 import org.zoodb.api.impl.ZooPCImpl;
+import org.zoodb.jdo.api.DBLargeVector;
+import org.zoodb.jdo.api.DBLargeVectorPage;
+import org.zoodb.jdo.api.DBTreeMap;
+import org.zoodb.jdo.api.DBTreeMapPage;
 import org.zoodb.jdo.api.ZooClass;
 import org.zoodb.jdo.internal.ZooClassProxy;
 import org.zoodb.jdo.internal.Node;
@@ -50,6 +54,28 @@ public class SchemaManager {
 		this.cache = cache;
 	}
 	
+	/**
+	 * The schemata of these persistent collections are not part of a new database. They are
+	 * created when the first instance is made persistent, independent of the 
+	 * auto-create-schema setting. This way databases of earlier versions, which do not have
+	 * these schemata, can use the collections as well.
+	 * @param cls
+	 * @return Whether the schema is created when the first instance is made persistent.
+	 */
+	public static boolean isCreatedOnDemand(Class<?> cls) {
+		return cls == DBLargeVector.class || cls == DBTreeMap.class || isInternal(cls);
+	}
+	
+	/**
+	 * The pages of persistent collections are internal classes. Their schemata are not 
+	 * returned by {@link #getAllSchemata(boolean)}, unless requested.
+	 * @param cls
+	 * @return Whether the class is internal.
+	 */
+	private static boolean isInternal(Class<?> cls) {
+		return cls == DBLargeVectorPage.class || cls == DBTreeMapPage.class;
+	}
+	
 	public boolean isSchemaDefined(Class<?> cls, Node node) {
 		return (locateClassDefinition(cls, node) != null);
 	}
@@ -253,10 +279,15 @@ public class SchemaManager {
 		ops.add(new SchemaOperation.SchemaRename(cache, def, newName));
 	}
 
-    public Collection<ZooClass> getAllSchemata() {
+    /**
+     * @param includeInternal Whether to include the schemata of internal classes. Tools 
+     * such as the XML export need these to process all objects. 
+     * @return All schemata that are not deleted.
+     */
+    public Collection<ZooClass> getAllSchemata(boolean includeInternal) {
         ArrayList<ZooClass> list = new ArrayList<ZooClass>();
         for (ZooClassDef def: cache.getSchemata()) {
-            if (!def.jdoZooIsDeleted()) {
+            if (!def.jdoZooIsDeleted() && (includeInternal || !isInternal(def.getJavaClass()))) {
                 list.add( getSchemaProxy(def) );
             }
         }
@@ -30,13 +30,13 @@ import javax.jdo.ObjectState;
 
 import org.zoodb.api.ZooInstanceEvent;
 import org.zoodb.api.impl.ZooPCImpl;
+import org.zoodb.jdo.api.ZooConfig;
 import org.zoodb.jdo.internal.GenericObject;
 import org.zoodb.jdo.internal.Node;
 import org.zoodb.jdo.internal.Session;
 import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.client.AbstractCache;
 import org.zoodb.jdo.internal.util.CloseableIterator;
-import org.zoodb.jdo.internal.util.DBLogger;
 import org.zoodb.jdo.internal.util.PrimLongMapLI;
 
 public class ClientSessionCache implements AbstractCache {
@@ -74,8 +74,21 @@ public class ClientSessionCache implements AbstractCache {
 
 	private ZooClassDef metaSchema;
 	
+	/**
+	 * Clean objects in CLOCK order, used to limit the number of clean objects in the cache.
+	 * The list may contain objects that are no longer clean, these are removed when the clock 
+	 * hand passes them. It also contains stale objects from previous epochs, which still hold
+	 * their field values until they are evicted.
+	 */
+	private final ArrayList<ZooPCImpl> cleanObjects = new ArrayList<ZooPCImpl>();
+	private final int maxCleanObjects;
+	private int clockHand = 0;
+	private boolean hasStaleObjects = false;
+	private int statNEvicted = 0;
+	
 	public ClientSessionCache(Session session) {
 		this.session = session;
+		this.maxCleanObjects = ZooConfig.getClientCacheSize();
 		ZooClassDef zpc = ZooClassDef.bootstrapZooPCImpl();
 		metaSchema = ZooClassDef.bootstrapZooClassDef();
 		metaSchema.associateFields();
@@ -243,8 +256,28 @@ public class ClientSessionCache implements AbstractCache {
 		return schemata.get(schemaOid);
 	}
 
+	/**
+	 * Invalidate all clean objects, for example because the session now sees a newer 
+	 * database state. The objects are evicted lazily.
+	 */
+	public void invalidateClean() {
+		newEpoch();
+	}
+
+	/**
+	 * Start a new epoch. Clean objects remain in the CLOCK list, they are the first to be 
+	 * evicted when the cache size is exceeded.
+	 */
+	private void newEpoch() {
+		session.nextEpoch();
+		hasStaleObjects = !cleanObjects.isEmpty();
+	}
+
 	/**
 	 * Clean out the cache after commit.
+	 * Without retainValues, only the committed objects are evicted here. All other clean 
+	 * objects are invalidated by starting a new epoch, they are evicted lazily when they are 
+	 * accessed or when the cache size is exceeded.
 	 * TODO keep hollow objects? E.g. references to correct, e.t.c!
 	 */
 	public void postCommit(boolean retainValues) {
@@ -264,18 +297,18 @@ public class ClientSessionCache implements AbstractCache {
 				}
 			}
 		} else {
-			if (objs.size() > 100000) {
-				DBLogger.debugPrintln(0, "Cache is getting large. Consider retainValues=true"
-						+ " to speed up and avoid expensive eviction.");
-			}
-            for (ZooPCImpl co: objs.values()) {
-                if (retainValues || co instanceof ZooClassDef) {
+            for (ZooPCImpl co: dirtyObjects) {
+            	if (co.jdoZooIsDeleted()) {
+            		continue;
+            	}
+                if (co instanceof ZooClassDef) {
                     co.jdoZooMarkClean();
                 } else {
                     co.jdoZooEvict();
                 }
                 co.jdoZooGetContext().notifyEvent(co, ZooInstanceEvent.POST_STORE);
             }
+            newEpoch();
 		}
 		dirtyObjects.clear();
 		deletedObjects.clear();
@@ -348,6 +381,7 @@ public class ClientSessionCache implements AbstractCache {
 
     public void close() {
         objs.clear();
+        clearCleanObjects();
         schemata.clear();
         nodeSchemata.clear();
     }
@@ -359,6 +393,7 @@ public class ClientSessionCache implements AbstractCache {
                 co.jdoZooEvict();
             }
         }
+        clearCleanObjects();
     }
 
     public void evictAll(boolean subClasses, Class<?> cls) {
@@ -460,6 +495,106 @@ public class ClientSessionCache implements AbstractCache {
 		return dirtyObjects;
 	}
 
+	/**
+	 * Called whenever an object becomes clean, for example after it has been loaded. 
+	 * @param pc
+	 */
+	public void notifyClean(ZooPCImpl pc) {
+		//In multithreaded sessions, other threads may be reading the objects without locking
+		if (maxCleanObjects <= 0 || pc instanceof ZooClassDef || session.isMultithreaded()) {
+			return;
+		}
+		pc.jdoZooSetAccessed();
+		if (pc.jdoZooIsInCleanList()) {
+			return;
+		}
+		pc.jdoZooSetInCleanList(true);
+		cleanObjects.add(pc);
+		if (cleanObjects.size() > maxCleanObjects) {
+			evictClean(pc);
+		}
+	}
+	
+	/**
+	 * Evict clean objects until the number of clean objects is within the limit.
+	 * @param current The object that is currently being loaded, it is never evicted.
+	 */
+	private void evictClean(ZooPCImpl current) {
+		if (hasStaleObjects) {
+			evictStale();
+			if (cleanObjects.size() <= maxCleanObjects) {
+				return;
+			}
+		}
+		//Every object is visited at most twice: the first visit clears the reference bit.
+		int nSteps = 2 * cleanObjects.size() + 1;
+		while (cleanObjects.size() > maxCleanObjects && nSteps-- > 0) {
+			if (clockHand >= cleanObjects.size()) {
+				clockHand = 0;
+			}
+			ZooPCImpl co = cleanObjects.get(clockHand);
+			if (!co.jdoZooHasState(ObjectState.PERSISTENT_CLEAN)) {
+				//dirty, deleted, hollow or transient
+				removeClean(clockHand);
+				continue;
+			}
+			if (co == current || co.jdoZooClearAccessed()) {
+				clockHand++;
+				continue;
+			}
+			removeClean(clockHand);
+			co.jdoZooEvict();
+			statNEvicted++;
+		}
+	}
+
+	/**
+	 * Remove all objects from the CLOCK list that are no longer clean. Stale objects are 
+	 * evicted by this, releasing their field values. 
+	 */
+	private void evictStale() {
+		//Backwards, because removeClean() moves the last entry into the freed position
+		for (int i = cleanObjects.size() - 1; i >= 0; i--) {
+			ZooPCImpl co = cleanObjects.get(i);
+			co.jdoZooCheckEpoch();
+			if (!co.jdoZooHasState(ObjectState.PERSISTENT_CLEAN)) {
+				//dirty, deleted, hollow, transient or stale
+				removeClean(i);
+			}
+		}
+		hasStaleObjects = false;
+	}
+
+	private void removeClean(int pos) {
+		cleanObjects.get(pos).jdoZooSetInCleanList(false);
+		int last = cleanObjects.size() - 1;
+		cleanObjects.set(pos, cleanObjects.get(last));
+		cleanObjects.remove(last);
+	}
+
+	private void clearCleanObjects() {
+		for (int i = 0; i < cleanObjects.size(); i++) {
+			cleanObjects.get(i).jdoZooSetInCleanList(false);
+		}
+		cleanObjects.clear();
+		hasStaleObjects = false;
+	}
+
+	/**
+	 * @return The number of tracked clean objects. This is only maintained if the cache
+	 * size is limited.
+	 */
+	public int statsGetCleanCount() {
+		return cleanObjects.size();
+	}
+	
+	/**
+	 * @return The number of objects that were evicted because the cache size was exceeded. 
+	 */
+	public int statsGetEvictionCount() {
+		return statNEvicted;
+	}
+	
 	public void notifyDelete(ZooPCImpl pc) {
 		deletedObjects.put(pc.jdoZooGetOid(), pc);
 	}
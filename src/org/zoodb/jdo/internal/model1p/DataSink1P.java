@@ -23,6 +23,7 @@ package org.zoodb.jdo.internal.model1p;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.jdo.JDOFatalDataStoreException;
 import javax.jdo.JDOUserException;
@@ -68,6 +69,11 @@ public class DataSink1P implements DataSink {
     private int bufferGOCnt = 0;
     private boolean isStarted = false;
     private final ArrayList<Pair>[] fieldUpdateBuffer;
+    //for serialization into memory, created on demand
+    private ObjectWriterBuffer owBuffer = null;
+    private DataSerializer dsBuffer = null;
+    private List<ZooPCImpl> bufferedObjs = null;
+    private final AbstractCache cache;
 
     private static class Pair {
     	private final long oid;
@@ -85,6 +91,7 @@ public class DataSink1P implements DataSink {
         this.fieldUpdateBuffer = new ArrayList[cls.getAllFields().length];
         this.ds = new DataSerializer(out, cache, node);
         this.ow = out;
+        this.cache = cache;
     }
 
     private void preWrite() {
@@ -104,6 +111,10 @@ public class DataSink1P implements DataSink {
         //write object
         ds.writeObject(obj, cls);
 
+        updateIndices(obj);
+    }
+
+    private void updateIndices(ZooPCImpl obj) {
         //updated index
         //This is buffered to reduce look-ups to find field indices.
         buffer[bufferCnt++] = obj;
@@ -112,6 +123,31 @@ public class DataSink1P implements DataSink {
         }
     }
 
+    @Override
+    public void serializeToBuffer(List<ZooPCImpl> objs) {
+        if (owBuffer == null) {
+            owBuffer = new ObjectWriterBuffer();
+            dsBuffer = new DataSerializer(owBuffer, cache, node);
+        }
+        for (ZooPCImpl obj: objs) {
+            dsBuffer.writeObject(obj, cls);
+        }
+        bufferedObjs = objs;
+    }
+
+    @Override
+    public void writeBuffered() {
+        if (bufferedObjs == null) {
+            return;
+        }
+        preWrite();
+        owBuffer.writeTo(ow);
+        for (ZooPCImpl obj: bufferedObjs) {
+            updateIndices(obj);
+        }
+        bufferedObjs = null;
+    }
+
     @Override
     public void writeGeneric(GenericObject obj) {
         preWrite();
@@ -141,6 +177,10 @@ public class DataSink1P implements DataSink {
             }
             isStarted = false;
         }
+        if (owBuffer != null) {
+            owBuffer.clear();
+            bufferedObjs = null;
+        }
     }
     
     /* (non-Javadoc)
@@ -26,6 +26,7 @@ import java.util.Iterator;
 import javax.jdo.JDOUserException;
 
 import org.zoodb.api.impl.ZooPCImpl;
+import org.zoodb.jdo.api.DurabilityListener;
 import org.zoodb.jdo.api.impl.DBStatistics.STATS;
 import org.zoodb.jdo.internal.DataDeleteSink;
 import org.zoodb.jdo.internal.DataSink;
@@ -37,7 +38,9 @@ import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.ZooClassProxy;
 import org.zoodb.jdo.internal.ZooFieldDef;
 import org.zoodb.jdo.internal.ZooHandleImpl;
+import org.zoodb.jdo.internal.client.SchemaManager;
 import org.zoodb.jdo.internal.client.session.ClientSessionCache;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
 import org.zoodb.jdo.internal.server.DiskAccess;
 import org.zoodb.jdo.internal.server.DiskAccessOneFile;
 import org.zoodb.jdo.internal.server.index.PagedOidIndex;
@@ -65,7 +68,7 @@ public class Node1P extends Node {
 	
 	@Override
 	public void connect() {
-		disk = new DiskAccessOneFile(this, commonCache);
+		disk = new DiskAccessOneFile(this, commonCache, commonCache.getSession().isReadOnly());
 
 		//load all schema data
 		Collection<ZooClassDef> defs = disk.readSchemaAll();
@@ -101,10 +104,25 @@ public class Node1P extends Node {
 		return disk;
 	}
 
+	@Override
+	public boolean begin() {
+		return disk.begin();
+	}
+
 	@Override
 	public void commit() {
 		disk.commit();
 	}
+
+	@Override
+	public void sync() {
+		disk.sync();
+	}
+
+	@Override
+	public void notifyOnDurable(DurabilityListener l) {
+		disk.notifyOnDurable(l);
+	}
 	
 	
 	@Override
@@ -118,6 +136,12 @@ public class Node1P extends Node {
         return disk.readAllObjects(def.getSchemaId(), loadFromCache);
     }
 
+    @Override
+    public CloseableIterator<ZooPCImpl> loadAllInstances(ZooClassProxy def, 
+            QueryTreeNode filter, boolean loadFromCache) {
+        return disk.readAllObjects(def.getSchemaDef(), filter, loadFromCache);
+    }
+
     @Override
     public CloseableIterator<ZooHandleImpl> oidIterator(ZooClassProxy px, boolean subClasses) {
         return disk.oidIterator(px, subClasses);
@@ -125,14 +149,36 @@ public class Node1P extends Node {
 
 	@Override
 	public ZooPCImpl loadInstanceById(long oid) {
+		int depth = getFetchDepth();
+		if (depth > 0) {
+			//load referenced objects together with the object
+			disk.readObjects(new long[]{oid}, 1, depth);
+			return commonCache.findCoByOID(oid);
+		}
 		ZooPCImpl pc = disk.readObject(oid);
 		//put into local cache (?) -> is currently done in deserializer
 		return pc;
 	}
 	
+	@Override
+	public void loadInstancesById(long[] oids, int size) {
+		disk.readObjects(oids, size, getFetchDepth());
+	}
+	
 	@Override
 	public void refreshObject(ZooPCImpl pc) {
-		disk.readObject(pc);
+		int depth = getFetchDepth();
+		if (depth > 0 && pc.jdoZooIsStateHollow()) {
+			//load referenced objects together with the object
+			disk.readObjects(new long[]{pc.jdoZooGetOid()}, 1, depth);
+		} else {
+			disk.readObject(pc);
+		}
+	}
+	
+	private int getFetchDepth() {
+		return commonCache.getSession().getPersistenceManager().getFetchPlan()
+				.getReferenceFetchDepth();
 	}
 	
 	@Override
@@ -145,7 +191,8 @@ public class Node1P extends Node {
 	    ZooClassDef cs = commonCache.getSchema(obj.getClass(), this);
 	    if (cs == null || cs.jdoZooIsDeleted()) {
 	    	Session s = commonCache.getSession();
-	    	if (s.getPersistenceManagerFactory().getAutoCreateSchema()) {
+	    	if (s.getPersistenceManagerFactory().getAutoCreateSchema() || 
+	    			SchemaManager.isCreatedOnDemand(obj.getClass())) {
 	    		cs = s.getSchemaManager().createSchema(this, obj.getClass()).getSchemaDef();
 	    	} else {
 	    		throw new JDOUserException("No schema found for object: " + 
@@ -175,8 +222,15 @@ public class Node1P extends Node {
 
 	@Override
 	public Iterator<ZooPCImpl> readObjectFromIndex( ZooFieldDef field, 
-			long minValue, long maxValue, boolean loadFromCache) {
-		return disk.readObjectFromIndex(field, minValue, maxValue, loadFromCache);
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache) {
+		return disk.readObjectFromIndex(field, minValue, maxValue, ascending, loadFromCache);
+	}
+
+	@Override
+	public Iterator<ZooPCImpl> readObjectFromIndices(ZooFieldDef[] fields, 
+			long[] minValues, long[] maxValues, boolean intersect, boolean loadFromCache) {
+		return disk.readObjectFromIndices(fields, minValues, maxValues, intersect, 
+				loadFromCache);
 	}
 
 	@Override
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.jdo.internal.model1p;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.zoodb.jdo.internal.server.ObjectWriter;
+
+/**
+ * An ObjectWriter that serializes objects into memory instead of writing them to storage.
+ * The buffered objects can later be copied to an ObjectWriter that is backed by storage.
+ * <p>
+ * This allows the expensive serialization (field access, SCO traversal) to happen
+ * concurrently for different classes, while page allocation and updates of the OID-
+ * and pos-indices happen sequentially when the objects are copied.
+ * <p>
+ * The byte order is the same as for StorageWriter. Strings are not stored as bytes but
+ * replayed with writeString(), because the StorageWriter aligns them relative to the page.
+ *
+ * @author Tilmann Zaeschke
+ */
+class ObjectWriterBuffer implements ObjectWriter {
+
+	private byte[] buf = new byte[1024];
+	private int pos = 0;
+
+	private long[] oids = new long[16];
+	private int[] schemaVersions = new int[16];
+	private int[] objStart = new int[16];
+	private int nObj = 0;
+
+	private final ArrayList<String> strings = new ArrayList<String>();
+	private int[] strPos = new int[16];
+	//the object that a string belongs to. A string that is written last has the same position
+	//as the start of the following object.
+	private int[] strObj = new int[16];
+
+	/**
+	 * Copy all buffered objects to the given writer and clear the buffer.
+	 * @param out
+	 */
+	void writeTo(ObjectWriter out) {
+		int iStr = 0;
+		int nStr = strings.size();
+		for (int i = 0; i < nObj; i++) {
+			out.startObject(oids[i], schemaVersions[i]);
+			int p = objStart[i];
+			int end = (i+1 < nObj) ? objStart[i+1] : pos;
+			while (iStr < nStr && strObj[iStr] == i) {
+				copy(out, p, strPos[iStr]);
+				out.writeString(strings.get(iStr));
+				p = strPos[iStr];
+				iStr++;
+			}
+			copy(out, p, end);
+			out.finishObject();
+		}
+		clear();
+	}
+
+	private void copy(ObjectWriter out, int from, int to) {
+		if (to > from) {
+			out.write(Arrays.copyOfRange(buf, from, to));
+		}
+	}
+
+	void clear() {
+		pos = 0;
+		nObj = 0;
+		strings.clear();
+	}
+
+	private void ensureCapacity(int delta) {
+		if (pos + delta > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length*2, pos + delta));
+		}
+	}
+
+	@Override
+	public void startObject(long oid, int prevSchemaVersion) {
+		if (nObj == oids.length) {
+			int len = nObj*2;
+			oids = Arrays.copyOf(oids, len);
+			schemaVersions = Arrays.copyOf(schemaVersions, len);
+			objStart = Arrays.copyOf(objStart, len);
+		}
+		oids[nObj] = oid;
+		schemaVersions[nObj] = prevSchemaVersion;
+		objStart[nObj] = pos;
+		nObj++;
+	}
+
+	@Override
+	public void finishObject() {
+		//nothing to do
+	}
+
+	@Override
+	public void flush() {
+		//nothing to do
+	}
+
+	@Override
+	public void newPage() {
+		//nothing to do
+	}
+
+	@Override
+	public void writeInt(int int1) {
+		ensureCapacity(4);
+		buf[pos++] = (byte) (int1 >>> 24);
+		buf[pos++] = (byte) (int1 >>> 16);
+		buf[pos++] = (byte) (int1 >>> 8);
+		buf[pos++] = (byte) int1;
+	}
+
+	@Override
+	public void writeBoolean(boolean boolean1) {
+		writeByte((byte) (boolean1 ? 1 : 0));
+	}
+
+	@Override
+	public void writeByte(byte byte1) {
+		ensureCapacity(1);
+		buf[pos++] = byte1;
+	}
+
+	@Override
+	public void writeChar(char char1) {
+		writeShort((short) char1);
+	}
+
+	@Override
+	public void writeFloat(float float1) {
+		writeInt(Float.floatToRawIntBits(float1));
+	}
+
+	@Override
+	public void writeDouble(double double1) {
+		writeLong(Double.doubleToRawLongBits(double1));
+	}
+
+	@Override
+	public void writeLong(long long1) {
+		writeInt((int) (long1 >>> 32));
+		writeInt((int) long1);
+	}
+
+	@Override
+	public void writeShort(short short1) {
+		ensureCapacity(2);
+		buf[pos++] = (byte) (short1 >>> 8);
+		buf[pos++] = (byte) short1;
+	}
+
+	@Override
+	public void write(byte[] array) {
+		ensureCapacity(array.length);
+		System.arraycopy(array, 0, buf, pos, array.length);
+		pos += array.length;
+	}
+
+	@Override
+	public void writeString(String string) {
+		int n = strings.size();
+		if (n == strPos.length) {
+			strPos = Arrays.copyOf(strPos, n*2);
+			strObj = Arrays.copyOf(strObj, n*2);
+		}
+		strPos[n] = pos;
+		strObj[n] = nObj-1;
+		strings.add(string);
+	}
+
+	@Override
+	public void skipWrite(int nBytes) {
+		ensureCapacity(nBytes);
+		Arrays.fill(buf, pos, pos + nBytes, (byte) 0);
+		pos += nBytes;
+	}
+}
@@ -20,6 +20,10 @@
  */
 package org.zoodb.jdo.internal.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.zoodb.jdo.internal.ZooFieldDef;
 
 /**
@@ -27,7 +31,8 @@ import org.zoodb.jdo.internal.ZooFieldDef;
  * - the query
  * - Index to use (if != null)
  * - min/max values of that index
- * - ascending/descending? 
+ * - ascending/descending
+ * - further indices and ranges to intersect with (if any)
  * 
  * @author Tilmann Zaeschke
  */
@@ -36,7 +41,8 @@ public final class QueryAdvice {
 	private ZooFieldDef index;
 	private long min;
 	private long max;
-	private boolean ascending;
+	private boolean ascending = true;
+	private List<QueryAdvice> intersections = null;
 	
 	public QueryAdvice(QueryTreeNode queryTree) {
 		this.query = queryTree;
@@ -77,6 +83,24 @@ public final class QueryAdvice {
 	public QueryTreeNode getQuery() {
 		return query;
 	}
+
+	/**
+	 * @return Advices with further index ranges that should be intersected with the range 
+	 * of this advice. Their query is {@code null}.
+	 */
+	public List<QueryAdvice> getIntersections() {
+		if (intersections == null) {
+			return Collections.emptyList();
+		}
+		return intersections;
+	}
+
+	void addIntersection(QueryAdvice qa) {
+		if (intersections == null) {
+			intersections = new ArrayList<QueryAdvice>();
+		}
+		intersections.add(qa);
+	}
 	
 	
 }
\ No newline at end of file
@@ -20,16 +20,17 @@
  */
 package org.zoodb.jdo.internal.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
 
 import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.ZooFieldDef;
+import org.zoodb.jdo.internal.query.QueryParser.LOG_OP;
 import org.zoodb.jdo.internal.server.index.BitTools;
 
 public class QueryOptimizer {
@@ -55,7 +56,9 @@ public class QueryOptimizer {
 	 * 4b) Check for required sorting. Using an according index can be of advantage, even if range 
 	 *    is larger.
 	 * 5) Merge queries with same index and overlapping ranges
-	 * 6) merge results
+	 * 6) merge results: If sub-queries use different indices, the executor merges the 
+	 *    index ranges before loading objects. If a sub-query can not use an index, all 
+	 *    sub-queries are combined and evaluated on the extent.
 	 * 
 	 * @param queryTree
 	 * @return Index to use.
@@ -81,6 +84,8 @@ public class QueryOptimizer {
 		//the full query but only one side of every OR. All ORs are removed.
 		//-> Optimization: We remove only (and split only at) ORs where at least on branch
 		//   uses an index. TODO
+		//The tree is modified when it is split, but the query may be executed again.
+		queryTree = queryTree.cloneBranch();
 		List<QueryTreeNode> subQueries = new LinkedList<QueryTreeNode>();
 		subQueries.add(queryTree);
 		queryTree.createSubs(subQueries);
@@ -101,30 +106,23 @@ public class QueryOptimizer {
 			maxMap.clear();
 		}
 		
-		//TODO merge queries
-		//E.g.:
-		// - if none uses an index (or at least one doesn't), return only the full query
-		// - if ranges overlap, try to merge?
-
-		//TODO optimisation: merge queries
-		//for example the following query returns two identical sub-queries:
-		//"_int == 123 || _int == 123" --> This is bad and should be avoided.
+		if (advices.size() == 1) {
+			return advices;
+		}
 				
 		//check for show-stoppers
-		//-> in their case, we simply run the un-split query on the full type extent.
+		//-> in their case, we simply run the combined sub-queries on the full type extent.
 		for (QueryAdvice qa: advices) {
-			//assuming that the term is not an empty term (contradicting sub-terms)
-			if (qa == null) {
-				//ah, one of them iterates over the whole result set.
-				advices.clear();
-				advices.add(qa);
-				return advices;
-			}
 			//TODO instead of fixed values, use min/max of index.
-			if (qa.getMin() <= Long.MIN_VALUE && qa.getMax() >= Long.MAX_VALUE) {
+			if (qa.getIndex() == null || 
+					(qa.getMin() <= Long.MIN_VALUE && qa.getMax() >= Long.MAX_VALUE)) {
 				//ah, one of them iterates over the whole result set.
+				QueryTreeNode q = null;
+				for (QueryAdvice qa2: advices) {
+					q = (q == null) ? qa2.getQuery() : or(q, qa2.getQuery());
+				}
 				advices.clear();
-				advices.add(qa);
+				advices.add(new QueryAdvice(q));
 				return advices;
 			}
 		}
@@ -135,6 +133,58 @@ public class QueryOptimizer {
 		return advices;
 	}
 	
+	private static QueryTreeNode or(QueryTreeNode n1, QueryTreeNode n2) {
+		return new QueryTreeNode(n1, null, LOG_OP.OR, n2, null, false);
+	}
+	
+	/**
+	 * Determine whether the index of the ordering field can be used to return the results 
+	 * in the requested order. 
+	 * 
+	 * Policy:
+	 * 1) Only indices on primitive fields are used, because they contain every object and their
+	 *    order is the natural order of the field. String indices only consider the first few
+	 *    characters.
+	 * 2) If the query uses the index of the ordering field, the index is simply traversed in 
+	 *    the requested direction.
+	 * 3) If the query uses no index (or has no filter) and the result is limited by a range, 
+	 *    the whole index of the ordering field is traversed, so that only the objects up to the
+	 *    end of the range need to be loaded.
+	 * 4) Otherwise the results have to be sorted.
+	 * 
+	 * @param advices The advices from {@link #determineIndexToUse(QueryTreeNode)}.
+	 * @param orderField The field that determines the order of the results.
+	 * @param ascending
+	 * @param isLimited Whether the range of the query is limited.
+	 * @return An advice that returns objects in the requested order, or {@code null} if the
+	 * results need to be sorted.
+	 */
+	public static QueryAdvice determineOrderedAdvice(List<QueryAdvice> advices, 
+			ZooFieldDef orderField, boolean ascending, boolean isLimited) {
+		if (!orderField.isIndexed() || !orderField.isPrimitiveType() || advices.size() != 1) {
+			return null;
+		}
+		QueryAdvice qa = advices.get(0);
+		if (qa.getIndex() == orderField) {
+			//intersections would destroy the order of the index
+			QueryAdvice qa2 = new QueryAdvice(qa.getQuery());
+			qa2.setIndex(orderField);
+			qa2.setMin(qa.getMin());
+			qa2.setMax(qa.getMax());
+			qa2.setAscending(ascending);
+			return qa2;
+		}
+		if (qa.getIndex() == null && isLimited) {
+			QueryAdvice qa2 = new QueryAdvice(qa.getQuery());
+			qa2.setIndex(orderField);
+			qa2.setMin(Long.MIN_VALUE);
+			qa2.setMax(Long.MAX_VALUE);
+			qa2.setAscending(ascending);
+			return qa2;
+		}
+		return null;
+	}
+	
 	private static class AdviceComparator implements Comparator<QueryAdvice> {
 		@Override
 		public int compare(QueryAdvice o1, QueryAdvice o2) {
@@ -155,49 +205,46 @@ public class QueryOptimizer {
 	}
 	
 	
+	/**
+	 * Merge advices for the same index with overlapping ranges, so that no object is 
+	 * returned twice for the same index. The merged advice evaluates the sub-queries of all
+	 * merged advices. 
+	 * Advices for different indices may still overlap, the executor has to merge their 
+	 * results.
+	 */
 	private void mergeAdvices(List<QueryAdvice> advices) {
-		//if they overlap, we should merge them to void duplicate loading effort and results.
-		//if they don't overlap, we don't have to care about either.
-		//-> assuming they all use the same index...
-		if (advices.size() < 2) {
-			//shortcut
-			return;
-		}
-		IdentityHashMap<ZooFieldDef, TreeSet<QueryAdvice>> map = 
-				new IdentityHashMap<ZooFieldDef, TreeSet<QueryAdvice>>();
+		IdentityHashMap<ZooFieldDef, List<QueryAdvice>> map = 
+				new IdentityHashMap<ZooFieldDef, List<QueryAdvice>>();
 		//sort QAs by index and by minValue
 		for (QueryAdvice qa: advices) {
-			TreeSet<QueryAdvice> subList = map.get(qa.getIndex());
+			List<QueryAdvice> subList = map.get(qa.getIndex());
 			if (subList == null) {
-				subList = new TreeSet<QueryAdvice>(new AdviceComparator());
+				subList = new ArrayList<QueryAdvice>();
 				map.put(qa.getIndex(), subList);
 			}
 			subList.add(qa);
 		}
 
 		//merge
-		boolean merged = false;
-		for (QueryAdvice qa: advices) {
-			TreeSet<QueryAdvice> subList = map.get(qa.getIndex());
-			Iterator<QueryAdvice> iter = subList.iterator();
-			QueryAdvice prev = iter.next();
-			while (iter.hasNext()) {
-				QueryAdvice current = iter.next();
-				if (prev.getMax() >= current.getMin()) {
-					prev.setMax(current.getMax());
-					iter.remove();
-					merged = true;
-				} else {			
+		advices.clear();
+		for (List<QueryAdvice> subList: map.values()) {
+			Collections.sort(subList, new AdviceComparator());
+			QueryAdvice prev = null;
+			for (QueryAdvice current: subList) {
+				if (prev != null && prev.getMax() >= current.getMin()) {
+					QueryAdvice qa = new QueryAdvice(or(prev.getQuery(), current.getQuery()));
+					qa.setIndex(prev.getIndex());
+					qa.setMin(prev.getMin());
+					qa.setMax(Math.max(prev.getMax(), current.getMax()));
+					prev = qa;
+				} else {
+					if (prev != null) {
+						advices.add(prev);
+					}
 					prev = current;
 				}
 			}
-		}
-
-		if (merged) {
-			advices.clear();
-			for (TreeSet<QueryAdvice> subList: map.values()) {
-				advices.addAll(subList);
-			}
+			advices.add(prev);
 		}
 	}
 
@@ -310,22 +357,46 @@ public class QueryOptimizer {
 		for (Map.Entry<ZooFieldDef, Long> me2: minMap.entrySet()) {
 			long min2 = me2.getValue();
 			long max2 = maxMap.get(me2.getKey());
-			//TODO fix for very large values
-			if ((max2-min2) < (qa.getMax() - qa.getMin())) {
+			//compare unsigned, the width of large ranges exceeds Long.MAX_VALUE
+			if ((max2-min2) + Long.MIN_VALUE < (qa.getMax() - qa.getMin()) + Long.MIN_VALUE) {
 				qa.setIndex( me2.getKey() );
 				qa.setMin( min2 );
 				qa.setMax( max2 );
 			}
 		}
 		
+		//Intersect the range with the ranges of other restricted indices. This is not done
+		//if the range contains only one value, then we hope that it is selective enough. 
+		if (qa.getMin() != qa.getMax()) {
+			for (Map.Entry<ZooFieldDef, Long> me2: minMap.entrySet()) {
+				ZooFieldDef f = me2.getKey();
+				long min2 = me2.getValue();
+				long max2 = maxMap.get(f);
+				if (f == qa.getIndex() || 
+						(min2 <= f.getMinValue() && max2 >= f.getMaxValue())) {
+					continue;
+				}
+				QueryAdvice qa2 = new QueryAdvice(null);
+				qa2.setIndex(f);
+				qa2.setMin(min2);
+				qa2.setMax(max2);
+				extendStringRange(qa2);
+				qa.addIntersection(qa2);
+			}
+		}
+		
+		extendStringRange(qa);
+
+//		DatabaseLogger.debugPrintln(0, "Using index: " + def.getName());
+		return qa;
+	}
+
+	private static void extendStringRange(QueryAdvice qa) {
 		if (qa.getIndex().isString()) {
 			//For String we have to extend the range because of the trailing hashcode
 			qa.setMin(BitTools.getMinPosInPage(qa.getMin()));
 			qa.setMax(BitTools.getMaxPosInPage(qa.getMax()));
 		}
-
-//		DatabaseLogger.debugPrintln(0, "Using index: " + def.getName());
-		return qa;
 	}
 
 	private void optimize(QueryTreeNode q) {
@@ -472,15 +472,15 @@ public final class QueryParser {
 		}
         
 		//TODO use in lines 90-110. Also use as first term(?).
-        private boolean allowsLess() {
+        boolean allowsLess() {
             return _allowsLess;
         }
         
-        private boolean allowsMore() {
+        boolean allowsMore() {
             return _allowsMore;
         }
         
-        private boolean allowsEqual() {
+        boolean allowsEqual() {
             return _allowsEqual;
         }
         
@@ -25,8 +25,10 @@ import java.lang.reflect.Field;
 import javax.jdo.JDOFatalInternalException;
 
 import org.zoodb.jdo.internal.DataDeSerializerNoClass;
+import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.ZooFieldDef;
 import org.zoodb.jdo.internal.query.QueryParser.COMP_OP;
+import org.zoodb.jdo.internal.server.index.BitTools;
 
 public final class QueryTerm {
 
@@ -35,6 +37,13 @@ public final class QueryTerm {
 	private Object value;
 	private QueryParameter param;
 	private final ZooFieldDef fieldDef;
+	//Specialised evaluator for primitive fields and the field and value it was created for
+	private QueryTermEvaluator evaluator;
+	private Field evaluatorField;
+	private Object evaluatorValue;
+	//The class for which the validity of the field offset was checked
+	private ZooClassDef rawDef;
+	private boolean isRawFieldValid;
 	
 	public QueryTerm(COMP_OP op, String paramName,
 			Object value, ZooFieldDef fieldDef, boolean negate) {
@@ -72,9 +81,17 @@ public final class QueryTerm {
 		// we can not cache this, because sub-classes may have different field instances.
 		//TODO cache per class? Or reset after query has processed first class set?
 		Field f = fieldDef.getJavaField();
+		//TODO avoid indirection and store Parameter value in local _value field !!!!!!!!!!!!!!!!
+		Object qVal = getValue();
 
+		//Primitive fields are evaluated without reflective boxing.
+		QueryTermEvaluator ev = getEvaluator(f, qVal);
+		
 		Object oVal;
 		try {
+			if (ev != null) {
+				return ev.evaluate(o);
+			}
 			oVal = f.get(o);
 		} catch (IllegalArgumentException e) {
 			throw new JDOFatalInternalException("Can not access field: " + fieldDef.getName() + 
@@ -82,8 +99,6 @@ public final class QueryTerm {
 		} catch (IllegalAccessException e) {
 			throw new JDOFatalInternalException("Can not access field: " + fieldDef.getName(), e);
 		}
-		//TODO avoid indirection and store Parameter value in local _value field !!!!!!!!!!!!!!!!
-		Object qVal = getValue();
 		if (oVal == null) {
 			if (qVal == QueryParser.NULL && (op==COMP_OP.EQ || op==COMP_OP.LE || op==COMP_OP.AE)) {
 				return true;
@@ -117,41 +132,75 @@ public final class QueryTerm {
 		return false;
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	public boolean evaluate(DataDeSerializerNoClass dds, long pos) {
-		// we can not cache this, because sub-classes may have different field instances.
-		//TODO cache per class? Or reset after query has processed first class set?
-		Field f = fieldDef.getJavaField();
-
-		Object oVal;
-//		try {
-			dds.seekPos(pos);
-			//TODO this doesn't really work for float/double
-			oVal = dds.getAttrAsLong(fieldDef.getDeclaringType(), fieldDef);
-//		} catch (IllegalArgumentException e) {
-//			throw new JDOFatalInternalException("Can not access field: " + fieldDef.getName() + 
-//					" cl=" + fieldDef.getDeclaringType().getClassName() + 
-//					" fcl=" + f.getDeclaringClass().getName(), e);
-//		}
-		//TODO avoid indirection and store Parameter value in local _value field !!!!!!!!!!!!!!!!
-		Object qVal = getValue();
-		if (oVal == null && qVal == QueryParser.NULL) {
+	/**
+	 * Evaluate the term on a serialized object. This is a pre-filter: whenever the 
+	 * serialized value is not sufficient to decide the term, for example for ranges on
+	 * Strings or for references, the result is 'true'.
+	 * @param dds
+	 * @param def The exact schema version of the serialized object
+	 * @param pos
+	 * @return 'false' if the object does not match.
+	 */
+	public boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, long pos) {
+		if (def != rawDef) {
+			//The offset of the field is only valid if it is part of the class
+			rawDef = def;
+			isRawFieldValid = false;
+			for (ZooFieldDef f: def.getAllFields()) {
+				if (f == fieldDef) {
+					isRawFieldValid = true;
+					break;
+				}
+			}
+		}
+		if (!isRawFieldValid) {
 			return true;
-		} else if (qVal != QueryParser.NULL && oVal != null) {
-			if (qVal.equals(oVal) && (op==COMP_OP.EQ || op==COMP_OP.LE || op==COMP_OP.AE)) {
+		}
+		
+		Object qVal = getValue();
+		if (fieldDef.isPrimitiveType()) {
+			Field f = fieldDef.getJavaField();
+			if (f == null || getEvaluator(f, qVal) == null) {
 				return true;
 			}
-			if (qVal instanceof Comparable) {
-				Comparable qComp = (Comparable) qVal;
-				int res = qComp.compareTo(oVal);  //-1:<   0:==  1:> 
-				if (res == 1 && (op == COMP_OP.LE || op==COMP_OP.L || op==COMP_OP.NE)) {
-					return true;
-				} else if (res == -1 && (op == COMP_OP.AE || op==COMP_OP.A || op==COMP_OP.NE)) {
-					return true;
-				}
+			dds.seekPos(pos);
+			return evaluator.evaluate(dds, def, fieldDef);
+		}
+		if (fieldDef.isString()) {
+			if (qVal != QueryParser.NULL && !(qVal instanceof String)) {
+				return true;
+			}
+			dds.seekPos(pos);
+			Long magic = dds.getStringMagic(def, fieldDef);
+			if (magic == null) {
+				//null is smaller than any value
+				return qVal == QueryParser.NULL ? op.allowsEqual() : op.allowsLess();
+			}
+			if (qVal == QueryParser.NULL) {
+				return op.allowsMore();
+			}
+			//The magic number is only unique if it differs
+			if (magic != BitTools.toSortableLong((String) qVal)) {
+				return op != COMP_OP.EQ;
 			}
 		}
-		return false;
+		return true;
+	}
+
+	/**
+	 * Returns the specialised evaluator. The evaluator is recreated if the field instance 
+	 * or the (parameter) value changes.
+	 * @param f
+	 * @param qVal
+	 * @return The evaluator or 'null' if there is no evaluator for this field.
+	 */
+	private QueryTermEvaluator getEvaluator(Field f, Object qVal) {
+		if (f != evaluatorField || qVal != evaluatorValue) {
+			evaluator = QueryTermEvaluator.create(f, op, qVal);
+			evaluatorField = f;
+			evaluatorValue = qVal;
+		}
+		return evaluator;
 	}
 
 	public String print() {
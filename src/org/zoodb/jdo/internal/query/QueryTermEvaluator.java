@@ -0,0 +1,207 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.query;
+
+import java.lang.reflect.Field;
+
+import org.zoodb.jdo.internal.DataDeSerializerNoClass;
+import org.zoodb.jdo.internal.ZooClassDef;
+import org.zoodb.jdo.internal.ZooFieldDef;
+import org.zoodb.jdo.internal.query.QueryParser.COMP_OP;
+
+/**
+ * Specialised evaluators for query terms on primitive fields. They read the field with the
+ * primitive accessors of {@link Field} and compare without boxing the field value or calling
+ * {@link Comparable#compareTo(Object)}. They can also be evaluated on serialized objects.
+ * 
+ * The comparison semantics are the same as in {@link QueryTerm#evaluate(Object)}, for 
+ * example, floating point values are compared with {@link Double#compare(double, double)}.
+ * 
+ * @author Tilmann Zaeschke
+ */
+abstract class QueryTermEvaluator {
+
+	protected final Field f;
+	private final boolean allowsLess;
+	private final boolean allowsEqual;
+	private final boolean allowsMore;
+	
+	private QueryTermEvaluator(Field f, COMP_OP op) {
+		this.f = f;
+		allowsLess = op.allowsLess();
+		allowsEqual = op.allowsEqual();
+		allowsMore = op.allowsMore();
+	}
+	
+	/**
+	 * @param o The candidate object
+	 * @return Whether the candidate matches the query term.
+	 * @throws IllegalAccessException
+	 */
+	abstract boolean evaluate(Object o) throws IllegalAccessException;
+	
+	/**
+	 * @param dds The de-serializer, positioned at the beginning of the object
+	 * @param def The exact schema version of the serialized object
+	 * @param fd The field
+	 * @return Whether the serialized candidate matches the query term.
+	 */
+	abstract boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, ZooFieldDef fd);
+	
+	/**
+	 * @param cmp The result of comparing the field value with the query value.
+	 * @return Whether the comparison result satisfies the operator.
+	 */
+	protected final boolean matches(int cmp) {
+		if (cmp < 0) {
+			return allowsLess;
+		}
+		return cmp == 0 ? allowsEqual : allowsMore;
+	}
+	
+	/**
+	 * Creates a specialised evaluator.
+	 * @param f The field
+	 * @param op The operator
+	 * @param qVal The value to compare with
+	 * @return The evaluator or null if the field is not primitive or the query value has
+	 * a type that is not exactly the type of the field.
+	 */
+	static QueryTermEvaluator create(Field f, COMP_OP op, Object qVal) {
+		Class<?> type = f.getType();
+		if (!type.isPrimitive()) {
+			return null;
+		}
+		if (qVal == QueryParser.NULL) {
+			//primitive values are never null, and null is considered smaller than any value
+			return new ConstantEvaluator(f, op, op.allowsMore());
+		}
+		Class<?> qType = qVal.getClass();
+		if (type == Long.TYPE && qType == Long.class) {
+			return new LongEvaluator(f, op, (Long) qVal);
+		} else if (type == Integer.TYPE && qType == Integer.class) {
+			return new LongEvaluator(f, op, (Integer) qVal);
+		} else if (type == Short.TYPE && qType == Short.class) {
+			return new LongEvaluator(f, op, (Short) qVal);
+		} else if (type == Byte.TYPE && qType == Byte.class) {
+			return new LongEvaluator(f, op, (Byte) qVal);
+		} else if (type == Character.TYPE && qType == Character.class) {
+			return new LongEvaluator(f, op, (Character) qVal);
+		} else if (type == Double.TYPE && qType == Double.class) {
+			return new DoubleEvaluator(f, op, (Double) qVal);
+		} else if (type == Float.TYPE && qType == Float.class) {
+			return new FloatEvaluator(f, op, (Float) qVal);
+		} else if (type == Boolean.TYPE && qType == Boolean.class) {
+			return new BooleanEvaluator(f, op, (Boolean) qVal);
+		}
+		return null;
+	}
+	
+	private static final class ConstantEvaluator extends QueryTermEvaluator {
+		private final boolean result;
+		ConstantEvaluator(Field f, COMP_OP op, boolean result) {
+			super(f, op);
+			this.result = result;
+		}
+		@Override
+		boolean evaluate(Object o) {
+			return result;
+		}
+		@Override
+		boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, ZooFieldDef fd) {
+			return result;
+		}
+	}
+
+	/**
+	 * For all integral types, including char. 
+	 */
+	private static final class LongEvaluator extends QueryTermEvaluator {
+		private final long qVal;
+		LongEvaluator(Field f, COMP_OP op, long qVal) {
+			super(f, op);
+			this.qVal = qVal;
+		}
+		@Override
+		boolean evaluate(Object o) throws IllegalAccessException {
+			return matches(f.getLong(o));
+		}
+		@Override
+		boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, ZooFieldDef fd) {
+			return matches(dds.getAttrAsLong(def, fd));
+		}
+		private boolean matches(long v) {
+			return matches(v < qVal ? -1 : (v == qVal ? 0 : 1));
+		}
+	}
+
+	private static final class DoubleEvaluator extends QueryTermEvaluator {
+		private final double qVal;
+		DoubleEvaluator(Field f, COMP_OP op, double qVal) {
+			super(f, op);
+			this.qVal = qVal;
+		}
+		@Override
+		boolean evaluate(Object o) throws IllegalAccessException {
+			return matches(Double.compare(f.getDouble(o), qVal));
+		}
+		@Override
+		boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, ZooFieldDef fd) {
+			return matches(Double.compare(dds.getAttrDouble(def, fd), qVal));
+		}
+	}
+
+	private static final class FloatEvaluator extends QueryTermEvaluator {
+		private final float qVal;
+		FloatEvaluator(Field f, COMP_OP op, float qVal) {
+			super(f, op);
+			this.qVal = qVal;
+		}
+		@Override
+		boolean evaluate(Object o) throws IllegalAccessException {
+			return matches(Float.compare(f.getFloat(o), qVal));
+		}
+		@Override
+		boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, ZooFieldDef fd) {
+			return matches(Float.compare(dds.getAttrFloat(def, fd), qVal));
+		}
+	}
+
+	private static final class BooleanEvaluator extends QueryTermEvaluator {
+		private final boolean qVal;
+		BooleanEvaluator(Field f, COMP_OP op, boolean qVal) {
+			super(f, op);
+			this.qVal = qVal;
+		}
+		@Override
+		boolean evaluate(Object o) throws IllegalAccessException {
+			return matches(f.getBoolean(o));
+		}
+		@Override
+		boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, ZooFieldDef fd) {
+			return matches(dds.getAttrBool(def, fd));
+		}
+		private boolean matches(boolean v) {
+			//false < true
+			return matches(v == qVal ? 0 : (v ? 1 : -1));
+		}
+	}
+}
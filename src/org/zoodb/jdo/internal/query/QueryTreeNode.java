@@ -25,6 +25,7 @@ import java.util.List;
 import javax.jdo.JDOFatalDataStoreException;
 
 import org.zoodb.jdo.internal.DataDeSerializerNoClass;
+import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.query.QueryParser.LOG_OP;
 
 /**
@@ -135,11 +136,16 @@ public final class QueryTreeNode {
 	
 	/**
 	 * Evaluate the query directly on a byte buffer rather than on materialized objects. 
+	 * This is a pre-filter, terms that can not be decided on the serialized form evaluate to
+	 * 'true'.
+	 * @param dds
+	 * @param def The exact schema version of the serialized object
 	 * @param pos
-	 * @return Whether the object is a match.
+	 * @return 'false' if the object is not a match.
 	 */
-	public boolean evaluate(DataDeSerializerNoClass dds, long pos) {
-		boolean first = (_n1 != null ? _n1.evaluate(dds, pos) : _t1.evaluate(dds, pos));
+	public boolean evaluate(DataDeSerializerNoClass dds, ZooClassDef def, long pos) {
+		boolean first = (_n1 != null ? 
+				_n1.evaluate(dds, def, pos) : _t1.evaluate(dds, def, pos));
 		//do we have a second part?
 		if (_op == null) {
 			return first;
@@ -150,7 +156,7 @@ public final class QueryTreeNode {
 		if ( first && _op == LOG_OP.OR) {
 			return true;
 		}
-		return (_n2 != null ? _n2.evaluate(dds, pos) : _t2.evaluate(dds, pos));
+		return (_n2 != null ? _n2.evaluate(dds, def, pos) : _t2.evaluate(dds, def, pos));
 	}
 	
 	/**
@@ -270,7 +276,7 @@ public final class QueryTreeNode {
 		return ret;
 	}
 	
-	private QueryTreeNode cloneBranch() {
+	QueryTreeNode cloneBranch() {
 		QueryTreeNode n1 = null;
 		if (_n1 != null) {
 			n1 = _n1.cloneBranch();
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.zoodb.api.impl.ZooPCImpl;
+import org.zoodb.jdo.api.DurabilityListener;
 import org.zoodb.jdo.api.impl.DBStatistics.STATS;
 import org.zoodb.jdo.internal.DataDeSerializer;
 import org.zoodb.jdo.internal.GenericObject;
@@ -31,6 +32,7 @@ import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.ZooClassProxy;
 import org.zoodb.jdo.internal.ZooFieldDef;
 import org.zoodb.jdo.internal.ZooHandleImpl;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
 import org.zoodb.jdo.internal.server.index.PagedOidIndex;
 import org.zoodb.jdo.internal.server.index.SchemaIndex.SchemaIndexEntry;
 import org.zoodb.jdo.internal.util.CloseableIterator;
@@ -43,6 +45,9 @@ public interface DiskAccess {
 
 	public CloseableIterator<ZooPCImpl> readAllObjects(long schemaId, boolean loadFromCache);
 	
+	public CloseableIterator<ZooPCImpl> readAllObjects(ZooClassDef def, QueryTreeNode filter,
+			boolean loadFromCache);
+	
 	/**
 	 * Locate an object.
 	 * @param oid
@@ -51,10 +56,32 @@ public interface DiskAccess {
 	public ZooPCImpl readObject(long oid);
 	public ZooPCImpl readObject(DataDeSerializer dds, long oid);
 	
+	/**
+	 * Load the objects with the given OIDs, unless they are already in the cache and not 
+	 * hollow. The objects are read in the order of their position in the database file, 
+	 * so that every page is read only once. OIDs that do not exist are ignored.
+	 * @param oids
+	 * @param size The number of valid entries in the oids array.
+	 * @param depth The number of levels of referenced hollow objects that should be loaded in 
+	 * subsequent batches. 
+	 */
+	public void readObjects(long[] oids, int size, int depth);
+	
 	public void close();
 
+	/**
+	 * Called when a transaction begins. Read-only sessions move on to the latest durable 
+	 * database state.
+	 * @return Whether the visible database state has changed since the previous transaction.
+	 */
+	public boolean begin();
+
 	public void commit();
 
+	public void sync();
+
+	public void notifyOnDurable(DurabilityListener l);
+
 	/**
 	 * Defines an index and populates it. All objects are put into the cache. This is not 
 	 * necessarily useful, but it is a one-off operation. Otherwise we would need a special
@@ -72,9 +99,20 @@ public interface DiskAccess {
 
 	/**
 	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
+	 * @param ascending Whether the objects should be returned in ascending or descending order
+	 * of the index. 
 	 */
 	Iterator<ZooPCImpl> readObjectFromIndex(ZooFieldDef field, 
-			long minValue, long maxValue, boolean loadFromCache);
+			long minValue, long maxValue, boolean ascending, boolean loadFromCache);
+
+	/**
+	 * Read the objects in the union or intersection of several index ranges. Every object 
+	 * is returned only once, even if it occurs in several ranges.
+	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
+	 * @param intersect Whether to return the intersection or the union of the ranges.
+	 */
+	Iterator<ZooPCImpl> readObjectFromIndices(ZooFieldDef[] fields, 
+			long[] minValues, long[] maxValues, boolean intersect, boolean loadFromCache);
 
 	public int getStats(STATS stats);
 
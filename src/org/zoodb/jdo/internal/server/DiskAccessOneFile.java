@@ -22,6 +22,7 @@ package org.zoodb.jdo.internal.server;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -31,6 +32,7 @@ import javax.jdo.JDOObjectNotFoundException;
 import javax.jdo.JDOUserException;
 
 import org.zoodb.api.impl.ZooPCImpl;
+import org.zoodb.jdo.api.DurabilityListener;
 import org.zoodb.jdo.api.ZooConfig;
 import org.zoodb.jdo.api.impl.DBStatistics.STATS;
 import org.zoodb.jdo.internal.DataDeSerializer;
@@ -42,11 +44,15 @@ import org.zoodb.jdo.internal.ZooClassProxy;
 import org.zoodb.jdo.internal.ZooFieldDef;
 import org.zoodb.jdo.internal.ZooHandleImpl;
 import org.zoodb.jdo.internal.client.AbstractCache;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
 import org.zoodb.jdo.internal.server.DiskIO.DATA_TYPE;
+import org.zoodb.jdo.internal.server.SnapshotRegistry.Snapshot;
+import org.zoodb.jdo.internal.server.index.AbstractPagedIndex;
 import org.zoodb.jdo.internal.server.index.AbstractPagedIndex.AbstractPageIterator;
 import org.zoodb.jdo.internal.server.index.AbstractPagedIndex.LongLongIndex;
 import org.zoodb.jdo.internal.server.index.BitTools;
 import org.zoodb.jdo.internal.server.index.FreeSpaceManager;
+import org.zoodb.jdo.internal.server.index.LLIndexBuilder;
 import org.zoodb.jdo.internal.server.index.ObjectIterator;
 import org.zoodb.jdo.internal.server.index.ObjectPosIterator;
 import org.zoodb.jdo.internal.server.index.PagedOidIndex;
@@ -108,14 +114,34 @@ import org.zoodb.jdo.internal.util.Util;
  *   -> Store OIDs + posInPage for all objects in a page in the beginning of that page.
  * 
  * 
+ * Read-only sessions
+ * ==================
+ * Pages are never overwritten while they are used by the latest durable root page. A 
+ * read-only session therefore only needs to remember the root page that was current when its
+ * transaction began, see {@link SnapshotRegistry}. The writer defers reuse of free pages 
+ * that may still be visible to such a snapshot.
+ * 
+ * 
  * @author Tilmann Zaeschke
  */
 public class DiskAccessOneFile implements DiskAccess {
 	
 	public static final int DB_FILE_TYPE_ID = 13031975;
 	public static final int DB_FILE_VERSION_MAJ = 1;
-	public static final int DB_FILE_VERSION_MIN = 5;
+	/** 
+	 * Version 6: compressed index leaves (AbstractPagedIndex.LEAF_COMPRESSED). 
+	 * Older versions would read the marker as entry count of a regular leaf.
+	 */
+	public static final int DB_FILE_VERSION_MIN = 6;
+	/** 
+	 * Oldest minor version that can be opened. Version 5 files contain only regular leaves, 
+	 * which can still be read. They are upgraded to the current version when they are opened 
+	 * for writing, because the next commit may write compressed leaves.
+	 */
+	private static final int DB_FILE_VERSION_MIN_OLDEST = 5;
 	private static final long ID_FAULTY_PAGE = Long.MIN_VALUE;
+	/** Maximum number of index entries that are sorted in memory when an index is defined. */
+	private static final int INDEX_SORT_RUN_SIZE = 1 << 20;
 	
 	private final Node node;
 	private final AbstractCache cache;
@@ -134,33 +160,69 @@ public class DiskAccessOneFile implements DiskAccess {
     private final ObjectReader objectReader;
 	private final RootPage rootPage;
 	
+	private final boolean isReadOnly;
+	private final SnapshotRegistry snapshots;
+	/** The snapshot that is visible to a read-only session. */
+	private Snapshot snapshot = null;
+	
+	/** Group commit delay in milliseconds, 0 if disabled. */
+	private final int groupCommitDelay;
+	/** Time of the first commit that has not been forced to disk, or -1. */
+	private long unsyncedSince = -1;
+	private final ArrayList<DurabilityListener> unsyncedListeners = 
+		new ArrayList<DurabilityListener>();
+	private int statNSync = 0;
 	
-	public DiskAccessOneFile(Node node, AbstractCache cache) {
+	
+	public DiskAccessOneFile(Node node, AbstractCache cache, boolean isReadOnly) {
 		this.node = node;
 		this.cache = cache;
+		this.isReadOnly = isReadOnly;
 		String dbPath = this.node.getDbPath();
 
 		
 		DBLogger.debugPrintln(1, "Opening DB file: " + dbPath);
 
+		//The registry coordinates the file locks of the sessions in this JVM
+		snapshots = SnapshotRegistry.open(dbPath, 
+				!ZooConfig.FILE_PAF_IN_MEMORY.equals(ZooConfig.getFileProcessor()));
+		try {
+			if (isReadOnly) {
+				snapshots.addReader();
+			} else {
+				snapshots.addWriter();
+			}
+		} catch (RuntimeException e) {
+			snapshots.close();
+			throw e;
+		}
+		
 		//create DB file
 		freeIndex = new FreeSpaceManager();
-		file = createPageAccessFile(dbPath, "rw", freeIndex);
+		try {
+			file = createPageAccessFile(dbPath, isReadOnly ? "r" : "rw", freeIndex);
+		} catch (RuntimeException e) {
+			releaseRegistry();
+			throw e;
+		}
 		StorageChannelInput in = file.getReader(false);
 		
 		//read header
 		in.seekPageForRead(DATA_TYPE.DB_HEADER, 0);
 		int fid = in.readInt();
 		if (fid != DB_FILE_TYPE_ID) { 
+			abortOpen();
 			throw new JDOFatalDataStoreException("Illegal File ID: " + fid);
 		}
 		int maj = in.readInt();
 		int min = in.readInt();
 		if (maj != DB_FILE_VERSION_MAJ) { 
+			abortOpen();
 			throw new JDOFatalDataStoreException("Illegal major file version: " + maj + "." + min +
 					"; Software version: " + DB_FILE_VERSION_MAJ + "." + DB_FILE_VERSION_MIN);
 		}
-		if (min != DB_FILE_VERSION_MIN) { 
+		if (min < DB_FILE_VERSION_MIN_OLDEST || min > DB_FILE_VERSION_MIN) { 
+			abortOpen();
 			throw new JDOFatalDataStoreException("Illegal minor file version: " + maj + "." + min +
 					"; Software version: " + DB_FILE_VERSION_MAJ + "." + DB_FILE_VERSION_MIN);
 		}
@@ -169,11 +231,13 @@ public class DiskAccessOneFile implements DiskAccess {
 		if (pageSize != ZooConfig.getFilePageSize()) {
 			//TODO actually, in this case would should just close the file and reopen it with the
 			//correct page size.
+			abortOpen();
 			throw new JDOFatalDataStoreException("Incompatible page size: " + pageSize);
 		}
 		
 		//main directory
 		rootPage = new RootPage();
+		groupCommitDelay = ZooConfig.getGroupCommitDelay();
 		rootPages[0] = in.readInt();
 		rootPages[1] = in.readInt();
 
@@ -189,6 +253,7 @@ public class DiskAccessOneFile implements DiskAccess {
 		if (r0 == ID_FAULTY_PAGE && r1 == ID_FAULTY_PAGE) {
 			String m = "Database is corrupted and cannot be recoverd. Please restore from backup.";
 			DBLogger.severe(m);
+			abortOpen();
 			throw new JDOFatalDataStoreException(m);
 		}
 
@@ -212,24 +277,55 @@ public class DiskAccessOneFile implements DiskAccess {
 		int pageCount = in.readInt();
 		//last used oid
 		long lastUsedOid = in.readLong();
+		rootPage.set(userPage, oidPage1, schemaPage1, indexPage, freeSpacePage, pageCount);
+		
+		if (isReadOnly) {
+			//a writer in this JVM may already have committed a newer state
+			snapshot = snapshots.pinLatest(new Snapshot(txId, rootPage.copy(), lastUsedOid));
+			txId = snapshot.getTxId();
+			rootPage.set(snapshot.getRootPage());
+			lastUsedOid = snapshot.getLastUsedOid();
+		} else {
+			freeIndex.setDeferredPages(
+					snapshots.publish(new Snapshot(txId, rootPage.copy(), lastUsedOid), null));
+		}
 		
 		//OIDs
-		oidIndex = new PagedOidIndex(file, oidPage1, lastUsedOid);
+		oidIndex = new PagedOidIndex(file, rootPage.getOidIndexPage(), lastUsedOid);
 
 		//dir for schemata
-		schemaIndex = new SchemaIndex(file, schemaPage1, false);
+		schemaIndex = new SchemaIndex(file, rootPage.getSchemIndexPage(), false);
 
 		//free space index
-		freeIndex.initBackingIndexLoad(file, freeSpacePage, pageCount);
+		freeIndex.initBackingIndexLoad(file, rootPage.getFMSPage(), rootPage.getFSMPageCount());
 		
         objectReader = new ObjectReader(file);
 		
 		ddsPool = new PoolDDS(file, this.cache);
-		
-		rootPage.set(userPage, oidPage1, schemaPage1, indexPage, freeSpacePage, pageCount);
 
 		fileInAP = file.getReader(true);
 		fileOut = file.getWriter(false);
+		
+		if (min != DB_FILE_VERSION_MIN && !isReadOnly) {
+			upgradeHeader(pageSize);
+		}
+	}
+
+	/**
+	 * Write the current file version to the header of an older file.
+	 * @param pageSize
+	 */
+	private void upgradeHeader(int pageSize) {
+		DBLogger.info("Upgrading file version to " + DB_FILE_VERSION_MAJ + "." + 
+				DB_FILE_VERSION_MIN + ": " + node.getDbPath());
+		fileOut.seekPageForWrite(DATA_TYPE.DB_HEADER, 0);
+		fileOut.writeInt(DB_FILE_TYPE_ID);
+		fileOut.writeInt(DB_FILE_VERSION_MAJ);
+		fileOut.writeInt(DB_FILE_VERSION_MIN);
+		fileOut.writeInt(pageSize);
+		fileOut.writeInt(rootPages[0]);
+		fileOut.writeInt(rootPages[1]);
+		file.flush();
 	}
 
 	private long checkRoot(StorageChannelInput in, int pageId) {
@@ -430,18 +526,115 @@ public class DiskAccessOneFile implements DiskAccess {
 		        loadFromCache);
 	}
 	
+	/**
+	 * Read objects that may match the filter. The filter is evaluated on the serialized
+	 * objects, so that objects that do not match are never de-serialized.
+	 */
+	@Override
+	public CloseableIterator<ZooPCImpl> readAllObjects(ZooClassDef def, QueryTreeNode filter,
+			boolean loadFromCache) {
+		SchemaIndexEntry se = schemaIndex.getSchema(def.getSchemaId());
+		if (se == null) {
+			throw new JDOUserException("Schema not found for class: " + def.getClassName());
+		}
+		
+		return new ObjectPosIterator(se.getObjectIndexIterator(), cache, objectReader, 
+		        loadFromCache, filter, def, new DataDeSerializerNoClass(fileInAP));
+	}
+	
 	/**
 	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
 	 */
 	@Override
 	public CloseableIterator<ZooPCImpl> readObjectFromIndex(
-			ZooFieldDef field, long minValue, long maxValue, boolean loadFromCache) {
+			ZooFieldDef field, long minValue, long maxValue, boolean ascending, 
+			boolean loadFromCache) {
 		SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
 		LongLongIndex fieldInd = (LongLongIndex) se.getIndex(field);
-		AbstractPageIterator<LLEntry> iter = fieldInd.iterator(minValue, maxValue);
+		AbstractPageIterator<LLEntry> iter;
+		if (ascending) {
+			iter = fieldInd.iterator(minValue, maxValue);
+		} else {
+			iter = fieldInd.descendingIterator(maxValue, minValue);
+		}
 		return new ObjectIterator(iter, cache, this, objectReader, loadFromCache);
 	}	
 	
+	/**
+	 * The OIDs of all ranges are collected and sorted, then they are either merged or 
+	 * intersected. This way, every object is loaded only once and objects are loaded in the 
+	 * order of their OIDs. For intersections, only objects that occur in all ranges are 
+	 * loaded.
+	 * WARNING: float/double values need to be converted with BitTools before used on indices. 
+	 */
+	@Override
+	public CloseableIterator<ZooPCImpl> readObjectFromIndices(ZooFieldDef[] fields, 
+			long[] minValues, long[] maxValues, boolean intersect, boolean loadFromCache) {
+		long[] oids = readOidsFromIndex(fields[0], minValues[0], maxValues[0]);
+		int n = oids.length;
+		for (int i = 1; i < fields.length; i++) {
+			long[] oids2 = readOidsFromIndex(fields[i], minValues[i], maxValues[i]);
+			if (intersect) {
+				//sorted merge, both arrays are sorted and contain no duplicates
+				int n2 = 0;
+				for (int i1 = 0, i2 = 0; i1 < n && i2 < oids2.length; ) {
+					if (oids[i1] < oids2[i2]) {
+						i1++;
+					} else if (oids[i1] > oids2[i2]) {
+						i2++;
+					} else {
+						oids[n2++] = oids[i1];
+						i1++;
+						i2++;
+					}
+				}
+				n = n2;
+			} else {
+				long[] oidsU = Arrays.copyOf(oids, n + oids2.length);
+				System.arraycopy(oids2, 0, oidsU, n, oids2.length);
+				Arrays.sort(oidsU);
+				oids = oidsU;
+				n = removeDuplicates(oids, oids.length);
+			}
+		}
+		return new ObjectIterator(new ObjectIterator.OidIterator(oids, n), cache, this, 
+				objectReader, loadFromCache);
+	}
+	
+	/**
+	 * @return The sorted OIDs in an index range, without duplicates.
+	 */
+	private long[] readOidsFromIndex(ZooFieldDef field, long minValue, long maxValue) {
+		SchemaIndexEntry se = schemaIndex.getSchema(field.getDeclaringType());
+		LongLongIndex fieldInd = (LongLongIndex) se.getIndex(field);
+		AbstractPageIterator<LLEntry> iter = fieldInd.iterator(minValue, maxValue);
+		long[] oids = new long[64];
+		int n = 0;
+		while (iter.hasNext()) {
+			if (n == oids.length) {
+				oids = Arrays.copyOf(oids, n*2);
+			}
+			oids[n++] = iter.next().getValue();
+		}
+		iter.close();
+		Arrays.sort(oids, 0, n);
+		return Arrays.copyOf(oids, removeDuplicates(oids, n));
+	}
+	
+	/**
+	 * Remove duplicates from a sorted array.
+	 * @return The number of remaining values.
+	 */
+	private static int removeDuplicates(long[] oids, int n) {
+		int nUnique = 0;
+		for (int i = 0; i < n; i++) {
+			if (nUnique == 0 || oids[i] != oids[nUnique-1]) {
+				oids[nUnique++] = oids[i];
+			}
+		}
+		return nUnique;
+	}
+	
     /**
      * Read objects.
      * This should never be necessary. -> add warning?
@@ -495,6 +688,51 @@ public class DiskAccessOneFile implements DiskAccess {
 		}
 	}
 
+	@Override
+	public void readObjects(long[] oids, int size, int depth) {
+		final DataDeSerializer dds = ddsPool.get();
+		ArrayList<ZooPCImpl> refs = new ArrayList<ZooPCImpl>();
+		long[] pos = new long[size];
+		for (int level = 0; size > 0; level++) {
+			if (pos.length < size) {
+				pos = new long[size];
+			}
+			//Missing objects are skipped, the caller reports them when they are accessed.
+			int nFound = 0;
+			for (int i = 0; i < size; i++) {
+				LLEntry e = oidIndex.findOidGetLong(oids[i]);
+				if (e != null) {
+					pos[nFound++] = e.getValue();
+				}
+			}
+			size = nFound;
+			Arrays.sort(pos, 0, size);
+			size = removeDuplicates(pos, size);
+
+			dds.setReferenceCollector(level < depth ? refs : null);
+			try {
+				for (int i = 0; i < size; i++) {
+					dds.readObject(BitTools.getPage(pos[i]), BitTools.getOffs(pos[i]), true);
+				}
+			} finally {
+				dds.setReferenceCollector(null);
+			}
+
+			//next batch: referenced objects that are still hollow
+			if (oids.length < refs.size()) {
+				oids = new long[refs.size()];
+			}
+			size = 0;
+			for (ZooPCImpl pc: refs) {
+				if (pc.jdoZooIsStateHollow() && !pc.jdoZooIsDeleted()) {
+					oids[size++] = pc.jdoZooGetOid();
+				}
+			}
+			refs.clear();
+		}
+		ddsPool.offer(dds);
+	}
+
 	@Override
 	public GenericObject readGenericObject(ZooClassDef def, long oid) {
 		FilePos oie = oidIndex.findOid(oid);
@@ -542,11 +780,59 @@ public class DiskAccessOneFile implements DiskAccess {
 	@Override
 	public void close() {
 		DBLogger.debugPrintln(1, "Closing DB file: " + node.getDbPath());
+		if (isReadOnly) {
+			snapshots.release(snapshot);
+		} else {
+			sync();
+		}
 		file.close();
+		releaseRegistry();
+	}
+
+	/**
+	 * Close the file after it turned out to be unusable during construction.
+	 */
+	private void abortOpen() {
+		file.close();
+		releaseRegistry();
+	}
+	
+	private void releaseRegistry() {
+		if (isReadOnly) {
+			snapshots.removeReader();
+		} else {
+			snapshots.removeWriter();
+		}
+		snapshots.close();
+	}
+
+	@Override
+	public boolean begin() {
+		if (!isReadOnly) {
+			return false;
+		}
+		Snapshot latest = snapshots.pinLatest();
+		if (latest == snapshot) {
+			snapshots.release(latest);
+			return false;
+		}
+		snapshots.release(snapshot);
+		snapshot = latest;
+		txId = latest.getTxId();
+		rootPage.set(latest.getRootPage());
+		//Pages of the previous snapshot may have been reused by the writer.
+		file.discardReadBuffers();
+		schemaIndex.revert(rootPage.getSchemIndexPage());
+		oidIndex.revert(rootPage.getOidIndexPage());
+		return true;
 	}
 
 	@Override
 	public void commit() {
+		if (isReadOnly) {
+			//The snapshot is kept until the next transaction begins
+			return;
+		}
 		txId++;
 		file.acquireLock(txId);
 		int oidPage = oidIndex.write();
@@ -564,14 +850,30 @@ public class DiskAccessOneFile implements DiskAccess {
 		}
 		rootPage.set(userPage, oidPage, schemaPage1, indexPage, freePage, pageCount);
 		
-		// flush the file including all splits 
-		file.flush(); 
-		writeMainPage(userPage, oidPage, schemaPage1, indexPage, freePage, pageCount, fileOut);
-		//Second flush to update root pages.
-		file.flush(); 
-		
-		//tell FSM that new free pages can now be reused.
-		freeIndex.notifyCommit();
+		if (groupCommitDelay > 0) {
+			//Group commit: write everything, but defer the root page and the forcing to disk.
+			//All data pages have been written to pages that are free in the last durable 
+			//state, so the root pages on disk remain valid.
+			//If no further commit comes along, the session calls sync() when the delay is over.
+			file.flushNoSync();
+			long now = System.currentTimeMillis();
+			if (unsyncedSince < 0) {
+				unsyncedSince = now;
+			}
+			if (now - unsyncedSince >= groupCommitDelay) {
+				sync();
+			}
+		} else {
+			// flush the file including all splits 
+			file.flush(); 
+			writeMainPage(userPage, oidPage, schemaPage1, indexPage, freePage, pageCount, fileOut);
+			//Second flush to update root pages.
+			file.flush(); 
+			statNSync++;
+
+			//tell FSM that new free pages can now be reused.
+			notifyDurable();
+		}
 		
 		//refresh pos-index iterators, if any exist.
 		//TODO not necessary at the moment..., all tests (e.g. Test_62) pass anyway.
@@ -579,12 +881,68 @@ public class DiskAccessOneFile implements DiskAccess {
 		//schemaIndex.refreshIterators();
 	}
 
+	/**
+	 * Force all transactions that have been committed with group commit to disk. This writes 
+	 * a single root page for all of them.
+	 */
+	@SuppressWarnings("deprecation")
+	@Override
+	public void sync() {
+		if (unsyncedSince < 0) {
+			return;
+		}
+		// flush the file including all splits 
+		file.flush(); 
+		writeMainPage(rootPage.getUserPage(), rootPage.getOidIndexPage(), 
+				rootPage.getSchemIndexPage(), rootPage.getIndexPage(), rootPage.getFMSPage(), 
+				rootPage.getFSMPageCount(), fileOut);
+		//Second flush to update root pages.
+		file.flush();
+		statNSync++;
+		unsyncedSince = -1;
+		
+		//Tell FSM that new free pages can now be reused. Pages freed by the grouped 
+		//transactions must not be reused before the root page that releases them is durable.
+		notifyDurable();
+		
+		for (DurabilityListener l: unsyncedListeners) {
+			l.onDurable();
+		}
+		unsyncedListeners.clear();
+	}
+	
+	/**
+	 * Publish the durable root page to read-only sessions and tell the FSM which free pages
+	 * can be reused. Pages that are still visible to the snapshot of a read-only session are
+	 * deferred.
+	 */
+	private void notifyDurable() {
+		Snapshot s = new Snapshot(txId, rootPage.copy(), oidIndex.getLastUsedOid());
+		freeIndex.setDeferredPages(snapshots.publish(s, freeIndex.getAddedSinceCommit()));
+		freeIndex.notifyCommit();
+	}
+	
+	@Override
+	public void notifyOnDurable(DurabilityListener l) {
+		if (unsyncedSince < 0) {
+			l.onDurable();
+		} else {
+			unsyncedListeners.add(l);
+		}
+	}
+	
 	/**
 	 * This can be called after a failed commit (or JDO flush()). In case the root pages have not 
 	 * been rewritten, this method will revert existing changes.
 	 */
 	@Override
 	public void revert() {
+		if (isReadOnly) {
+			//nothing was written
+			return;
+		}
+		//Reverting reloads the FSM. The FSM keeps skipping pages that were freed since the last 
+		//durable state, so these are not reused before the next sync().
 		//Empty file buffers. For now we just flush them.
 		file.flush(); //TODO revert for file???
 		//revert
@@ -600,45 +958,84 @@ public class DiskAccessOneFile implements DiskAccess {
 	 * Defines an index and populates it. All objects are put into the cache. This is not 
 	 * necessarily useful, but it is a one-off operation. Otherwise we would need a special
 	 * purpose implementation of the deserializer, which would have the need for a cache removed.
+	 * The entries are collected and sorted in runs of at most INDEX_SORT_RUN_SIZE entries.
+	 * The first run is bulk-loaded, the entries of following runs are inserted in sorted order.
 	 */
 	@Override
 	public void defineIndex(ZooClassDef def, ZooFieldDef field, boolean isUnique) {
 		SchemaIndexEntry se = schemaIndex.getSchema(def);
-		LongLongIndex fieldInd = (LongLongIndex) se.defineIndex(field, isUnique);
+		AbstractPagedIndex fieldInd = se.defineIndex(field, isUnique);
 		
-		//fill index with existing objects
+		//collect existing objects
+		long[] keys = new long[1024];
+		long[] oids = new long[1024];
+		int n = 0;
+		boolean isFirstRun = true;
 		PagedPosIndex ind = se.getObjectIndexLatestSchemaVersion();
 		PagedPosIndex.ObjectPosIterator iter = ind.iteratorObjects();
         DataDeSerializerNoClass dds = new DataDeSerializerNoClass(fileInAP);
-        if (field.isPrimitiveType()) {
-			while (iter.hasNext()) {
-				long pos = iter.nextPos();
-				dds.seekPos(pos);
-				//first read the key, then afterwards the field!
-				long key = dds.getAttrAsLong(def, field);
-				if (isUnique) {
-					if (!fieldInd.insertLongIfNotSet(key, dds.getLastOid())) {
-						throw new JDOUserException("Duplicate entry in unique index: " +
-								Util.oidToString(dds.getLastOid()));
-					}
-				} else {
-					fieldInd.insertLong(key, dds.getLastOid());
-				}
-			}
-        } else {
-			while (iter.hasNext()) {
-				long pos = iter.nextPos();
-				dds.seekPos(pos);
-				//first read the key, then afterwards the field!
-				long key = dds.getAttrAsLongObjectNotNull(def, field);
-				fieldInd.insertLong(key, dds.getLastOid());
+        boolean isPrimitive = field.isPrimitiveType();
+		while (iter.hasNext()) {
+			long pos = iter.nextPos();
+			dds.seekPos(pos);
+			//first read the key, then afterwards the field!
+			long key;
+			if (isPrimitive) {
+				key = dds.getAttrAsLong(def, field);
+			} else {
+				key = dds.getAttrAsLongObjectNotNull(def, field);
 				//TODO handle null values:
 				//-ignore them?
 				//-use special value?
 			}
-			//DatabaseLogger.debugPrintln(0, "FIXME defineIndex()");
-        }
+			if (n == keys.length) {
+				if (n < INDEX_SORT_RUN_SIZE) {
+					keys = Arrays.copyOf(keys, n * 2);
+					oids = Arrays.copyOf(oids, n * 2);
+				} else {
+					addIndexRun(fieldInd, keys, oids, n, isFirstRun);
+					isFirstRun = false;
+					n = 0;
+				}
+			}
+			keys[n] = key;
+			oids[n] = dds.getLastOid();
+			n++;
+		}
         iter.close();
+        
+        addIndexRun(fieldInd, keys, oids, n, isFirstRun);
+	}
+	
+	/**
+	 * Sort a run of entries and add them to an index.
+	 * @param ind The index
+	 * @param keys
+	 * @param oids
+	 * @param n Number of entries
+	 * @param isFirstRun Whether the index is still empty and can be bulk-loaded
+	 */
+	private static void addIndexRun(AbstractPagedIndex ind, long[] keys, long[] oids, int n,
+			boolean isFirstRun) {
+        LLIndexBuilder.sort(keys, oids, n);
+        if (isFirstRun) {
+        	LLIndexBuilder builder = new LLIndexBuilder(ind);
+        	for (int i = 0; i < n; i++) {
+        		if (!builder.add(keys[i], oids[i])) {
+        			throw new JDOUserException("Duplicate entry in unique index: " +
+        					Util.oidToString(oids[i]));
+        		}
+        	}
+        	builder.finish();
+        	return;
+        }
+        LongLongIndex llInd = (LongLongIndex) ind;
+        for (int i = 0; i < n; i++) {
+        	if (!llInd.insertLongIfNotSet(keys[i], oids[i])) {
+        		throw new JDOUserException("Duplicate entry in unique index: " +
+        				Util.oidToString(oids[i]));
+        	}
+        }
 	}
 
 	@Override
@@ -679,6 +1076,12 @@ public class DiskAccessOneFile implements DiskAccess {
 			return file.statsGetReadCountUnique();
 		case IO_PAGE_WRITE_CNT:
 			return file.statsGetWriteCount();
+		case IO_PAGE_POOL_HIT_CNT:
+			return file.statsGetPoolHitCount();
+		case IO_PAGE_POOL_MISS_CNT:
+			return file.statsGetPoolMissCount();
+		case IO_SYNC_CNT:
+			return statNSync;
 		case DB_PAGE_CNT:
 			return file.statsGetPageCount();
 		case DB_PAGE_CNT_IDX_FSM:
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.server;
+
+import java.nio.ByteBuffer;
+
+import org.zoodb.jdo.internal.util.PrimLongMapLI;
+
+/**
+ * A bounded pool of page buffers, keyed by page ID. The pool is shared by all views of a
+ * StorageChannel, so that alternating access to (for example) the OID index, the pos-index
+ * and data pages does not result in re-reading the same pages from disk.
+ *
+ * Eviction uses the CLOCK algorithm: every slot has a reference bit that is set on access and
+ * cleared when the clock hand passes over it. The first slot with a cleared bit is reused.
+ *
+ * The pool only contains complete pages that have been read from disk. Any page that is
+ * written is removed from the pool, because writers may write partial pages.
+ *
+ * The pool is thread-safe, because pages may be added by the {@link PageReadAhead} thread.
+ *
+ * @author Tilmann Zaeschke
+ */
+public final class PagePool {
+
+	private static final class Slot {
+		private final ByteBuffer buf;
+		private long pageId = -1;
+		private boolean isReferenced = false;
+		Slot(ByteBuffer buf) {
+			this.buf = buf;
+		}
+	}
+
+	private final Slot[] slots;
+	private final PrimLongMapLI<Slot> map;
+	private final int pageSize;
+	private int clockHand = 0;
+
+	private int statNHit = 0;
+	private int statNMiss = 0;
+
+	/**
+	 * @param pageSize The size of a page in bytes.
+	 * @param capacity Maximum number of pages in the pool.
+	 */
+	public PagePool(int pageSize, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity=" + capacity);
+		}
+		this.pageSize = pageSize;
+		slots = new Slot[capacity];
+		map = new PrimLongMapLI<Slot>(capacity*2);
+		ByteBuffer slab = ByteBuffer.allocateDirect(pageSize * capacity);
+		for (int i = 0; i < capacity; i++) {
+			slab.limit((i+1) * pageSize);
+			slab.position(i * pageSize);
+			slots[i] = new Slot(slab.slice());
+		}
+	}
+
+	/**
+	 * Copies a pooled page into the given buffer.
+	 * @param buf The target buffer.
+	 * @param pageId The page to read.
+	 * @return 'true' if the page was found in the pool, otherwise 'false'.
+	 */
+	public synchronized boolean read(ByteBuffer buf, long pageId) {
+		Slot s = map.get(pageId);
+		if (s == null) {
+			statNMiss++;
+			return false;
+		}
+		s.isReferenced = true;
+		s.buf.clear();
+		buf.put(s.buf);
+		statNHit++;
+		return true;
+	}
+
+	/**
+	 * Stores a copy of a page that has just been read from disk.
+	 * @param buf The page buffer, with the position at the end of the read data.
+	 * @param pageId The page ID.
+	 */
+	public synchronized void put(ByteBuffer buf, long pageId) {
+		if (buf.position() != pageSize) {
+			//incomplete page, for example at the end of the file
+			return;
+		}
+		Slot s = map.get(pageId);
+		if (s == null) {
+			s = findVictim();
+			if (s.pageId >= 0) {
+				map.remove(s.pageId);
+			}
+			s.pageId = pageId;
+			map.put(pageId, s);
+		}
+		s.isReferenced = true;
+		ByteBuffer src = buf.duplicate();
+		src.flip();
+		s.buf.clear();
+		s.buf.put(src);
+	}
+
+	private Slot findVictim() {
+		while (true) {
+			Slot s = slots[clockHand];
+			clockHand++;
+			if (clockHand == slots.length) {
+				clockHand = 0;
+			}
+			if (!s.isReferenced) {
+				return s;
+			}
+			s.isReferenced = false;
+		}
+	}
+
+	/**
+	 * Remove a page from the pool. This has to be called whenever a page is written.
+	 * @param pageId
+	 */
+	public synchronized void invalidate(long pageId) {
+		Slot s = map.remove(pageId);
+		if (s != null) {
+			s.pageId = -1;
+			s.isReferenced = false;
+		}
+	}
+
+	/**
+	 * Remove all pages from the pool.
+	 */
+	public synchronized void clear() {
+		map.clear();
+		for (Slot s: slots) {
+			s.pageId = -1;
+			s.isReferenced = false;
+		}
+	}
+
+	public synchronized boolean contains(long pageId) {
+		return map.containsKey(pageId);
+	}
+
+	public synchronized int size() {
+		return map.size();
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	public synchronized int statsGetHitCount() {
+		return statNHit;
+	}
+
+	public synchronized int statsGetMissCount() {
+		return statNMiss;
+	}
+}
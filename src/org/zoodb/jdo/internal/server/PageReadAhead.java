@@ -0,0 +1,176 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+import org.zoodb.jdo.internal.util.PrimLongMapLI;
+
+/**
+ * Reads pages ahead of a sequential scan. Requested pages are read on a background thread
+ * and put into the page pool, so that a subsequent read can be served from the pool 
+ * without blocking on the disk.
+ *
+ * Pages that are written after they have been requested are removed from the queue. If the
+ * page is already being read, the read result is discarded.
+ *
+ * The thread is started with the first request and stopped in close().
+ *
+ * @author Tilmann Zaeschke
+ */
+public final class PageReadAhead implements Runnable {
+
+	private final FileChannel fc;
+	private final PagePool pool;
+	private final long pageSize;
+	private final int maxPending;
+	private final ArrayDeque<Long> queue = new ArrayDeque<Long>();
+	//requested pages that have not been put into the pool yet
+	private final PrimLongMapLI<Object> pending = new PrimLongMapLI<Object>();
+	private final ByteBuffer buf;
+	private Thread thread = null;
+	private boolean isClosed = false;
+	
+	private int statNRead = 0;
+
+	/**
+	 * @param fc The file channel, only positional reads are used.
+	 * @param pool The page pool that receives the pages.
+	 * @param pageSize The size of a page in bytes.
+	 * @param maxPending Maximum number of pages that can be queued.
+	 */
+	public PageReadAhead(FileChannel fc, PagePool pool, int pageSize, int maxPending) {
+		this.fc = fc;
+		this.pool = pool;
+		this.pageSize = pageSize;
+		this.maxPending = maxPending;
+		this.buf = ByteBuffer.allocateDirect(pageSize);
+	}
+
+	/**
+	 * Request a page to be read into the pool. Requests are ignored if the queue is full.
+	 * @param pageId
+	 */
+	public synchronized void request(long pageId) {
+		if (isClosed || pending.size() >= maxPending || pending.containsKey(pageId)) {
+			return;
+		}
+		pending.put(pageId, Boolean.TRUE);
+		queue.add(pageId);
+		if (thread == null) {
+			thread = new Thread(this, "ZooDB-read-ahead");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Remove a page from the queue. This has to be called whenever a page is written.
+	 * @param pageId
+	 */
+	public synchronized void invalidate(long pageId) {
+		pending.remove(pageId);
+	}
+
+	/**
+	 * Discard all pending requests. Pages that are currently being read are not put into 
+	 * the pool.
+	 */
+	public synchronized void clear() {
+		queue.clear();
+		pending.clear();
+	}
+
+	/**
+	 * Stop the thread. Pending requests are discarded.
+	 */
+	public void close() {
+		Thread t;
+		synchronized (this) {
+			isClosed = true;
+			queue.clear();
+			pending.clear();
+			notifyAll();
+			t = thread;
+		}
+		if (t != null) {
+			//Do not interrupt, that would close the FileChannel
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			long pageId;
+			synchronized (this) {
+				while (queue.isEmpty() && !isClosed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (isClosed) {
+					return;
+				}
+				pageId = queue.poll();
+				if (!pending.containsKey(pageId)) {
+					continue;
+				}
+			}
+			if (pool.contains(pageId)) {
+				invalidate(pageId);
+				continue;
+			}
+			buf.clear();
+			try {
+				fc.read(buf, pageId * pageSize);
+			} catch (IOException e) {
+				//ignore, the page will be read on demand
+				invalidate(pageId);
+				continue;
+			}
+			synchronized (this) {
+				//the page may have been written in the meantime
+				if (pending.remove(pageId) != null) {
+					pool.put(buf, pageId);
+					statNRead++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of pages that have been read ahead and put into the pool.
+	 */
+	public synchronized int statsGetReadCount() {
+		return statNRead;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.zoodb.jdo.internal.util.PrimLongMapLI;
+
+/**
+ * A write-behind queue for pages. Pages that are written by any of the writer views are 
+ * collected here until the StorageChannel is flushed (or until the queue is full). They are 
+ * then sorted by page ID and adjacent pages are merged into a single gathering write.
+ * This turns the random page writes of large commits into mostly sequential writes.
+ * 
+ * Pages that are written multiple times before the queue is drained are merged in memory, 
+ * exactly as if they had been written to disk.
+ * 
+ * Readers have to check the queue before reading a page from disk, see read().
+ * 
+ * @author Tilmann Zaeschke
+ */
+public final class PageWriteQueue {
+
+	/** Default maximum number of queued pages (8MB with 4KB pages). */
+	public static final int MAX_PAGES_DEFAULT = 2048;
+	
+	private final int pageSize;
+	private final int maxPages;
+	private final PrimLongMapLI<ByteBuffer> pages;
+	private final ArrayList<ByteBuffer> freeBuffers = new ArrayList<ByteBuffer>();
+	private final byte[] zeros;
+	
+	private int statNBatchWrites = 0;
+
+	public PageWriteQueue(int pageSize, int maxPages) {
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+		this.pages = new PrimLongMapLI<ByteBuffer>(maxPages*2);
+		this.zeros = new byte[pageSize];
+	}
+	
+	/**
+	 * Add a page to the queue. The buffer is consumed from position to limit.
+	 * @param buf
+	 * @param pageId
+	 * @return 'true' if the queue is full and should be drained.
+	 */
+	public boolean add(ByteBuffer buf, long pageId) {
+		ByteBuffer b = pages.get(pageId);
+		if (b == null) {
+			b = newBuffer();
+			b.put(buf);
+			b.flip();
+			pages.put(pageId, b);
+		} else {
+			//merge with previously written version
+			int prevLen = b.limit();
+			b.clear();
+			b.put(buf);
+			b.limit(Math.max(prevLen, b.position()));
+			b.position(0);
+		}
+		return pages.size() >= maxPages;
+	}
+	
+	private ByteBuffer newBuffer() {
+		if (freeBuffers.isEmpty()) {
+			return ByteBuffer.allocateDirect(pageSize);
+		}
+		ByteBuffer b = freeBuffers.remove(freeBuffers.size()-1);
+		b.clear();
+		return b;
+	}
+
+	/**
+	 * Copies a queued page into the given buffer.
+	 * @param buf
+	 * @param pageId
+	 * @return 'true' if the page was queued, otherwise 'false'.
+	 */
+	public boolean read(ByteBuffer buf, long pageId) {
+		ByteBuffer b = pages.get(pageId);
+		if (b == null) {
+			return false;
+		}
+		buf.put(b.duplicate());
+		return true;
+	}
+	
+	public boolean contains(long pageId) {
+		return pages.containsKey(pageId);
+	}
+	
+	public boolean isEmpty() {
+		return pages.isEmpty();
+	}
+	
+	public int size() {
+		return pages.size();
+	}
+	
+	/**
+	 * Write all queued pages to the file channel, sorted by page ID. Adjacent pages are 
+	 * written with a single gathering write. This does not force() the channel.
+	 * @param fc
+	 * @throws IOException
+	 */
+	public void writeTo(FileChannel fc) throws IOException {
+		if (pages.isEmpty()) {
+			return;
+		}
+		long[] ids = new long[pages.size()];
+		int n = 0;
+		for (PrimLongMapLI.Entry<ByteBuffer> e: pages.entrySet()) {
+			ids[n++] = e.getKey();
+		}
+		Arrays.sort(ids);
+		
+		ArrayList<ByteBuffer> run = new ArrayList<ByteBuffer>();
+		int start = 0;
+		while (start < n) {
+			int end = start + 1;
+			while (end < n && ids[end] == ids[end-1] + 1) {
+				end++;
+			}
+			run.clear();
+			for (int i = start; i < end; i++) {
+				ByteBuffer b = pages.get(ids[i]);
+				if (i < end-1 && b.limit() < pageSize) {
+					//pad incomplete pages, unless they are the last page of the run
+					b.position(b.limit());
+					b.limit(pageSize);
+					b.put(zeros, 0, pageSize - b.position());
+					b.position(0);
+				}
+				run.add(b);
+			}
+			writeRun(fc, ids[start] * pageSize, run);
+			start = end;
+		}
+		
+		for (int i = 0; i < n; i++) {
+			freeBuffers.add(pages.get(ids[i]));
+		}
+		pages.clear();
+	}
+	
+	private void writeRun(FileChannel fc, long pos, ArrayList<ByteBuffer> run) 
+			throws IOException {
+		statNBatchWrites++;
+		if (run.size() == 1) {
+			ByteBuffer b = run.get(0);
+			while (b.hasRemaining()) {
+				pos += fc.write(b, pos);
+			}
+			return;
+		}
+		ByteBuffer[] bufs = run.toArray(new ByteBuffer[run.size()]);
+		ByteBuffer last = bufs[bufs.length-1];
+		fc.position(pos);
+		while (last.hasRemaining()) {
+			fc.write(bufs);
+		}
+	}
+
+	/**
+	 * @return Number of write calls issued to the file channel.
+	 */
+	public int statsGetBatchWriteCount() {
+		return statNBatchWrites;
+	}
+}
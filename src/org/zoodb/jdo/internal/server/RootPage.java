@@ -51,6 +51,17 @@ final class RootPage {
 		this.pageCount = pageCount;
 	}
 
+	void set(RootPage root) {
+		set(root.userPage, root.oidPage, root.schemaPage, root.indexPage, 
+				root.freeSpaceIndexPage, root.pageCount);
+	}
+	
+	RootPage copy() {
+		RootPage root = new RootPage();
+		root.set(this);
+		return root;
+	}
+
 	@Deprecated
 	int getUserPage() {
 		return userPage; 
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import org.zoodb.jdo.internal.util.DBLogger;
+
+/**
+ * Keeps track of the durable database states (snapshots) that are visible to the sessions 
+ * of a database file in this JVM.
+ * 
+ * The writing session publishes a snapshot whenever a root page has become durable. 
+ * Read-only sessions pin the latest snapshot when a transaction begins and keep it until 
+ * the next transaction begins or until they are closed. Since pages are never overwritten
+ * while they are used by the latest root page, a snapshot remains valid as long as the pages
+ * that were freed by later transactions are not reused. Such pages are therefore deferred 
+ * until all snapshots that may see them have been released.
+ * 
+ * There is one registry per database file. Sessions in other processes are not tracked, 
+ * they are excluded with file locks: The writing session holds an exclusive lock on its 
+ * channel. While there are read-only sessions but no writing session in this JVM, the 
+ * registry holds a shared lock on the file, so that writers in other processes are refused.
+ * Writers in this JVM bypass this lock, the registry releases it while they are open.
+ * 
+ * @author Tilmann Zaeschke
+ */
+public final class SnapshotRegistry {
+
+	/**
+	 * A durable database state, as described by a root page.
+	 */
+	static final class Snapshot {
+		private final long txId;
+		private final RootPage root;
+		private final long lastUsedOid;
+		//guarded by the registry
+		private int nPins = 0;
+		
+		Snapshot(long txId, RootPage root, long lastUsedOid) {
+			this.txId = txId;
+			this.root = root;
+			this.lastUsedOid = lastUsedOid;
+		}
+		
+		long getTxId() {
+			return txId;
+		}
+		
+		RootPage getRootPage() {
+			return root;
+		}
+		
+		long getLastUsedOid() {
+			return lastUsedOid;
+		}
+	}
+	
+	/** Pages that were freed by the transaction that committed txId. */
+	private static final class FreedPages {
+		private final long txId;
+		private final BitSet pages;
+		FreedPages(long txId, BitSet pages) {
+			this.txId = txId;
+			this.pages = pages;
+		}
+	}
+	
+	private static final HashMap<String, SnapshotRegistry> REGISTRIES = 
+		new HashMap<String, SnapshotRegistry>();
+
+	private final String path;
+	private final boolean isLockable;
+	//guarded by REGISTRIES
+	private int nUsers = 0;
+	//guarded by this
+	private int nReaders = 0;
+	private int nWriters = 0;
+	private RandomAccessFile lockFile = null;
+	private FileLock sharedLock = null;
+	private Snapshot latest = null;
+	private final ArrayList<Snapshot> pinned = new ArrayList<Snapshot>();
+	private final ArrayList<FreedPages> deferred = new ArrayList<FreedPages>();
+
+	private SnapshotRegistry(String path, boolean isLockable) {
+		this.path = path;
+		this.isLockable = isLockable;
+	}
+	
+	/**
+	 * Get the registry for a database file. Every call has to be followed by a call to 
+	 * close().
+	 * @param dbPath
+	 * @param isLockable Whether the database is a file that can be locked.
+	 * @return The registry of the database file.
+	 */
+	public static SnapshotRegistry open(String dbPath, boolean isLockable) {
+		String path = new File(dbPath).getAbsolutePath();
+		synchronized (REGISTRIES) {
+			SnapshotRegistry reg = REGISTRIES.get(path);
+			if (reg == null) {
+				reg = new SnapshotRegistry(path, isLockable);
+				REGISTRIES.put(path, reg);
+			}
+			reg.nUsers++;
+			return reg;
+		}
+	}
+	
+	/**
+	 * Release the registry. The registry is discarded when it is not used anymore.
+	 */
+	public void close() {
+		synchronized (REGISTRIES) {
+			if (--nUsers == 0) {
+				REGISTRIES.remove(path);
+			}
+		}
+	}
+	
+	/**
+	 * Register a read-only session. This has to be called before the session opens the file.
+	 * Unless a writer is open in this JVM, the file is locked shared. 
+	 * @throws RuntimeException if a writer in another process holds the file.
+	 */
+	synchronized void addReader() {
+		if (sharedLock == null) {
+			//Writers may have been registered without closing, so we check the lock anyway.
+			lockShared(nWriters > 0);
+		}
+		nReaders++;
+	}
+	
+	/**
+	 * Unregister a read-only session after it has closed the file.
+	 */
+	synchronized void removeReader() {
+		if (--nReaders == 0) {
+			unlockShared();
+		}
+	}
+	
+	/**
+	 * Register a writing session. This has to be called before the session opens and locks
+	 * the file. The shared lock of the readers is released, because it would conflict with
+	 * the lock of the writer. 
+	 */
+	synchronized void addWriter() {
+		nWriters++;
+		unlockShared();
+	}
+	
+	/**
+	 * Unregister a writing session after it has closed the file, or after it failed to open 
+	 * it. The file is locked again for remaining readers.
+	 */
+	synchronized void removeWriter() {
+		nWriters--;
+		if (nReaders > 0 && sharedLock == null) {
+			try {
+				lockShared(nWriters > 0);
+			} catch (RuntimeException e) {
+				//We can not refuse anymore, but we can tell.
+				DBLogger.warning("Read-only sessions are not protected from other processes: " + 
+						e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Lock the file shared.
+	 * @param hasWriter Whether a writer is registered in this JVM. Only the lock of a 
+	 * registered writer is accepted instead of the shared lock.
+	 */
+	private void lockShared(boolean hasWriter) {
+		if (!isLockable || !new File(path).exists()) {
+			//nothing to lock, opening the file will fail
+			return;
+		}
+		try {
+			lockFile = new RandomAccessFile(path, "r");
+			sharedLock = lockFile.getChannel().tryLock(0, Long.MAX_VALUE, true);
+		} catch (OverlappingFileLockException e) {
+			//locked in this JVM
+			unlockShared();
+			if (hasWriter) {
+				return;
+			}
+			throw DBLogger.newUser("The file is already locked in this JVM: " + path);
+		} catch (IOException e) {
+			unlockShared();
+			throw DBLogger.newFatal("Error locking database: " + path, e);
+		}
+		if (sharedLock == null) {
+			unlockShared();
+			throw DBLogger.newUser("The file is already accessed by another process: " + path);
+		}
+	}
+	
+	private void unlockShared() {
+		try {
+			if (sharedLock != null) {
+				sharedLock.release();
+			}
+			if (lockFile != null) {
+				lockFile.close();
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error unlocking database: " + path, e);
+		} finally {
+			sharedLock = null;
+			lockFile = null;
+		}
+	}
+	
+	/**
+	 * Publish a new durable database state. This is only called by the writing session.
+	 * @param s The new snapshot.
+	 * @param freedPages Pages that have been freed since the previous snapshot, or null.
+	 * @return All free pages that must not be reused yet because they may still be visible
+	 * in a pinned snapshot.
+	 */
+	synchronized BitSet publish(Snapshot s, BitSet freedPages) {
+		latest = s;
+		long oldest = getOldestPinnedTxId();
+		if (freedPages != null && !freedPages.isEmpty() && oldest < s.getTxId()) {
+			deferred.add(new FreedPages(s.getTxId(), (BitSet) freedPages.clone()));
+		}
+		BitSet ret = new BitSet();
+		for (int i = 0; i < deferred.size(); i++) {
+			FreedPages fp = deferred.get(i);
+			if (fp.txId <= oldest) {
+				//no snapshot can see these pages anymore
+				deferred.remove(i--);
+			} else {
+				ret.or(fp.pages);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Pin the latest published snapshot.
+	 * @return The pinned snapshot or null if no snapshot has been published.
+	 */
+	synchronized Snapshot pinLatest() {
+		if (latest == null) {
+			return null;
+		}
+		pin(latest);
+		return latest;
+	}
+
+	/**
+	 * Pin the latest published snapshot. If there is none, the given snapshot is published 
+	 * and pinned instead.
+	 * @param s The snapshot that was read from disk.
+	 * @return The pinned snapshot.
+	 */
+	synchronized Snapshot pinLatest(Snapshot s) {
+		if (latest == null) {
+			latest = s;
+		}
+		pin(latest);
+		return latest;
+	}
+	
+	private void pin(Snapshot s) {
+		if (s.nPins++ == 0) {
+			pinned.add(s);
+		}
+	}
+	
+	/**
+	 * Release a snapshot that was pinned with pinLatest().
+	 * @param s
+	 */
+	synchronized void release(Snapshot s) {
+		if (--s.nPins == 0) {
+			pinned.remove(s);
+		}
+	}
+	
+	/**
+	 * @return The ID of the oldest pinned snapshot, or Long.MAX_VALUE if no snapshot is 
+	 * pinned.
+	 */
+	synchronized long getOldestPinnedTxId() {
+		long oldest = Long.MAX_VALUE;
+		for (Snapshot s: pinned) {
+			if (s.getTxId() < oldest) {
+				oldest = s.getTxId();
+			}
+		}
+		return oldest;
+	}
+}
@@ -44,10 +44,29 @@ public interface StorageChannel {
 
 	void flush();
 
+	/**
+	 * Like flush(), but does not force the written pages to disk.
+	 */
+	void flushNoSync();
+
 	void write(ByteBuffer buf, long currentPage);
 
 	void readPage(ByteBuffer buf, long pageId);
 
+	/**
+	 * Discard all pages that are buffered for reading. This is required when pages may have 
+	 * been modified through a different channel on the same file.
+	 */
+	void discardReadBuffers();
+
+	/**
+	 * Hint that the given pages will be read soon. Implementations may read them 
+	 * asynchronously, or ignore the hint.
+	 * @param pageIds
+	 * @param size The number of valid entries in pageIds.
+	 */
+	void prefetch(int[] pageIds, int size);
+
 	int statsGetReadCount();
 
 	int statsGetWriteCount();
@@ -60,4 +79,8 @@ public interface StorageChannel {
 
 	int statsGetPageCount();
 
+	int statsGetPoolHitCount();
+
+	int statsGetPoolMissCount();
+
 }
@@ -31,7 +31,7 @@ import org.zoodb.jdo.internal.util.DBLogger;
 
 public class StorageReader implements StorageChannelInput {
 
-	private final ByteBuffer buf;
+	private ByteBuffer buf;
 	private int currentPage = -1;
 	
 	//indicate whether to automatically allocate and move to next page when page end is reached.
@@ -42,7 +42,9 @@ public class StorageReader implements StorageChannelInput {
 	private final int MAX_POS;
 	
 	private final StorageChannel root;
-	private final IntBuffer intBuffer;
+	//not null if pages are accessed directly in a mapped file
+	private final StorageRootMapped rootMapped;
+	private IntBuffer intBuffer;
 	private final int[] intArray;
 	
 	private CallbackPageRead overflowCallback = null;
@@ -58,12 +60,33 @@ public class StorageReader implements StorageChannelInput {
 		this.root = root; 
 		this.MAX_POS = root.getPageSize() - 4;
 		this.isAutoPaging = autoPaging;
+		if (root instanceof StorageRootMapped) {
+			rootMapped = (StorageRootMapped) root;
+		} else {
+			rootMapped = null;
+		}
 		
 		buf = ByteBuffer.allocateDirect(root.getPageSize());
 		currentPage = -1;
 		intBuffer = buf.asIntBuffer();
 		intArray = new int[intBuffer.capacity()];
 	}
+	
+	/**
+	 * Load a page. For mapped files, this simply switches to a view of the mapped page.
+	 * Otherwise the page is copied into the local buffer.
+	 * The buffer is cleared, i.e. position=0 and limit=capacity.
+	 */
+	private void loadPage(int pageId) {
+		if (rootMapped != null) {
+			buf = rootMapped.slicePage(pageId);
+			intBuffer = buf.asIntBuffer();
+			return;
+		}
+		buf.clear();
+		root.readPage(buf, pageId);
+		buf.clear();
+	}
 
 	/**
 	 * To be called after every commit, to ensure that pages are reset, in case they have been 
@@ -93,8 +116,7 @@ public class StorageReader implements StorageChannelInput {
 
 		if (pageId != currentPage) {
 			currentPage = pageId;
-			buf.clear();
-			root.readPage(buf, pageId);
+			loadPage(pageId);
 		}
 
 		currentType = type;
@@ -285,13 +307,10 @@ public class StorageReader implements StorageChannelInput {
 	}
 
 	private void checkPosRead(int delta) {
-		final ByteBuffer buf = this.buf;
 		if (isAutoPaging && buf.position() + delta > MAX_POS) {
 			final int pageId = buf.getInt();
 			currentPage = pageId;
-			buf.clear();
-			root.readPage(buf, pageId);
-			buf.rewind();
+			loadPage(pageId);
 			//read header
 			readHeader();
 			if (overflowCallback != null) {
@@ -30,6 +30,7 @@ import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 
 import org.zoodb.api.ZooDebug;
+import org.zoodb.jdo.api.ZooConfig;
 import org.zoodb.jdo.api.impl.DBStatistics;
 import org.zoodb.jdo.internal.server.index.FreeSpaceManager;
 import org.zoodb.jdo.internal.util.DBLogger;
@@ -51,6 +52,12 @@ public final class StorageRootFile implements StorageChannel {
 	private final RandomAccessFile raf;
 	private final FileLock fileLock;
 	private final FileChannel fc;
+	//pages are written in batches during flush()
+	private final PageWriteQueue writeQueue;
+	//shared by all readers, may be null
+	private final PagePool pool;
+	//fills the pool ahead of sequential reads, may be null
+	private final PageReadAhead readAhead;
 	// use LONG to enforce long-arithmetic in calculations
 	private final long PAGE_SIZE;
 
@@ -70,8 +77,15 @@ public final class StorageRootFile implements StorageChannel {
 			raf = new RandomAccessFile(file, options);
 			fc = raf.getChannel();
 			try {
-				//tryLock is supposed to return null, but it throws an Exception
-				fileLock = fc.tryLock();
+				//tryLock returns null if another process holds a lock, but it throws an 
+				//Exception if the file is locked in this JVM.
+				//Read-only channels can not be locked, they are used by read-only sessions. 
+				//Their shared lock is held by the SnapshotRegistry.
+				fileLock = "r".equals(options) ? null : fc.tryLock();
+				if (fileLock == null && !"r".equals(options)) {
+					//locked by another process, handled below
+					throw new OverlappingFileLockException();
+				}
 				if (ZooDebug.isTesting()) {
 					ZooDebug.registerFile(fc);
 				}
@@ -84,6 +98,12 @@ public final class StorageRootFile implements StorageChannel {
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error opening database: " + dbPath, e);
 		}
+		writeQueue = new PageWriteQueue(pageSize, PageWriteQueue.MAX_PAGES_DEFAULT);
+		int poolSize = ZooConfig.getFilePagePoolSize();
+		pool = poolSize > 0 ? new PagePool(pageSize, poolSize) : null;
+		//read-ahead should not evict more than half of the pool
+		int nReadAhead = Math.min(ZooConfig.getFileReadAhead(), poolSize/2);
+		readAhead = nReadAhead > 0 ? new PageReadAhead(fc, pool, pageSize, nReadAhead) : null;
 	}
 
 	@Override
@@ -99,9 +119,17 @@ public final class StorageRootFile implements StorageChannel {
 	@Override
 	public final void close() {
 		flush();
+		if (readAhead != null) {
+			readAhead.close();
+		}
 		try {
 			fc.force(true);
-			fileLock.release();
+			if (pool != null) {
+				pool.clear();
+			}
+			if (fileLock != null) {
+				fileLock.release();
+			}
 			fc.close();
 			raf.close();
 		} catch (IOException e) {
@@ -128,6 +156,16 @@ public final class StorageRootFile implements StorageChannel {
 	 */
 	@Override
 	public final void flush() {
+		flushNoSync();
+		try {
+			fc.force(false);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing database file.", e);
+		}
+	}
+
+	@Override
+	public final void flushNoSync() {
 		//flush associated splits.
 		for (StorageChannelOutput paf: viewsOut) {
 			//flush() only writers
@@ -137,7 +175,7 @@ public final class StorageRootFile implements StorageChannel {
 			paf.reset();
 		}
 		try {
-			fc.force(false);
+			writeQueue.writeTo(fc);
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error writing database file.", e);
 		}
@@ -145,8 +183,17 @@ public final class StorageRootFile implements StorageChannel {
 
 	@Override
 	public final void readPage(ByteBuffer buf, long pageId) {
+		if (writeQueue.read(buf, pageId)) {
+			return;
+		}
+		if (pool != null && pool.read(buf, pageId)) {
+			return;
+		}
 		try {
 			fc.read(buf, pageId * PAGE_SIZE);
+			if (pool != null) {
+				pool.put(buf, pageId);
+			}
 			if (DBStatistics.isEnabled()) {
 				statNRead++;
 				statNReadUnique.put(pageId, null);
@@ -156,6 +203,34 @@ public final class StorageRootFile implements StorageChannel {
 		}
 	}
 
+	@Override
+	public final void discardReadBuffers() {
+		for (StorageChannelInput paf: viewsIn) {
+			paf.reset();
+		}
+		//clear the read-ahead first, it may still put pages into the pool
+		if (readAhead != null) {
+			readAhead.clear();
+		}
+		if (pool != null) {
+			pool.clear();
+		}
+	}
+
+	@Override
+	public final void prefetch(int[] pageIds, int size) {
+		if (readAhead == null) {
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			int pageId = pageIds[i];
+			//queued pages are not on disk yet
+			if (!writeQueue.contains(pageId) && !pool.contains(pageId)) {
+				readAhead.request(pageId);
+			}
+		}
+	}
+
 	@Override
 	public final void write(ByteBuffer buf, long pageId) {
 		try {
@@ -165,7 +240,15 @@ public final class StorageRootFile implements StorageChannel {
 			if (DBStatistics.isEnabled()) {
 				statNWrite++;
 			}
-			fc.write(buf, pageId * PAGE_SIZE);
+			if (readAhead != null) {
+				readAhead.invalidate(pageId);
+			}
+			if (pool != null) {
+				pool.invalidate(pageId);
+			}
+			if (writeQueue.add(buf, pageId)) {
+				writeQueue.writeTo(fc);
+			}
 		} catch (IOException e) {
 			throw DBLogger.newFatal("Error writing page: " + pageId, e);
 		}
@@ -183,6 +266,16 @@ public final class StorageRootFile implements StorageChannel {
 		return ret;
 	}
 
+	@Override
+	public int statsGetPoolHitCount() {
+		return pool == null ? 0 : pool.statsGetHitCount();
+	}
+
+	@Override
+	public int statsGetPoolMissCount() {
+		return pool == null ? 0 : pool.statsGetMissCount();
+	}
+
 	@Override
 	public final int statsGetWriteCount() {
 		return statNWrite;
@@ -119,6 +119,11 @@ public class StorageRootInMemory implements StorageChannel {
 			paf.reset();
 		}
 	}
+
+	@Override
+	public void flushNoSync() {
+		flush();
+	}
 	
 	@Override
 	public int statsGetReadCount() {
@@ -169,8 +174,31 @@ public class StorageRootInMemory implements StorageChannel {
 		}
 	}
 
+	@Override
+	public void discardReadBuffers() {
+		for (StorageChannelInput paf: viewsIn) {
+			paf.reset();
+		}
+	}
+
 	@Override
 	public int statsGetPageCount() {
 		return buffers.size();
 	}
+
+	@Override
+	public void prefetch(int[] pageIds, int size) {
+		//all pages are in memory
+	}
+
+	@Override
+	public int statsGetPoolHitCount() {
+		//there is no page pool for in-memory databases
+		return 0;
+	}
+
+	@Override
+	public int statsGetPoolMissCount() {
+		return 0;
+	}
 }
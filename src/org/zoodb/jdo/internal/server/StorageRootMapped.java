@@ -0,0 +1,337 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+
+import org.zoodb.api.ZooDebug;
+import org.zoodb.jdo.api.impl.DBStatistics;
+import org.zoodb.jdo.internal.server.index.FreeSpaceManager;
+import org.zoodb.jdo.internal.util.DBLogger;
+import org.zoodb.jdo.internal.util.PrimLongMapLI;
+
+/**
+ * A common root for multiple file views, similar to StorageRootFile. The difference is that
+ * readers do not copy pages into their own buffer. Instead the database file is mapped into
+ * memory in segments and readers operate directly on a slice of the mapped segment.
+ * 
+ * Segments are mapped read-only and only up to the current end of the file. When the file 
+ * grows (new pages are allocated by the FSM and written), the last segment is re-mapped on 
+ * demand.
+ * 
+ * Writing is performed via the FileChannel (see PageWriteQueue), which ensures that flush() 
+ * can still rely on force() to implement the dual-flush commit.
+ * 
+ * Note that mapped segments are only released by the garbage collector. On some operating 
+ * systems (e.g. Windows) this means that the file can not be deleted immediately after 
+ * closing it.
+ * 
+ * @author Tilmann Zaeschke
+ *
+ */
+public final class StorageRootMapped implements StorageChannel {
+
+	//64MB
+	private static final int SEGMENT_SHIFT = 26;
+	
+	private final ArrayList<StorageChannelInput> viewsIn = new ArrayList<StorageChannelInput>();
+	private final ArrayList<StorageChannelOutput> viewsOut = new ArrayList<StorageChannelOutput>();
+
+	private final FreeSpaceManager fsm;
+	private final RandomAccessFile raf;
+	private final FileLock fileLock;
+	private final FileChannel fc;
+	//pages are written in batches during flush()
+	private final PageWriteQueue writeQueue;
+	// use LONG to enforce long-arithmetic in calculations
+	private final long PAGE_SIZE;
+	private final long SEGMENT_SIZE;
+	private final int PAGES_PER_SEGMENT;
+
+	private final ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	
+	private int statNRead; 
+	private int statNWrite; 
+	private final PrimLongMapLI<Object> statNReadUnique = new PrimLongMapLI<Object>();
+	private long txId;
+
+	public StorageRootMapped(String dbPath, String options, int pageSize, FreeSpaceManager fsm) {
+		this.fsm = fsm;
+		PAGE_SIZE = pageSize;
+		SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+		if (SEGMENT_SIZE % PAGE_SIZE != 0) {
+			throw DBLogger.newUser("Page size must be a power of 2: " + pageSize);
+		}
+		PAGES_PER_SEGMENT = (int) (SEGMENT_SIZE / PAGE_SIZE);
+		File file = new File(dbPath);
+		if (!file.exists()) {
+			throw DBLogger.newUser("DB file does not exist: " + dbPath);
+		}
+		try {
+			raf = new RandomAccessFile(file, options);
+			fc = raf.getChannel();
+			try {
+				//tryLock returns null if another process holds a lock, but it throws an 
+				//Exception if the file is locked in this JVM.
+				//Read-only channels can not be locked, they are used by read-only sessions. 
+				//Their shared lock is held by the SnapshotRegistry.
+				fileLock = "r".equals(options) ? null : fc.tryLock();
+				if (fileLock == null && !"r".equals(options)) {
+					//locked by another process, handled below
+					throw new OverlappingFileLockException();
+				}
+				if (ZooDebug.isTesting()) {
+					ZooDebug.registerFile(fc);
+				}
+			} catch (OverlappingFileLockException e) {
+				fc.close();
+				raf.close();
+				throw DBLogger.newUser(
+						"The file is already accessed by another process: " + dbPath);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error opening database: " + dbPath, e);
+		}
+		writeQueue = new PageWriteQueue(pageSize, PageWriteQueue.MAX_PAGES_DEFAULT);
+	}
+
+	@Override
+	public void acquireLock(long txId) {
+		this.txId = txId;
+	}
+	
+	@Override
+	public long getTxId() {
+		return this.txId;
+	}
+	
+	@Override
+	public final void close() {
+		flush();
+		try {
+			fc.force(true);
+			segments.clear();
+			if (fileLock != null) {
+				fileLock.release();
+			}
+			fc.close();
+			raf.close();
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error closing database file.", e);
+		}
+	}
+
+	@Override
+	public final StorageChannelInput getReader(boolean autoPaging) {
+		StorageChannelInput in = new StorageReader(this, autoPaging);
+		viewsIn.add(in);
+		return in;
+	}
+	
+	@Override
+	public final StorageChannelOutput getWriter(boolean autoPaging) {
+		StorageChannelOutput out = new StorageWriter(this, fsm, autoPaging);
+		viewsOut.add(out);
+		return out;
+	}
+	
+	/**
+	 * Not a true flush, just writes the stuff...
+	 */
+	@Override
+	public final void flush() {
+		flushNoSync();
+		try {
+			fc.force(false);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing database file.", e);
+		}
+	}
+
+	@Override
+	public final void flushNoSync() {
+		//flush associated splits.
+		for (StorageChannelOutput paf: viewsOut) {
+			//flush() only writers
+			paf.flush();
+		}
+		for (StorageChannelInput paf: viewsIn) {
+			paf.reset();
+		}
+		try {
+			writeQueue.writeTo(fc);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing database file.", e);
+		}
+	}
+
+	/**
+	 * Returns a read-only view on the given page. The view has position=0 and 
+	 * limit=capacity=pageSize.
+	 * @param pageId
+	 * @return A slice of the mapped segment that contains the page.
+	 */
+	final ByteBuffer slicePage(long pageId) {
+		if (writeQueue.contains(pageId)) {
+			//not written yet
+			ByteBuffer page = ByteBuffer.allocateDirect((int) PAGE_SIZE);
+			writeQueue.read(page, pageId);
+			page.clear();
+			return page;
+		}
+		int segId = (int) (pageId / PAGES_PER_SEGMENT);
+		int offs = (int) ((pageId % PAGES_PER_SEGMENT) * PAGE_SIZE);
+		MappedByteBuffer seg = segId < segments.size() ? segments.get(segId) : null;
+		if (seg == null || seg.capacity() < offs + PAGE_SIZE) {
+			seg = mapSegment(segId);
+		}
+		if (DBStatistics.isEnabled()) {
+			statNRead++;
+			statNReadUnique.put(pageId, null);
+		}
+		ByteBuffer buf = seg.duplicate();
+		if (seg.capacity() < offs + PAGE_SIZE) {
+			//The last page of a file may be incomplete, we have to copy it.
+			if (offs >= seg.capacity()) {
+				throw DBLogger.newFatal("Page not found in file: " + pageId);
+			}
+			buf.position(offs);
+			ByteBuffer page = ByteBuffer.allocateDirect((int) PAGE_SIZE);
+			page.put(buf);
+			page.clear();
+			return page;
+		}
+		buf.limit((int) (offs + PAGE_SIZE));
+		buf.position(offs);
+		return buf.slice();
+	}
+	
+	private MappedByteBuffer mapSegment(int segId) {
+		try {
+			long start = segId * SEGMENT_SIZE;
+			long len = Math.min(SEGMENT_SIZE, fc.size() - start);
+			if (len <= 0) {
+				throw DBLogger.newFatal("Page not found in file: segment=" + segId);
+			}
+			MappedByteBuffer seg = fc.map(MapMode.READ_ONLY, start, len);
+			while (segments.size() <= segId) {
+				segments.add(null);
+			}
+			segments.set(segId, seg);
+			return seg;
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error mapping database segment: " + segId, e);
+		}
+	}
+	
+	@Override
+	public final void readPage(ByteBuffer buf, long pageId) {
+		//Readers use slicePage(), this is only used by other components.
+		buf.put(slicePage(pageId));
+	}
+
+	@Override
+	public final void discardReadBuffers() {
+		//mapped segments always reflect the file
+		for (StorageChannelInput paf: viewsIn) {
+			paf.reset();
+		}
+	}
+
+	@Override
+	public final void write(ByteBuffer buf, long pageId) {
+		try {
+			if (pageId<0) {
+				return;
+			}
+			if (DBStatistics.isEnabled()) {
+				statNWrite++;
+			}
+			if (writeQueue.add(buf, pageId)) {
+				writeQueue.writeTo(fc);
+			}
+		} catch (IOException e) {
+			throw DBLogger.newFatal("Error writing page: " + pageId, e);
+		}
+	}
+
+	@Override
+	public final int statsGetReadCount() {
+		return statNRead;
+	}
+
+	@Override
+	public int statsGetReadCountUnique() {
+		int ret = statNReadUnique.size();
+		statNReadUnique.clear();
+		return ret;
+	}
+
+	@Override
+	public final int statsGetWriteCount() {
+		return statNWrite;
+	}
+
+	@Override
+	public void prefetch(int[] pageIds, int size) {
+		//mapped files rely on the OS page cache
+	}
+
+	@Override
+	public int statsGetPoolHitCount() {
+		//mapped files rely on the OS page cache
+		return 0;
+	}
+
+	@Override
+	public int statsGetPoolMissCount() {
+		return 0;
+	}
+
+	@Override
+	public final int getPageSize() {
+		return (int) PAGE_SIZE;
+	}
+
+	@Override
+	public void reportFreePage(int pageId) {
+		fsm.reportFreePage(pageId);
+	}
+
+	@Override
+	public int statsGetPageCount() {
+		try {
+			return (int) (raf.length() / PAGE_SIZE);
+		} catch (IOException e) {
+			throw DBLogger.newFatal("", e);
+		}
+	}
+
+}
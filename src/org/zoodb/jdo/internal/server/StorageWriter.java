@@ -113,7 +113,7 @@ public class StorageWriter implements StorageChannelOutput {
 	}
 	
 	private int allocateAndSeekPage(int prevPage) {
-		int pageId = fsm.getNextPage(prevPage);
+		int pageId = allocatePage(prevPage);
 		try {
 			writeData();
 	        isWriting = true;
@@ -312,7 +312,7 @@ public class StorageWriter implements StorageChannelOutput {
 
 	private void checkPosWrite(int delta) {
 		if (isAutoPaging && buf.position() + delta > MAX_POS) {
-			int pageId = fsm.getNextPage(0);
+			int pageId = allocatePage(0);
 			buf.putInt(pageId);
 
 			//write page
@@ -327,6 +327,16 @@ public class StorageWriter implements StorageChannelOutput {
 		}
 	}
 
+	/**
+	 * Auto-paging writers write data pages, which are allocated contiguously if possible.
+	 */
+	private int allocatePage(int prevPage) {
+		if (isAutoPaging) {
+			return fsm.getNextPageContiguous(prevPage, currentPage);
+		}
+		return fsm.getNextPage(prevPage);
+	}
+
 	private void writeHeader() {
 		buf.put(currentDataType.getId());
 		buf.put((byte) 0); //dummy
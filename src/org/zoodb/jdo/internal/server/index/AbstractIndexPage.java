@@ -280,7 +280,7 @@ abstract class AbstractIndexPage {
 
 		if (isLeaf) {
 			pageId = ind.out.allocateAndSeek(ind.getDataType(), pageId);
-			ind.out.writeShort((short) 0);
+			ind.out.writeShort(ind.isCompressed ? AbstractPagedIndex.LEAF_COMPRESSED : 0);
 			writeData();
 		} else {
 			//first write the sub pages, because they will update the page index.
@@ -355,7 +355,7 @@ abstract class AbstractIndexPage {
 		if (isLeaf) {
 			//Page was already reported to FSM during map build-up
 			ind.out.seekPageForWrite(ind.getDataType(), pageId);
-			ind.out.writeShort((short) 0);
+			ind.out.writeShort(ind.isCompressed ? AbstractPagedIndex.LEAF_COMPRESSED : 0);
 			writeData();
 		} else {
 			//now write the sub pages
@@ -384,7 +384,10 @@ abstract class AbstractIndexPage {
 
 	abstract void writeData();
 
-	abstract void readData();
+	/**
+	 * @param isCompressed Whether the page was written in compressed form.
+	 */
+	abstract void readData(boolean isCompressed);
 
 	public abstract void print(String indent);
 	
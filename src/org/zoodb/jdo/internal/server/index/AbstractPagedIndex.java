@@ -49,6 +49,8 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 
 		AbstractPageIterator<LLEntry> iterator(long minValue, long maxValue);
 
+		AbstractPageIterator<LLEntry> descendingIterator(long maxValue, long minValue);
+
 		long removeLong(long key, long value);
 
 		void print();
@@ -173,6 +175,14 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 	
 	
 
+	/** Page marker for compressed leaf pages (uncompressed leaves use 0, inner pages use the
+	 * number of sub-pages). */
+	static final short LEAF_COMPRESSED = -1;
+	/** Header of compressed leaves: key base, key bit-width, value base, value bit-width */
+	private static final int COMPRESSED_HEADER = 8 + 1 + 8 + 1;
+	/** Capacity of compressed leaves relative to uncompressed leaves. */
+	static final int COMPRESSED_CAPACITY_FACTOR = 4;
+	
 	protected transient final int maxLeafN;
 	/** Max number of keys in inner page (there can be max+1 page-refs) */
 	protected transient final int maxInnerN;
@@ -189,6 +199,10 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 	
 	protected final int keySize;
 	protected final int valSize;
+	/** Whether leaf pages are stored with frame-of-reference compression. */
+	protected final boolean isCompressed;
+	/** Number of bits available for the entries of a compressed leaf page. */
+	protected transient final int maxCompressedBits;
 	
 	//COW stuff
 	//TODO make concurrent?!?
@@ -209,6 +223,27 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 	 */
 	public AbstractPagedIndex(StorageChannel file, boolean isNew, int keyLen, int valLen,
 	        boolean isUnique, DATA_TYPE dataType) {
+		this(file, isNew, keyLen, valLen, isUnique, dataType, false);
+	}
+	
+	/**
+	 * In case this is an existing index, read() should be called afterwards.
+	 * Key and value length are used to calculate the man number of entries on a page.
+	 * 
+	 * Compressed indices store the keys and values of leaf pages as bit-packed deltas to the 
+	 * smallest key and the smallest value on the page (frame-of-reference). This is useful 
+	 * for indices with dense keys, such as OIDs or positions, and increases the number of 
+	 * entries per leaf page up to four times. Uncompressed leaf pages of existing indices
+	 * can still be read.
+	 * 
+	 * @param raf The read/write byte stream.
+	 * @param isNew Whether this is a new index or existing (i.e. read from disk).
+	 * @param keyLen The number of bytes required for the key.
+	 * @param valLen The number of bytes required for the value.
+	 * @param isCompressed Whether leaf pages should be written in compressed form.
+	 */
+	public AbstractPagedIndex(StorageChannel file, boolean isNew, int keyLen, int valLen,
+	        boolean isUnique, DATA_TYPE dataType, boolean isCompressed) {
 		super(file, isNew, isUnique);
 		
 		in = file.getReader(false);
@@ -218,6 +253,7 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		
 		keySize = keyLen;
 		valSize = valLen;
+		this.isCompressed = isCompressed;
 		
 		//how many entries fit on one page?
 		//
@@ -241,9 +277,15 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		final int pageHeader = 4 + DiskIO.PAGE_HEADER_SIZE; // 2 + 2 + general_header
 		final int refLen = 4;  //one int for pageID
 		// we use only int, so it should round down automatically...
-		maxLeafN = (pageSize - pageHeader) / (keyLen + valLen);
-		if (maxLeafN * (keyLen + valLen) + pageHeader > pageSize) {
-			throw new JDOFatalDataStoreException("Illegal Index size: " + maxLeafN);
+		if (isCompressed) {
+			maxCompressedBits = (pageSize - pageHeader - COMPRESSED_HEADER) * 8;
+			maxLeafN = COMPRESSED_CAPACITY_FACTOR * ((pageSize - pageHeader) / (keyLen + valLen));
+		} else {
+			maxCompressedBits = 0;
+			maxLeafN = (pageSize - pageHeader) / (keyLen + valLen);
+			if (maxLeafN * (keyLen + valLen) + pageHeader > pageSize) {
+				throw new JDOFatalDataStoreException("Illegal Index size: " + maxLeafN);
+			}
 		}
 		minLeafN = maxLeafN >> 1;
 		
@@ -310,9 +352,9 @@ public abstract class AbstractPagedIndex extends AbstractIndex {
 		in.seekPageForRead(dataType, pageId);
 		int nL = in.readShort();
 		AbstractIndexPage newPage;
-		if (nL == 0) {
+		if (nL == 0 || nL == LEAF_COMPRESSED) {
 			newPage = createPage(parentPage, true);
-			newPage.readData();
+			newPage.readData(nL == LEAF_COMPRESSED);
 		} else {
 			newPage = createPage(parentPage, false);
 			in.noCheckRead(newPage.subPageIds);
@@ -136,4 +136,53 @@ public class BitTools {
 		return toSortableLong(s) & 0xFFFFFFFFFFFF0000L;
 	}
 
+	/**
+	 * @param range An unsigned range, i.e. (max - min).
+	 * @return The number of bits required to store any value between 0 and range (unsigned). 
+	 */
+	public static int getBitWidth(long range) {
+		return 64 - Long.numberOfLeadingZeros(range);
+	}
+	
+	/**
+	 * Write the lowest 'nBits' bits of a value into a byte array. The target bits must be 0.
+	 * @param ba The byte array
+	 * @param bitPos Position of the first bit
+	 * @param value The value
+	 * @param nBits Number of bits to write (0..64)
+	 * @return The position after the written bits
+	 */
+	public static int writeBits(byte[] ba, int bitPos, long value, int nBits) {
+		while (nBits > 0) {
+			int offs = bitPos & 7;
+			int n = Math.min(8 - offs, nBits);
+			ba[bitPos >>> 3] |= (byte) ((value & ((1 << n) - 1)) << offs);
+			value >>>= n;
+			bitPos += n;
+			nBits -= n;
+		}
+		return bitPos;
+	}
+	
+	/**
+	 * Read an unsigned value that was written with {@link #writeBits(byte[], int, long, int)}.
+	 * @param ba The byte array
+	 * @param bitPos Position of the first bit
+	 * @param nBits Number of bits to read (0..64)
+	 * @return The value
+	 */
+	public static long readBits(byte[] ba, int bitPos, int nBits) {
+		long value = 0;
+		int shift = 0;
+		while (shift < nBits) {
+			int offs = bitPos & 7;
+			int n = Math.min(8 - offs, nBits - shift);
+			long b = ((ba[bitPos >>> 3] & 0xFF) >>> offs) & ((1 << n) - 1);
+			value |= b << shift;
+			bitPos += n;
+			shift += n;
+		}
+		return value;
+	}
+
 }
@@ -21,6 +21,9 @@
 package org.zoodb.jdo.internal.server.index;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +33,7 @@ import org.zoodb.jdo.internal.server.StorageChannel;
 import org.zoodb.jdo.internal.server.DiskIO.DATA_TYPE;
 import org.zoodb.jdo.internal.server.index.AbstractPagedIndex.AbstractPageIterator;
 import org.zoodb.jdo.internal.server.index.PagedUniqueLongLong.LLEntry;
+import org.zoodb.jdo.internal.util.PrimLongMapLI;
 
 /**
  * The free space manager.  
@@ -37,9 +41,30 @@ import org.zoodb.jdo.internal.server.index.PagedUniqueLongLong.LLEntry;
  * Uses separate index for free pages. Does not use a BitMap, that would only pay out if more 
  * than 1/32 of all pages would be free (based on 4KB page size?).
  * The manager should only return pages that were freed up during previous transactions, but not
- * in the current one. To do so, in the freespace manager, create a new iterator(MIN_INT/MAX_INT) 
- * for every new transaction. The iterator will return only free pages from previous transactions.
- * If (iter.hasNext() == false), use atomic page counter to allocate additional pages.
+ * in the current one. To do so, free pages are taken from the index with findFirstEntry()
+ * starting at a cursor that is reset with every commit. Pages that were added to the index
+ * since the last commit are tracked in a bitmap and skipped. Unlike an iterator, this does 
+ * not require cloning of index pages when the index is modified, and pages that are reused
+ * are removed from the index right away.
+ * Pages that may still be visible to a snapshot of a read-only session are skipped in the 
+ * same way, see {@link #setDeferredPages(BitSet)}.
+ * If there are no free pages, use atomic page counter to allocate additional pages.
+ * 
+ * Data writers can allocate pages from extents, see {@link #getNextPageContiguous(int, int)}.
+ * An extent is a run of contiguous free pages that is reserved for a single writer, so that 
+ * the data pages of a class end up next to each other in the file. The first extent of a 
+ * writer has only one page, every following extent is twice as large, up to EXTENT_SIZE. 
+ * This avoids reserving pages for writers that only write a few pages. Extents are only kept
+ * in memory, unused pages of an extent are returned to the FSM when it is written. Unused 
+ * pages at the end of the file are not returned to the FSM, instead the file is truncated, 
+ * see {@link #releaseExtents()}.
+ * 
+ * Limitation: The FSM does not store runs of free pages. As before extents were introduced,
+ * it stores one index entry per free page, in memory and on disk. Runs are found by looking 
+ * up the following pages one by one, so reserving an extent of n pages costs n index 
+ * look-ups and removals, see {@link #reserveExtent(int)}. Storing (start, length) entries 
+ * would change the file format. It would also conflict with write(), which tags single 
+ * entries with PID_DO_NOT_USE, and with the bitmaps of pages that can not be reused yet.
  * 
  * @author Tilmann Zaeschke
  *
@@ -49,12 +74,40 @@ public class FreeSpaceManager {
 	private static final int PID_DO_NOT_USE = -1;
 	private static final int PID_OK = 0;
 	
+	/** Maximum number of pages in an extent. */
+	public static final int EXTENT_SIZE = 32;
+	
+	/** A run of contiguous reserved pages. */
+	private static final class Extent {
+		private int next;
+		private final int end;
+		/** The requested size, this can be larger than the actual size. */
+		private final int size;
+		Extent(int start, int end, int size) {
+			this.next = start;
+			this.end = end;
+			this.size = size;
+		}
+	}
+	
 	private transient PagedUniqueLongLong idx;
 	private final AtomicInteger lastPage = new AtomicInteger(-1);
-	private LLIterator iter;
+	/** Free pages below this page can not be used before the next commit. */
+	private long cursor = 1;
 	
-	private final ArrayList<Integer> toAdd = new ArrayList<Integer>();
-	private final ArrayList<Integer> toDelete = new ArrayList<Integer>();
+	/** Pages that have been freed and have to be added to the index. */
+	private final BitSet toAdd = new BitSet();
+	/** Pages that have been allocated while the index is written. */
+	private final BitSet toDelete = new BitSet();
+	/** Pages that have been added to the index since the last commit. */
+	private final BitSet addedSinceCommit = new BitSet();
+	/** Free pages that can not be reused because they may be visible in a snapshot. */
+	private BitSet deferred = new BitSet();
+	/** Buffer for bulk inserts. */
+	private final long[] insertBuffer = new long[1024];
+
+	/** Reserved extents, the key is the page that was last allocated from the extent. */
+	private final PrimLongMapLI<Extent> extents = new PrimLongMapLI<Extent>();
 
 	
 	/**
@@ -74,7 +127,7 @@ public class FreeSpaceManager {
 		}
 		//8 byte page, 1 byte flag 
 		idx = new PagedUniqueLongLong(DATA_TYPE.FREE_INDEX, file, 4, 1);
-		iter = (LLIterator) idx.iterator(1, Long.MAX_VALUE);
+		cursor = 1;
 	}
 	
 	/**
@@ -88,20 +141,15 @@ public class FreeSpaceManager {
 		//8 byte page, 1 byte flag 
 		idx = new PagedUniqueLongLong(DATA_TYPE.FREE_INDEX, file, pageId, 4, 1);
 		lastPage.set(pageCount-1);
-		iter = (LLIterator) idx.iterator(1, Long.MAX_VALUE);//pageCount);
+		cursor = 1;
 	}
 	
 	
 	public int write() {
-		for (Integer l: toDelete) {
-			idx.removeLong(l);
-		}
-		toDelete.clear();
-
-		for (Integer l: toAdd) {
-			idx.insertLong(l, PID_OK);
-		}
-		toAdd.clear();
+		releaseExtents();
+		
+		//Reused pages have already been removed from the index, see takeFreePage().
+		insertFreePages();
 		boolean settled = false;
 			
 		//repeat until we don't need any more new pages
@@ -109,24 +157,41 @@ public class FreeSpaceManager {
 		while (!settled) {
 			idx.preallocatePagesForWriteMap(map, this);
 			settled = true;
-			for (Integer l: toDelete) {
+			for (int l = toDelete.nextSetBit(0); l >= 0; l = toDelete.nextSetBit(l+1)) {
 				// make sure this gets not deleted now
 				// Delete is triggered from page-merge upon deletion 
 				idx.insertLong(l, PID_DO_NOT_USE);
 				settled = false;
 			}
 			toDelete.clear();
-			for (Integer l: toAdd) {
-				idx.insertLong(l, PID_OK);
+			if (!toAdd.isEmpty()) {
+				insertFreePages();
 				settled = false;
 			}
-			toAdd.clear();
 		}
 
 		int pageId = idx.writeToPreallocated(map);
 		return pageId;
 	}
 
+	/**
+	 * Insert all pages from toAdd into the index. The pages can not be reused before the next 
+	 * commit.
+	 */
+	private void insertFreePages() {
+		int n = 0;
+		for (int l = toAdd.nextSetBit(0); l >= 0; l = toAdd.nextSetBit(l+1)) {
+			insertBuffer[n++] = l;
+			if (n == insertBuffer.length) {
+				idx.insertLongsSorted(insertBuffer, n, PID_OK);
+				n = 0;
+			}
+		}
+		idx.insertLongsSorted(insertBuffer, n, PID_OK);
+		addedSinceCommit.or(toAdd);
+		toAdd.clear();
+	}
+	
 	/**
 	 * @return Number of allocated pages in database.
 	 */
@@ -143,28 +208,131 @@ public class FreeSpaceManager {
 	public int getNextPage(int prevPage) {
 		reportFreePage(prevPage);
 		
-		if (iter.hasNextULL()) {
-			LLEntry e = iter.nextULL();
-			long pageId = e.getKey();
-			long pageIdValue = e.getValue();
-			
-			// do not return pages that are PID_DO_NOT_USE.
-			while (pageIdValue == PID_DO_NOT_USE && iter.hasNextULL()) {
-				idx.removeLong(pageId);
-				e = iter.nextULL();
-				pageId = e.getKey();
-				pageIdValue = e.getValue();
-			}
-			if (pageIdValue != PID_DO_NOT_USE) {
-				toDelete.add((int) pageId);
-				return (int) pageId;
-			}
+		int pageId = findFreePage(true);
+		if (pageId >= 0) {
+			takeFreePage(pageId);
+			return pageId;
 		}
 		
 		//If we didn't find any we allocate a new page.
 		return lastPage.addAndGet(1);
 	}
 
+	/**
+	 * Get a new free page that follows the current page of a writer. If possible, the page is 
+	 * allocated from an extent that has been reserved when the writer allocated its current page.
+	 * Otherwise a new extent is reserved.
+	 * @param prevPage Any previous page that is not required anymore, but
+	 * can only be re-used in the following transaction.
+	 * @param currentPage The page that the writer is currently writing to, or -1.
+	 * @return New free page.
+	 */
+	public int getNextPageContiguous(int prevPage, int currentPage) {
+		reportFreePage(prevPage);
+		
+		Extent ext = currentPage > 0 ? extents.remove(currentPage) : null;
+		if (ext == null) {
+			ext = reserveExtent(1);
+		} else if (ext.next == ext.end) {
+			ext = reserveExtent(ext.size < EXTENT_SIZE ? ext.size*2 : EXTENT_SIZE);
+		}
+		int pageId = ext.next++;
+		//Exhausted extents are kept to determine the size of the following extent.
+		extents.put(pageId, ext);
+		return pageId;
+	}
+	
+	/**
+	 * Reserve up to 'size' contiguous pages. The pages are taken from the free pages of
+	 * previous transactions. If there are none, or if the run of free pages reaches the end of
+	 * the file, new pages are appended.
+	 * The FSM stores single pages, so the run is found with one look-up per page.
+	 * @param size The requested number of pages
+	 * @return The extent.
+	 */
+	private Extent reserveExtent(int size) {
+		int start = findFreePage(true);
+		if (start < 0) {
+			start = lastPage.addAndGet(size) - size + 1;
+			return new Extent(start, start + size, size);
+		}
+		takeFreePage(start);
+		int end = start + 1;
+		while (end - start < size && findFreePage(true) == end) {
+			takeFreePage(end);
+			end++;
+		}
+		if (end - start < size && lastPage.compareAndSet(end - 1, start + size - 1)) {
+			//the run of free pages ends at the end of the file
+			end = start + size;
+		}
+		return new Extent(start, end, size);
+	}
+	
+	/**
+	 * Return the unused pages of all extents to the FSM.
+	 */
+	private void releaseExtents() {
+		if (extents.isEmpty()) {
+			return;
+		}
+		//Start with the last extent in the file, so that unused pages of several extents at the
+		//end of the file can be removed.
+		ArrayList<Extent> list = new ArrayList<Extent>(extents.values());
+		Collections.sort(list, new Comparator<Extent>() {
+			@Override
+			public int compare(Extent e1, Extent e2) {
+				return e2.end - e1.end;
+			}
+		});
+		for (Extent ext: list) {
+			if (ext.next < ext.end && lastPage.compareAndSet(ext.end - 1, ext.next - 1)) {
+				//the unused pages are at the end of the file
+				continue;
+			}
+			for (int i = ext.next; i < ext.end; i++) {
+				reportFreePage(i);
+			}
+		}
+		extents.clear();
+	}
+	
+	/**
+	 * Find the first free page at or after the cursor that can be used in the current 
+	 * transaction. The page remains in the index.
+	 * @param deleteInvalid Whether PID_DO_NOT_USE entries should be removed from the index.
+	 * @return The free page, or -1 if there are none.
+	 */
+	private int findFreePage(boolean deleteInvalid) {
+		LLEntry e;
+		while ((e = idx.findFirstEntry(cursor)) != null) {
+			int pageId = (int) e.getKey();
+			if (e.getValue() == PID_DO_NOT_USE) {
+				// do not return pages that are PID_DO_NOT_USE.
+				if (deleteInvalid) {
+					idx.removeLong(pageId);
+				} else {
+					cursor = pageId + 1;
+				}
+			} else if (addedSinceCommit.get(pageId) || deferred.get(pageId)) {
+				//freed in the current transaction or still visible in a snapshot
+				cursor = pageId + 1;
+			} else {
+				return pageId;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Remove a page that was returned by findFreePage() from the index.
+	 * @param pageId
+	 */
+	private void takeFreePage(int pageId) {
+		idx.removeLong(pageId);
+		cursor = pageId + 1;
+	}
+
 	/**
 	 * This method returns a free page without removing it from the FSM. Instead it is labeled
 	 * as 'invalid' and will be removed when it is encountered through the normal getNextPage()
@@ -186,28 +354,18 @@ public class FreeSpaceManager {
 	public int getNextPageWithoutDeletingIt(int prevPage) {
 		reportFreePage(prevPage);
 		
-		if (iter.hasNextULL()) {
-			LLEntry e = iter.nextULL();
-			long pageId = e.getKey();
-			long pageIdValue = e.getValue();
-			
-			// do not return pages that are PID_DO_NOT_USE.
-			while (pageIdValue == PID_DO_NOT_USE && iter.hasNextULL()) {
-				//don't delete these pages here, we just ignore them
-				e = iter.nextULL();
-				pageId = e.getKey();
-				pageIdValue = e.getValue();
-			}
-			if (pageIdValue != PID_DO_NOT_USE) {
-				//label the page as invalid
-				//We have to use toDelete here to indicate to the write map builder that something
-				//has changed!
-				toDelete.add((int)pageId);
-				//but we also have to update the index here to avoid that the page is returned 
-				//multiple times
-				idx.insertLong(pageId, PID_DO_NOT_USE);
-				return (int) pageId;
-			}
+		//don't delete PID_DO_NOT_USE pages here, we just ignore them
+		int pageId = findFreePage(false);
+		if (pageId >= 0) {
+			//label the page as invalid
+			//We have to use toDelete here to indicate to the write map builder that something
+			//has changed!
+			toDelete.set(pageId);
+			//but we also have to update the index here to avoid that the page is returned 
+			//multiple times
+			idx.insertLong(pageId, PID_DO_NOT_USE);
+			cursor = pageId + 1;
+			return pageId;
 		}
 		
 		//If we didn't find any we allocate a new page.
@@ -216,26 +374,31 @@ public class FreeSpaceManager {
 
 	public void reportFreePage(int prevPage) {
 		if (prevPage > 2) {
-			toAdd.add(prevPage);
+			toAdd.set(prevPage);
 		}
 		//Comment: pages tend to be seemingly reported multiple times, but they are always 
 		//PID_DO_NOT_USE pages.
 	}
 	
 	public void notifyCommit() {
-		iter.close();
-		//TODO use pageCount i.o. MAX_VALUE???
-		//-> No cloning of pages that refer to new allocated disk space
-		//-> But checking for isInterestedInPage is also expensive...
-		iter = (LLIterator) idx.iterator(1, Long.MAX_VALUE);
-		
-		//TODO optimization:
-		//do not create an iterator. Instead implement special method that deletes and returns the
-		//first element.
-		//This avoids the iterator and the toDelete list. Especially when many many pages are
-		//removed, the memory consumption shrinks instead of grows when using an iterator.
-		//BUT: The iterator may be faster to return following elements because it knows their 
-		//position
+		//Pages that were freed before this commit can now be reused. 
+		addedSinceCommit.clear();
+		cursor = 1;
+	}
+	
+	/**
+	 * @return The pages that have been freed since the last commit.
+	 */
+	public BitSet getAddedSinceCommit() {
+		return addedSinceCommit;
+	}
+	
+	/**
+	 * @param deferred Free pages that must not be reused because they may still be visible
+	 * in a snapshot of a read-only session.
+	 */
+	public void setDeferredPages(BitSet deferred) {
+		this.deferred = deferred;
 	}
 
     public AbstractPageIterator<LLEntry> debugIterator() {
@@ -246,12 +409,19 @@ public class FreeSpaceManager {
         return idx.debugPageIds();
     }
 
+	/**
+	 * Reload the FSM from the given page. Pages that were added since the last commit remain
+	 * excluded from reuse. With group commit, these include pages that were freed by 
+	 * transactions that are not durable yet.
+	 * @param pageId
+	 * @param pageCount
+	 */
 	public void revert(int pageId, int pageCount) {
 		StorageChannel file = idx.file;
 		idx = null;
 		toAdd.clear();
 		toDelete.clear();
-		iter.close();
+		extents.clear();
 		initBackingIndexLoad(file, pageId, pageCount);
 	}
 }
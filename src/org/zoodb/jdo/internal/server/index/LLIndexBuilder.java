@@ -0,0 +1,319 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.jdo.internal.server.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Bulk loader for empty LongLong indices ({@link PagedUniqueLongLong} and 
+ * {@link PagedLongLong}).
+ * 
+ * Entries have to be added in ascending order, i.e. sorted by key and (for non-unique indices)
+ * by value. The tree is built bottom up in a single pass: leaves are filled up to the fill 
+ * factor and appended to the right-most inner page of the level above, which in turn is 
+ * appended to its parent once it is full. This avoids the tree descent and the page splits
+ * that occur when inserting entries individually.
+ * 
+ * The index must not be used before {@link #finish()} has been called.
+ * 
+ * @author Tilmann Zaeschke
+ */
+public class LLIndexBuilder {
+
+	public static final double DEFAULT_FILL_FACTOR = 0.9;
+	
+	private final AbstractPagedIndex ind;
+	private final boolean isUnique;
+	/** Number of entries per leaf page. */
+	private final int leafCapacity;
+	/** Number of sub-pages per inner page. */
+	private final int innerCapacity;
+	/** The right-most page of each level. Level 0 are the leaves. */
+	private final ArrayList<LLIndexPage> levels = new ArrayList<LLIndexPage>();
+	/** The smallest entry of the right-most page of each level. */
+	private long[] minKeys = new long[8];
+	private long[] minValues = new long[8];
+	private LLIndexPage prevLeaf = null;
+	private long lastKey;
+	private long lastValue;
+	private long nEntries = 0;
+	private boolean isFinished = false;
+	
+	public LLIndexBuilder(AbstractPagedIndex ind) {
+		this(ind, DEFAULT_FILL_FACTOR);
+	}
+	
+	/**
+	 * @param ind An empty {@link PagedUniqueLongLong} or {@link PagedLongLong} index.
+	 * @param fillFactor The fraction (0 &lt; f &lt;= 1) of each page that should be filled.
+	 * Lower values leave room for subsequent inserts without page splits.
+	 */
+	public LLIndexBuilder(AbstractPagedIndex ind, double fillFactor) {
+		if (!(ind instanceof PagedUniqueLongLong) && !(ind instanceof PagedLongLong)) {
+			throw new IllegalArgumentException("Unsupported index: " + ind.getClass().getName());
+		}
+		if (fillFactor <= 0 || fillFactor > 1) {
+			throw new IllegalArgumentException("Illegal fill factor: " + fillFactor);
+		}
+		if (ind.getRoot().getNKeys() != -1) {
+			throw new IllegalStateException("Bulk loading requires an empty index.");
+		}
+		this.ind = ind;
+		this.isUnique = ind.isUnique();
+		leafCapacity = Math.max(1, (int) (ind.maxLeafN * fillFactor));
+		innerCapacity = Math.max(2, (int) ((ind.maxInnerN + 1) * fillFactor));
+		levels.add((LLIndexPage) ind.createPage(null, true));
+	}
+	
+	/**
+	 * Append an entry to the index.
+	 * @param key
+	 * @param value
+	 * @return 'false' if the entry was not added because the key (unique indices) or the 
+	 * key/value pair (non-unique indices) was already added, otherwise 'true'.
+	 * @throws IllegalArgumentException if the entry is smaller than the previous entry.
+	 */
+	public boolean add(long key, long value) {
+		if (isFinished) {
+			throw new IllegalStateException("The index has already been built.");
+		}
+		if (nEntries > 0) {
+			if (key < lastKey || (!isUnique && key == lastKey && value < lastValue)) {
+				throw new IllegalArgumentException("Entries are not sorted: " + 
+						key + "/" + value + " after " + lastKey + "/" + lastValue);
+			}
+			if (key == lastKey && (isUnique || value == lastValue)) {
+				return false;
+			}
+		}
+		
+		LLIndexPage leaf = levels.get(0);
+		if (leaf.getNKeys() == leafCapacity || !leaf.hasRoomFor(key, value)) {
+			addToParent(0, leaf);
+			prevLeaf = leaf;
+			leaf = newPage(0);
+		}
+		int n = leaf.getNKeys();
+		if (n == 0) {
+			minKeys[0] = key;
+			minValues[0] = value;
+		}
+		leaf.getKeys()[n] = key;
+		leaf.getValues()[n] = value;
+		leaf.setNEntries(n + 1);
+		
+		lastKey = key;
+		lastValue = value;
+		nEntries++;
+		return true;
+	}
+
+	/**
+	 * Completes the index by attaching the right-most pages of all levels to their parents and
+	 * installing the new root page.
+	 */
+	public void finish() {
+		if (isFinished) {
+			throw new IllegalStateException("The index has already been built.");
+		}
+		isFinished = true;
+		if (nEntries == 0) {
+			//nothing to do
+			ind.statNLeaves--;
+			return;
+		}
+		
+		balanceLastLeaf(levels.get(0));
+		
+		//attach the right-most pages to their parents 
+		int level = 0;
+		do {
+			addToParent(level, levels.get(level));
+			level++;
+		} while (level < levels.size() - 1);
+		
+		//Remove inner pages with a single inner sub-page from the top.
+		LLIndexPage root = levels.get(levels.size() - 1);
+		while (root.getNKeys() == 0 && !root.subPages[0].isLeaf) {
+			root = (LLIndexPage) root.subPages[0];
+			ind.statNInner--;
+		}
+		root.setParent(null);
+		
+		//replace the empty root
+		AbstractIndexPage oldRoot = ind.getRoot();
+		if (oldRoot.pageId() > 0) {
+			ind.file.reportFreePage(oldRoot.pageId());
+		}
+		ind.statNInner--;
+		ind.updateRoot(root);
+		ind.markDirty();
+	}
+	
+	/**
+	 * Move entries from the previous leaf to the last leaf if the last leaf would otherwise
+	 * be less than half full. This is possible because the last leaf is not yet attached to
+	 * its parent.
+	 */
+	private void balanceLastLeaf(LLIndexPage leaf) {
+		int n = leaf.getNKeys();
+		//entries moved to compressed pages may not fit
+		if (prevLeaf == null || n >= ind.minLeafN || ind.isCompressed) {
+			return;
+		}
+		int nPrev = prevLeaf.getNKeys();
+		int nMove = Math.min(ind.minLeafN - n, nPrev - ind.minLeafN);
+		if (nMove <= 0) {
+			return;
+		}
+		long[] keys = leaf.getKeys();
+		long[] values = leaf.getValues();
+		System.arraycopy(keys, 0, keys, nMove, n);
+		System.arraycopy(values, 0, values, nMove, n);
+		System.arraycopy(prevLeaf.getKeys(), nPrev - nMove, keys, 0, nMove);
+		System.arraycopy(prevLeaf.getValues(), nPrev - nMove, values, 0, nMove);
+		leaf.setNEntries(n + nMove);
+		prevLeaf.setNEntries(nPrev - nMove);
+		minKeys[0] = keys[0];
+		minValues[0] = values[0];
+	}
+	
+	private void addToParent(int level, LLIndexPage page) {
+		int pLevel = level + 1;
+		LLIndexPage parent;
+		if (pLevel == levels.size()) {
+			parent = newPage(pLevel);
+		} else {
+			parent = levels.get(pLevel);
+		}
+		//number of keys, there are n+1 sub-pages
+		int n = parent.getNKeys();
+		if (n + 1 == innerCapacity) {
+			addToParent(pLevel, parent);
+			parent = newPage(pLevel);
+			n = -1;
+		}
+		if (n == -1) {
+			minKeys[pLevel] = minKeys[level];
+			minValues[pLevel] = minValues[level];
+		} else {
+			parent.getKeys()[n] = minKeys[level];
+			if (!isUnique) {
+				parent.getValues()[n] = minValues[level];
+			}
+		}
+		parent.subPages[n + 1] = page;
+		parent.setNEntries(n + 1);
+		page.setParent(parent);
+	}
+	
+	private LLIndexPage newPage(int level) {
+		LLIndexPage page = (LLIndexPage) ind.createPage(null, level == 0);
+		if (level == levels.size()) {
+			levels.add(page);
+			if (level == minKeys.length) {
+				minKeys = Arrays.copyOf(minKeys, level * 2);
+				minValues = Arrays.copyOf(minValues, level * 2);
+			}
+		} else {
+			levels.set(level, page);
+		}
+		return page;
+	}
+	
+	/**
+	 * Sorts key/value pairs by key and then by value.
+	 * @param keys
+	 * @param values
+	 * @param n The number of valid entries in the arrays.
+	 */
+	public static void sort(long[] keys, long[] values, int n) {
+		quickSort(keys, values, 0, n - 1);
+	}
+	
+	private static void quickSort(long[] keys, long[] values, int lo, int hi) {
+		while (hi - lo > 16) {
+			int mid = (lo + hi) >>> 1;
+			//median of three
+			if (compare(keys, values, mid, lo) < 0) swap(keys, values, mid, lo);
+			if (compare(keys, values, hi, lo) < 0) swap(keys, values, hi, lo);
+			if (compare(keys, values, hi, mid) < 0) swap(keys, values, hi, mid);
+			long pk = keys[mid];
+			long pv = values[mid];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (keys[i] < pk || (keys[i] == pk && values[i] < pv)) i++;
+				while (keys[j] > pk || (keys[j] == pk && values[j] > pv)) j--;
+				if (i <= j) {
+					swap(keys, values, i, j);
+					i++;
+					j--;
+				}
+			}
+			//recurse into the smaller partition to limit the stack depth
+			if (j - lo < hi - i) {
+				quickSort(keys, values, lo, j);
+				lo = i;
+			} else {
+				quickSort(keys, values, i, hi);
+				hi = j;
+			}
+		}
+		//insertion sort for small ranges
+		for (int i = lo + 1; i <= hi; i++) {
+			long k = keys[i];
+			long v = values[i];
+			int j = i - 1;
+			while (j >= lo && (keys[j] > k || (keys[j] == k && values[j] > v))) {
+				keys[j + 1] = keys[j];
+				values[j + 1] = values[j];
+				j--;
+			}
+			keys[j + 1] = k;
+			values[j + 1] = v;
+		}
+	}
+	
+	private static int compare(long[] keys, long[] values, int i1, int i2) {
+		if (keys[i1] != keys[i2]) {
+			return keys[i1] < keys[i2] ? -1 : 1;
+		}
+		return values[i1] < values[i2] ? -1 : (values[i1] == values[i2] ? 0 : 1);
+	}
+	
+	private static void swap(long[] keys, long[] values, int i1, int i2) {
+		long k = keys[i1];
+		keys[i1] = keys[i2];
+		keys[i2] = k;
+		long v = values[i1];
+		values[i1] = values[i2];
+		values[i2] = v;
+	}
+	
+	/**
+	 * @return The number of entries added so far.
+	 */
+	public long size() {
+		return nEntries;
+	}
+}
@@ -70,19 +70,157 @@ class LLIndexPage extends AbstractIndexPage {
 	}
 	
 	@Override
-	void readData() {
+	void readData(boolean isCompressed) {
+		if (isCompressed) {
+			readCompressed();
+			return;
+		}
 		nEntries = ind.in.readShort();
+		if (ind.isCompressed) {
+			//uncompressed page in a compressed index, the arrays have the uncompressed length
+			readArrayUncompressed(ind.keySize, keys, nEntries, true);
+			readArrayUncompressed(ind.valSize, values, nEntries, false);
+			return;
+		}
 		readArrayFromRaf(ind.keySize, keys, nEntries);
 		readArrayFromRaf(ind.valSize, values, nEntries);
 	}
 	
 	@Override
 	void writeData() {
+		if (ind.isCompressed) {
+			writeCompressed();
+			return;
+		}
 		ind.out.writeShort(nEntries);
 		writeArrayToRaf(ind.keySize, keys, nEntries);
 		writeArrayToRaf(ind.valSize, values, nEntries);
 	}
 
+	/**
+	 * Compressed leaves store the smallest key and value of the page, followed by bit-packed
+	 * deltas (frame-of-reference). The keys are sorted, so the key bit-width is given by the
+	 * difference between the first and the last key.
+	 */
+	private void writeCompressed() {
+		ind.out.writeShort(nEntries);
+		if (nEntries <= 0) {
+			return;
+		}
+		long vMin = values[0];
+		long vMax = values[0];
+		for (int i = 1; i < nEntries; i++) {
+			long v = values[i];
+			if (v < vMin) {
+				vMin = v;
+			} else if (v > vMax) {
+				vMax = v;
+			}
+		}
+		long kMin = keys[0];
+		int kBits = BitTools.getBitWidth(keys[nEntries-1] - kMin);
+		int vBits = BitTools.getBitWidth(vMax - vMin);
+		ind.out.writeLong(kMin);
+		ind.out.writeByte((byte) kBits);
+		ind.out.writeLong(vMin);
+		ind.out.writeByte((byte) vBits);
+		byte[] ba = new byte[(nEntries * (kBits + vBits) + 7) >>> 3];
+		int bitPos = 0;
+		for (int i = 0; i < nEntries; i++) {
+			bitPos = BitTools.writeBits(ba, bitPos, keys[i] - kMin, kBits);
+			bitPos = BitTools.writeBits(ba, bitPos, values[i] - vMin, vBits);
+		}
+		ind.out.noCheckWrite(ba);
+	}
+	
+	private void readCompressed() {
+		nEntries = ind.in.readShort();
+		if (nEntries <= 0) {
+			return;
+		}
+		long kMin = ind.in.readLong();
+		int kBits = ind.in.readByte();
+		long vMin = ind.in.readLong();
+		int vBits = ind.in.readByte();
+		byte[] ba = new byte[(nEntries * (kBits + vBits) + 7) >>> 3];
+		ind.in.noCheckRead(ba);
+		int bitPos = 0;
+		for (int i = 0; i < nEntries; i++) {
+			keys[i] = kMin + BitTools.readBits(ba, bitPos, kBits);
+			bitPos += kBits;
+			values[i] = vMin + BitTools.readBits(ba, bitPos, vBits);
+			bitPos += vBits;
+		}
+	}
+	
+	/**
+	 * Checks whether an entry can be added to this leaf without overflowing the page.
+	 * @param key
+	 * @param value
+	 * @return 'true' if the entry fits on this page.
+	 */
+	final boolean hasRoomFor(long key, long value) {
+		if (nEntries >= ind.maxLeafN) {
+			return false;
+		}
+		if (!ind.isCompressed || nEntries == 0) {
+			return true;
+		}
+		return fitsCompressed(key, value, -1);
+	}
+	
+	/**
+	 * Checks whether the page fits on disk after adding the given entry or after replacing 
+	 * the value at 'replacePos'. 
+	 * @param key
+	 * @param value
+	 * @param replacePos Position of the replaced value or -1 if the entry is added.
+	 */
+	private boolean fitsCompressed(long key, long value, int replacePos) {
+		int n = replacePos < 0 ? nEntries + 1 : nEntries;
+		long keyRange = Math.max(key, keys[nEntries-1]) - Math.min(key, keys[0]);
+		//quick check assuming that the values require all 64 bits
+		if (fitsCompressed(n, keyRange, -1L)) {
+			return true;
+		}
+		long vMin = value;
+		long vMax = value;
+		for (int i = 0; i < nEntries; i++) {
+			long v = values[i];
+			if (i != replacePos) {
+				if (v < vMin) {
+					vMin = v;
+				} else if (v > vMax) {
+					vMax = v;
+				}
+			}
+		}
+		return fitsCompressed(n, keyRange, vMax - vMin);
+	}
+	
+	/**
+	 * Checks whether the entries of this page and the following page fit on a single page.
+	 */
+	private boolean fitsCompressed(LLIndexPage next) {
+		long keyRange = next.keys[next.nEntries-1] - keys[0];
+		long vMin = values[0];
+		long vMax = values[0];
+		for (int i = 1; i < nEntries + next.nEntries; i++) {
+			long v = i < nEntries ? values[i] : next.values[i - nEntries];
+			if (v < vMin) {
+				vMin = v;
+			} else if (v > vMax) {
+				vMax = v;
+			}
+		}
+		return fitsCompressed(nEntries + next.nEntries, keyRange, vMax - vMin);
+	}
+	
+	private boolean fitsCompressed(int n, long keyRange, long valueRange) {
+		long bits = (long)n * (BitTools.getBitWidth(keyRange) + BitTools.getBitWidth(valueRange));
+		return bits <= ind.maxCompressedBits;
+	}
+
 	@Override
 	void writeKeys() {
 		ind.out.writeShort(nEntries);
@@ -155,6 +293,22 @@ class LLIndexPage extends AbstractIndexPage {
 		}
 	}
 	
+	private void readArrayUncompressed(int bitWidth, long[] array, int nEntries, 
+			boolean skipTail) {
+		if (nEntries <= 0 || bitWidth != 8) {
+			readArrayFromRaf(bitWidth, array, nEntries);
+			return;
+		}
+		//8 byte arrays are always written with full length
+		for (int i = 0; i < nEntries; i++) {
+			array[i] = ind.in.readLong();
+		}
+		if (skipTail) {
+			int nUncompressed = ind.maxLeafN / AbstractPagedIndex.COMPRESSED_CAPACITY_FACTOR;
+			ind.in.skipRead((nUncompressed - nEntries) * 8);
+		}
+	}
+	
 	
 	/**
 	 * Locate the (first) page that could contain the given key.
@@ -208,6 +362,43 @@ class LLIndexPage extends AbstractIndexPage {
 	}
 
 
+	/**
+	 * Find the entry with the smallest key that is equal to or larger than 'min'.
+	 * @param min
+	 * @return The entry or null if there is no such entry.
+	 */
+	LLEntry getFirstEntryUnique(long min) {
+		if (isLeaf) {
+			int pos = binarySearchUnique(0, nEntries, min);
+			if (pos < 0) {
+				pos = -(pos+1);
+			}
+			if (pos < nEntries) {
+				return new LLEntry(keys[pos], values[pos]);
+			}
+			return null;
+		}
+		//handle empty indices
+		if (nEntries == -1) {
+			return null;
+		}
+        int pos = binarySearchUnique(0, nEntries, min);
+        if (pos >= 0) {
+            //pos of matching key
+            pos++;
+        } else {
+            pos = -(pos+1);
+        }
+        //The following pages can only be empty if entries have been removed.
+        for (int i = pos; i <= nEntries; i++) {
+        	LLEntry e = ((LLIndexPage) readPage(i)).getFirstEntryUnique(min);
+        	if (e != null) {
+        		return e;
+        	}
+        }
+        return null;
+	}
+
     /**
      * Add an entry at 'key'/'value'. If the PAIR already exists, nothing happens.
      * @param key
@@ -294,14 +485,23 @@ class LLIndexPage extends AbstractIndexPage {
         //key found? -> pos >=0
         if (pos >= 0) {
         	//check if values changes
-            if (value != values[pos]) {
-                markPageDirtyAndClone();
-                values[pos] = value;
+            if (value == values[pos]) {
+            	return;
             }
-            return;
+            markPageDirtyAndClone();
+            if (!ind.isCompressed || fitsCompressed(key, value, pos)) {
+            	values[pos] = value;
+            	return;
+            }
+            //The new value does not fit on the compressed page. Remove the entry and insert
+            //it again, this splits the page.
+            System.arraycopy(keys, pos+1, keys, pos, nEntries-pos-1);
+            System.arraycopy(values, pos+1, values, pos, nEntries-pos-1);
+            nEntries--;
+            pos = -(pos+1);
         } 
 
-        if (nEntries < ind.maxLeafN) {
+        if (hasRoomFor(key, value)) {
             //okay so we add it locally
             pos = -(pos+1);
             markPageDirtyAndClone();
@@ -313,6 +513,8 @@ class LLIndexPage extends AbstractIndexPage {
             values[pos] = value;
             nEntries++;
             return;
+		} else if (ind.isCompressed) {
+			splitCompressed(key, value);
 		} else {
 			//treat page overflow
 			LLIndexPage newP;
@@ -426,6 +628,42 @@ class LLIndexPage extends AbstractIndexPage {
 		}
 	}
 
+	/**
+	 * Page overflow for compressed pages. Compressed pages are never merged with their 
+	 * neighbours, because the entries may not fit. Instead, the page is split in half. Both
+	 * halves are guaranteed to fit, because they contain a subset of the current entries.
+	 * If the new entry is larger than all existing entries and this is the last page of its 
+	 * parent (e.g. increasing OIDs), the entry is put on a new page instead.
+	 */
+	private void splitCompressed(long key, long value) {
+		markPageDirtyAndClone();
+		LLIndexPage newP = new LLIndexPage(ind, parent, true);
+		long lastKey = keys[nEntries-1];
+		if ((key > lastKey || (!ind.isUnique() && key == lastKey && value > values[nEntries-1]))
+				&& parent.getPagePosition(this) == parent.nEntries) {
+			newP.keys[0] = key;
+			newP.values[0] = value;
+			newP.nEntries = 1;
+			parent.addSubPage(newP, key, value);
+			return;
+		}
+		
+		int nEntriesToKeep = nEntries >> 1;
+		int nEntriesToCopy = nEntries - nEntriesToKeep;
+		System.arraycopy(keys, nEntriesToKeep, newP.keys, 0, nEntriesToCopy);
+		System.arraycopy(values, nEntriesToKeep, newP.values, 0, nEntriesToCopy);
+		nEntries = (short) nEntriesToKeep;
+		newP.nEntries = (short) nEntriesToCopy;
+		parent.addSubPage(newP, newP.keys[0], newP.values[0]);
+		
+		//insert the entry, this may split the page again
+		if (newP.keys[0] > key || (newP.keys[0] == key && newP.values[0] > value)) {
+			put(key, value);
+		} else {
+			newP.put(key, value);
+		}
+	}
+
 	void updateKey(LLIndexPage indexPage, long key, long value) {
 		//TODO do we need this whole key update business????
 		//-> surely not at the moment, where we only merge with pages that have the same 
@@ -695,7 +933,8 @@ class LLIndexPage extends AbstractIndexPage {
          		//We merge only if they all fit on a single page. This means we may read
         		//the previous page unnecessarily, but we avoid writing it as long as 
         		//possible. TODO find a balance, and do no read prev page in all cases
-        		if (nEntries + prevPage.nEntries < ind.maxLeafN) {
+        		if (nEntries + prevPage.nEntries < ind.maxLeafN && 
+        				(!ind.isCompressed || prevPage.fitsCompressed(this))) {
         			//TODO for now this work only for leaves with the same root. We
         			//would need to update the min values in the inner nodes.
         			prevPage.markPageDirtyAndClone();
@@ -244,6 +244,20 @@ class LLIterator extends AbstractPageIterator<LLEntry> {
 	}
 	
 	
+	/**
+	 * @return The current leaf page, or {@code null} if the iterator is closed.
+	 */
+	LLIndexPage getCurrentPage() {
+		return currentPage;
+	}
+
+	/**
+	 * @return The position of the next entry in the current leaf page.
+	 */
+	short getCurrentPos() {
+		return currentPos;
+	}
+	
 	@Override
 	public LLEntry next() {
 		return nextULL();
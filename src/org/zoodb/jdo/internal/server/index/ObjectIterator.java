@@ -27,7 +27,6 @@ import org.zoodb.jdo.internal.DataDeSerializer;
 import org.zoodb.jdo.internal.client.AbstractCache;
 import org.zoodb.jdo.internal.server.DiskAccessOneFile;
 import org.zoodb.jdo.internal.server.ObjectReader;
-import org.zoodb.jdo.internal.server.index.AbstractPagedIndex.AbstractPageIterator;
 import org.zoodb.jdo.internal.server.index.PagedUniqueLongLong.LLEntry;
 import org.zoodb.jdo.internal.util.CloseableIterator;
 
@@ -43,7 +42,7 @@ import org.zoodb.jdo.internal.util.CloseableIterator;
  */
 public class ObjectIterator implements CloseableIterator<ZooPCImpl> {
 
-	private final LLIterator iter;  
+	private final CloseableIterator<LLEntry> iter;  
 	private final DiskAccessOneFile file;
 	private final DataDeSerializer deSer;
 	private final boolean loadFromCache;
@@ -56,16 +55,16 @@ public class ObjectIterator implements CloseableIterator<ZooPCImpl> {
 	 * The last three fields can be null. If they are, the objects are simply returned and no checks
 	 * are performed.
 	 * 
-	 * @param iter
+	 * @param iter An ascending or descending index iterator or an {@link OidIterator}.
 	 * @param cache
 	 * @param file
 	 * @param clsDef Can be null.
 	 * @param field Can be null.
 	 * @param fieldInd Can be null.
 	 */
-	public ObjectIterator(AbstractPageIterator<LLEntry> iter, AbstractCache cache, 
+	public ObjectIterator(CloseableIterator<LLEntry> iter, AbstractCache cache, 
 			DiskAccessOneFile file, ObjectReader in, boolean loadFromCache) {
-		this.iter = (LLIterator) iter;
+		this.iter = iter;
 		this.file = file;
 		this.deSer = new DataDeSerializer(in, cache);
 		this.loadFromCache = loadFromCache; 
@@ -94,8 +93,8 @@ public class ObjectIterator implements CloseableIterator<ZooPCImpl> {
 	}
 	
 	private void findNext() {
-		while (iter.hasNextULL()) {
-			LLEntry e = iter.nextULL();
+		while (iter.hasNext()) {
+			LLEntry e = iter.next();
 			
 			//try loading from cache first
 			if (loadFromCache) {
@@ -132,4 +131,47 @@ public class ObjectIterator implements CloseableIterator<ZooPCImpl> {
 		pc = null;
 		iter.close();
 	}
+	
+	/**
+	 * Iterator over a list of OIDs, for example the merged result of several index ranges.
+	 * The OIDs are returned as values of the entries, the keys are undefined.
+	 */
+	public static class OidIterator implements CloseableIterator<LLEntry> {
+		private final long[] oids;
+		private final int size;
+		private int pos = 0;
+		
+		public OidIterator(long[] oids, int size) {
+			this.oids = oids;
+			this.size = size;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return pos < size;
+		}
+
+		@Override
+		public LLEntry next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return new LLEntry(0, oids[pos++]);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			pos = size;
+		}
+
+		@Override
+		public void refresh() {
+			//nothing to do, the OIDs are not read from an index
+		}
+	}
 }
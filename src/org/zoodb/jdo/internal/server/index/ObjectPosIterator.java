@@ -22,7 +22,10 @@ package org.zoodb.jdo.internal.server.index;
 
 import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.internal.DataDeSerializer;
+import org.zoodb.jdo.internal.DataDeSerializerNoClass;
+import org.zoodb.jdo.internal.ZooClassDef;
 import org.zoodb.jdo.internal.client.AbstractCache;
+import org.zoodb.jdo.internal.query.QueryTreeNode;
 import org.zoodb.jdo.internal.server.ObjectReader;
 import org.zoodb.jdo.internal.util.CloseableIterator;
 
@@ -34,6 +37,11 @@ import org.zoodb.jdo.internal.util.CloseableIterator;
  *    delivered. 
  * c) Implement this iterator also in other reader classes.
  * 
+ * If a filter is given, it is evaluated on the serialized object before the object is 
+ * de-serialized. Objects that do not match are skipped without being instantiated or 
+ * being added to the cache. The filter is conservative, objects that are returned may 
+ * still not match.
+ * 
  * @author Tilmann Zaeschke
  */
 public class ObjectPosIterator implements CloseableIterator<ZooPCImpl> {
@@ -41,13 +49,36 @@ public class ObjectPosIterator implements CloseableIterator<ZooPCImpl> {
 	private final PagedPosIndex.ObjectPosIteratorMerger iter;
 	private final boolean skipIfCached;
 	private final DataDeSerializer dds;
+	private final AbstractCache cache;
+	private final QueryTreeNode filter;
+	private final ZooClassDef filterDef;
+	private final DataDeSerializerNoClass ddsFilter;
 	private ZooPCImpl pc = null;
 	
 	public ObjectPosIterator(PagedPosIndex.ObjectPosIteratorMerger iter, AbstractCache cache, 
 	        ObjectReader raf, boolean skipIfCached) {
+		this(iter, cache, raf, skipIfCached, null, null, null);
+	}
+	
+	/**
+	 * @param iter
+	 * @param cache
+	 * @param raf
+	 * @param skipIfCached
+	 * @param filter Query filter, may be 'null'
+	 * @param filterDef The class the filter was compiled for
+	 * @param ddsFilter The de-serializer for evaluating the filter
+	 */
+	public ObjectPosIterator(PagedPosIndex.ObjectPosIteratorMerger iter, AbstractCache cache, 
+	        ObjectReader raf, boolean skipIfCached, QueryTreeNode filter, ZooClassDef filterDef,
+	        DataDeSerializerNoClass ddsFilter) {
 		this.iter = iter;
         this.dds = new DataDeSerializer(raf, cache);
         this.skipIfCached = skipIfCached;
+        this.cache = cache;
+        this.filter = filter;
+        this.filterDef = filterDef;
+        this.ddsFilter = ddsFilter;
         findNext();
 	}
 
@@ -71,6 +102,9 @@ public class ObjectPosIterator implements CloseableIterator<ZooPCImpl> {
 	private void findNext() {
 	    while (iter.hasNextOPI()) {
 	        long pos = iter.nextPos();
+	        if (filter != null && !isCandidate(pos)) {
+	        	continue;
+	        }
 	        pc = dds.readObject(BitTools.getPage(pos), BitTools.getOffs(pos), skipIfCached);
 	        if (skipIfCached) {
     		    if (!pc.jdoZooIsDeleted()) {
@@ -83,6 +117,27 @@ public class ObjectPosIterator implements CloseableIterator<ZooPCImpl> {
 	    pc = null;
 	}
 
+	/**
+	 * Evaluate the filter on the serialized object. The filter is only applied if the object
+	 * has the latest schema version and if the stored object is not superseded by a 
+	 * cached instance that may have been modified. 
+	 * @param pos
+	 * @return 'false' if the object does not match the filter.
+	 */
+	private boolean isCandidate(long pos) {
+		ddsFilter.seekPos(pos);
+		if (ddsFilter.getClassOid() != filterDef.getOid()) {
+			return true;
+		}
+		if (skipIfCached) {
+			ZooPCImpl co = cache.findCoByOID(ddsFilter.getLastOid());
+			if (co != null && !co.jdoZooIsStateHollow()) {
+				return true;
+			}
+		}
+		return filter.evaluate(ddsFilter, filterDef, pos);
+	}
+	
 	@Override
 	public void remove() {
 		// do we need this? Should we allow it? I guess it fails anyway in the LLE-iterator.
@@ -177,7 +177,7 @@ public class PagedOidIndex {
 	 * @param raf
 	 */
 	public PagedOidIndex(StorageChannel file) {
-		idx = new PagedUniqueLongLong(DATA_TYPE.OID_INDEX, file);
+		idx = new PagedUniqueLongLong(DATA_TYPE.OID_INDEX, file, 8, 8, true);
 	}
 
 	/**
@@ -187,7 +187,7 @@ public class PagedOidIndex {
 	 * deleted. This might cause a problem if references to the deleted objects still exist.
 	 */
 	public PagedOidIndex(StorageChannel file, int pageId, long lastUsedOid) {
-		idx = new PagedUniqueLongLong(DATA_TYPE.OID_INDEX, file, pageId);
+		idx = new PagedUniqueLongLong(DATA_TYPE.OID_INDEX, file, pageId, 8, 8, true);
 		lastAllocatedInMemory = lastUsedOid;
 		if (lastAllocatedInMemory < MIN_OID) {
 			lastAllocatedInMemory = MIN_OID;
@@ -290,6 +290,6 @@ public class PagedOidIndex {
 	}
 
 	public void revert(int pageId) {
-		idx = new PagedUniqueLongLong(idx.getDataType(), idx.file, pageId);
+		idx = new PagedUniqueLongLong(idx.getDataType(), idx.file, pageId, 8, 8, true);
 	}
 }
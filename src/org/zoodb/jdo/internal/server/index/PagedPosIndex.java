@@ -20,6 +20,7 @@
  */
 package org.zoodb.jdo.internal.server.index;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -125,6 +126,9 @@ public class PagedPosIndex {
 	
 	/**
 	 * This iterator returns only start-pages of objects and skips all intermediate pages.
+	 * 
+	 * Whenever the iterator enters a new leaf page of the index, the data pages referenced
+	 * by the remaining entries of the leaf page are prefetched.
 	 *  
 	 * @author Tilmann Zaeschke
 	 */
@@ -134,6 +138,9 @@ public class PagedPosIndex {
 		private boolean hasNext = true;
 		private long nextPos = -1;
 		private final long maxKey;
+		//the last leaf page for which data pages were prefetched
+		private LLIndexPage prefetchedLeaf = null;
+		private int[] prefetchPages = new int[64];
 		
 		public ObjectPosIterator(PagedUniqueLongLong root, long minKey, long maxKey) {
 			iter = (LLIterator) root.iterator(minKey, maxKey);
@@ -187,8 +194,34 @@ public class PagedPosIndex {
 				iter.close();
 				return ret;
 			}
+			if (iter.getCurrentPage() != prefetchedLeaf) {
+				prefetch();
+			}
 			return ret;
 		}
+		
+		private void prefetch() {
+			LLIndexPage leaf = iter.getCurrentPage();
+			prefetchedLeaf = leaf;
+			if (leaf == null) {
+				return;
+			}
+			long[] keys = leaf.getKeys();
+			int nKeys = leaf.getNKeys();
+			int n = 0;
+			int prevPage = BitTools.getPage(nextPos);
+			for (int i = iter.getCurrentPos(); i < nKeys && keys[i] <= maxKey; i++) {
+				int page = BitTools.getPage(keys[i]);
+				if (page != prevPage) {
+					if (n == prefetchPages.length) {
+						prefetchPages = Arrays.copyOf(prefetchPages, n*2);
+					}
+					prefetchPages[n++] = page;
+					prevPage = page;
+				}
+			}
+			iter.ind.file.prefetch(prefetchPages, n);
+		}
 
 		@Override
 		public void remove() {
@@ -212,7 +245,7 @@ public class PagedPosIndex {
 	 */
 	public PagedPosIndex(StorageChannel file) {
 		//8 bit starting pos, 4 bit following page
-		idx = new PagedUniqueLongLong(DATA_TYPE.POS_INDEX, file, 8, 4);
+		idx = new PagedUniqueLongLong(DATA_TYPE.POS_INDEX, file, 8, 4, true);
 	}
 
 	/**
@@ -220,7 +253,7 @@ public class PagedPosIndex {
 	 */
 	private PagedPosIndex(StorageChannel file, int pageId) {
 		//8 bit starting pos, 4 bit following page
-		idx = new PagedUniqueLongLong(DATA_TYPE.POS_INDEX, file, pageId, 8, 4);
+		idx = new PagedUniqueLongLong(DATA_TYPE.POS_INDEX, file, pageId, 8, 4, true);
 	}
 
 	/**
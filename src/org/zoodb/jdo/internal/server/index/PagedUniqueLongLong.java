@@ -65,12 +65,30 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 	}
 
 	public PagedUniqueLongLong(DATA_TYPE dataType, StorageChannel file, int pageId, int keySize, int valSize) {
-		super(file, true, keySize, valSize, true, dataType);
+		this(dataType, file, pageId, keySize, valSize, false);
+	}
+
+	/**
+	 * Constructor for reading index from disk.
+	 * @param isCompressed Whether leaf pages should be written in compressed form.
+	 */
+	public PagedUniqueLongLong(DATA_TYPE dataType, StorageChannel file, int pageId, int keySize, 
+			int valSize, boolean isCompressed) {
+		super(file, true, keySize, valSize, true, dataType, isCompressed);
 		root = (LLIndexPage) readRoot(pageId);
 	}
 
 	public PagedUniqueLongLong(DATA_TYPE dataType, StorageChannel file, int keySize, int valSize) {
-		super(file, true, keySize, valSize, true, dataType);
+		this(dataType, file, keySize, valSize, false);
+	}
+
+	/**
+	 * Constructor for creating new index.
+	 * @param isCompressed Whether leaf pages should be written in compressed form.
+	 */
+	public PagedUniqueLongLong(DATA_TYPE dataType, StorageChannel file, int keySize, int valSize,
+			boolean isCompressed) {
+		super(file, true, keySize, valSize, true, dataType, isCompressed);
 		//bootstrap index
 		root = createPage(null, false);
 	}
@@ -130,6 +148,54 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 		return page.getValueFromLeafUnique(key);
 	}
 
+	/**
+	 * Find the entry with the smallest key that is equal to or larger than 'min'. Unlike an
+	 * iterator, this does not register with the index, so it does not cause pages to be cloned
+	 * when the index is modified.
+	 * @param min
+	 * @return The entry or null if there is no such entry.
+	 */
+	public LLEntry findFirstEntry(long min) {
+		return getRoot().getFirstEntryUnique(min);
+	}
+
+	/**
+	 * Insert many keys with the same value. The keys must be sorted in ascending order. 
+	 * Consecutive keys that belong to the same leaf page are inserted without traversing the 
+	 * tree again.
+	 * @param keys The sorted keys
+	 * @param nKeys The number of keys to insert
+	 * @param value The value for all keys
+	 */
+	public void insertLongsSorted(long[] keys, int nKeys, long value) {
+		LLIndexPage page = null;
+		long max = getMaxValue();
+		for (int i = 0; i < nKeys; i++) {
+			long key = keys[i];
+			//Check whether the key is guaranteed to belong to the previous page. This is the
+			//case if the previous page contains a larger key or if it contains the overall
+			//largest key. We also have to avoid page splits.
+			if (page != null) {
+				int n = page.getNKeys();
+				long pageMax = page.getKeys()[n-1];
+				if (!page.hasRoomFor(key, value) || (key > pageMax && pageMax != max)) {
+					page = null;
+				}
+			}
+			if (page == null) {
+				page = getRoot().locatePageForKeyUnique(key, true);
+			}
+			boolean isLocal = page.hasRoomFor(key, value);
+			page.put(key, value);
+			if (key > max) {
+				max = key;
+			}
+			if (!isLocal || page.getNKeys() == 0) {
+				page = null;
+			}
+		}
+	}
+
 	@Override
 	LLIndexPage createPage(AbstractIndexPage parent, boolean isLeaf) {
 		return new LLIndexPage(this, (LLIndexPage) parent, isLeaf);
@@ -159,6 +225,7 @@ public class PagedUniqueLongLong extends AbstractPagedIndex implements LongLongI
 		return root.getMax();
 	}
 
+	@Override
 	public AbstractPageIterator<LLEntry> descendingIterator(long max, long min) {
 		return new LLDescendingIterator(this, max, min);
 	}
@@ -46,6 +46,17 @@ public class Util {
 		return oid;
 	}
 
+	/**
+	 * Load the object if it is hollow. Query processing uses this for objects that may have
+	 * been evicted by the cache while subsequent objects were loaded.
+	 * @param o
+	 */
+	public static void activate(Object o) {
+		if (o instanceof ZooPCImpl && ((ZooPCImpl)o).jdoZooIsStateHollow()) {
+			((ZooPCImpl)o).zooActivateRead();
+		}
+	}
+
 	public static String getOidAsString(Object obj) {
 		if (!(obj instanceof ZooPCImpl)) {
 			return "-1.-1.-1.-1";
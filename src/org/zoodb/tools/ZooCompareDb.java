@@ -34,6 +34,7 @@ import org.zoodb.jdo.api.ZooField;
 import org.zoodb.jdo.api.ZooHandle;
 import org.zoodb.jdo.api.ZooJdoProperties;
 import org.zoodb.jdo.api.ZooSchema;
+import org.zoodb.jdo.internal.Session;
 import org.zoodb.jdo.internal.util.Util;
 
 public class ZooCompareDb {
@@ -97,7 +98,7 @@ public class ZooCompareDb {
 	private static List<ZooClass> compareClasses(PersistenceManager pm1, PersistenceManager pm2) {
 		//List of classes that are identical in both databases
 		List<ZooClass> commonClasses = new ArrayList<ZooClass>();
-		for (ZooClass cls1: ZooSchema.locateAllClasses(pm1)) {
+		for (ZooClass cls1: Session.getSession(pm1).getSchemaManager().getAllSchemata(true)) {
 			boolean isValid = true;
 			if (cls1.getName().contains("ZooClass")) {
 				isValid = false;
@@ -135,7 +136,7 @@ public class ZooCompareDb {
 				commonClasses.add(cls1);
 			}
 		}
-		for (ZooClass cls2: ZooSchema.locateAllClasses(pm2)) {
+		for (ZooClass cls2: Session.getSession(pm2).getSchemaManager().getAllSchemata(true)) {
 			if (cls2.getName().contains("ZooClass")) {
 				continue;
 			}
@@ -38,7 +38,6 @@ import org.zoodb.jdo.api.ZooClass;
 import org.zoodb.jdo.api.ZooField;
 import org.zoodb.jdo.api.ZooHandle;
 import org.zoodb.jdo.api.ZooJdoProperties;
-import org.zoodb.jdo.api.ZooSchema;
 import org.zoodb.jdo.internal.GenericObject;
 import org.zoodb.jdo.internal.Session;
 import org.zoodb.jdo.internal.ZooClassDef;
@@ -115,7 +114,7 @@ public class ZooXmlExport {
         writeln("<database>");
         
         writeln(" <schema>");
-        for (ZooClass sch: ZooSchema.locateAllClasses(pm)) {
+        for (ZooClass sch: session.getSchemaManager().getAllSchemata(true)) {
             if (sch.getJavaClass() == ZooPCImpl.class) {
                 continue;
             }
@@ -137,7 +136,7 @@ public class ZooXmlExport {
         writeln(" </schema>");
         
         writeln(" <data>");
-        for (ZooClass sch: ZooSchema.locateAllClasses(pm)) {
+        for (ZooClass sch: session.getSchemaManager().getAllSchemata(true)) {
         	if (ZooClassDef.class.isAssignableFrom(sch.getJavaClass())) {
         		continue;
         	}
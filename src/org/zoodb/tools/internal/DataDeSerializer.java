@@ -39,7 +39,6 @@ import javax.jdo.ObjectState;
 import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.api.DBArrayList;
 import org.zoodb.jdo.api.DBHashMap;
-import org.zoodb.jdo.api.DBLargeVector;
 import org.zoodb.jdo.internal.BinaryDataCorruptedException;
 import org.zoodb.jdo.internal.GenericObject;
 import org.zoodb.jdo.internal.SerializerTools.PRIMITIVE;
@@ -258,12 +257,6 @@ public class DataDeSerializer {
     		obj.setDbCollection(m);
     		deserializeDBHashMap(m);
     		in.stopReadingField();
-    	} else if (obj.getClassDef().getClassName().equals(DBLargeVector.class.getName())) {
-    		in.startReadingField(-1);
-    		ArrayList<Object> l = new ArrayList<Object>();
-    		obj.setDbCollection(l);
-    		deserializeDBList(l);
-    		in.stopReadingField();
     	} else if (obj.getClassDef().getClassName().equals(DBArrayList.class.getName())) {
     		in.startReadingField(-1);
     		ArrayList<Object> l = new ArrayList<Object>();
@@ -743,7 +736,6 @@ public class DataDeSerializer {
 
     private Object getGO(long oid, ZooClassDef cls) {
     	if (cls.getClassName().equals(DBHashMap.class.getName()) || 
-    			cls.getClassName().equals(DBLargeVector.class.getName()) ||
     			cls.getClassName().equals(DBArrayList.class.getName())) {
     		return getInstance(cls, oid, null);
     	}
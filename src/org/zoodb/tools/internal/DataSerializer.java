@@ -36,7 +36,6 @@ import javax.jdo.JDOObjectNotFoundException;
 import org.zoodb.api.impl.ZooPCImpl;
 import org.zoodb.jdo.api.DBArrayList;
 import org.zoodb.jdo.api.DBHashMap;
-import org.zoodb.jdo.api.DBLargeVector;
 import org.zoodb.jdo.internal.GenericObject;
 import org.zoodb.jdo.internal.SerializerTools.PRIMITIVE;
 import org.zoodb.jdo.internal.ZooClassDef;
@@ -178,8 +177,6 @@ public final class DataSerializer {
     	// Perform additional serialization for Persistent Containers
     	if (def.getClassName().equals(DBHashMap.class.getName())) {
     		serializeDBHashMap((HashMap<?, ?>) o.getDbCollection());
-    	} else if (def.getClassName().equals(DBLargeVector.class.getName())) {
-    		serializeDBList((ArrayList<?>) o.getDbCollection());
     	} else if (def.getClassName().equals(DBArrayList.class.getName())) {
     		serializeDBList((ArrayList<?>) o.getDbCollection());
     	}
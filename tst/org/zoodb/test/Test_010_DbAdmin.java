@@ -20,12 +20,16 @@
  */
 package org.zoodb.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 
+import javax.jdo.JDOFatalDataStoreException;
 import javax.jdo.JDOHelper;
 import javax.jdo.JDOUserException;
 import javax.jdo.PersistenceManager;
@@ -36,6 +40,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.zoodb.jdo.api.DataStoreManager;
 import org.zoodb.jdo.api.ZooJdoProperties;
+import org.zoodb.jdo.api.ZooSchema;
 import org.zoodb.tools.ZooHelper;
 
 public class Test_010_DbAdmin {
@@ -154,6 +159,63 @@ public class Test_010_DbAdmin {
         assertFalse(dsm().dbExists(fullPath));
 	}
 	
+	@Test
+	public void testOldFileVersion() throws IOException {
+		dsm().createDb(dbName1);
+		
+		//file version 1.5, before compressed index leaves
+		setMinorFileVersion(5);
+		
+		//read-only sessions do not upgrade the file
+		ZooJdoProperties cfg = new ZooJdoProperties(dbName1);
+		cfg.setReadOnly(true);
+		PersistenceManagerFactory pmf = JDOHelper.getPersistenceManagerFactory(cfg);
+		PersistenceManager pm = pmf.getPersistenceManager();
+		pm.close();
+		pmf.close();
+		assertEquals(5, getMinorFileVersion());
+
+		cfg = new ZooJdoProperties(dbName1);
+		pmf = JDOHelper.getPersistenceManagerFactory(cfg);
+		pm = pmf.getPersistenceManager();
+		pm.currentTransaction().begin();
+		ZooSchema.defineClass(pm, TestClass.class);
+		pm.makePersistent(new TestClass());
+		pm.currentTransaction().commit();
+		pm.close();
+		pmf.close();
+		assertEquals(6, getMinorFileVersion());
+
+		//file version 1.4
+		setMinorFileVersion(4);
+		pmf = JDOHelper.getPersistenceManagerFactory(cfg);
+		try {
+			pmf.getPersistenceManager();
+			fail();
+		} catch (JDOFatalDataStoreException e) {
+			//good
+			assertTrue(e.getMessage(), e.getMessage().contains("1.4"));
+		}
+		pmf.close();
+		
+		dsm().removeDb(dbName1);
+	}
+	
+	private static void setMinorFileVersion(int min) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(dsm().getDbPath(dbName1), "rw");
+		raf.seek(8);
+		raf.writeInt(min);
+		raf.close();
+	}
+	
+	private static int getMinorFileVersion() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(dsm().getDbPath(dbName1), "r");
+		raf.seek(8);
+		int min = raf.readInt();
+		raf.close();
+		return min;
+	}
+	
 	@AfterClass
 	public static void tearDownClass() {
 		try {
@@ -22,6 +22,7 @@ package org.zoodb.test;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 import org.zoodb.jdo.api.ZooConfig;
 
 public class Test_011_DbAdminInMemory extends Test_010_DbAdmin {
@@ -33,6 +34,12 @@ public class Test_011_DbAdminInMemory extends Test_010_DbAdmin {
 	
 	//Test are in super-class
 	
+	@Override
+	@Test
+	public void testOldFileVersion() {
+		//there is no file to modify
+	}
+	
 	@AfterClass
 	public static void tearDownClass() {
 		ZooConfig.setDefaults();
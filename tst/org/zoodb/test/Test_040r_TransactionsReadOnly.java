@@ -0,0 +1,317 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+
+import javax.jdo.JDOException;
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.JDOReadOnlyException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.api.ZooJdoProperties;
+import org.zoodb.test.testutil.TestProcessLauncher;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Read-only sessions that run concurrently with a writing session.
+ * 
+ * @author ztilmann
+ */
+public class Test_040r_TransactionsReadOnly {
+
+	private static final int N = 1000;
+	
+	private PersistenceManager pmR;
+	
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+	
+	@After
+	public void after() {
+		closeReadOnlyPM();
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+	
+	private static PersistenceManager openReadOnlyPM() {
+		ZooJdoProperties props = new ZooJdoProperties(TestTools.getDbName());
+		props.setReadOnly(true);
+		return JDOHelper.getPersistenceManagerFactory(props).getPersistenceManager();
+	}
+	
+	private void closeReadOnlyPM() {
+		if (pmR == null) {
+			return;
+		}
+		if (pmR.currentTransaction().isActive()) {
+			pmR.currentTransaction().rollback();
+		}
+		pmR.close();
+		pmR.getPersistenceManagerFactory().close();
+		pmR = null;
+	}
+	
+	private static Object[] createObjects(PersistenceManager pm) {
+		Object[] oids = new Object[N];
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("Hello " + i);
+			pm.makePersistent(tc);
+			oids[i] = pm.getObjectId(tc);
+		}
+		pm.currentTransaction().commit();
+		return oids;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static int sumInstances(PersistenceManager pm) {
+		Query q = pm.newQuery(TestClass.class);
+		int sum = 0;
+		for (TestClass tc: (Collection<TestClass>) q.execute()) {
+			sum += tc.getInt();
+		}
+		q.closeAll();
+		return sum;
+	}
+	
+	/**
+	 * Update all objects in several transactions, so that the pages of the original objects
+	 * would be reused if they were not pinned by a snapshot.
+	 */
+	private static void updateObjects(PersistenceManager pm, Object[] oids, int delta) {
+		for (int r = 0; r < 3; r++) {
+			pm.currentTransaction().begin();
+			for (Object oid: oids) {
+				TestClass tc = (TestClass) pm.getObjectById(oid);
+				tc.setInt(tc.getInt() + delta);
+				tc.setString("Update " + r);
+			}
+			pm.currentTransaction().commit();
+		}
+	}
+	
+	@Test
+	public void testSnapshotIsolation() {
+		PersistenceManager pmW = TestTools.openPM();
+		Object[] oids = createObjects(pmW);
+		int sum0 = N*(N-1)/2;
+		
+		//Nothing is read before the updates, so none of the pages are cached by the reader
+		pmR = openReadOnlyPM();
+		pmR.currentTransaction().begin();
+		
+		updateObjects(pmW, oids, 1);
+		//delete some objects
+		pmW.currentTransaction().begin();
+		pmW.deletePersistent(pmW.getObjectById(oids[0]));
+		pmW.deletePersistent(pmW.getObjectById(oids[N-1]));
+		pmW.currentTransaction().commit();
+		
+		//the reader still sees the old state
+		assertEquals(sum0, sumInstances(pmR));
+		for (int i = 0; i < N; i++) {
+			TestClass tc = (TestClass) pmR.getObjectById(oids[i]);
+			assertEquals(i, tc.getInt());
+			assertEquals("Hello " + i, tc.getString());
+		}
+		pmR.currentTransaction().commit();
+		
+		//the next transaction sees the new state
+		pmR.currentTransaction().begin();
+		TestClass tc1 = (TestClass) pmR.getObjectById(oids[1]);
+		assertEquals(1 + 3, tc1.getInt());
+		assertEquals("Update 2", tc1.getString());
+		try {
+			pmR.getObjectById(oids[0]);
+			fail();
+		} catch (JDOObjectNotFoundException e) {
+			//good
+		}
+		assertEquals(sum0 + 3*N - (0+3) - (N-1+3), sumInstances(pmR));
+		pmR.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testPageReuseAfterRelease() {
+		PersistenceManager pmW = TestTools.openPM();
+		Object[] oids = createObjects(pmW);
+		updateObjects(pmW, oids, 1);
+		
+		pmR = openReadOnlyPM();
+		pmR.currentTransaction().begin();
+		assertEquals(N*(N-1)/2 + 3*N, sumInstances(pmR));
+		pmR.currentTransaction().commit();
+		
+		updateObjects(pmW, oids, 1);
+		
+		//the reader moves on and sees the latest state, it does not pin old pages anymore
+		pmR.currentTransaction().begin();
+		assertEquals(N*(N-1)/2 + 6*N, sumInstances(pmR));
+		pmR.currentTransaction().commit();
+		closeReadOnlyPM();
+		
+		updateObjects(pmW, oids, 1);
+		pmW.currentTransaction().begin();
+		assertEquals(N*(N-1)/2 + 9*N, sumInstances(pmW));
+		pmW.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testReaderWithoutWriter() {
+		PersistenceManager pmW = TestTools.openPM();
+		createObjects(pmW);
+		TestTools.closePM();
+		
+		pmR = openReadOnlyPM();
+		pmR.currentTransaction().begin();
+		assertEquals(N*(N-1)/2, sumInstances(pmR));
+		pmR.currentTransaction().commit();
+		
+		//a writer can be opened while the reader is open
+		pmW = TestTools.openPM();
+		Object[] oids = createObjects(pmW);
+		
+		pmR.currentTransaction().begin();
+		assertEquals(2*(N*(N-1)/2), sumInstances(pmR));
+		TestClass tc = (TestClass) pmR.getObjectById(oids[5]);
+		assertEquals(5, tc.getInt());
+		pmR.currentTransaction().commit();
+	}
+	
+	@Test
+	public void testReaderCanNotWrite() {
+		PersistenceManager pmW = TestTools.openPM();
+		Object[] oids = createObjects(pmW);
+		
+		pmR = openReadOnlyPM();
+		assertTrue(pmR.getPersistenceManagerFactory().getReadOnly());
+		pmR.currentTransaction().begin();
+		TestClass tc = (TestClass) pmR.getObjectById(oids[5]);
+		tc.setInt(12345);
+		try {
+			pmR.currentTransaction().commit();
+			fail();
+		} catch (JDOReadOnlyException e) {
+			//good
+		}
+		pmR.currentTransaction().rollback();
+		
+		pmR.currentTransaction().begin();
+		pmR.makePersistent(new TestClass());
+		try {
+			pmR.currentTransaction().commit();
+			fail();
+		} catch (JDOReadOnlyException e) {
+			//good
+		}
+		pmR.currentTransaction().rollback();
+		
+		//nothing was written
+		pmW.currentTransaction().begin();
+		assertEquals(N*(N-1)/2, sumInstances(pmW));
+		assertFalse(((TestClass) pmW.getObjectById(oids[5])).getInt() == 12345);
+		pmW.currentTransaction().rollback();
+	}
+	
+	/**
+	 * Opens the database in another process.
+	 * @return 0 if the database could be opened, 1 if it was refused.
+	 */
+	private static int openInOtherProcess(boolean readOnly) throws InterruptedException {
+		Process p = TestProcessLauncher.launchProcess("-Xmx64m", OpenPM.class, 
+				new String[]{TestTools.getDbName(), Boolean.toString(readOnly)});
+		return p.waitFor();
+	}
+	
+	/**
+	 * Read-only sessions in other processes are refused while a writer is open. 
+	 */
+	@Test
+	public void testWriterInOtherProcess() throws InterruptedException {
+		PersistenceManager pmW = TestTools.openPM();
+		createObjects(pmW);
+		assertEquals(1, openInOtherProcess(true));
+		TestTools.closePM();
+		assertEquals(0, openInOtherProcess(true));
+	}
+	
+	/**
+	 * Writers in other processes are refused while a read-only session is open, also if 
+	 * a writer in this JVM has been opened and closed in the meantime. 
+	 */
+	@Test
+	public void testReaderInOtherProcess() throws InterruptedException {
+		PersistenceManager pmW = TestTools.openPM();
+		createObjects(pmW);
+		TestTools.closePM();
+		
+		pmR = openReadOnlyPM();
+		assertEquals(1, openInOtherProcess(false));
+		assertEquals(0, openInOtherProcess(true));
+		
+		pmW = TestTools.openPM();
+		assertEquals(1, openInOtherProcess(false));
+		//TestTools.closePM() would complain about the open file of the reader
+		pmW.close();
+		pmW.getPersistenceManagerFactory().close();
+		assertEquals(1, openInOtherProcess(false));
+		
+		closeReadOnlyPM();
+		assertEquals(0, openInOtherProcess(false));
+	}
+	
+	/**
+	 * Main class for openInOtherProcess().
+	 */
+	public static class OpenPM {
+		public static void main(String[] args) {
+			ZooJdoProperties props = new ZooJdoProperties(args[0]);
+			props.setReadOnly(Boolean.parseBoolean(args[1]));
+			try {
+				PersistenceManager pm = 
+					JDOHelper.getPersistenceManagerFactory(props).getPersistenceManager();
+				pm.close();
+				pm.getPersistenceManagerFactory().close();
+			} catch (JDOException e) {
+				//also wrapped in a JDOFatalDataStoreException
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		}
+	}
+}
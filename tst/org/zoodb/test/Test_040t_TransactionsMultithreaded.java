@@ -0,0 +1,337 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.jdo.Extent;
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.api.DBArrayList;
+import org.zoodb.jdo.api.ZooConfig;
+import org.zoodb.jdo.api.ZooJdoProperties;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * PersistenceManagers that are used by several threads concurrently.
+ * 
+ * @author ztilmann
+ */
+public class Test_040t_TransactionsMultithreaded {
+
+	private static final int N = 2000;
+	private static final int N_THREADS = 8;
+	
+	private final List<Object> oids = new ArrayList<Object>();
+	private final List<Throwable> errors = new ArrayList<Throwable>();
+	
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("s" + i);
+			pm.makePersistent(tc);
+			oids.add(pm.getObjectId(tc));
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+	}
+	
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+	
+	private PersistenceManager openMultithreadedPM() {
+		PersistenceManager pm = TestTools.openPM();
+		assertFalse(pm.getMultithreaded());
+		pm.setMultithreaded(true);
+		assertTrue(pm.getMultithreaded());
+		return pm;
+	}
+	
+	private void runThreads(Runnable[] tasks) throws InterruptedException {
+		Thread[] threads = new Thread[tasks.length];
+		for (int i = 0; i < tasks.length; i++) {
+			final Runnable task = tasks[i];
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} catch (Throwable t) {
+						synchronized (errors) {
+							errors.add(t);
+						}
+					}
+				}
+			});
+		}
+		for (Thread t: threads) {
+			t.start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		if (!errors.isEmpty()) {
+			throw new RuntimeException(errors.get(0));
+		}
+	}
+	
+	@Test
+	public void testProperty() {
+		ZooJdoProperties props = new ZooJdoProperties(TestTools.getDbName());
+		props.setMultithreaded(true);
+		PersistenceManager pm = 
+			JDOHelper.getPersistenceManagerFactory(props).getPersistenceManager();
+		assertTrue(pm.getMultithreaded());
+		pm.setMultithreaded(false);
+		assertFalse(pm.getMultithreaded());
+		pm.close();
+		pm.getPersistenceManagerFactory().close();
+	}
+	
+	/**
+	 * Several threads load (hollow) objects and read them concurrently.
+	 */
+	@Test
+	public void testConcurrentRead() throws InterruptedException {
+		final PersistenceManager pm = openMultithreadedPM();
+		pm.currentTransaction().begin();
+		
+		Runnable[] tasks = new Runnable[N_THREADS];
+		for (int t = 0; t < tasks.length; t++) {
+			final int offset = t * N / N_THREADS;
+			tasks[t] = new Runnable() {
+				@Override
+				public void run() {
+					for (int r = 0; r < 3; r++) {
+						for (int i = 0; i < N; i++) {
+							int pos = (i + offset) % N;
+							TestClass tc = (TestClass) pm.getObjectById(oids.get(pos));
+							assertEquals(pos, tc.getInt());
+							assertEquals("s" + pos, tc.getString());
+						}
+					}
+				}
+			};
+		}
+		runThreads(tasks);
+		
+		pm.currentTransaction().commit();
+	}
+	
+	/**
+	 * Several threads read objects while another thread keeps evicting them. Readers must 
+	 * never see the reset fields of an evicted object.
+	 */
+	@Test
+	public void testConcurrentReadAndEvict() throws InterruptedException {
+		final PersistenceManager pm = openMultithreadedPM();
+		pm.currentTransaction().begin();
+		final List<TestClass> objs = new ArrayList<TestClass>();
+		for (Object oid: oids) {
+			objs.add((TestClass) pm.getObjectById(oid));
+		}
+		
+		final int nReaders = N_THREADS - 1;
+		final boolean[] isDone = new boolean[1];
+		final int[] nRunning = { nReaders };
+		Runnable[] tasks = new Runnable[N_THREADS];
+		for (int t = 0; t < nReaders; t++) {
+			final int offset = t * N / nReaders;
+			tasks[t] = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int r = 0; r < 200; r++) {
+							for (int i = 0; i < N; i++) {
+								int pos = (i + offset) % N;
+								assertEquals("s" + pos, objs.get(pos).getString());
+							}
+						}
+					} finally {
+						synchronized (isDone) {
+							if (--nRunning[0] == 0) {
+								isDone[0] = true;
+							}
+						}
+					}
+				}
+			};
+		}
+		tasks[nReaders] = new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					synchronized (isDone) {
+						if (isDone[0]) {
+							return;
+						}
+					}
+					pm.evictAll();
+				}
+			}
+		};
+		runThreads(tasks);
+		
+		pm.currentTransaction().commit();
+	}
+	
+	/**
+	 * Several threads run queries and iterate over extents concurrently.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testConcurrentQueryAndExtent() throws InterruptedException {
+		final PersistenceManager pm = openMultithreadedPM();
+		pm.currentTransaction().begin();
+		
+		Runnable[] tasks = new Runnable[N_THREADS];
+		for (int t = 0; t < tasks.length; t++) {
+			if (t % 2 == 0) {
+				tasks[t] = new Runnable() {
+					@Override
+					public void run() {
+						Query q = pm.newQuery(TestClass.class, "_int < 100");
+						Collection<TestClass> c = (Collection<TestClass>) q.execute();
+						int n = 0;
+						for (TestClass tc: c) {
+							assertTrue(tc.getInt() < 100);
+							n++;
+						}
+						assertEquals(100, n);
+						q.closeAll();
+					}
+				};
+			} else {
+				tasks[t] = new Runnable() {
+					@Override
+					public void run() {
+						Extent<TestClass> ext = pm.getExtent(TestClass.class);
+						Iterator<TestClass> it = ext.iterator();
+						int n = 0;
+						while (it.hasNext()) {
+							TestClass tc = it.next();
+							assertEquals("s" + tc.getInt(), tc.getString());
+							n++;
+						}
+						assertEquals(N, n);
+						ext.closeAll();
+					}
+				};
+			}
+		}
+		runThreads(tasks);
+		
+		pm.currentTransaction().commit();
+	}
+	
+	/**
+	 * Several threads modify disjoint sets of objects, followed by a single commit.
+	 */
+	@Test
+	public void testConcurrentWrite() throws InterruptedException {
+		PersistenceManager pm = openMultithreadedPM();
+		pm.currentTransaction().begin();
+		
+		final PersistenceManager pm2 = pm;
+		Runnable[] tasks = new Runnable[N_THREADS];
+		for (int t = 0; t < tasks.length; t++) {
+			final int thread = t;
+			tasks[t] = new Runnable() {
+				@Override
+				public void run() {
+					for (int i = thread; i < N; i += N_THREADS) {
+						TestClass tc = (TestClass) pm2.getObjectById(oids.get(i));
+						tc.setInt(tc.getInt() + N);
+					}
+				}
+			};
+		}
+		runThreads(tasks);
+		
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = (TestClass) pm.getObjectById(oids.get(i));
+			assertEquals(i + N, tc.getInt());
+		}
+		pm.currentTransaction().commit();
+	}
+	
+	/**
+	 * Commit with several commit threads must not wait for the session lock, which is 
+	 * held by the committing thread.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test(timeout = 60000)
+	public void testCommitThreads() {
+		ZooConfig.setCommitThreads(4);
+		try {
+			PersistenceManager pm = openMultithreadedPM();
+			pm.currentTransaction().begin();
+			DBArrayList<TestClass> list = new DBArrayList<TestClass>();
+			for (int i = 0; i < N; i++) {
+				TestClass tc = (TestClass) pm.getObjectById(oids.get(i));
+				tc.setInt(tc.getInt() + N);
+				list.add(tc);
+			}
+			pm.makePersistent(list);
+			Object oidList = pm.getObjectId(list);
+			pm.currentTransaction().commit();
+			TestTools.closePM();
+
+			pm = TestTools.openPM();
+			pm.currentTransaction().begin();
+			list = (DBArrayList<TestClass>) pm.getObjectById(oidList);
+			assertEquals(N, list.size());
+			for (int i = 0; i < N; i++) {
+				assertEquals(i + N, list.get(i).getInt());
+			}
+			pm.currentTransaction().commit();
+		} finally {
+			ZooConfig.setDefaults();
+		}
+	}
+	
+}
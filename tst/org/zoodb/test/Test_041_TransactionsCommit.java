@@ -24,6 +24,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -32,6 +33,7 @@ import java.util.Properties;
 import javax.jdo.JDOHelper;
 import javax.jdo.JDOObjectNotFoundException;
 import javax.jdo.JDOUserException;
+import javax.jdo.ObjectState;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Query;
@@ -40,6 +42,9 @@ import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.zoodb.jdo.api.DBArrayList;
+import org.zoodb.jdo.api.DBHashMap;
+import org.zoodb.jdo.api.ZooConfig;
 import org.zoodb.jdo.api.ZooJdoProperties;
 import org.zoodb.test.testutil.TestTools;
 
@@ -206,6 +211,196 @@ public class Test_041_TransactionsCommit {
 		pmf.close();
 	}
 	
+	@Test
+	public void testPersistenceByReachability() {
+		Properties props = new ZooJdoProperties(DB_NAME);
+		pmf = JDOHelper.getPersistenceManagerFactory(props);
+		pm = pmf.getPersistenceManager();
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		tc.setInt(1);
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		
+		//only the modified object is traversed, also in following commits
+		for (int i = 2; i < 5; i++) {
+			pm.currentTransaction().begin();
+			TestClass tc2 = new TestClass();
+			tc2.setInt(i);
+			TestClass tc3 = new TestClass();
+			tc3.setInt(i + 100);
+			tc2.setRef1(new Object[]{tc3});
+			tc.setRef2(tc2);
+			pm.currentTransaction().commit();
+			assertTrue(JDOHelper.isPersistent(tc2));
+			assertTrue(JDOHelper.isPersistent(tc3));
+			tc = tc2;
+		}
+		pm.close();
+		
+		pm = pmf.getPersistenceManager();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClass.class, "_int > 100 && _int < 200");
+		Collection<?> c = (Collection<?>) q.execute();
+		assertEquals(3, c.size());
+		pm.currentTransaction().rollback();
+	}
+	
+	@Test
+	public void testParallelCommit() {
+		TestTools.defineSchema(DB_NAME, TestClassTiny.class, TestClassSmall.class);
+		TestTools.defineIndex(DB_NAME, TestClassTiny.class, "_int", true);
+		ZooConfig.setCommitThreads(4);
+		try {
+			Properties props = new ZooJdoProperties(DB_NAME);
+			pmf = JDOHelper.getPersistenceManagerFactory(props);
+			pm = pmf.getPersistenceManager();
+			pm.currentTransaction().begin();
+			//more objects than are serialized in one round
+			int n = 25000;
+			for (int i = 0; i < n; i++) {
+				TestClassTiny t = new TestClassTiny(i, i);
+				TestClassSmall s = new TestClassSmall();
+				s.setMyInt(i);
+				s.setMyString("s" + i);
+				s.setMyInts(new int[]{i, i+1});
+				s.setRefP(t);
+				pm.makePersistent(s);
+			}
+			pm.currentTransaction().commit();
+			
+			//update with index
+			pm.currentTransaction().begin();
+			Query q = pm.newQuery(TestClassTiny.class, "_int < 1000");
+			for (Object o: (Collection<?>)q.execute()) {
+				TestClassTiny t = (TestClassTiny) o;
+				t.setInt(t.getInt() + n);
+			}
+			pm.currentTransaction().commit();
+			pm.close();
+			
+			pm = pmf.getPersistenceManager();
+			pm.currentTransaction().begin();
+			q = pm.newQuery(TestClassTiny.class, "_int >= " + n);
+			assertEquals(1000, ((Collection<?>)q.execute()).size());
+			q = pm.newQuery(TestClassSmall.class, "myString == 's123'");
+			Collection<?> c = (Collection<?>) q.execute();
+			assertEquals(1, c.size());
+			TestClassSmall s = (TestClassSmall) c.iterator().next();
+			assertEquals(123, s.getMyInt());
+			assertEquals(124, s.getMyInts()[1]);
+			assertEquals(123, s.getRefP().getLong());
+			assertEquals(123 + n, s.getRefP().getInt());
+			pm.currentTransaction().rollback();
+		} finally {
+			ZooConfig.setDefaults();
+		}
+	}
+	
+	/**
+	 * Persistent collections are serialized by the committing thread. Their elements are 
+	 * hollow objects that must not be loaded on worker threads.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testParallelCommitCollections() {
+		ZooConfig.setCommitThreads(4);
+		try {
+			Properties props = new ZooJdoProperties(DB_NAME);
+			pmf = JDOHelper.getPersistenceManagerFactory(props);
+			pm = pmf.getPersistenceManager();
+			pm.currentTransaction().begin();
+			Object[] oids = new Object[100];
+			for (int i = 0; i < oids.length; i++) {
+				TestClass t = new TestClass();
+				t.setInt(1000 + i);
+				pm.makePersistent(t);
+				oids[i] = pm.getObjectId(t);
+			}
+			pm.currentTransaction().commit();
+			pm.close();
+			
+			pm = pmf.getPersistenceManager();
+			pm.currentTransaction().begin();
+			DBHashMap<TestClass, TestClass> map = 
+				new DBHashMap<TestClass, TestClass>();
+			DBArrayList<TestClass> list = new DBArrayList<TestClass>();
+			for (Object oid: oids) {
+				TestClass t = (TestClass) pm.getObjectById(oid);
+				map.put(t, t);
+				list.add(t);
+				//more dirty classes for the worker threads
+				TestClass t2 = new TestClass();
+				t2.setInt(-1);
+				pm.makePersistent(t2);
+			}
+			pm.makePersistent(map);
+			pm.makePersistent(list);
+			Object oidMap = pm.getObjectId(map);
+			Object oidList = pm.getObjectId(list);
+			pm.currentTransaction().commit();
+			pm.close();
+			
+			pm = pmf.getPersistenceManager();
+			pm.currentTransaction().begin();
+			map = (DBHashMap<TestClass, TestClass>) pm.getObjectById(oidMap);
+			list = (DBArrayList<TestClass>) pm.getObjectById(oidList);
+			assertEquals(oids.length, map.size());
+			assertEquals(oids.length, list.size());
+			for (int i = 0; i < oids.length; i++) {
+				assertEquals(1000 + i, list.get(i).getInt());
+				assertTrue(map.containsKey(list.get(i)));
+			}
+			pm.currentTransaction().rollback();
+		} finally {
+			ZooConfig.setDefaults();
+		}
+	}
+	
+	/**
+	 * Clean objects become hollow after commit, even though they are evicted lazily.
+	 */
+	@Test
+	public void testCleanObjectsAfterCommit() {
+		Properties props = new ZooJdoProperties(DB_NAME);
+		pmf = JDOHelper.getPersistenceManagerFactory(props);
+		pm = pmf.getPersistenceManager();
+		pm.currentTransaction().begin();
+		TestClass tc1 = new TestClass();
+		tc1.setInt(1);
+		TestClass tc2 = new TestClass();
+		tc2.setInt(2);
+		pm.makePersistent(tc1);
+		pm.makePersistent(tc2);
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		assertEquals(1, tc1.getInt());
+		assertEquals(2, tc2.getInt());
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(tc1));
+		tc2.setInt(22);
+		pm.currentTransaction().commit();
+		assertEquals(ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL, 
+				JDOHelper.getObjectState(tc1));
+		assertEquals(ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL, 
+				JDOHelper.getObjectState(tc2));
+		
+		pm.currentTransaction().begin();
+		assertEquals(1, tc1.getInt());
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(tc1));
+		//clean objects from the previous transaction can be modified
+		tc1.setInt(11);
+		assertTrue(JDOHelper.isDirty(tc1));
+		pm.currentTransaction().commit();
+		pm.close();
+		
+		pm = pmf.getPersistenceManager();
+		pm.currentTransaction().begin();
+		Query q = pm.newQuery(TestClass.class, "_int == 11 || _int == 22");
+		assertEquals(2, ((Collection<?>)q.execute()).size());
+		pm.currentTransaction().rollback();
+	}
+	
 	private void assertGetIntFails(TestClass tc) {
 		try {
 			tc.getInt();
@@ -22,9 +22,13 @@ package org.zoodb.test;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import javax.jdo.JDOHelper;
 import javax.jdo.ObjectState;
 import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -32,9 +36,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.zoodb.jdo.api.DBArrayList;
+import org.zoodb.jdo.api.ZooConfig;
 import org.zoodb.jdo.api.ZooJdoProperties;
+import org.zoodb.jdo.api.impl.DBStatistics;
 import org.zoodb.jdo.spi.PersistenceCapableImpl;
 import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooHelper;
 
 public class Test_042_TransactionsEvict {
 
@@ -281,6 +288,203 @@ public class Test_042_TransactionsEvict {
 		pm.close();
 	}
 	
+	@Test
+	public void testCacheLimit() {
+		ZooConfig.setClientCacheSize(10);
+		try {
+			PersistenceManager pm = TestTools.openPM();
+			pm.currentTransaction().begin();
+			for (int i = 0; i < 100; i++) {
+				TestClass tc = new TestClass();
+				tc.setInt(i);
+				pm.makePersistent(tc);
+			}
+			pm.currentTransaction().commit();
+			TestTools.closePM();
+			
+			pm = TestTools.openPM();
+			pm.currentTransaction().begin();
+			DBStatistics stats = ZooHelper.getStatistics(pm);
+			
+			//iterate twice, objects should be reloaded transparently
+			for (int j = 0; j < 2; j++) {
+				long sum = 0;
+				TestClass dirty = null;
+				for (Object o: pm.getExtent(TestClass.class)) {
+					TestClass tc = (TestClass) o;
+					sum += tc.getInt();
+					if (tc.getInt() == 50) {
+						dirty = tc;
+					}
+					assertTrue(stats.getCacheCleanObjectCount() <= 10);
+				}
+				assertEquals(99*100/2, sum);
+				
+				//dirty objects are never evicted
+				dirty.setInt(50);
+				for (Object o: pm.getExtent(TestClass.class)) {
+					((TestClass)o).getInt();
+				}
+				assertEquals(ObjectState.PERSISTENT_DIRTY, JDOHelper.getObjectState(dirty));
+			}
+			assertTrue(stats.getCacheEvictionCount() >= 180);
+			
+			//query results are evaluated correctly even if objects were evicted
+			Query q = pm.newQuery(TestClass.class, "_int >= 30");
+			Collection<?> c = (Collection<?>) q.execute();
+			assertEquals(70, c.size());
+			
+			pm.currentTransaction().rollback();
+			TestTools.closePM();
+		} finally {
+			ZooConfig.setDefaults();
+		}
+	}
+	
+	/**
+	 * Objects that become clean repeatedly are tracked only once.
+	 */
+	@Test
+	public void testCacheLimitRepeatedClean() {
+		ZooConfig.setClientCacheSize(10);
+		try {
+			PersistenceManager pm = TestTools.openPM();
+			pm.currentTransaction().setRetainValues(true);
+			pm.currentTransaction().begin();
+			ArrayList<TestClass> list = new ArrayList<TestClass>();
+			for (int i = 0; i < 5; i++) {
+				TestClass tc = new TestClass();
+				tc.setInt(i);
+				pm.makePersistent(tc);
+				list.add(tc);
+			}
+			pm.currentTransaction().commit();
+			DBStatistics stats = ZooHelper.getStatistics(pm);
+			
+			for (int j = 0; j < 10; j++) {
+				pm.currentTransaction().begin();
+				for (TestClass tc: list) {
+					tc.setInt(tc.getInt() + 1);
+				}
+				pm.currentTransaction().commit();
+				assertEquals(5, stats.getCacheCleanObjectCount());
+			}
+			assertEquals(0, stats.getCacheEvictionCount());
+			TestTools.closePM();
+		} finally {
+			ZooConfig.setDefaults();
+		}
+	}
+	
+	/**
+	 * Objects that were clean before commit are evicted when the cache size is exceeded.
+	 */
+	@Test
+	public void testCacheLimitAfterCommit() {
+		ZooConfig.setClientCacheSize(10);
+		try {
+			PersistenceManager pm = TestTools.openPM();
+			pm.currentTransaction().begin();
+			Object[] oids = new Object[20];
+			for (int i = 0; i < oids.length; i++) {
+				TestClass tc = new TestClass();
+				tc.setInt(i + 1);
+				tc.setString("s" + i);
+				pm.makePersistent(tc);
+				oids[i] = pm.getObjectId(tc);
+			}
+			pm.currentTransaction().commit();
+			TestTools.closePM();
+			
+			pm = TestTools.openPM();
+			pm.currentTransaction().begin();
+			DBStatistics stats = ZooHelper.getStatistics(pm);
+			ArrayList<TestClass> list = new ArrayList<TestClass>();
+			for (int i = 0; i < 10; i++) {
+				TestClass tc = (TestClass) pm.getObjectById(oids[i]);
+				assertEquals(i + 1, tc.getInt());
+				list.add(tc);
+			}
+			assertEquals(10, stats.getCacheCleanObjectCount());
+			pm.currentTransaction().commit();
+			assertEquals(10, stats.getCacheCleanObjectCount());
+			
+			//loading other objects evicts the stale objects from the previous transaction
+			pm.currentTransaction().begin();
+			for (int i = 10; i < oids.length; i++) {
+				TestClass tc = (TestClass) pm.getObjectById(oids[i]);
+				assertEquals(i + 1, tc.getInt());
+			}
+			assertTrue(stats.getCacheCleanObjectCount() <= 10);
+			for (TestClass tc: list) {
+				assertEquals(null, TestTools.getFieldValue("_string", tc));
+			}
+			pm.currentTransaction().rollback();
+			TestTools.closePM();
+		} finally {
+			ZooConfig.setDefaults();
+		}
+	}
+	
+	/**
+	 * Clean objects from a previous transaction are reported as hollow. Asking for their 
+	 * state must not evict them, they are only evicted when they are accessed.
+	 */
+	@Test
+	public void testStateOfCleanObjectsAfterCommit() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		tc.setString("s1");
+		pm.makePersistent(tc);
+		Object oid = pm.getObjectId(tc);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		tc = (TestClass) pm.getObjectById(oid);
+		assertEquals("s1", tc.getString());
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(tc));
+		pm.currentTransaction().commit();
+		
+		pm.currentTransaction().begin();
+		assertEquals(ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL, 
+				JDOHelper.getObjectState(tc));
+		assertFalse(JDOHelper.isTransactional(tc));
+		//not evicted yet
+		assertEquals("s1", TestTools.getFieldValue("_string", tc));
+		
+		assertEquals("s1", tc.getString());
+		assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(tc));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+	
+	@Test
+	public void testCacheNoLimit() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 20; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (Object o: pm.getExtent(TestClass.class)) {
+			assertEquals(ObjectState.PERSISTENT_CLEAN, JDOHelper.getObjectState(o));
+		}
+		DBStatistics stats = ZooHelper.getStatistics(pm);
+		assertEquals(0, stats.getCacheEvictionCount());
+		assertTrue(stats.getCacheObjectCount() >= 20);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+	
 	@After
 	public void afterTest() {
 		TestTools.closePM();
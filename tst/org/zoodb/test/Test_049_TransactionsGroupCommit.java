@@ -0,0 +1,339 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.api.ZooDebug;
+import org.zoodb.jdo.api.DurabilityListener;
+import org.zoodb.jdo.api.ZooConfig;
+import org.zoodb.jdo.api.ZooJdoHelper;
+import org.zoodb.jdo.api.impl.DBStatistics.STATS;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooHelper;
+
+public class Test_049_TransactionsGroupCommit {
+
+	private static class Counter implements DurabilityListener {
+		int n = 0;
+		@Override
+		public void onDurable() {
+			n++;
+		}
+	}
+	
+	@BeforeClass
+	public static void setUpClass() {
+		//one hour, should never expire during the tests 
+		ZooConfig.setGroupCommitDelay(3600*1000);
+	}
+	
+	@AfterClass
+	public static void tearDownClass() {
+		ZooConfig.setDefaults();
+	}
+	
+	@Before
+	public void before() {
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+	
+	@After
+	public void after() {
+		TestTools.closePM();
+		TestTools.removeDb();
+	}
+	
+	private static int getSyncCount(PersistenceManager pm) {
+		return ZooHelper.getStatistics(pm).getStat(STATS.IO_SYNC_CNT);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static int countInstances(PersistenceManager pm) {
+		Query q = pm.newQuery(TestClass.class);
+		Collection<TestClass> c = (Collection<TestClass>) q.execute();
+		int n = 0;
+		for (Iterator<TestClass> it = c.iterator(); it.hasNext(); it.next()) {
+			n++;
+		}
+		q.closeAll();
+		return n;
+	}
+	
+	@Test
+	public void testDurableOnClose() {
+		PersistenceManager pm = TestTools.openPM();
+		int nSync0 = getSyncCount(pm);
+		Counter cnt = new Counter();
+		for (int i = 0; i < 10; i++) {
+			pm.currentTransaction().begin();
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			pm.makePersistent(tc);
+			ZooJdoHelper.addDurabilityListener(pm, cnt);
+			pm.currentTransaction().commit();
+		}
+		//nothing is durable yet
+		assertEquals(0, cnt.n);
+		assertEquals(nSync0, getSyncCount(pm));
+		
+		//but visible
+		pm.currentTransaction().begin();
+		assertEquals(10, countInstances(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		assertEquals(10, cnt.n);
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(10, countInstances(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+	
+	@Test
+	public void testSync() {
+		PersistenceManager pm = TestTools.openPM();
+		int nSync0 = getSyncCount(pm);
+		Counter cnt = new Counter();
+		Counter cntRB = new Counter();
+		
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClass());
+		ZooJdoHelper.addDurabilityListener(pm, cnt);
+		pm.currentTransaction().commit();
+
+		//rolled back transactions never become durable
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClass());
+		ZooJdoHelper.addDurabilityListener(pm, cntRB);
+		pm.currentTransaction().rollback();
+
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClass());
+		ZooJdoHelper.addDurabilityListener(pm, cnt);
+		pm.currentTransaction().commit();
+		assertEquals(0, cnt.n);
+
+		//one sync for both transactions
+		ZooJdoHelper.sync(pm);
+		assertEquals(2, cnt.n);
+		assertEquals(nSync0 + 1, getSyncCount(pm));
+		
+		//nothing to do
+		ZooJdoHelper.sync(pm);
+		assertEquals(nSync0 + 1, getSyncCount(pm));
+		
+		TestTools.closePM();
+		assertEquals(2, cnt.n);
+		assertEquals(0, cntRB.n);
+	}
+	
+	@Test
+	public void testDeleteAndReuse() {
+		PersistenceManager pm = TestTools.openPM();
+		//Deleting objects frees pages that must not be reused before the next sync
+		for (int i = 0; i < 20; i++) {
+			pm.currentTransaction().begin();
+			for (int j = 0; j < 100; j++) {
+				pm.makePersistent(new TestClass());
+			}
+			pm.currentTransaction().commit();
+			pm.currentTransaction().begin();
+			pm.deletePersistent(pm.getExtent(TestClass.class).iterator().next());
+			pm.currentTransaction().commit();
+			if (i % 5 == 0) {
+				ZooJdoHelper.sync(pm);
+			}
+		}
+		pm.currentTransaction().begin();
+		assertEquals(20*99, countInstances(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(20*99, countInstances(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+	
+	/**
+	 * Simulate a crash by closing the file without syncing. Only the synced transaction
+	 * should survive.
+	 */
+	@Test
+	public void testCrash() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		pm.makePersistent(new TestClass());
+		pm.currentTransaction().commit();
+		ZooJdoHelper.sync(pm);
+		
+		for (int i = 0; i < 5; i++) {
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestClass());
+			pm.currentTransaction().commit();
+		}
+
+		//'crash'
+		try {
+			ZooDebug.closeOpenFiles();
+		} catch (IllegalStateException e) {
+			//good, the file was still open
+		}
+		
+		PersistenceManager pm2 = TestTools.openPM();
+		pm2.currentTransaction().begin();
+		assertEquals(1, countInstances(pm2));
+		pm2.currentTransaction().rollback();
+		TestTools.closePM();
+		assertTrue(pm != pm2);
+	}
+	
+	/**
+	 * A failed commit must not force the pending group to disk.
+	 */
+	@Test
+	public void testFailedCommit() {
+		TestTools.defineIndex(TestClass.class, "_string", true);
+		PersistenceManager pm = TestTools.openPM();
+		int nSync0 = getSyncCount(pm);
+		Counter cnt = new Counter();
+		
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 10; i++) {
+			TestClass tc = new TestClass();
+			tc.setString("s" + i);
+			pm.makePersistent(tc);
+		}
+		ZooJdoHelper.addDurabilityListener(pm, cnt);
+		pm.currentTransaction().commit();
+		
+		//delete some objects to free pages in the pending group
+		pm.currentTransaction().begin();
+		Iterator<TestClass> it = pm.getExtent(TestClass.class).iterator();
+		pm.deletePersistent(it.next());
+		pm.deletePersistent(it.next());
+		pm.currentTransaction().commit();
+		
+		//unique index violation
+		pm.currentTransaction().begin();
+		TestClass tc1 = new TestClass();
+		tc1.setString("x");
+		TestClass tc2 = new TestClass();
+		tc2.setString("x");
+		pm.makePersistent(tc1);
+		pm.makePersistent(tc2);
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		pm.currentTransaction().rollback();
+		assertEquals(0, cnt.n);
+		assertEquals(nSync0, getSyncCount(pm));
+		
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 10; i++) {
+			TestClass tc = new TestClass();
+			tc.setString("t" + i);
+			pm.makePersistent(tc);
+		}
+		pm.currentTransaction().commit();
+		assertEquals(0, cnt.n);
+		
+		TestTools.closePM();
+		assertEquals(1, cnt.n);
+		
+		pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		assertEquals(18, countInstances(pm));
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+	}
+	
+	@Test
+	public void testDurableWithoutFurtherCommit() throws InterruptedException {
+		ZooConfig.setGroupCommitDelay(200);
+		try {
+			PersistenceManager pm = TestTools.openPM();
+			int nSync0 = getSyncCount(pm);
+			final CountDownLatch durable = new CountDownLatch(1);
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestClass());
+			ZooJdoHelper.addDurabilityListener(pm, new DurabilityListener() {
+				@Override
+				public void onDurable() {
+					durable.countDown();
+				}
+			});
+			long t0 = System.currentTimeMillis();
+			pm.currentTransaction().commit();
+			assertEquals(1, durable.getCount());
+
+			//no further commit, the session is idle
+			assertTrue(durable.await(10, TimeUnit.SECONDS));
+			assertTrue(System.currentTimeMillis() - t0 >= 200);
+			assertEquals(nSync0 + 1, getSyncCount(pm));
+			TestTools.closePM();
+		} finally {
+			ZooConfig.setGroupCommitDelay(3600*1000);
+		}
+	}
+	
+	@Test
+	public void testWithoutGroupCommit() {
+		ZooConfig.setGroupCommitDelay(0);
+		try {
+			PersistenceManager pm = TestTools.openPM();
+			int nSync0 = getSyncCount(pm);
+			Counter cnt = new Counter();
+			pm.currentTransaction().begin();
+			pm.makePersistent(new TestClass());
+			ZooJdoHelper.addDurabilityListener(pm, cnt);
+			pm.currentTransaction().commit();
+			assertEquals(1, cnt.n);
+			assertEquals(nSync0 + 1, getSyncCount(pm));
+			TestTools.closePM();
+		} finally {
+			ZooConfig.setGroupCommitDelay(3600*1000);
+		}
+	}
+}
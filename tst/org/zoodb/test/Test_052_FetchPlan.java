@@ -0,0 +1,273 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.jdo.FetchPlan;
+import javax.jdo.JDOHelper;
+import javax.jdo.JDOUserException;
+import javax.jdo.ObjectState;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.api.impl.DBStatistics;
+import org.zoodb.jdo.api.impl.DBStatistics.STATS;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooHelper;
+
+/**
+ * Tests for fetch plans and batch loading of referenced objects.
+ * 
+ * @author ztilmann
+ */
+public class Test_052_FetchPlan {
+
+	private static final int N = 2000;
+	private static final int CHAIN = 10;
+	
+	private static Object oidRoot;
+	private static Object oidChain;
+	private static final List<Object> oids = new ArrayList<Object>();
+	
+	@BeforeClass
+	public static void setUp() {
+		DBStatistics.enable(true);
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		//children are referenced in random order
+		List<TestClass> children = new ArrayList<TestClass>();
+		for (int i = 0; i < N; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			tc.setString("A long string to fill the pages of the database file " + i);
+			children.add(tc);
+			pm.makePersistent(tc);
+		}
+		Collections.shuffle(children, new Random(0));
+		TestClass root = new TestClass();
+		root.setRef1(children.toArray());
+		pm.makePersistent(root);
+		
+		//chain of objects
+		TestClass chain = new TestClass();
+		TestClass prev = chain;
+		for (int i = 1; i < CHAIN; i++) {
+			TestClass tc = new TestClass();
+			tc.setInt(i);
+			prev.setRef2(tc);
+			prev = tc;
+		}
+		pm.makePersistent(chain);
+		pm.currentTransaction().commit();
+		oidRoot = pm.getObjectId(root);
+		oidChain = pm.getObjectId(chain);
+		for (TestClass tc: children) {
+			oids.add(pm.getObjectId(tc));
+		}
+		TestTools.closePM();
+	}
+
+	@After
+	public void afterTest() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		DBStatistics.enable(false);
+		TestTools.removeDb();
+	}
+	
+	@Test
+	public void testFetchPlanSettings() {
+		PersistenceManager pm = TestTools.openPM();
+		FetchPlan fp = pm.getFetchPlan();
+		assertEquals(1, fp.getGroups().size());
+		assertTrue(fp.getGroups().contains(FetchPlan.DEFAULT));
+		fp.addGroup(FetchPlan.ALL);
+		assertEquals(2, fp.getGroups().size());
+		fp.removeGroup(FetchPlan.DEFAULT);
+		assertEquals(1, fp.getGroups().size());
+		fp.setGroups("a", "b");
+		assertFalse(fp.getGroups().contains(FetchPlan.ALL));
+		fp.setGroup(FetchPlan.ALL);
+		assertTrue(fp.getGroups().contains(FetchPlan.ALL));
+		fp.clearGroups();
+		assertTrue(fp.getGroups().isEmpty());
+
+		assertEquals(1, fp.getMaxFetchDepth());
+		fp.setMaxFetchDepth(-1);
+		assertEquals(-1, fp.getMaxFetchDepth());
+		try {
+			fp.setMaxFetchDepth(0);
+			fail();
+		} catch (JDOUserException e) {
+			//good
+		}
+		fp.setFetchSize(100);
+		assertEquals(100, fp.getFetchSize());
+	}
+	
+	@Test
+	public void testFetchDepth() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		
+		//default: referenced objects are not loaded
+		TestClass chain = (TestClass) pm.getObjectById(oidChain);
+		assertEquals(0, chain.getInt());
+		assertHollow(chain.getRef2(), true);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.getFetchPlan().addGroup(FetchPlan.ALL);
+		pm.getFetchPlan().setMaxFetchDepth(3);
+		pm.currentTransaction().begin();
+		chain = (TestClass) pm.getObjectById(oidChain);
+		TestClass tc = chain;
+		for (int i = 0; i < 3; i++) {
+			tc = tc.getRef2();
+			assertHollow(tc, false);
+		}
+		assertHollow(tc.getRef2(), true);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.getFetchPlan().addGroup(FetchPlan.ALL);
+		pm.getFetchPlan().setMaxFetchDepth(-1);
+		pm.currentTransaction().begin();
+		chain = (TestClass) pm.getObjectById(oidChain);
+		tc = chain;
+		for (int i = 1; i < CHAIN; i++) {
+			tc = tc.getRef2();
+			assertHollow(tc, false);
+			assertEquals(i, tc.getInt());
+		}
+		pm.currentTransaction().rollback();
+	}
+	
+	/**
+	 * Loading the referenced objects in one batch should read every page only once.
+	 */
+	@Test
+	public void testBatchLoading() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		int r0 = countPageReads(pm);
+		checkChildren(pm);
+		int r1 = countPageReads(pm);
+		pm.currentTransaction().rollback();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL);
+		pm.currentTransaction().begin();
+		int r2 = countPageReads(pm);
+		checkChildren(pm);
+		int r3 = countPageReads(pm);
+		pm.currentTransaction().rollback();
+		
+		assertTrue("" + (r1-r0) + " / " + (r3-r2), (r3-r2)*5 < r1-r0);
+	}
+	
+	private int countPageReads(PersistenceManager pm) {
+		DBStatistics s = ZooHelper.getStatistics(pm);
+		return s.getStat(STATS.IO_PAGE_READ_CNT) + s.getStat(STATS.IO_PAGE_POOL_HIT_CNT);
+	}
+	
+	private void checkChildren(PersistenceManager pm) {
+		TestClass root = (TestClass) pm.getObjectById(oidRoot);
+		Object[] children = (Object[]) root.getRef1();
+		assertEquals(N, children.length);
+		for (Object o: children) {
+			((TestClass)o).getInt();
+		}
+	}
+	
+	@Test
+	public void testGetObjectsById() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		Collection<?> c = pm.getObjectsById(oids);
+		assertEquals(N, c.size());
+		int i = 0;
+		for (Object o: c) {
+			assertEquals(oids.get(i++), pm.getObjectId(o));
+			assertHollow(o, false);
+		}
+		Object[] a = pm.getObjectsById(oids.get(5), oids.get(3));
+		assertEquals(oids.get(5), pm.getObjectId(a[0]));
+		assertEquals(oids.get(3), pm.getObjectId(a[1]));
+		pm.currentTransaction().rollback();
+	}
+	
+	/**
+	 * Missing referenced objects do not prevent loading the requested objects.
+	 */
+	@Test
+	public void testGetObjectsByIdDanglingReference() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		TestClass tc = new TestClass();
+		TestClass ref = new TestClass();
+		tc.setInt(7);
+		tc.setRef2(ref);
+		pm.makePersistent(tc);
+		pm.currentTransaction().commit();
+		Object oid = pm.getObjectId(tc);
+		pm.currentTransaction().begin();
+		pm.deletePersistent(ref);
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+		
+		pm = TestTools.openPM();
+		pm.getFetchPlan().setGroup(FetchPlan.ALL);
+		pm.currentTransaction().begin();
+		Collection<?> c = pm.getObjectsById(Collections.singletonList(oid));
+		Object o = c.iterator().next();
+		assertHollow(o, false);
+		assertEquals(7, ((TestClass) o).getInt());
+		pm.currentTransaction().rollback();
+	}
+	
+	private static void assertHollow(Object o, boolean hollow) {
+		ObjectState s = JDOHelper.getObjectState(o);
+		assertEquals(hollow, s == ObjectState.HOLLOW_PERSISTENT_NONTRANSACTIONAL);
+	}
+}
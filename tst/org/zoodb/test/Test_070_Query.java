@@ -329,6 +329,47 @@ public class Test_070_Query {
         TestTools.closePM();
 	}
 
+    @Test
+    public void testPrimitiveComparisons() {
+        checkQuery("_int == 123", 1);
+        checkQuery("_int != 123", 4);
+        checkQuery("_int < 123", 2);
+        checkQuery("_int <= 123", 3);
+        checkQuery("_int > 123", 2);
+        checkQuery("_int >= 123", 3);
+        checkQuery("_long >= 1234567890", 5);
+        checkQuery("_short < 32000", 0);
+        checkQuery("_byte == 127", 5);
+        checkQuery("_float > 0.5", 2);
+        checkQuery("_float >= 0.1", 3);
+        checkQuery("_double > 3.0", 2);
+        checkQuery("_double >= 3.0", 3);
+        checkQuery("_bool == false", 5);
+        checkQuery("_bool != false", 0);
+        checkQuery("_bool < true", 5);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPrimitiveComparisonsWithParameters() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class, "_int > minInt");
+        q.declareParameters("int minInt");
+        assertEquals(3, ((Collection<TestClass>) q.execute(12)).size());
+        //changed parameter
+        assertEquals(1, ((Collection<TestClass>) q.execute(1234)).size());
+        
+        q = pm.newQuery(TestClass.class, "_long == l");
+        q.declareParameters("long l");
+        assertEquals(5, ((Collection<TestClass>) q.execute(1234567890L)).size());
+        assertEquals(0, ((Collection<TestClass>) q.execute(1234567891L)).size());
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
     @Test
     public void testSyntaxBraces1() {
         checkQuery("_int < 12345", 4);
@@ -702,6 +743,83 @@ public class Test_070_Query {
 		TestTools.closePM(pm);
 	}
 	
+	/**
+	 * Query results are evaluated lazily. They must not be affected by later executions
+	 * of the same query and must be empty after closing them.
+	 */
+	@Test
+	public void testLazyResult() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		Query q = pm.newQuery(TestClass.class, "_int >= minInt");
+		q.declareParameters("int minInt");
+		Collection<?> c1 = (Collection<?>) q.execute(123);
+		Collection<?> c2 = (Collection<?>) q.execute(12345);
+		assertEquals(3, c1.size());
+		assertEquals(1, c2.size());
+		for (Object o: c1) {
+			assertTrue(((TestClass)o).getInt() >= 123);
+		}
+		assertFalse(c1.isEmpty());
+
+		Iterator<?> it = c1.iterator();
+		assertTrue(it.hasNext());
+		it.next();
+		q.close(c1);
+		assertFalse(it.hasNext());
+		assertFalse(c1.iterator().hasNext());
+		//c2 is still open
+		assertTrue(c2.iterator().hasNext());
+		q.closeAll();
+		assertFalse(c2.iterator().hasNext());
+
+		TestTools.closePM(pm);
+	}
+	
+	/**
+	 * Lazy results are lists. Indexed access must return the same objects as iteration.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testLazyResultList() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		Query q = pm.newQuery(TestClass.class, "_int >= 123");
+		List<TestClass> r = (List<TestClass>) q.execute();
+		assertFalse(r.isEmpty());
+		TestClass tc0 = r.get(0);
+		assertTrue(tc0.getInt() >= 123);
+		assertEquals(3, r.size());
+		int i = 0;
+		for (TestClass tc: r) {
+			assertTrue(tc == r.get(i++));
+		}
+		assertEquals(3, i);
+		try {
+			r.get(3);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			//good
+		}
+		
+		//isEmpty() does not consume the first result
+		r = (List<TestClass>) q.execute();
+		assertFalse(r.isEmpty());
+		i = 0;
+		for (TestClass tc: r) {
+			assertTrue(tc.getInt() >= 123);
+			i++;
+		}
+		assertEquals(3, i);
+		assertEquals(3, r.size());
+		q.closeAll();
+		assertEquals(0, r.size());
+		
+		TestTools.closePM(pm);
+	}
+
 	@After
 	public void afterTest() {
 		TestTools.closePM();
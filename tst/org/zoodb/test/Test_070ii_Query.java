@@ -24,7 +24,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
@@ -90,4 +93,88 @@ public class Test_070ii_Query extends Test_070_Query {
 
         TestTools.closePM(pm);
 	}
+	
+	/**
+	 * Sub-queries on the same index with overlapping or identical ranges are merged. 
+	 * Sub-queries on different indices are merged before objects are loaded.
+	 * The results should be complete and not contain duplicates.
+	 */
+	@SuppressWarnings("unchecked")
+    @Test
+	public void testOrMerging() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class);
+        Collection<TestClass> r;
+        
+        //same index, overlapping
+        q.setFilter("_int < 20 || (_int > 5 && _int < 200)");
+        r = (Collection<TestClass>) q.execute();
+        assertEquals(3, r.size());
+        //execute again
+        r = (Collection<TestClass>) q.execute();
+        assertEquals(3, r.size());
+
+        //same index, identical ranges, only the second sub-query matches
+        q.setFilter("(_int == 12 && _bool == true) || (_int == 12 && _float < 0)");
+        r = (Collection<TestClass>) q.execute();
+        assertEquals(1, r.size());
+        assertEquals(12, r.iterator().next().getInt());
+
+        //different indices
+        q.setFilter("_int == 1 || _float > 10 || _double > 10");
+        r = (Collection<TestClass>) q.execute();
+        Set<Integer> ints = new HashSet<Integer>();
+        for (TestClass tc: r) {
+        	assertTrue(ints.add(tc.getInt()));
+        }
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 12, 12345)), ints);
+
+        TestTools.closePM(pm);
+	}
+	
+	/**
+	 * Ranges on several indices are intersected before objects are loaded.
+	 */
+	@SuppressWarnings("unchecked")
+    @Test
+	public void testAndIntersection() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class);
+        Collection<TestClass> r;
+        
+        q.setFilter("_int > 5 && _int < 20000 && _double < 10");
+        r = (Collection<TestClass>) q.execute();
+        Set<Integer> ints = new HashSet<Integer>();
+        for (TestClass tc: r) {
+        	assertTrue(ints.add(tc.getInt()));
+        }
+        assertEquals(new HashSet<Integer>(Arrays.asList(123, 1234, 12345)), ints);
+        //the object with _int=12 is not loaded
+        int nLoaded = 0;
+        for (Object o: pm.getManagedObjects()) {
+        	if (o instanceof TestClass) {
+        		nLoaded++;
+        	}
+        }
+        assertEquals(3, nLoaded);
+
+        q.setFilter("_int >= 12 && _float > 0 && _double > -1 && _string == 'xyz'");
+        r = (Collection<TestClass>) q.execute();
+        ints.clear();
+        for (TestClass tc: r) {
+        	assertTrue(ints.add(tc.getInt()));
+        }
+        assertEquals(new HashSet<Integer>(Arrays.asList(123, 1234)), ints);
+
+        //no match
+        q.setFilter("_int > 5 && _double > 100");
+        r = (Collection<TestClass>) q.execute();
+        assertEquals(0, r.size());
+        
+        TestTools.closePM(pm);
+	}
 }
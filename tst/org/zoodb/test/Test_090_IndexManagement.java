@@ -428,6 +428,36 @@ public class Test_090_IndexManagement {
 		TestTools.closePM(pm);
 	}
 
+	@Test
+	public void testIndexCreationUniqueOnNonUniqeStrings() {
+		createData();
+		
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+
+		TestClass tc1 = new TestClass();
+		tc1.setString("dup");
+		pm.makePersistent(tc1);
+		tc1 = new TestClass();
+		tc1.setString("dup");
+		pm.makePersistent(tc1);
+
+		pm.currentTransaction().commit();
+		pm.currentTransaction().begin();
+		
+		ZooClass s = ZooSchema.locateClass(pm, TestClass.class);
+		s.createIndex("_string", true);
+
+		try {
+			pm.currentTransaction().commit();
+			fail();
+		} catch (JDOUserException e) {
+			//should fail because of non-unique data
+		}
+		
+		TestTools.closePM(pm);
+	}
+
 
 	
 	@After
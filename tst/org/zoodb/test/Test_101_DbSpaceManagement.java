@@ -22,6 +22,7 @@ package org.zoodb.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.Collection;
@@ -198,7 +199,35 @@ public class Test_101_DbSpaceManagement {
 
 		assertEquals(len1, f.length());
 	}
-	
-	
+
+	/**
+	 * Repeated reads of the same pages should be served from the page pool.
+	 */
+	@Test
+	public void testPagePoolStatistics() {
+		PersistenceManager pm = TestTools.openPM();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 1000; i++) {
+			pm.makePersistent(new TestClass());
+		}
+		pm.currentTransaction().commit();
+		TestTools.closePM();
+
+		pm = TestTools.openPM();
+		DBStatistics dbs = ZooHelper.getStatistics(pm);
+		int hit0 = dbs.getStoragePagePoolHitCount();
+		pm.currentTransaction().begin();
+		for (int i = 0; i < 2; i++) {
+			pm.evictAll();
+			Collection<?> c = (Collection<?>) pm.newQuery(TestClass.class).execute();
+			for (Object o: c) {
+				assertNotNull(o);
+			}
+		}
+		pm.currentTransaction().rollback();
+		assertTrue(dbs.getStoragePagePoolMissCount() > 0);
+		assertTrue(dbs.getStoragePagePoolHitCount() > hit0);
+		TestTools.closePM();
+	}
 
 }
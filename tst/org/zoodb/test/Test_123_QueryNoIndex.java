@@ -0,0 +1,172 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Tests for queries without index, which are pre-evaluated on the serialized objects.
+ * 
+ * @author ztilmann
+ *
+ */
+public class Test_123_QueryNoIndex {
+
+	@BeforeClass
+	public static void setUp() {
+        TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+	}
+
+	@Before
+	public void before() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        pm.newQuery(TestClass.class).deletePersistentAll();
+        
+        TestClass tc1 = new TestClass();
+        tc1.setData(1, false, 'c', (byte)127, (short)32000, 1234567890L, "xyz", new byte[]{1,2},
+        		-1.1f, 35);
+        pm.makePersistent(tc1);
+        tc1 = new TestClass();
+        tc1.setData(12, false, 'd', (byte)127, (short)32000, 1234567890L, "xyz", new byte[]{1,2},
+        		-0.1f, 34);
+        pm.makePersistent(tc1);
+        tc1 = new TestClass();
+        tc1.setData(123, false, 'e', (byte)127, (short)32000, 1234567890L, "xyz", new byte[]{1,2},
+        		0.1f, 3.0);
+        pm.makePersistent(tc1);
+        tc1 = new TestClass();
+        tc1.setData(1234, false, 'f', (byte)127, (short)32000, 1234567890L, "xyz", new byte[]{1,2},
+        		1.1f, -0.01);
+        pm.makePersistent(tc1);
+        tc1 = new TestClass();
+        tc1.setData(12345, false, 'g', (byte)127, (short)32000, 1234567890L, "xyz", new byte[]{1,2},
+        		11.1f, -35);
+        pm.makePersistent(tc1);
+        
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+	}
+		
+	@After
+	public void afterTest() {
+		TestTools.closePM();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+    /**
+     * Non-matching objects should not be loaded if the query can be evaluated on the 
+     * serialized objects.
+     */
+    @Test
+    public void testQueryDoesNotLoadNonMatches() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class, "_int == 123 && _double > 1.0");
+        Collection<?> r = (Collection<?>) q.execute();
+        assertEquals(1, r.size());
+        assertEquals(1, countManagedTestClass(pm));
+        
+        q = pm.newQuery(TestClass.class, "_string == 'xy' || _double > 10.0");
+        r = (Collection<?>) q.execute();
+        assertEquals(2, r.size());
+        assertEquals(3, countManagedTestClass(pm));
+
+        q = pm.newQuery(TestClass.class, "_string == 'xyz' && _int <= 1234");
+        r = (Collection<?>) q.execute();
+        assertEquals(4, r.size());
+        assertEquals(4, countManagedTestClass(pm));
+
+        q = pm.newQuery(TestClass.class, "_string != null && _int > 100");
+        r = (Collection<?>) q.execute();
+        assertEquals(3, r.size());
+        
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    private int countManagedTestClass(PersistenceManager pm) {
+        int n = 0;
+        for (Object o: pm.getManagedObjects()) {
+            if (o instanceof TestClass) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Modified objects must be evaluated in memory, not on the stored version.
+     */
+    @Test
+    public void testQueryOnModifiedObjects() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class, "_int == 12");
+        Collection<?> r = (Collection<?>) q.execute();
+        assertEquals(1, r.size());
+        TestClass tc = (TestClass) r.iterator().next();
+        tc.setInt(500);
+        tc.setString("abc");
+        
+        q = pm.newQuery(TestClass.class, "_int == 500");
+        q.setIgnoreCache(false);
+        r = (Collection<?>) q.execute();
+        assertEquals(1, r.size());
+        assertTrue(tc == r.iterator().next());
+
+        q = pm.newQuery(TestClass.class, "_int == 12");
+        q.setIgnoreCache(false);
+        r = (Collection<?>) q.execute();
+        assertEquals(0, r.size());
+
+        q = pm.newQuery(TestClass.class, "_string == 'abc'");
+        q.setIgnoreCache(false);
+        r = (Collection<?>) q.execute();
+        assertEquals(1, r.size());
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.jdo.JDOUserException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Tests for ordering and ranges of query results.
+ *
+ * @author ztilmann
+ *
+ */
+public class Test_124_QueryOrdering {
+
+	private static final int N = 1000;
+
+	@BeforeClass
+	public static void setUp() {
+        TestTools.removeDb();
+		TestTools.createDb();
+		TestTools.defineSchema(TestClass.class);
+		TestTools.defineIndex(TestClass.class, "_int", false);
+
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        for (int i = 0; i < N; i++) {
+        	TestClass tc = new TestClass();
+        	tc.setData(getInt(i), false, 'c', (byte)127, (short)32000, i % 10, "s" + (i % 7),
+        			null, 1.1f, getDouble(i));
+        	pm.makePersistent(tc);
+        }
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+	}
+
+	private static int getInt(int i) {
+		//unique values in random order
+		return (i * 7919) % N;
+	}
+
+	private static double getDouble(int i) {
+		return ((i * 31) % 101) - 50.5;
+	}
+
+	@After
+	public void afterTest() {
+		TestTools.closePM();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		TestTools.removeDb();
+	}
+
+    @Test
+    public void testOrderingWithIndex() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class, "_int >= 500");
+        q.setOrdering("_int ascending");
+        List<TestClass> r = toList(q.execute());
+        assertEquals(N-500, r.size());
+        for (int i = 0; i < r.size(); i++) {
+        	assertEquals(500 + i, r.get(i).getInt());
+        }
+
+        q.setOrdering("_int desc");
+        r = toList(q.execute());
+        assertEquals(N-500, r.size());
+        for (int i = 0; i < r.size(); i++) {
+        	assertEquals(N - 1 - i, r.get(i).getInt());
+        }
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    /**
+     * Queries with range should load only the objects up to the end of the range, if
+     * the ordering field is indexed.
+     */
+    @Test
+    public void testRangeWithIndex() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class);
+        q.setOrdering("_int descending");
+        q.setRange(0, 10);
+        List<TestClass> r = toList(q.execute());
+        assertEquals(10, r.size());
+        for (int i = 0; i < r.size(); i++) {
+        	assertEquals(N - 1 - i, r.get(i).getInt());
+        }
+        //the index iterator reads one object ahead
+        assertTrue(countManagedTestClass(pm) <= 11);
+
+        //filter without index
+        q = pm.newQuery(TestClass.class, "_long == 3");
+        q.setOrdering("_int ascending");
+        q.setRange("5, 15");
+        r = toList(q.execute());
+        List<TestClass> all = toList(pm.newQuery(TestClass.class, "_long == 3").execute());
+        List<Integer> expected = new ArrayList<Integer>();
+        for (TestClass tc: all) {
+        	expected.add(tc.getInt());
+        }
+        Collections.sort(expected);
+        assertEquals(10, r.size());
+        for (int i = 0; i < r.size(); i++) {
+        	assertEquals((int)expected.get(i + 5), r.get(i).getInt());
+        }
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    @Test
+    public void testOrderingWithoutIndex() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class, "_double > 0");
+        q.setOrdering("_double descending");
+        List<TestClass> r = toList(q.execute());
+        int nPositive = 0;
+        for (int i = 0; i < N; i++) {
+        	if (getDouble(i) > 0) {
+        		nPositive++;
+        	}
+        }
+        assertEquals(nPositive, r.size());
+        for (int i = 1; i < r.size(); i++) {
+        	assertTrue(r.get(i-1).getDouble() >= r.get(i).getDouble());
+        }
+
+        //with range
+        q.setRange(3, 8);
+        List<TestClass> r2 = toList(q.execute());
+        assertEquals(5, r2.size());
+        for (int i = 0; i < r2.size(); i++) {
+        	assertEquals(r.get(i + 3).getDouble(), r2.get(i).getDouble(), 0.0);
+        }
+
+        //range beyond the end
+        q.setRange(nPositive - 2, N);
+        assertEquals(2, toList(q.execute()).size());
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    @Test
+    public void testOrderingMultipleFields() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class);
+        q.setOrdering("_string ascending, _long desc, _int");
+        List<TestClass> r = toList(q.execute());
+        assertEquals(N, r.size());
+        for (int i = 1; i < r.size(); i++) {
+        	TestClass t1 = r.get(i-1);
+        	TestClass t2 = r.get(i);
+        	int c = t1.getString().compareTo(t2.getString());
+        	if (c == 0) {
+        		c = t1.getLong() < t2.getLong() ? 1 : (t1.getLong() == t2.getLong() ? 0 : -1);
+        	}
+        	if (c == 0) {
+        		c = t1.getInt() < t2.getInt() ? -1 : 1;
+        	}
+        	assertTrue(c < 0);
+        }
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    @Test
+    public void testRangeWithoutOrdering() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class, "_long == 3");
+        q.setRange(10, 20);
+        Collection<?> c = (Collection<?>) q.execute();
+        assertEquals(10, c.size());
+        for (Object o: c) {
+        	assertEquals(3, ((TestClass)o).getLong());
+        }
+
+        q = pm.newQuery(TestClass.class);
+        q.setRange(0, 5);
+        assertEquals(5, toList(q.execute()).size());
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    @Test
+    public void testInvalidOrderingAndRange() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+
+        Query q = pm.newQuery(TestClass.class);
+        q.setOrdering("_int up");
+        try {
+        	q.execute();
+        	fail();
+        } catch (JDOUserException e) {
+        	//good
+        }
+
+        q.setOrdering("_notAField");
+        try {
+        	q.execute();
+        	fail();
+        } catch (JDOUserException e) {
+        	//good
+        }
+
+        try {
+        	q.setRange(5, 4);
+        	fail();
+        } catch (JDOUserException e) {
+        	//good
+        }
+
+        try {
+        	q.setRange(":from, :to");
+        	fail();
+        } catch (JDOUserException e) {
+        	//good
+        }
+
+        pm.currentTransaction().rollback();
+        TestTools.closePM();
+    }
+
+    @SuppressWarnings("unchecked")
+	private List<TestClass> toList(Object o) {
+    	List<TestClass> ret = new ArrayList<TestClass>();
+    	Iterator<TestClass> it = ((Collection<TestClass>)o).iterator();
+    	while (it.hasNext()) {
+    		ret.add(it.next());
+    	}
+    	return ret;
+    }
+
+    private int countManagedTestClass(PersistenceManager pm) {
+        int n = 0;
+        for (Object o: pm.getManagedObjects()) {
+            if (o instanceof TestClass) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
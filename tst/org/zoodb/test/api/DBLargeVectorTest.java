@@ -0,0 +1,324 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.Random;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.api.DBLargeVector;
+import org.zoodb.jdo.api.DBLargeVectorPage;
+import org.zoodb.jdo.api.ZooClass;
+import org.zoodb.jdo.api.ZooSchema;
+import org.zoodb.jdo.api.impl.DBStatistics;
+import org.zoodb.test.testutil.TestTools;
+import org.zoodb.tools.ZooHelper;
+
+/**
+ * Test harness for DBLargeVector.
+ *
+ * @author  Tilmann Zaeschke
+ */
+public final class DBLargeVectorTest {
+
+    private final static String DB_NAME = "TestDb";
+    //enough to get three levels of pages
+    private static final int N = 100000;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestTools.createDb(DB_NAME);
+        TestTools.defineSchema(DB_NAME, PersistentDummyImpl.class);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestTools.removeDb(DB_NAME);
+    }
+
+    @After
+    public void after() {
+        TestTools.closePM();
+    }
+
+    /**
+     * Compare insertion and removal at random positions with an ArrayList.
+     */
+    @Test
+    public void testRandomAgainstArrayList() {
+        DBLargeVector<Integer> v = new DBLargeVector<Integer>();
+        ArrayList<Integer> l = new ArrayList<Integer>();
+        Random r = new Random(0);
+        for (int i = 0; i < N; i++) {
+            int pos = r.nextInt(l.size() + 1);
+            v.add(pos, i);
+            l.add(pos, i);
+        }
+        assertEquals(l, new ArrayList<Integer>(v));
+        for (int i = 0; i < 1000; i++) {
+            int pos = r.nextInt(l.size());
+            assertEquals(l.get(pos), v.get(pos));
+            assertEquals(l.set(pos, -i), v.set(pos, -i));
+        }
+        for (int i = 0; i < N/2; i++) {
+            int pos = r.nextInt(l.size());
+            assertEquals(l.remove(pos), v.remove(pos));
+        }
+        assertEquals(l.size(), v.size());
+        assertEquals(l, new ArrayList<Integer>(v));
+        while (!l.isEmpty()) {
+            assertEquals(l.remove(l.size()-1), v.remove(v.size()-1));
+        }
+        assertTrue(v.isEmpty());
+        v.add(5);
+        assertEquals(5, (int)v.get(0));
+    }
+
+    @Test
+    public void testIterators() {
+        DBLargeVector<Integer> v = new DBLargeVector<Integer>();
+        for (int i = 0; i < N; i++) {
+            v.add(i);
+        }
+        int n = 0;
+        for (Integer i: v) {
+            assertEquals(n++, (int)i);
+        }
+        assertEquals(N, n);
+
+        ListIterator<Integer> it = v.listIterator(N);
+        while (it.hasPrevious()) {
+            assertEquals(--n, (int)it.previous());
+        }
+
+        //remove all odd numbers
+        Iterator<Integer> it2 = v.iterator();
+        while (it2.hasNext()) {
+            if (it2.next() % 2 == 1) {
+                it2.remove();
+            }
+        }
+        assertEquals(N/2, v.size());
+        assertEquals(N-2, (int)v.get(N/2-1));
+        assertEquals(N/2-1, v.indexOf(N-2));
+        assertEquals(-1, v.indexOf(N-1));
+
+        Iterator<Integer> it3 = v.iterator();
+        it3.next();
+        v.add(3);
+        try {
+            it3.next();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            //good
+        }
+    }
+
+    /**
+     * Test that elements survive a commit and that a modification writes only the
+     * modified page.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPersistence() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        DBLargeVector<Object> v = new DBLargeVector<Object>();
+        for (int i = 0; i < N; i++) {
+            if (i % 10 == 0) {
+                v.add(new PersistentDummyImpl());
+            } else {
+                v.add("s" + i);
+            }
+        }
+        pm.makePersistent(v);
+        Object oid = pm.getObjectId(v);
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+
+        pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        v = (DBLargeVector<Object>) pm.getObjectById(oid);
+        assertEquals(N, v.size());
+        assertEquals("s12345", v.get(12345));
+        assertTrue(v.get(12340) instanceof PersistentDummyImpl);
+        assertTrue(JDOHelper.isPersistent(v.get(12340)));
+
+        //modify a single element
+        v.set(N/2+1, "x");
+        assertFalse(JDOHelper.isDirty(v));
+        assertEquals(1, countDirtyPages(pm));
+        //append an element
+        PersistentDummyImpl pd = new PersistentDummyImpl();
+        v.add(pd);
+        assertTrue(JDOHelper.isDirty(v));
+        pm.currentTransaction().commit();
+        assertTrue(JDOHelper.isPersistent(pd));
+        TestTools.closePM();
+
+        pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        v = (DBLargeVector<Object>) pm.getObjectById(oid);
+        assertEquals(N+1, v.size());
+        assertEquals("x", v.get(N/2+1));
+        assertEquals(pm.getObjectId(pd), pm.getObjectId(v.get(N)));
+        int n = 0;
+        for (Object o: v) {
+            if (n % 10 == 0 || n == N) {
+                assertTrue(o instanceof PersistentDummyImpl);
+            } else if (n != N/2+1) {
+                assertEquals("s" + n, o);
+            }
+            n++;
+        }
+        assertEquals(N+1, n);
+
+        //removing all elements deletes all pages
+        v.clear();
+        pm.currentTransaction().commit();
+        pm.currentTransaction().begin();
+        Collection<?> c = (Collection<?>) pm.newQuery(DBLargeVectorPage.class).execute();
+        assertFalse(c.iterator().hasNext());
+        assertEquals(0, v.size());
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+    }
+
+    /**
+     * Deleting a list deletes its pages.
+     */
+    @Test
+    public void testDelete() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        DBLargeVector<Object> v = new DBLargeVector<Object>();
+        for (int i = 0; i < N; i++) {
+            v.add("s" + i);
+        }
+        pm.makePersistent(v);
+        Object oid = pm.getObjectId(v);
+        //new lists do not leave pages behind either
+        DBLargeVector<Object> v2 = new DBLargeVector<Object>();
+        v2.add("x");
+        pm.makePersistent(v2);
+        pm.deletePersistent(v2);
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+
+        pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        pm.deletePersistent(pm.getObjectById(oid));
+        pm.currentTransaction().commit();
+        pm.currentTransaction().begin();
+        Collection<?> c = (Collection<?>) pm.newQuery(DBLargeVectorPage.class).execute();
+        assertFalse(c.iterator().hasNext());
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+    }
+
+    /**
+     * Deleting a list loads only the inner pages, leaf pages are deleted by their OID.
+     */
+    @Test
+    public void testDeleteWithoutLoadingLeaves() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        DBLargeVector<Object> v = new DBLargeVector<Object>();
+        for (int i = 0; i < N; i++) {
+            v.add("s" + i);
+        }
+        pm.makePersistent(v);
+        Object oid = pm.getObjectId(v);
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+
+        DBStatistics.enable(true);
+        try {
+            pm = TestTools.openPM();
+            pm.currentTransaction().begin();
+            DBStatistics stats = ZooHelper.getStatistics(pm);
+            int nRead = stats.getStorageDataPageReadCount();
+            pm.deletePersistent(pm.getObjectById(oid));
+            pm.currentTransaction().commit();
+            //there are N/256 leaves, but only a few inner pages
+            nRead = stats.getStorageDataPageReadCount() - nRead;
+            assertTrue("reads: " + nRead, nRead < 20);
+            
+            pm.currentTransaction().begin();
+            Collection<?> c = (Collection<?>) pm.newQuery(DBLargeVectorPage.class).execute();
+            assertFalse(c.iterator().hasNext());
+            pm.currentTransaction().commit();
+            TestTools.closePM();
+        } finally {
+            DBStatistics.enable(false);
+        }
+    }
+
+    /**
+     * The schemata are created with the first list, the page schema is not listed.
+     */
+    @Test
+    public void testSchema() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        DBLargeVector<Object> v = new DBLargeVector<Object>();
+        v.add("x");
+        pm.makePersistent(v);
+        pm.currentTransaction().commit();
+        pm.currentTransaction().begin();
+        assertNotNull(ZooSchema.locateClass(pm, DBLargeVector.class));
+        assertNotNull(ZooSchema.locateClass(pm, DBLargeVectorPage.class));
+        boolean found = false;
+        for (ZooClass cls: ZooSchema.locateAllClasses(pm)) {
+            assertFalse(cls.getName(), cls.getJavaClass() == DBLargeVectorPage.class);
+            found |= cls.getJavaClass() == DBLargeVector.class;
+        }
+        assertTrue(found);
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+    }
+
+    private int countDirtyPages(PersistenceManager pm) {
+        int n = 0;
+        for (Object o: pm.getManagedObjects()) {
+            if (o instanceof DBLargeVectorPage && JDOHelper.isDirty(o)) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
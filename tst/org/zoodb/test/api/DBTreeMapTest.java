@@ -0,0 +1,265 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ *
+ * This file is part of ZooDB.
+ *
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * See the README and COPYING files for further information.
+ */
+package org.zoodb.test.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.api.DBTreeMap;
+import org.zoodb.jdo.api.DBTreeMapPage;
+import org.zoodb.test.testutil.TestTools;
+
+/**
+ * Test harness for DBTreeMap.
+ *
+ * @author  Tilmann Zaeschke
+ */
+public final class DBTreeMapTest {
+
+    private final static String DB_NAME = "TestDb";
+    //enough to get three levels of pages
+    private static final int N = 50000;
+
+    @BeforeClass
+    public static void setUpClass() {
+        TestTools.createDb(DB_NAME);
+        TestTools.defineSchema(DB_NAME, PersistentDummyImpl.class);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        TestTools.removeDb(DB_NAME);
+    }
+
+    @After
+    public void after() {
+        TestTools.closePM();
+    }
+
+    /**
+     * Compare random insertion and removal with a TreeMap.
+     */
+    @Test
+    public void testRandomAgainstTreeMap() {
+        DBTreeMap<Long, Integer> m = new DBTreeMap<Long, Integer>();
+        TreeMap<Long, Integer> t = new TreeMap<Long, Integer>();
+        Random r = new Random(0);
+        for (int i = 0; i < N; i++) {
+            long k = r.nextInt(N*2) - N;
+            assertEquals(t.put(k, i), m.put(k, i));
+        }
+        assertEquals(t.size(), m.size());
+        assertEquals(t, m);
+        assertEquals(t.entrySet().iterator().next(), m.entrySet().iterator().next());
+
+        for (int i = 0; i < N; i++) {
+            long k = r.nextInt(N*2) - N;
+            assertEquals(t.get(k), m.get(k));
+            assertEquals(t.remove(k), m.remove(k));
+        }
+        assertEquals(t.size(), m.size());
+        Iterator<Map.Entry<Long, Integer>> it = m.entrySet().iterator();
+        for (Map.Entry<Long, Integer> e: t.entrySet()) {
+            assertEquals(e, it.next());
+        }
+        assertFalse(it.hasNext());
+
+        //range queries
+        for (int i = 0; i < 100; i++) {
+            long min = r.nextInt(N*2) - N;
+            long max = min + r.nextInt(1000);
+            Iterator<Map.Entry<Long, Integer>> it2 = m.iterator(min, max);
+            for (Map.Entry<Long, Integer> e: t.subMap(min, true, max, true).entrySet()) {
+                assertEquals(e, it2.next());
+            }
+            assertFalse(it2.hasNext());
+        }
+
+        //remove via iterator
+        Iterator<Long> itK = m.keySet().iterator();
+        while (itK.hasNext()) {
+            if (itK.next() % 2 == 0) {
+                itK.remove();
+            }
+        }
+        for (Long k: m.keySet()) {
+            assertTrue(k % 2 != 0);
+        }
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertNull(m.get(5L));
+    }
+
+    @Test
+    public void testStringKeys() {
+        DBTreeMap<String, Integer> m = new DBTreeMap<String, Integer>();
+        for (int i = 0; i < N; i++) {
+            //long common prefix
+            m.put("prefix" + i, i);
+        }
+        assertEquals(N, m.size());
+        for (int i = 0; i < N; i++) {
+            assertEquals(i, (int)m.get("prefix" + i));
+        }
+        assertNull(m.get("prefix"));
+        int n = 0;
+        for (Map.Entry<String, Integer> e: m.entrySet()) {
+            assertEquals("prefix" + e.getValue(), e.getKey());
+            n++;
+        }
+        assertEquals(N, n);
+        
+        //Strings are not sorted naturally
+        try {
+            m.iterator("prefix1", "prefix2");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //good
+        }
+    }
+
+    /**
+     * Deleting a map deletes its pages.
+     */
+    @Test
+    public void testDelete() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        DBTreeMap<Integer, String> m = new DBTreeMap<Integer, String>();
+        for (int i = 0; i < N; i++) {
+            m.put(i, "s" + i);
+        }
+        pm.makePersistent(m);
+        Object oid = pm.getObjectId(m);
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+
+        pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        pm.deletePersistent(pm.getObjectById(oid));
+        pm.currentTransaction().commit();
+        pm.currentTransaction().begin();
+        Collection<?> c = (Collection<?>) pm.newQuery(DBTreeMapPage.class).execute();
+        assertFalse(c.iterator().hasNext());
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+    }
+
+    /**
+     * Test that entries survive a commit and that a modification writes only the
+     * modified page.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPersistence() {
+        PersistenceManager pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        DBTreeMap<Integer, Object> m = new DBTreeMap<Integer, Object>();
+        for (int i = 0; i < N; i++) {
+            if (i % 10 == 0) {
+                m.put(i, new PersistentDummyImpl());
+            } else {
+                m.put(i, "s" + i);
+            }
+        }
+        pm.makePersistent(m);
+        Object oid = pm.getObjectId(m);
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+
+        pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        m = (DBTreeMap<Integer, Object>) pm.getObjectById(oid);
+        assertEquals(N, m.size());
+        assertEquals("s12345", m.get(12345));
+        assertTrue(m.get(12340) instanceof PersistentDummyImpl);
+        assertTrue(JDOHelper.isPersistent(m.get(12340)));
+        //only the path to one leaf is loaded
+        assertTrue(countPages(pm, false) < 10);
+
+        //modify a single entry
+        m.put(N/2+1, "x");
+        assertFalse(JDOHelper.isDirty(m));
+        assertEquals(1, countPages(pm, true));
+        //add an entry
+        PersistentDummyImpl pd = new PersistentDummyImpl();
+        m.put(-1, pd);
+        assertTrue(JDOHelper.isDirty(m));
+        pm.currentTransaction().commit();
+        assertTrue(JDOHelper.isPersistent(pd));
+        TestTools.closePM();
+
+        pm = TestTools.openPM();
+        pm.currentTransaction().begin();
+        m = (DBTreeMap<Integer, Object>) pm.getObjectById(oid);
+        assertEquals(N+1, m.size());
+        assertEquals("x", m.get(N/2+1));
+        assertEquals(pm.getObjectId(pd), pm.getObjectId(m.get(-1)));
+        Iterator<Map.Entry<Integer, Object>> it = m.iterator(100, 199);
+        for (int i = 100; i < 200; i++) {
+            Map.Entry<Integer, Object> e = it.next();
+            assertEquals(i, (int)e.getKey());
+        }
+        assertFalse(it.hasNext());
+        int n = -1;
+        for (Map.Entry<Integer, Object> e: m.entrySet()) {
+            assertEquals(n++, (int)e.getKey());
+        }
+        assertEquals(N, n);
+
+        //removing all entries deletes all pages
+        m.clear();
+        pm.currentTransaction().commit();
+        pm.currentTransaction().begin();
+        Collection<?> c = (Collection<?>) pm.newQuery(DBTreeMapPage.class).execute();
+        assertFalse(c.iterator().hasNext());
+        assertEquals(0, m.size());
+        pm.currentTransaction().commit();
+        TestTools.closePM();
+    }
+
+    private int countPages(PersistenceManager pm, boolean dirtyOnly) {
+        int n = 0;
+        for (Object o: pm.getManagedObjects()) {
+            if (o instanceof DBTreeMapPage && (!dirtyOnly || JDOHelper.isDirty(o)) &&
+                    !JDOHelper.getObjectState(o).toString().contains("hollow")) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -188,6 +188,33 @@ public class TestBitTools {
 		}
 		
 	}
+
+	@Test
+	public void testReadWriteBits() {
+		Random r = new Random(0);
+		int[] widths = new int[1000];
+		long[] values = new long[1000];
+		byte[] ba = new byte[1000 * 8];
+		int pos = 0;
+		for (int i = 0; i < values.length; i++) {
+			widths[i] = r.nextInt(65);
+			values[i] = r.nextLong();
+			if (widths[i] < 64) {
+				values[i] &= (1L << widths[i]) - 1;
+			}
+			pos = BitTools.writeBits(ba, pos, values[i], widths[i]);
+		}
+		pos = 0;
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], BitTools.readBits(ba, pos, widths[i]));
+			pos += widths[i];
+		}
+		
+		assertEquals(0, BitTools.getBitWidth(0));
+		assertEquals(1, BitTools.getBitWidth(1));
+		assertEquals(8, BitTools.getBitWidth(255));
+		assertEquals(64, BitTools.getBitWidth(Long.MAX_VALUE - Long.MIN_VALUE));
+	}
 }
 
 
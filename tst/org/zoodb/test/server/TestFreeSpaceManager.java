@@ -0,0 +1,175 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zoodb.jdo.api.ZooConfig;
+import org.zoodb.jdo.internal.server.StorageChannel;
+import org.zoodb.jdo.internal.server.StorageRootInMemory;
+import org.zoodb.jdo.internal.server.index.FreeSpaceManager;
+
+public class TestFreeSpaceManager {
+
+    private static final int PAGE_SIZE = 128;
+    
+    @BeforeClass
+    public static void setUp() {
+    	ZooConfig.setFilePageSize(PAGE_SIZE);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+    	ZooConfig.setFilePageSize(ZooConfig.FILE_PAGE_SIZE_DEFAULT);
+    }
+
+    private FreeSpaceManager createFsm() {
+    	StorageChannel paf = new StorageRootInMemory(ZooConfig.getFilePageSize());
+    	FreeSpaceManager fsm = new FreeSpaceManager();
+    	fsm.initBackingIndexNew(paf);
+    	return fsm;
+    }
+    
+    @Test
+    public void testContiguousNewPages() {
+    	FreeSpaceManager fsm = createFsm();
+    	int p1 = -1;
+    	int p2 = -1;
+    	int nContiguous1 = 0;
+    	int nContiguous2 = 0;
+    	//two interleaved writers
+    	for (int i = 0; i < 100; i++) {
+    		int n1 = fsm.getNextPageContiguous(0, p1);
+    		if (n1 == p1 + 1) {
+    			nContiguous1++;
+    		}
+    		p1 = n1;
+    		int n2 = fsm.getNextPageContiguous(0, p2);
+    		if (n2 == p2 + 1) {
+    			nContiguous2++;
+    		}
+    		p2 = n2;
+    	}
+    	assertTrue("n=" + nContiguous1, nContiguous1 > 80);
+    	assertTrue("n=" + nContiguous2, nContiguous2 > 80);
+    }
+    
+    @Test
+    public void testContiguousFreePages() {
+    	FreeSpaceManager fsm = createFsm();
+    	for (int i = 0; i < 100; i++) {
+    		fsm.getNextPage(0);
+    	}
+    	for (int i = 20; i < 60; i++) {
+    		fsm.reportFreePage(i);
+    	}
+    	fsm.write();
+    	fsm.notifyCommit();
+    	
+    	//the free run is used up before new pages are allocated
+    	int p = -1;
+    	for (int i = 20; i < 60; i++) {
+    		p = fsm.getNextPageContiguous(0, p);
+    		assertEquals(i, p);
+    	}
+    	p = fsm.getNextPageContiguous(0, p);
+    	assertTrue("p=" + p, p >= 100);
+    }
+    
+    @Test
+    public void testUnusedPagesAreReleased() {
+    	FreeSpaceManager fsm = createFsm();
+    	for (int i = 0; i < 100; i++) {
+    		fsm.getNextPage(0);
+    	}
+    	for (int i = 20; i < 60; i++) {
+    		fsm.reportFreePage(i);
+    	}
+    	fsm.write();
+    	fsm.notifyCommit();
+    	
+    	//extents of 1, 2 and 4 pages
+    	int p = -1;
+    	for (int i = 0; i < 4; i++) {
+    		p = fsm.getNextPageContiguous(0, p);
+    	}
+    	assertEquals(23, p);
+    	fsm.write();
+    	fsm.notifyCommit();
+    	
+    	//the rest of the last extent is free again
+    	assertEquals(24, fsm.getNextPage(0));
+    	assertEquals(25, fsm.getNextPage(0));
+    	assertEquals(26, fsm.getNextPage(0));
+    }
+
+    @Test
+    public void testUnusedTailIsNotAllocated() {
+    	FreeSpaceManager fsm = createFsm();
+    	//extents of 1, 1, 2, 4 and 8 pages at the end of the file (page 0 is not tracked)
+    	int p = -1;
+    	for (int i = 0; i < 10; i++) {
+    		p = fsm.getNextPageContiguous(0, p);
+    	}
+    	assertEquals(9, p);
+    	//a second writer with extents of 1 and 2 pages
+    	int p2 = fsm.getNextPageContiguous(0, -1);
+    	p2 = fsm.getNextPageContiguous(0, p2);
+    	assertTrue("p2=" + p2, p2 > 15);
+    	
+    	//the unused page of the second writer is removed from the end of the file, the unused 
+    	//pages of the first writer are returned to the FSM
+    	fsm.write();
+    	fsm.notifyCommit();
+    	for (int i = 10; i < 16; i++) {
+    		assertEquals(i, fsm.getNextPage(0));
+    	}
+    	int p3 = fsm.getNextPage(0);
+    	assertTrue("p3=" + p3, p3 > p2);
+    	assertTrue("p3=" + p3, p3 < p2 + 4);
+    }
+
+    @Test
+    public void testNoReuseBeforeCommit() {
+    	FreeSpaceManager fsm = createFsm();
+    	for (int i = 0; i < 100; i++) {
+    		fsm.getNextPage(0);
+    	}
+    	for (int i = 20; i < 30; i++) {
+    		fsm.reportFreePage(i);
+    	}
+    	fsm.write();
+    	//the pages are in the FSM, but can not be used yet
+    	int p = fsm.getNextPage(0);
+    	assertTrue("p=" + p, p >= 100);
+    	
+    	fsm.notifyCommit();
+    	for (int i = 20; i < 30; i++) {
+    		assertEquals(i, fsm.getNextPage(0));
+    	}
+    	p = fsm.getNextPage(0);
+    	assertTrue("p=" + p, p > 100);
+    }
+}
@@ -42,6 +42,7 @@ import org.zoodb.jdo.internal.server.DiskIO.DATA_TYPE;
 import org.zoodb.jdo.internal.server.StorageChannel;
 import org.zoodb.jdo.internal.server.StorageRootInMemory;
 import org.zoodb.jdo.internal.server.index.AbstractPagedIndex.AbstractPageIterator;
+import org.zoodb.jdo.internal.server.index.LLIndexBuilder;
 import org.zoodb.jdo.internal.server.index.PagedLongLong;
 import org.zoodb.jdo.internal.server.index.PagedUniqueLongLong.LLEntry;
 import org.zoodb.jdo.internal.util.CloseableIterator;
@@ -1025,6 +1026,51 @@ public class TestLongLongNonUniqueIndex {
 
 
 
+    @Test
+    public void testBulkLoad() {
+        StorageChannel paf = createPageAccessFile();
+        PagedLongLong ind = new PagedLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+        LLIndexBuilder builder = new LLIndexBuilder(ind);
+        final int N = 10000;
+        //many values per key
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < 10; j++) {
+                assertTrue(builder.add(i, j));
+            }
+        }
+        assertFalse(builder.add(N-1, 9));
+        builder.finish();
+
+        for (int i = 0; i < N; i += 3) {
+            AbstractPageIterator<LLEntry> it = ind.iterator(i, i);
+            int n = 0;
+            while (it.hasNext()) {
+                LLEntry e = it.next();
+                assertEquals(i, e.getKey());
+                assertEquals(n, e.getValue());
+                n++;
+            }
+            assertEquals(10, n);
+        }
+
+        //the bulk-loaded tree supports regular updates
+        ind.insertLong(5, 100);
+        ind.removeLong(5, 0);
+        AbstractPageIterator<LLEntry> it = ind.iterator(5, 5);
+        assertEquals(1, it.next().getValue());
+        
+        //write and reload
+        int root = ind.write();
+        PagedLongLong ind2 = new PagedLongLong(DATA_TYPE.GENERIC_INDEX, paf, root);
+        it = ind2.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        assertEquals(N*10, n);
+    }
+
     //TODO test random add
     //TODO test overwrite
     //TODO test values/pages > 63bit/31bit (MAX_VALUE?!)
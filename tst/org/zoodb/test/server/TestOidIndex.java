@@ -41,6 +41,7 @@ import org.zoodb.jdo.internal.server.DiskIO.DATA_TYPE;
 import org.zoodb.jdo.internal.server.StorageChannel;
 import org.zoodb.jdo.internal.server.StorageRootInMemory;
 import org.zoodb.jdo.internal.server.index.AbstractPagedIndex.AbstractPageIterator;
+import org.zoodb.jdo.internal.server.index.LLIndexBuilder;
 import org.zoodb.jdo.internal.server.index.PagedOidIndex;
 import org.zoodb.jdo.internal.server.index.PagedOidIndex.FilePos;
 import org.zoodb.jdo.internal.server.index.PagedUniqueLongLong;
@@ -889,6 +890,235 @@ public class TestOidIndex {
         itD.close();
     }
 
+    @Test
+    public void testFindFirstEntry() {
+        StorageChannel paf = createPageAccessFile();
+        PagedUniqueLongLong ind = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+        assertNull(ind.findFirstEntry(0));
+        for (int i = 1000; i < 10000; i += 2) {
+            ind.insertLong(i, 32+i);
+        }
+        assertEquals(1000, ind.findFirstEntry(0).getKey());
+        assertEquals(1000, ind.findFirstEntry(1000).getKey());
+        assertEquals(1002, ind.findFirstEntry(1001).getKey());
+        assertEquals(32+5002, ind.findFirstEntry(5001).getValue());
+        assertNull(ind.findFirstEntry(9999));
+        
+        //remove a range that spans several pages
+        for (int i = 2000; i < 8000; i += 2) {
+            ind.removeLong(i);
+        }
+        assertEquals(8000, ind.findFirstEntry(1999).getKey());
+    }
+
+    @Test
+    public void testInsertLongsSorted() {
+        StorageChannel paf = createPageAccessFile();
+        PagedUniqueLongLong ind = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+        for (int i = 1000; i < 10000; i += 3) {
+            ind.insertLong(i, 1);
+        }
+        //interleaved and appended keys
+        long[] keys = new long[20000];
+        int n = 0;
+        for (int i = 1001; i < 20000; i += 3) {
+            keys[n++] = i;
+        }
+        ind.insertLongsSorted(keys, n, 2);
+        
+        for (int i = 1000; i < 10000; i += 3) {
+            assertEquals(1, ind.findValue(i).getValue());
+        }
+        for (int i = 1001; i < 20000; i += 3) {
+            assertEquals(2, ind.findValue(i).getValue());
+        }
+        for (int i = 1002; i < 20000; i += 3) {
+            assertNull(ind.findValue(i));
+        }
+        
+        //iterate
+        Iterator<LLEntry> it = ind.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        long prev = -1;
+        int nTotal = 0;
+        while (it.hasNext()) {
+            long key = it.next().getKey();
+            assertTrue(key > prev);
+            prev = key;
+            nTotal++;
+        }
+        assertEquals(3000 + n, nTotal);
+    }
+
+    @Test
+    public void testCompressedPages() {
+        final int MAX = 10000;
+        StorageChannel paf = createPageAccessFile();
+        PagedUniqueLongLong ind = 
+                new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf, 8, 8, true);
+        PagedUniqueLongLong indPlain = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+        for (int i = 1000; i < 1000+MAX; i++) {
+            ind.insertLong(i, 32+i);
+            indPlain.insertLong(i, 32+i);
+        }
+        assertTrue(ind.statsGetLeavesN() * 2 < indPlain.statsGetLeavesN());
+        
+        //values that require the full bit-width 
+        Random r = new Random(0);
+        long[] values = new long[MAX];
+        for (int i = 0; i < MAX; i += 3) {
+            values[i] = r.nextLong();
+            ind.insertLong(1000+i, values[i]);
+        }
+        ind.insertLong(Long.MIN_VALUE, Long.MAX_VALUE);
+        ind.insertLong(Long.MAX_VALUE, Long.MIN_VALUE);
+        
+        int root = ind.write();
+        PagedUniqueLongLong ind2 = 
+                new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf, root, 8, 8, true);
+        for (int i = 0; i < MAX; i++) {
+            long v = (i % 3 == 0) ? values[i] : 32+1000+i;
+            assertEquals(v, ind2.findValue(1000+i).getValue());
+        }
+        assertEquals(Long.MAX_VALUE, ind2.findValue(Long.MIN_VALUE).getValue());
+        assertEquals(Long.MIN_VALUE, ind2.findValue(Long.MAX_VALUE).getValue());
+        
+        //remove entries to force merging
+        for (int i = 0; i < MAX; i++) {
+            if (i % 5 != 0) {
+                ind2.removeLong(1000+i);
+            }
+        }
+        root = ind2.write();
+        PagedUniqueLongLong ind3 = 
+                new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf, root, 8, 8, true);
+        for (int i = 0; i < MAX; i += 5) {
+            long v = (i % 3 == 0) ? values[i] : 32+1000+i;
+            assertEquals(v, ind3.findValue(1000+i).getValue());
+        }
+    }
+
+    @Test
+    public void testCompressedReadsUncompressed() {
+        final int MAX = 5000;
+        StorageChannel paf = createPageAccessFile();
+        PagedUniqueLongLong ind = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+        for (int i = 1000; i < 1000+MAX; i++) {
+            ind.insertLong(i, 32+i);
+        }
+        int root = ind.write();
+        
+        //open existing uncompressed index as compressed index
+        PagedUniqueLongLong ind2 = 
+                new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf, root, 8, 8, true);
+        for (int i = 1000; i < 1000+MAX; i++) {
+            assertEquals(32+i, ind2.findValue(i).getValue());
+        }
+        for (int i = 1000; i < 1000+MAX; i += 2) {
+            ind2.insertLong(i, i);
+        }
+        root = ind2.write();
+        PagedUniqueLongLong ind3 = 
+                new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf, root, 8, 8, true);
+        for (int i = 1000; i < 1000+MAX; i++) {
+            assertEquals(i % 2 == 0 ? i : 32+i, ind3.findValue(i).getValue());
+        }
+    }
+
+    @Test
+    public void testBulkLoad() {
+        StorageChannel paf = createPageAccessFile();
+        PagedUniqueLongLong ind = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+        LLIndexBuilder builder = new LLIndexBuilder(ind);
+        final int N = 100000;
+        for (int i = 0; i < N; i++) {
+            assertTrue(builder.add(i*2, 32+i));
+        }
+        //duplicate
+        assertFalse(builder.add((N-1)*2, 1));
+        try {
+            builder.add(5, 5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //unsorted
+        }
+        builder.finish();
+        
+        for (int i = 0; i < N; i++) {
+            assertEquals(32+i, ind.findValue(i*2).getValue());
+            assertNull(ind.findValue(i*2+1));
+        }
+        Iterator<LLEntry> it = ind.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+        int n = 0;
+        while (it.hasNext()) {
+            assertEquals(n*2, it.next().getKey());
+            n++;
+        }
+        assertEquals(N, n);
+
+        //write and reload
+        int root = ind.write();
+        PagedUniqueLongLong ind2 = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf, root);
+        for (int i = 0; i < N; i += 7) {
+            assertEquals(32+i, ind2.findValue(i*2).getValue());
+        }
+        
+        //the bulk-loaded tree supports regular updates
+        for (int i = 0; i < N; i++) {
+            ind2.insertLong(i*2+1, 1);
+        }
+        for (int i = 0; i < N; i += 2) {
+            ind2.removeLong(i*2);
+        }
+        for (int i = 0; i < N; i++) {
+            assertEquals(1, ind2.findValue(i*2+1).getValue());
+            if (i % 2 == 0) {
+                assertNull(ind2.findValue(i*2));
+            } else {
+                assertEquals(32+i, ind2.findValue(i*2).getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testBulkLoadSmall() {
+        StorageChannel paf = createPageAccessFile();
+        for (int size: new int[]{0, 1, 2, 100, 1000}) {
+            PagedUniqueLongLong ind = new PagedUniqueLongLong(DATA_TYPE.GENERIC_INDEX, paf);
+            LLIndexBuilder builder = new LLIndexBuilder(ind, 1.0);
+            for (int i = 0; i < size; i++) {
+                builder.add(i, i);
+            }
+            builder.finish();
+            Iterator<LLEntry> it = ind.iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+            int n = 0;
+            while (it.hasNext()) {
+                assertEquals(n, it.next().getKey());
+                n++;
+            }
+            assertEquals(size, n);
+            ind.insertLong(size, size);
+            assertEquals(size, ind.findValue(size).getValue());
+        }
+    }
+
+    @Test
+    public void testBulkLoadSort() {
+        Random r = new Random(0);
+        final int N = 10000;
+        long[] keys = new long[N+10];
+        long[] values = new long[N+10];
+        for (int i = 0; i < N; i++) {
+            keys[i] = r.nextInt(1000);
+            values[i] = r.nextLong();
+        }
+        LLIndexBuilder.sort(keys, values, N);
+        for (int i = 1; i < N; i++) {
+            assertTrue(keys[i-1] < keys[i] || (keys[i-1] == keys[i] && values[i-1] <= values[i]));
+        }
+        //the remainder must not be touched
+        assertEquals(0, keys[N]);
+    }
+    
     
     //TODO test random add
     //TODO test values/pages > 63bit/31bit (MAX_VALUE?!)
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.zoodb.jdo.internal.server.PagePool;
+
+public class TestPagePool {
+
+	private static final int PAGE_SIZE = 64;
+	
+	private static ByteBuffer page(int fill) {
+		ByteBuffer buf = ByteBuffer.allocateDirect(PAGE_SIZE);
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			buf.put((byte) fill);
+		}
+		return buf;
+	}
+	
+	@Test
+	public void testHitMiss() {
+		PagePool pool = new PagePool(PAGE_SIZE, 4);
+		ByteBuffer buf = ByteBuffer.allocateDirect(PAGE_SIZE);
+		assertFalse(pool.read(buf, 3));
+		
+		pool.put(page(3), 3);
+		buf.clear();
+		assertTrue(pool.read(buf, 3));
+		assertEquals(PAGE_SIZE, buf.position());
+		assertEquals(3, buf.get(0));
+		assertEquals(3, buf.get(PAGE_SIZE-1));
+		
+		assertEquals(1, pool.statsGetHitCount());
+		assertEquals(1, pool.statsGetMissCount());
+	}
+	
+	@Test
+	public void testPartialPageIsIgnored() {
+		PagePool pool = new PagePool(PAGE_SIZE, 4);
+		ByteBuffer buf = page(1);
+		buf.position(PAGE_SIZE/2);
+		pool.put(buf, 1);
+		assertEquals(0, pool.size());
+	}
+
+	@Test
+	public void testInvalidate() {
+		PagePool pool = new PagePool(PAGE_SIZE, 4);
+		pool.put(page(5), 5);
+		pool.invalidate(5);
+		assertFalse(pool.read(ByteBuffer.allocateDirect(PAGE_SIZE), 5));
+		assertEquals(0, pool.size());
+	}
+	
+	@Test
+	public void testClockEviction() {
+		PagePool pool = new PagePool(PAGE_SIZE, 4);
+		for (int i = 0; i < 4; i++) {
+			pool.put(page(i), i);
+		}
+		assertEquals(4, pool.size());
+		
+		//first page to be added evicts all reference bits and then reuses slot 0
+		pool.put(page(10), 10);
+		assertEquals(4, pool.size());
+		ByteBuffer buf = ByteBuffer.allocateDirect(PAGE_SIZE);
+		assertFalse(pool.read(buf, 0));
+		
+		//page 1 is referenced and should survive the next eviction
+		buf.clear();
+		assertTrue(pool.read(buf, 1));
+		pool.put(page(11), 11);
+		buf.clear();
+		assertTrue(pool.read(buf, 1));
+		buf.clear();
+		assertFalse(pool.read(buf, 2));
+		buf.clear();
+		assertTrue(pool.read(buf, 11));
+		assertEquals(11, buf.get(0));
+	}
+	
+}
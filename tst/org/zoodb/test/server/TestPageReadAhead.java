@@ -0,0 +1,142 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.internal.server.PagePool;
+import org.zoodb.jdo.internal.server.PageReadAhead;
+
+public class TestPageReadAhead {
+
+	private static final int PAGE_SIZE = 64;
+	private static final int N_PAGES = 20;
+	
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel fc;
+	
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("zoodb", "readahead");
+		raf = new RandomAccessFile(file, "rw");
+		fc = raf.getChannel();
+		ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE * N_PAGES);
+		for (int i = 0; i < N_PAGES; i++) {
+			for (int j = 0; j < PAGE_SIZE; j++) {
+				buf.put((byte) i);
+			}
+		}
+		buf.flip();
+		fc.write(buf, 0);
+	}
+	
+	@After
+	public void after() throws IOException {
+		fc.close();
+		raf.close();
+		file.delete();
+	}
+	
+	private static void waitFor(PageReadAhead ra, int nRead) throws InterruptedException {
+		for (int i = 0; i < 1000 && ra.statsGetReadCount() < nRead; i++) {
+			Thread.sleep(5);
+		}
+	}
+	
+	@Test
+	public void testReadAhead() throws InterruptedException {
+		PagePool pool = new PagePool(PAGE_SIZE, 8);
+		PageReadAhead ra = new PageReadAhead(fc, pool, PAGE_SIZE, 4);
+		try {
+			ra.request(3);
+			ra.request(5);
+			ra.request(3);
+			waitFor(ra, 2);
+			assertEquals(2, ra.statsGetReadCount());
+			assertTrue(pool.contains(3));
+			assertTrue(pool.contains(5));
+			ByteBuffer buf = ByteBuffer.allocateDirect(PAGE_SIZE);
+			assertTrue(pool.read(buf, 5));
+			assertEquals(5, buf.get(0));
+			assertEquals(5, buf.get(PAGE_SIZE-1));
+		} finally {
+			ra.close();
+		}
+		//requests after close() are ignored
+		ra.request(7);
+		assertFalse(pool.contains(7));
+	}
+	
+	@Test
+	public void testInvalidate() throws InterruptedException {
+		PagePool pool = new PagePool(PAGE_SIZE, 8);
+		PageReadAhead ra = new PageReadAhead(fc, pool, PAGE_SIZE, 8);
+		try {
+			//block the thread while the requests are queued
+			synchronized (ra) {
+				ra.request(1);
+				ra.request(2);
+				ra.invalidate(1);
+			}
+			waitFor(ra, 1);
+			ra.request(4);
+			waitFor(ra, 2);
+			assertFalse(pool.contains(1));
+			assertTrue(pool.contains(2));
+			assertTrue(pool.contains(4));
+		} finally {
+			ra.close();
+		}
+	}
+	
+	@Test
+	public void testQueueLimit() throws InterruptedException {
+		PagePool pool = new PagePool(PAGE_SIZE, 8);
+		PageReadAhead ra = new PageReadAhead(fc, pool, PAGE_SIZE, 2);
+		try {
+			synchronized (ra) {
+				for (int i = 0; i < 5; i++) {
+					ra.request(i);
+				}
+			}
+			waitFor(ra, 2);
+			ra.close();
+			assertEquals(2, ra.statsGetReadCount());
+			assertTrue(pool.contains(0));
+			assertTrue(pool.contains(1));
+			assertFalse(pool.contains(2));
+		} finally {
+			ra.close();
+		}
+	}
+}
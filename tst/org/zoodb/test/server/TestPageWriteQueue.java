@@ -0,0 +1,119 @@
+/*
+ * Copyright 2009-2013 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of ZooDB.
+ * 
+ * ZooDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * ZooDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with ZooDB.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * See the README and COPYING files for further information. 
+ */
+package org.zoodb.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zoodb.jdo.internal.server.PageWriteQueue;
+
+public class TestPageWriteQueue {
+
+	private static final int PAGE_SIZE = 64;
+	
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel fc;
+	
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("zoodb", "pwq");
+		raf = new RandomAccessFile(file, "rw");
+		fc = raf.getChannel();
+	}
+	
+	@After
+	public void after() throws IOException {
+		fc.close();
+		raf.close();
+		file.delete();
+	}
+	
+	private static ByteBuffer page(int fill, int len) {
+		ByteBuffer buf = ByteBuffer.allocateDirect(PAGE_SIZE);
+		for (int i = 0; i < len; i++) {
+			buf.put((byte) fill);
+		}
+		buf.flip();
+		return buf;
+	}
+	
+	private byte readByte(long pos) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(1);
+		fc.read(b, pos);
+		return b.get(0);
+	}
+	
+	@Test
+	public void testSortedAndMerged() throws IOException {
+		PageWriteQueue q = new PageWriteQueue(PAGE_SIZE, 100);
+		q.add(page(3, PAGE_SIZE), 3);
+		q.add(page(1, PAGE_SIZE), 1);
+		//incomplete page, followed by an adjacent page
+		q.add(page(2, 10), 2);
+		q.add(page(7, 10), 7);
+		assertEquals(4, q.size());
+		
+		q.writeTo(fc);
+		assertTrue(q.isEmpty());
+		//pages 1-3 and page 7
+		assertEquals(2, q.statsGetBatchWriteCount());
+		assertEquals(7 * PAGE_SIZE + 10, fc.size());
+		assertEquals(1, readByte(PAGE_SIZE));
+		assertEquals(2, readByte(2 * PAGE_SIZE + 9));
+		assertEquals(0, readByte(2 * PAGE_SIZE + 10));
+		assertEquals(3, readByte(3 * PAGE_SIZE));
+		assertEquals(7, readByte(7 * PAGE_SIZE + 9));
+	}
+	
+	@Test
+	public void testOverwriteAndRead() {
+		PageWriteQueue q = new PageWriteQueue(PAGE_SIZE, 100);
+		assertFalse(q.add(page(1, 20), 5));
+		assertFalse(q.add(page(2, 10), 5));
+		assertEquals(1, q.size());
+		
+		ByteBuffer buf = ByteBuffer.allocateDirect(PAGE_SIZE);
+		assertTrue(q.read(buf, 5));
+		assertEquals(20, buf.position());
+		assertEquals(2, buf.get(9));
+		assertEquals(1, buf.get(10));
+		
+		assertFalse(q.read(buf, 6));
+	}
+	
+	@Test
+	public void testFull() {
+		PageWriteQueue q = new PageWriteQueue(PAGE_SIZE, 2);
+		assertFalse(q.add(page(1, PAGE_SIZE), 1));
+		assertTrue(q.add(page(2, PAGE_SIZE), 2));
+	}
+}